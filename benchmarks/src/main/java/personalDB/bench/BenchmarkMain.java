@@ -0,0 +1,37 @@
+/**
+ * Entry point of the benchmark jar
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.bench;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs JMH, writing the results as JSON to jmh-result.json unless another
+ * result format or file is given, so runs on different commits can be
+ * compared by a script. Every other argument is passed to JMH unchanged,
+ * e.g. {@code java -jar benchmarks.jar Parser -rff parser.json}.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-rf")) {
+            arguments.add("-rf");
+            arguments.add("json");
+        }
+        if (!arguments.contains("-rff")) {
+            arguments.add("-rff");
+            arguments.add("jmh-result.json");
+        }
+        Main.main(arguments.toArray(new String[0]));
+    }
+
+}
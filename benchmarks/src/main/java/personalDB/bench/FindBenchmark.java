@@ -0,0 +1,118 @@
+/**
+ * Benchmarks of file searches
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import personalDB.Engine.DirectoryHandler;
+import personalDB.Engine.Finder;
+import personalDB.Index.Catalog;
+import personalDB.Index.NameIndex;
+import personalDB.Parser.Query;
+import personalDB.Parser.QueryParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of FIND over a synthetic tree, either walking the tree or answering
+ * from a name index or a catalog built during setup. The workspace is redirected to a
+ * temporary directory so the index of the user is never touched. Building the
+ * index and the catalog is measured by {@link IndexBuildBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindBenchmark {
+    /**
+     * WIDTHxDEPTHxFILES of the tree: about 31 thousand files, and about a
+     * million files in 111 thousand directories
+     */
+    @Param({"6x4x20", "10x5x9"})
+    public String shape;
+
+    @Param({"walk", "index", "catalog"})
+    public String source;
+
+    private TreeFixture tree;
+    private Path workspace;
+    private DirectoryHandler directory;
+    private Query nameAndSize;
+    private Query largeFiles;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workspace = Files.createTempDirectory("personaldb-bench-home");
+        System.setProperty("personaldb.home", workspace.toString());
+        tree = TreeFixture.of(shape);
+        directory = new DirectoryHandler(tree.getRoot().toString());
+        if (source.equals("index")) {
+            NameIndex.build(tree.getRoot());
+        } else if (source.equals("catalog")) {
+            Catalog.build(tree.getRoot(), false);
+        }
+        nameAndSize = QueryParser.parse(List.of("ext=pdf", "size<1K"));
+        largeFiles = QueryParser.parse(List.of("size>1M"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        NameIndex.drop(tree.getRoot());
+        Catalog.drop(tree.getRoot());
+        tree.close();
+    }
+
+    @Benchmark
+    public Object findFirst() {
+        return new Finder(directory, TreeFixture.fileName(tree.getFiles() - 1)).findFirstFileStrict();
+    }
+
+    @Benchmark
+    public int findAllExact(Blackhole blackhole) {
+        return new Finder(directory, TreeFixture.fileName(tree.getFiles() - 1)).findAllStrict(blackhole::consume);
+    }
+
+    @Benchmark
+    public int findAllExtension(Blackhole blackhole) {
+        return new Finder(directory, "pdf", Finder.Mode.EXTENSION, false).findAllStrict(blackhole::consume);
+    }
+
+    @Benchmark
+    public int findMissing(Blackhole blackhole) {
+        return new Finder(directory, "missing.bin").findAllStrict(blackhole::consume);
+    }
+
+    @Benchmark
+    public int findQueryNameAndSize(Blackhole blackhole) {
+        return new Finder(directory, nameAndSize, false).findAllStrict(blackhole::consume);
+    }
+
+    @Benchmark
+    public int findQuerySize(Blackhole blackhole) {
+        return new Finder(directory, largeFiles, false).findAllStrict(blackhole::consume);
+    }
+
+}
@@ -0,0 +1,135 @@
+/**
+ * Benchmarks of content hashing
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import personalDB.Storage.ContentHasher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Hashing throughput in MB/s, overall and per core: a single file of the
+ * given size through {@link ContentHasher#hash(Path)}, parallel over its
+ * chunks once it is larger than one, a batch of small files through
+ * {@link ContentHasher#hashAll(List)}, and the same bytes fed from memory
+ * to an incremental hasher on one thread, which is the rate of the digest
+ * itself. Files are read from the page cache after the first iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashingBenchmark {
+    private static final int SMALL_FILES = 256;
+    private static final int SMALL_SIZE = 16 << 10;
+    // Small files ContentHasher hands to each task, bounds the cores a batch uses
+    private static final int FILES_PER_TASK = 64;
+    private static final double MEGABYTE = 1 << 20;
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    @Param({"1048576", "67108864"})
+    public int size;
+
+    private Path directory;
+    private Path file;
+    private byte[] content;
+    private List<Path> smallFiles;
+
+    /**
+     * Megabytes hashed, reported by JMH as a rate next to the score
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public double megabytes;
+        public double megabytesPerCore;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+            megabytesPerCore = 0;
+        }
+
+        void hashed(long bytes, int cores) {
+            megabytes += bytes / MEGABYTE;
+            megabytesPerCore += bytes / MEGABYTE / cores;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("personaldb-bench-hash");
+        SplittableRandom random = new SplittableRandom(42);
+        content = new byte[size];
+        random.nextBytes(content);
+        file = Files.write(directory.resolve("large"), content);
+        smallFiles = new ArrayList<>(SMALL_FILES);
+        byte[] small = new byte[SMALL_SIZE];
+        for (int i = 0; i < SMALL_FILES; i++) {
+            random.nextBytes(small);
+            smallFiles.add(Files.write(directory.resolve("small" + i), small));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public String hashFile(Throughput throughput) throws IOException {
+        String hash = ContentHasher.hash(file);
+        int chunks = (size + ContentHasher.CHUNK_SIZE - 1) / ContentHasher.CHUNK_SIZE;
+        throughput.hashed(size, Math.max(1, Math.min(CORES, chunks)));
+        return hash;
+    }
+
+    @Benchmark
+    public List<String> hashSmallFiles(Throughput throughput) throws IOException {
+        List<String> hashes = ContentHasher.hashAll(smallFiles);
+        int batches = (SMALL_FILES + FILES_PER_TASK - 1) / FILES_PER_TASK;
+        throughput.hashed((long) SMALL_FILES * SMALL_SIZE, Math.min(CORES, batches));
+        return hashes;
+    }
+
+    @Benchmark
+    public String hashInMemory(Throughput throughput) {
+        ContentHasher.Incremental hasher = new ContentHasher.Incremental();
+        hasher.update(content, 0, content.length);
+        throughput.hashed(size, 1);
+        return hasher.finish();
+    }
+
+}
@@ -0,0 +1,79 @@
+/**
+ * Benchmarks of building the indexes FIND answers from
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import personalDB.Index.Catalog;
+import personalDB.Index.NameIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to build a name index and a catalog from scratch over the same trees
+ * as {@link FindBenchmark}. A build is far too long for many of them to fit
+ * in an iteration, so every iteration is a single build and the previous
+ * index is dropped before it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexBuildBenchmark {
+    @Param({"6x4x20", "10x5x9"})
+    public String shape;
+
+    private TreeFixture tree;
+    private Path workspace;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workspace = Files.createTempDirectory("personaldb-bench-home");
+        System.setProperty("personaldb.home", workspace.toString());
+        tree = TreeFixture.of(shape);
+    }
+
+    @Setup(Level.Iteration)
+    public void dropIndexes() throws IOException {
+        NameIndex.drop(tree.getRoot());
+        Catalog.drop(tree.getRoot());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        dropIndexes();
+        tree.close();
+    }
+
+    @Benchmark
+    public Object buildNameIndex() throws IOException {
+        return NameIndex.build(tree.getRoot());
+    }
+
+    @Benchmark
+    public Object buildCatalog() throws IOException {
+        return Catalog.build(tree.getRoot(), false);
+    }
+
+}
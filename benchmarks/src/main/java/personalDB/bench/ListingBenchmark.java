@@ -0,0 +1,93 @@
+/**
+ * Benchmarks of directory listing
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import personalDB.Engine.DirectoryListing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of listing a single directory with many entries: File.list() as LS
+ * used to do, a DirectoryListing that is not cached, a cached one, and a
+ * cached one with the attributes LS -l reads again for every entry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListingBenchmark {
+    @Param({"10000"})
+    public int entries;
+
+    private TreeFixture tree;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tree = new TreeFixture(0, 0, entries);
+        // Listings of directories modified in the last second are not cached
+        Files.setLastModifiedTime(tree.getRoot(), FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        tree.close();
+    }
+
+    @Benchmark
+    public void fileList(Blackhole blackhole) {
+        for (String name : new File(tree.getRoot().toString()).list()) {
+            blackhole.consume(name);
+        }
+    }
+
+    @Benchmark
+    public int streamed(Blackhole blackhole) throws IOException {
+        DirectoryListing.invalidate(tree.getRoot());
+        return DirectoryListing.list(tree.getRoot(), false, entry -> {
+            blackhole.consume(entry);
+            return true;
+        });
+    }
+
+    @Benchmark
+    public int cached(Blackhole blackhole) throws IOException {
+        return DirectoryListing.list(tree.getRoot(), false, entry -> {
+            blackhole.consume(entry);
+            return true;
+        });
+    }
+
+    @Benchmark
+    public int cachedDetails(Blackhole blackhole) throws IOException {
+        return DirectoryListing.list(tree.getRoot(), true, entry -> {
+            blackhole.consume(entry);
+            return true;
+        });
+    }
+
+}
@@ -0,0 +1,195 @@
+/**
+ * Benchmarks of command parsing and dispatch
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import personalDB.Engine.DirectoryHandler;
+import personalDB.Engine.FileHandler;
+import personalDB.Engine.OperationHandler;
+import personalDB.Parser.Operation;
+import personalDB.Parser.Parser;
+import personalDB.TerminalInterface.Interface;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per command of turning a line of input into an operation and its
+ * arguments, for the current parser and for the original one that built
+ * every lexeme with a StringBuilder and upper-cased the command for a
+ * string switch. parseAndDispatch and legacyParseAndDispatch also execute
+ * the parsed command with the same handler, over a small tree in a
+ * temporary directory and with the output thrown away, so their difference
+ * is what parsing and looking up the command cost next to running it. The
+ * commands leave the tree and the current directory as they found them,
+ * which is checked after every invocation that ends a round of commands.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    private static final String[] COMMANDS = {
+            "ls",
+            "find -all -ext pdf",
+            "cd \"d1\"/d0",
+            "help delete",
+            "back",
+            "back",
+            "Where 3f2a9c1b",
+    };
+
+    private final Parser parser = new Parser();
+    private TreeFixture tree;
+    private DirectoryHandler directoryHandler;
+    private OperationHandler handler;
+    private PrintStream originalOut;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Path workspace = Files.createTempDirectory("personaldb-bench-home");
+        System.setProperty("personaldb.home", workspace.toString());
+        tree = new TreeFixture(2, 2, 6);
+        directoryHandler = new DirectoryHandler(tree.getRoot().toString());
+        handler = new OperationHandler(directoryHandler, new FileHandler(directoryHandler), new Interface(directoryHandler));
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Invocation)
+    public void checkDirectory() {
+        if (next == 0 && !directoryHandler.getDirectory().toPath().normalize().equals(tree.getRoot().normalize())) {
+            throw new IllegalStateException("The commands left the current directory at " + directoryHandler.getCurrentDir());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(originalOut);
+        tree.close();
+    }
+
+    private String nextCommand() {
+        String command = COMMANDS[next];
+        next = (next + 1) % COMMANDS.length;
+        return command;
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        parser.parse(nextCommand());
+        blackhole.consume(parser.getCommand());
+        blackhole.consume(parser.getArguments());
+    }
+
+    @Benchmark
+    public void legacyParse(Blackhole blackhole) {
+        LegacyParser legacy = new LegacyParser(nextCommand());
+        blackhole.consume(legacy.getCommand());
+        blackhole.consume(legacy.getArguments());
+    }
+
+    @Benchmark
+    public int parseAndDispatch() {
+        parser.parse(nextCommand());
+        return handler.execute(parser.getCommand(), parser.getArguments());
+    }
+
+    @Benchmark
+    public int legacyParseAndDispatch() {
+        LegacyParser legacy = new LegacyParser(nextCommand());
+        return handler.execute(legacy.getCommand(), legacy.getArguments());
+    }
+
+    /**
+     * The parser as it was before lexemes became offsets, kept as the baseline
+     */
+    static class LegacyParser {
+        private final String source;
+        private final List<String> lexemes = new ArrayList<>();
+        private int current = 0;
+
+        LegacyParser(String input) {
+            this.source = input;
+            StringBuilder lexeme = new StringBuilder();
+            while (current < source.length()) {
+                char c = source.charAt(current);
+                if (c == '"') {
+                    current++;
+                    while (current < source.length() && source.charAt(current) != '"') {
+                        lexeme.append(source.charAt(current++));
+                    }
+                    current++;
+                } else if (c == ' ') {
+                    lexemes.add(lexeme.toString());
+                    lexeme.setLength(0);
+                    current++;
+                } else if (current + 1 >= source.length()) {
+                    lexeme.append(source.charAt(current++));
+                    lexemes.add(lexeme.toString());
+                    lexeme.setLength(0);
+                } else {
+                    lexeme.append(source.charAt(current++));
+                }
+            }
+            if (lexeme.length() > 0) {
+                lexemes.add(lexeme.toString());
+            }
+        }
+
+        Operation getCommand() {
+            return switch (lexemes.get(0).toUpperCase()) {
+                case "EXIT" -> Operation.EXIT;
+                case "HELP" -> Operation.HELP;
+                case "FIND" -> Operation.FIND;
+                case "DELETE" -> Operation.DELETE;
+                case "CREATE" -> Operation.CREATE;
+                case "CD" -> Operation.CD;
+                case "OPEN" -> Operation.OPEN;
+                case "BACK" -> Operation.BACK;
+                case "MKDIR" -> Operation.MKDIR;
+                case "RMDIR" -> Operation.RMDIR;
+                case "LS" -> Operation.LS;
+                case "INDEX" -> Operation.INDEX;
+                case "PUT" -> Operation.PUT;
+                case "GET" -> Operation.GET;
+                case "WHERE" -> Operation.WHERE;
+                case "HASH" -> Operation.HASH;
+                case "GC" -> Operation.GC;
+                case "SYNC" -> Operation.SYNC;
+                default -> Operation.INVALID;
+            };
+        }
+
+        List<String> getArguments() {
+            return lexemes.size() > 1 ? lexemes.subList(1, lexemes.size()) : new ArrayList<>();
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Benchmarks of changing directory
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import personalDB.Engine.DirectoryHandler;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of resolving the paths given to CD: a relative path to the deepest
+ * directory of the tree, an absolute one, and a relative one going up
+ * with .. from the deepest directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathResolutionBenchmark {
+    @Param({"4"})
+    public int width;
+
+    @Param({"6"})
+    public int depth;
+
+    private TreeFixture tree;
+    private String relative;
+    private String absolute;
+    private String upwards;
+    private DirectoryHandler handler;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        tree = new TreeFixture(width, depth, 0);
+        relative = tree.deepestPath(File.separatorChar);
+        absolute = tree.getRoot() + File.separator + relative;
+        upwards = ".." + File.separator + ".." + File.separator + "d1";
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() throws Exception {
+        handler = new DirectoryHandler(tree.getRoot().toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        tree.close();
+    }
+
+    @Benchmark
+    public String cdRelative() {
+        handler.cdDir(relative);
+        return handler.getCurrentDir();
+    }
+
+    @Benchmark
+    public String cdAbsolute() {
+        handler.cdDir(absolute);
+        return handler.getCurrentDir();
+    }
+
+    @Benchmark
+    public String cdUpwards() {
+        handler.cdDir(absolute);
+        handler.cdDir(upwards);
+        return handler.getCurrentDir();
+    }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * Synthetic directory trees for benchmarks
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.bench;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Creates a directory tree in a temporary directory where every directory
+ * below the given depth has {@code width} subdirectories named d0, d1, ...
+ * and every directory has {@code files} empty files named f0.txt, f1.pdf, ...
+ * Names only depend on the parameters, so benchmarks can refer to paths that
+ * are known to exist, e.g. {@link #deepestPath(char)}.
+ */
+public class TreeFixture implements AutoCloseable {
+    private static final String[] EXTENSIONS = {"txt", "pdf", "java", "jpg"};
+
+    private final Path root;
+    private final int width;
+    private final int depth;
+    private final int files;
+
+    /**
+     * Creates the tree
+     * @param width Subdirectories per directory
+     * @param depth Levels of subdirectories below the root
+     * @param files Files per directory
+     * @throws IOException If the tree cannot be created
+     */
+    public TreeFixture(int width, int depth, int files) throws IOException {
+        this.root = Files.createTempDirectory("personaldb-bench");
+        this.width = width;
+        this.depth = depth;
+        this.files = files;
+        populate(root, depth);
+    }
+
+    /**
+     * Creates a tree from its shape
+     * @param shape WIDTHxDEPTHxFILES, e.g. 10x5x9 for about a million files
+     * @return The tree
+     * @throws IOException If the tree cannot be created
+     */
+    public static TreeFixture of(String shape) throws IOException {
+        String[] parts = shape.split("x");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Expected WIDTHxDEPTHxFILES: " + shape);
+        }
+        return new TreeFixture(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+    }
+
+    /**
+     * @return Files per directory
+     */
+    public int getFiles() {
+        return files;
+    }
+
+    private void populate(Path directory, int levels) throws IOException {
+        for (int i = 0; i < files; i++) {
+            Files.createFile(directory.resolve(fileName(i)));
+        }
+        if (levels == 0) {
+            return;
+        }
+        for (int i = 0; i < width; i++) {
+            populate(Files.createDirectory(directory.resolve("d" + i)), levels - 1);
+        }
+    }
+
+    /**
+     * @param index Index of a file in its directory
+     * @return Name of that file
+     */
+    public static String fileName(int index) {
+        return "f" + index + "." + EXTENSIONS[index % EXTENSIONS.length];
+    }
+
+    /**
+     * @return Root of the tree
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @param separator Separator placed between directory names
+     * @return Path from the root to the directory d0/d0/... at the full depth
+     */
+    public String deepestPath(char separator) {
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            if (i > 0) {
+                path.append(separator);
+            }
+            path.append("d0");
+        }
+        return path.toString();
+    }
+
+    /**
+     * @return Number of files in the tree
+     */
+    public long fileCount() {
+        long directories = 0;
+        long level = 1;
+        for (int i = 0; i <= depth; i++) {
+            directories += level;
+            level *= width;
+        }
+        return directories * files;
+    }
+
+    /**
+     * Deletes the tree
+     */
+    @Override
+    public void close() throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                Files.delete(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}
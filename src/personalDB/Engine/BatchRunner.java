@@ -0,0 +1,157 @@
+/**
+ * Runs scripts of commands without the terminal interface
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Engine;
+
+import personalDB.Parser.Operation;
+import personalDB.Parser.Parser;
+import personalDB.TerminalInterface.OutputCapture;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Objects of this class run a script with one command per line. Empty lines
+ * and lines starting with # are skipped and EXIT ends the script.
+ * Consecutive read only commands (see {@link Operation#isReadOnly()}) run at
+ * the same time on a thread pool, with their output captured and printed in
+ * script order. Any other command waits for the commands before it and runs
+ * alone, so commands that change files or the current directory are always
+ * seen in order.
+ * The status of every command is written to standard error as
+ * LINE, STATUS and COMMAND separated by tabs.
+ */
+public class BatchRunner {
+    private static final int MAX_PENDING = 256;
+
+    private final OperationHandler handler;
+    private final ExecutorService pool;
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private PrintStream out;
+    private PrintStream status;
+    private int commands = 0;
+    private int failed = 0;
+
+    private record Pending(int line, String command, Future<Result> result) {}
+
+    private record Result(int status, byte[] output) {}
+
+    /**
+     * Constructor
+     * @param handler Handler that executes the commands
+     * @param threads Number of read only commands that can run at the same time
+     */
+    public BatchRunner(OperationHandler handler, int threads) {
+        this.handler = handler;
+        this.pool = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "personalDB-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs every command of a script
+     * @param script Script to be run
+     * @return Number of commands that did not succeed
+     * @throws IOException If the script cannot be read
+     */
+    public int run(BufferedReader script) throws IOException {
+        OutputCapture.install();
+        out = OutputCapture.original();
+        status = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.err), 1 << 16), false);
+        Parser parser = new Parser();
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = script.readLine()) != null) {
+                lineNumber++;
+                String command = line.strip();
+                if (command.isEmpty() || command.startsWith("#")) {
+                    continue;
+                }
+                parser.parse(command);
+                Operation operation = parser.getCommand();
+                if (operation == Operation.EXIT) {
+                    break;
+                }
+                List<String> arguments = parser.getArguments();
+                if (operation.isReadOnly()) {
+                    if (pending.size() >= MAX_PENDING) {
+                        report(pending.poll());
+                    }
+                    pending.add(new Pending(lineNumber, command, pool.submit(() -> {
+                        OutputCapture.start();
+                        int result = execute(operation, arguments);
+                        return new Result(result, OutputCapture.stop());
+                    })));
+                } else {
+                    while (!pending.isEmpty()) {
+                        report(pending.poll());
+                    }
+                    int result = execute(operation, arguments);
+                    System.out.flush();
+                    report(lineNumber, result, command);
+                }
+            }
+            while (!pending.isEmpty()) {
+                report(pending.poll());
+            }
+            status.println(commands + " command(s), " + failed + " failed.");
+        } finally {
+            out.flush();
+            status.flush();
+            pool.shutdown();
+        }
+        return failed;
+    }
+
+    private int execute(Operation operation, List<String> arguments) {
+        try {
+            return handler.execute(operation, arguments);
+        } catch (RuntimeException e) {
+            System.out.println("Command failed.\n" + e);
+            return Status.FAILED;
+        }
+    }
+
+    /**
+     * Waits for a command that runs in the pool and prints its output
+     */
+    private void report(Pending command) {
+        Result result;
+        try {
+            result = command.result().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result = new Result(Status.FAILED, new byte[0]);
+        } catch (ExecutionException e) {
+            result = new Result(Status.FAILED, ("Command failed.\n" + e.getCause() + "\n").getBytes());
+        }
+        out.write(result.output(), 0, result.output().length);
+        report(command.line(), result.status(), command.command());
+    }
+
+    private void report(int line, int result, String command) {
+        commands++;
+        if (result != Status.OK) {
+            failed++;
+        }
+        status.println(line + "\t" + result + "\t" + command);
+    }
+
+}
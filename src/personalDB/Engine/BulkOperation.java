@@ -0,0 +1,256 @@
+/**
+ * Applies a file operation to many paths at once
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Engine;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Objects of this class expand a list of paths and patterns and apply an
+ * operation to every path, many at a time. Patterns are expanded while the
+ * directory is being read, so the first operations start before the whole
+ * tree was walked, and at most {@code concurrency} operations are in flight.
+ * An argument is a pattern only if it starts with glob: or regex:, any other
+ * argument is a path even if it contains one of *?[{, so photo [1].jpg never
+ * selects photo 1.jpg. Such a path that does not exist fails with a hint to
+ * add the prefix. A glob without / or ** matches the names in the base
+ * directory, any other pattern is matched against the path relative to the
+ * base directory across the whole tree.
+ * Operations run on virtual threads when the runtime has them and on a pool
+ * of {@code concurrency} threads otherwise.
+ */
+public class BulkOperation {
+    public static final int DEFAULT_CONCURRENCY = Integer.getInteger("personaldb.concurrency", 64);
+    private static final int MAX_KEPT_ERRORS = 1000;
+
+    private final Path base;
+    private final int concurrency;
+
+    /**
+     * Operation applied to every path
+     */
+    public interface Action {
+        /**
+         * @param path Absolute path the operation is applied to
+         * @throws IOException If the operation fails for that path
+         */
+        void apply(Path path) throws IOException;
+    }
+
+    /**
+     * Kind of entries a pattern selects
+     */
+    public enum Target {
+        FILES, DIRECTORIES
+    }
+
+    /**
+     * Outcome of a bulk operation
+     * @param succeeded Number of paths the operation succeeded for
+     * @param failed Number of paths the operation failed for
+     * @param errors Errors of the first failed paths
+     */
+    public record Summary(long succeeded, long failed, List<String> errors) {}
+
+    /**
+     * Constructor
+     * @param base Directory relative paths and patterns are resolved against
+     * @param concurrency Maximum number of operations running at the same time
+     */
+    public BulkOperation(Path base, int concurrency) {
+        this.base = base.toAbsolutePath().normalize();
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * @param argument Argument of a command
+     * @return True if the argument is a pattern, or a path that looks like
+     * one and has to be checked by {@link #run(List, Target, Action)}
+     */
+    public static boolean isPattern(String argument) {
+        return hasSyntax(argument) || hasWildcards(argument);
+    }
+
+    private static boolean hasSyntax(String argument) {
+        return argument.startsWith("glob:") || argument.startsWith("regex:");
+    }
+
+    private static boolean hasWildcards(String argument) {
+        for (char c : argument.toCharArray()) {
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Applies an operation to every path and to every entry matched by the patterns
+     * @param arguments Paths and patterns
+     * @param target Kind of entries the patterns select, or null to take every argument as a path
+     * @param action Operation to be applied
+     * @return Summary of the operation
+     */
+    public Summary run(List<String> arguments, Target target, Action action) {
+        AtomicLong succeeded = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        Semaphore permits = new Semaphore(concurrency);
+        ExecutorService executor = newExecutor(concurrency);
+        Action submit = path -> {
+            permits.acquireUninterruptibly();
+            executor.execute(() -> {
+                try {
+                    action.apply(path);
+                    succeeded.incrementAndGet();
+                } catch (IOException | SecurityException e) {
+                    failed.incrementAndGet();
+                    keep(errors, base.relativize(path) + ": " + describe(e));
+                } finally {
+                    permits.release();
+                }
+            });
+        };
+
+        try {
+            for (String argument : arguments) {
+                try {
+                    if (target != null && hasSyntax(argument)) {
+                        expand(argument, target, submit);
+                        continue;
+                    }
+                    Path path = base.resolve(argument).normalize();
+                    if (target != null && hasWildcards(argument) && !Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                        failed.incrementAndGet();
+                        keep(errors, argument + ": does not exist, patterns start with glob: or regex:");
+                    } else {
+                        submit.apply(path);
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    failed.incrementAndGet();
+                    keep(errors, argument + ": " + describe(e));
+                }
+            }
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return new Summary(succeeded.get(), failed.get(), List.copyOf(errors));
+    }
+
+    /**
+     * Streams the entries matched by a pattern to the action
+     */
+    private void expand(String pattern, Target target, Action submit) throws IOException {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher(pattern);
+        boolean singleLevel = pattern.startsWith("glob:") && !pattern.contains("/") && !pattern.contains("**");
+
+        if (singleLevel) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(base)) {
+                for (Path path : stream) {
+                    if (matcher.matches(path.getFileName()) && selects(target, path)) {
+                        submit.apply(path);
+                    }
+                }
+            } catch (DirectoryIteratorException e) {
+                throw e.getCause();
+            }
+            return;
+        }
+
+        // The walker calls back from several threads at once
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        new TreeWalker(base, false).walk((path, attributes) -> {
+            if (matcher.matches(base.relativize(path)) && selects(target, attributes)) {
+                try {
+                    submit.apply(path);
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+            return true;
+        });
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Keeps the error of a failed path unless enough were kept already
+     */
+    private static void keep(List<String> errors, String error) {
+        if (errors.size() < MAX_KEPT_ERRORS) {
+            errors.add(error);
+        }
+    }
+
+    private static boolean selects(Target target, Path path) {
+        return target == Target.DIRECTORIES ? Files.isDirectory(path) : Files.isRegularFile(path);
+    }
+
+    private static boolean selects(Target target, BasicFileAttributes attributes) {
+        return target == Target.DIRECTORIES ? attributes.isDirectory() : attributes.isRegularFile();
+    }
+
+    /**
+     * Runs every task on its own virtual thread when the runtime supports
+     * them, otherwise on a fixed pool of platform threads
+     */
+    private static ExecutorService newExecutor(int concurrency) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(concurrency, runnable -> {
+                Thread thread = new Thread(runnable, "personalDB-bulk");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static String describe(Exception e) {
+        if (e instanceof NoSuchFileException) {
+            return "does not exist";
+        } else if (e instanceof FileAlreadyExistsException) {
+            return "already exists";
+        } else if (e instanceof DirectoryNotEmptyException) {
+            return "directory is not empty";
+        } else if (e instanceof NotDirectoryException) {
+            return "not a directory";
+        } else if (e instanceof AccessDeniedException || e instanceof SecurityException) {
+            return "access denied";
+        }
+        return e.getMessage() == null ? e.toString() : e.getMessage();
+    }
+
+}
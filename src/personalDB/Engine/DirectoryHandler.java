@@ -9,11 +9,14 @@ package personalDB.Engine;
 
 import org.jetbrains.annotations.NotNull;
 import personalDB.Exceptions.InvalidDirectory;
+import personalDB.Storage.Journal;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
 
 /**
  * This class stores information about the current directory and handles
@@ -34,15 +37,6 @@ public class DirectoryHandler {
         }
     }
 
-    /**
-     * Creates an instance of this class with a directory that might
-     * not exist
-     * @param directory File specifying a directory
-     */
-    private DirectoryHandler(File directory) {
-        this.currentDir = directory;
-    }
-
     /**
      * Returns current directory
      * @return String representing the current directory
@@ -65,7 +59,7 @@ public class DirectoryHandler {
     public void goBack() {
         File parentDirectory = this.currentDir.getParentFile();
         if (parentDirectory == null) {
-            System.out.println("This is the root directory.");
+            Status.fail("This is the root directory.");
         } else {
             this.currentDir = parentDirectory;
         }
@@ -76,33 +70,14 @@ public class DirectoryHandler {
      * @param pathname String representing the pathname of the new directory
      */
     public void cdDir(@NotNull String pathname) {
-        File newDirectory;
-        if (pathname.startsWith("..")) {
-            List<String> lexemes = this.pathParser(pathname);
-            if (lexemes.size() == 1) {
-                this.goBack();
-            } else {
-                lexemes.remove(0);
-                this.goBack();
-                StringBuilder newPath = new StringBuilder();
-                for (String lexeme : lexemes) {
-                    newPath.append(lexeme).append(File.separator);
-                }
-                newPath.deleteCharAt(newPath.length()-1);
-                this.cdDir(newPath.toString());
-            }
+        File newDirectory = getCorrectPathFile(pathname);
+        if (newDirectory == null) {
+            return;
+        }
+        if (newDirectory.isDirectory()) {
+            this.currentDir = newDirectory;
         } else {
-            if (isAbsolute(pathname)) {
-                newDirectory = new File(pathname);
-            } else {
-                String absolutePathname = this.currentDir.getAbsolutePath() + File.separator + pathname;
-                newDirectory = new File(absolutePathname);
-            }
-            if (newDirectory.isDirectory()) {
-                this.currentDir = newDirectory;
-            } else {
-                System.out.println("That directory does not exist.");
-            }
+            Status.fail("That directory does not exist.");
         }
     }
 
@@ -110,106 +85,98 @@ public class DirectoryHandler {
      * Deletes the directory with the specified pathname if it is empty and the program
      * has delete access.
      * @param pathname Path of the directory to be deleted
+     * @param batch Batch of the journal the deletion is recorded in
      */
-    public void deleteDir(@NotNull String pathname) {
+    public void deleteDir(@NotNull String pathname, Journal.Batch batch) {
         File tempDir = getCorrectPathFile(pathname);
-        if (tempDir.isDirectory()) {
-            try {
-                if (!tempDir.delete()) {
-                    System.out.println("Directory is not empty.");
-                }
-            } catch (SecurityException e) {
-                System.out.println(e);
-            }
-        } else {
-            System.out.println("This is not a directory.");
+        if (tempDir == null) {
+            return;
+        }
+        try {
+            removeDirectory(tempDir.toPath(), batch);
+        } catch (NotDirectoryException e) {
+            Status.fail("This is not a directory.");
+        } catch (DirectoryNotEmptyException e) {
+            Status.fail("Directory is not empty.");
+        } catch (IOException | SecurityException e) {
+            Status.fail(e.toString());
         }
     }
 
     /**
      * Creates a directory with the given pathname
      * @param pathname Path of the new directory
+     * @param batch Batch of the journal the creation is recorded in
      */
-    public void mkDir(@NotNull String pathname) {
+    public void mkDir(@NotNull String pathname, Journal.Batch batch) {
         File tempDir = getCorrectPathFile(pathname);
+        if (tempDir == null) {
+            return;
+        }
         if (tempDir.isDirectory()) {
-            System.out.println("This directory already exists.");
+            Status.fail("This directory already exists.");
         } else {
             try {
-                if (!tempDir.mkdir()) {
-                    System.out.println("Could not create directory.");
-                }
+                makeDirectory(tempDir.toPath(), batch);
+            } catch (IOException e) {
+                Status.fail("Could not create directory.");
             } catch (SecurityException e) {
-                System.out.println(e);
+                Status.fail(e.toString());
             }
         }
     }
 
     /**
-     * Calculates the correct pathname for a given pathname
-     * and returns a File object with that pathname.
-     * @param pathname String representing that pathname
-     * @return File with the correct pathname (Never returns null the compiler is dumb
-     *         and doesn't know that the method is recursive).
+     * Creates a directory, its parent must already exist
+     * @param path Path of the new directory
+     * @param batch Batch of the journal the creation is recorded in
+     * @throws IOException If the directory already exists or cannot be created
      */
-    private File getCorrectPathFile(@NotNull String pathname) {
-        DirectoryHandler tempHandler = new DirectoryHandler(this.currentDir);
-        File correctDirectory = null;
-        if (pathname.startsWith("..")) {
-            List<String> lexemes = tempHandler.pathParser(pathname);
-            if (lexemes.size() == 1) {
-                tempHandler.goBack();
-            } else {
-                lexemes.remove(0);
-                tempHandler.goBack();
-                StringBuilder newPath = new StringBuilder();
-                for (String lexeme : lexemes) {
-                    newPath.append(lexeme).append(File.separator);
-                }
-                newPath.deleteCharAt(newPath.length() - 1);
-                tempHandler.cdDir(newPath.toString());
-            }
-        } else {
-            if (isAbsolute(pathname)) {
-                correctDirectory = new File(pathname);
-            } else {
-                String absolutePathname = tempHandler.currentDir.getAbsolutePath() + File.separator + pathname;
-                correctDirectory = new File(absolutePathname);
-            }
-        }
-        return correctDirectory;
+    public void makeDirectory(Path path, Journal.Batch batch) throws IOException {
+        batch.makeDirectory(path);
     }
 
+    /**
+     * Deletes an empty directory
+     * @param path Path of the directory
+     * @param batch Batch of the journal the deletion is recorded in
+     * @throws IOException If the path is not a directory, the directory is not empty or cannot be deleted
+     */
+    public void removeDirectory(Path path, Journal.Batch batch) throws IOException {
+        batch.removeDirectory(path);
+    }
 
     /**
-     * Returns all the content of a directory in an array of strings
-     * @return String[] with all the content of that directory
+     * Resolves a pathname against the current directory
+     * @param pathname Absolute or relative pathname, . and .. are allowed
+     * @return Absolute normalized path, which might not exist
+     * @throws InvalidPathException If the pathname is not valid on this platform
      */
-    public String[] listAll() {
-        return this.currentDir.list();
+    public Path resolve(@NotNull String pathname) {
+        return PathResolver.resolve(currentDir.toPath().toAbsolutePath(), pathname);
     }
 
     /**
-     * Takes a pathname and splits it into the respective directories that make it up
-     * utilizing the operating systems' separator char as a regular expression.
-     * @param pathname Pathname of the directory/file
-     * @return List containing all the directories names that make that pathname
+     * Calculates the correct pathname for a given pathname
+     * and returns a File object with that pathname.
+     * @param pathname String representing that pathname
+     * @return File with the correct pathname, or null if the pathname is not valid
      */
-    private List<String> pathParser(@NotNull String pathname) {
-        List<String> result = new ArrayList<>();
-        Collections.addAll(result, pathname.split(File.separator.replace("\\","\\\\")));
-        return result;
+    private File getCorrectPathFile(@NotNull String pathname) {
+        try {
+            return resolve(pathname).toFile();
+        } catch (InvalidPathException e) {
+            Status.fail("Invalid path: " + e.getReason() + ".");
+            return null;
+        }
     }
 
     /**
-     * Checks if a given pathname is absolute or relative
-     * @param pathname String representing the pathname
-     * @return True if it is absolute
+     * Returns all the content of a directory in an array of strings
+     * @return String[] with all the content of that directory
      */
-    private static boolean isAbsolute(@NotNull String pathname) {
-        if (pathname.matches("^[\\,\\\\,/].*$")) {
-            return true;
-        } else return pathname.matches("^[A-Z]:[\\,\\\\,/].*$");
+    public String[] listAll() {
+        return this.currentDir.list();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,220 @@
+/**
+ * Streaming, cached directory listings
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Engine;
+
+import personalDB.Metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Lists directories with a {@link DirectoryStream}, reading the attributes of
+ * every entry as it is streamed instead of building the whole listing first.
+ * The names in the last few directories are kept in memory and reused while
+ * the modification time of the directory does not change and no
+ * {@link TreeWatcher} reported a change in it, so listing the same directory
+ * again is a single stat. Writing to a file does not change the modification
+ * time of its directory, so sizes and times are never cached: a listing that
+ * needs them stats every entry again. At most {@link #MAX_CACHED_ENTRIES}
+ * names are cached across all directories, the least recently listed
+ * directories are dropped first.
+ */
+public class DirectoryListing {
+    public static final int MAX_CACHED_ENTRIES = 200_000;
+    private static final int MAX_CACHED_DIRECTORIES = 32;
+    // Guarded by the lock of the cache, like the number of names it holds
+    private static final Map<Path, Listing> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private static int cachedEntries = 0;
+    private static final Set<TreeWatcher> listening = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * An entry of a directory
+     * @param name Name of the entry
+     * @param directory True if the entry is a directory
+     * @param size Size in bytes, 0 unless attributes were asked for
+     * @param modified Last modification time in milliseconds, 0 unless attributes were asked for
+     */
+    public record Entry(String name, boolean directory, long size, long modified) {}
+
+    /**
+     * Receives the entries of a directory in the order they are listed
+     */
+    public interface EntryConsumer {
+        /**
+         * @param entry Entry of the directory
+         * @return False to stop receiving entries
+         */
+        boolean accept(Entry entry);
+    }
+
+    /**
+     * Cached part of an entry, what only changes with its directory
+     */
+    private record Name(String name, boolean directory) {}
+
+    private record Listing(long modified, List<Name> names) {}
+
+    private DirectoryListing() {}
+
+    /**
+     * Lists a directory, from the cache when it is still valid
+     * @param directory Directory to be listed
+     * @param attributes True to read the size and modification time of every entry
+     * @param consumer Receives the entries until it returns false
+     * @return Number of entries in the directory, or -1 if the consumer
+     *         stopped before the end and the total is unknown
+     * @throws IOException If the directory cannot be read
+     */
+    public static int list(Path directory, boolean attributes, EntryConsumer consumer) throws IOException {
+        Path key = directory.toAbsolutePath().normalize();
+        long modified = Files.getLastModifiedTime(key).toMillis();
+        Listing listing;
+        synchronized (cache) {
+            listing = cache.get(key);
+        }
+        if (listing != null && listing.modified() == modified) {
+            Metrics.hit(Metrics.Cache.LISTING);
+            for (Name name : listing.names()) {
+                Entry entry = attributes ? read(key.resolve(name.name())) : new Entry(name.name(), name.directory(), 0, 0);
+                if (entry != null && !consumer.accept(entry)) {
+                    break;
+                }
+            }
+            return listing.names().size();
+        }
+
+        Metrics.miss(Metrics.Cache.LISTING);
+        List<Name> names = new ArrayList<>();
+        boolean delivering = true;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(key)) {
+            for (Path path : stream) {
+                Metrics.add(Metrics.Counter.ENTRIES_SCANNED, 1);
+                Entry entry = read(path);
+                if (entry == null) {
+                    continue;
+                }
+                if (names != null) {
+                    names.add(new Name(entry.name(), entry.directory()));
+                    if (names.size() > MAX_CACHED_ENTRIES) {
+                        names = null;
+                    }
+                }
+                if (delivering) {
+                    delivering = consumer.accept(attributes ? entry : new Entry(entry.name(), entry.directory(), 0, 0));
+                }
+                if (!delivering && names == null) {
+                    return -1;
+                }
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+        if (names == null) {
+            return -1;
+        }
+        // A directory changed within the same clock tick as the listing could be cached stale
+        if (System.currentTimeMillis() - modified > 1000) {
+            listenForChanges(key);
+            store(key, new Listing(modified, List.copyOf(names)));
+        }
+        return names.size();
+    }
+
+    /**
+     * Drops the cached listing of a directory
+     * @param directory Directory that changed
+     */
+    public static void invalidate(Path directory) {
+        synchronized (cache) {
+            Listing removed = cache.remove(directory.toAbsolutePath().normalize());
+            if (removed != null) {
+                cachedEntries -= removed.names().size();
+            }
+        }
+    }
+
+    /**
+     * Caches a listing, dropping the least recently listed directories
+     * until the cache is within its limits again
+     */
+    private static void store(Path directory, Listing listing) {
+        synchronized (cache) {
+            Listing replaced = cache.put(directory, listing);
+            cachedEntries += listing.names().size() - (replaced == null ? 0 : replaced.names().size());
+            Iterator<Listing> eldest = cache.values().iterator();
+            while ((cachedEntries > MAX_CACHED_ENTRIES || cache.size() > MAX_CACHED_DIRECTORIES) && eldest.hasNext()) {
+                Listing dropped = eldest.next();
+                if (dropped != listing) {
+                    cachedEntries -= dropped.names().size();
+                    eldest.remove();
+                }
+            }
+        }
+    }
+
+    private static Entry read(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            boolean directory = attributes.isDirectory() ||
+                    (attributes.isSymbolicLink() && Files.isDirectory(path));
+            return new Entry(path.getFileName().toString(), directory, attributes.size(),
+                    attributes.lastModifiedTime().toMillis());
+        } catch (IOException e) {
+            // Deleted while it was being listed
+            return null;
+        }
+    }
+
+    /**
+     * Subscribes to the watcher covering a directory, if there is one, so
+     * cached listings are dropped as soon as it reports a change
+     */
+    private static void listenForChanges(Path directory) {
+        for (TreeWatcher watcher : TreeWatcher.active()) {
+            if (directory.startsWith(watcher.getRoot())) {
+                synchronized (listening) {
+                    if (!listening.add(watcher)) {
+                        return;
+                    }
+                }
+                watcher.addListener(changes -> {
+                    for (TreeWatcher.Change change : changes) {
+                        if (change.kind() == TreeWatcher.Kind.RESCAN) {
+                            synchronized (cache) {
+                                Iterator<Map.Entry<Path, Listing>> cached = cache.entrySet().iterator();
+                                while (cached.hasNext()) {
+                                    Map.Entry<Path, Listing> entry = cached.next();
+                                    if (entry.getKey().startsWith(change.path())) {
+                                        cachedEntries -= entry.getValue().names().size();
+                                        cached.remove();
+                                    }
+                                }
+                            }
+                        }
+                        invalidate(change.path().getParent());
+                    }
+                });
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,279 @@
+/**
+ * Finds files with the same content
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Engine;
+
+import personalDB.Storage.ContentHasher;
+import personalDB.Storage.Journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Objects of this class find the files under a directory that have the same
+ * content. Hashing every file would read the whole tree, so candidates are
+ * narrowed in stages, each one more expensive than the last:
+ * <ol>
+ *     <li>files are grouped by size, which the walk already knows, and files
+ *     with a unique size are dropped</li>
+ *     <li>the first and last {@link #END_LENGTH} bytes of the remaining files
+ *     are hashed, and files with a unique fingerprint are dropped</li>
+ *     <li>the remaining files are hashed whole with {@link ContentHasher}</li>
+ * </ol>
+ * Files hard linked to each other are one file and are only counted once.
+ * The hashing stages run on a pool of {@code concurrency} threads, which is
+ * also the most files read at the same time.
+ */
+public class DuplicateFinder {
+    public static final int END_LENGTH = 4 << 10;
+    public static final int DEFAULT_CONCURRENCY = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private final Path root;
+    private final int concurrency;
+    private final long minSize;
+
+    /**
+     * Files with the same content
+     * @param size Size of each file in bytes
+     * @param hash Hash of the content in hexadecimal
+     * @param paths Paths of the files, sorted
+     * @param modified Modification times of the files when they were found, in the same order
+     */
+    public record Group(long size, String hash, List<Path> paths, List<Long> modified) {
+
+        /**
+         * @return Bytes freed if all the files but one were removed or linked
+         */
+        public long reclaimable() {
+            return size * (paths.size() - 1);
+        }
+    }
+
+    /**
+     * Outcome of a search
+     * @param groups Groups of duplicates, the ones that free the most bytes first
+     * @param files Number of files found under the root
+     * @param fingerprinted Number of files whose ends were hashed
+     * @param hashed Number of files hashed whole
+     * @param failed Number of files that could not be read
+     */
+    public record Result(List<Group> groups, long files, long fingerprinted, long hashed, long failed) {
+
+        /**
+         * @return Bytes freed if every group was reduced to a single file
+         */
+        public long reclaimable() {
+            return groups.stream().mapToLong(Group::reclaimable).sum();
+        }
+    }
+
+    /**
+     * A file found by the walk
+     */
+    private record Candidate(Path path, long size, long modified) {}
+
+    /**
+     * Files that are still alike after a stage
+     * @param files Files alike, at least two
+     * @param hash Hash they share after the last stage, null before any file was hashed
+     */
+    private record Bucket(List<Candidate> files, String hash) {}
+
+    /**
+     * Hashing done by a stage
+     */
+    private interface Hasher {
+        String hash(Path file) throws IOException;
+    }
+
+    /**
+     * Constructor
+     * @param root Directory whose tree is searched
+     * @param concurrency Maximum number of files read at the same time
+     * @param minSize Smallest size of a file to be considered, empty files are never considered
+     */
+    public DuplicateFinder(Path root, int concurrency, long minSize) {
+        this.root = root.toAbsolutePath().normalize();
+        this.concurrency = Math.max(1, concurrency);
+        this.minSize = Math.max(1, minSize);
+    }
+
+    /**
+     * Searches the tree for duplicates
+     * @return Groups of duplicates and the work done to find them
+     * @throws IOException If the search is interrupted
+     */
+    public Result find() throws IOException {
+        Map<Long, List<Candidate>> bySize = new ConcurrentHashMap<>();
+        Set<Object> seen = ConcurrentHashMap.newKeySet();
+        AtomicLong files = new AtomicLong();
+        new TreeWalker(root, false).walk((path, attributes) -> {
+            if (attributes.isRegularFile() && attributes.size() >= minSize
+                    && (attributes.fileKey() == null || seen.add(attributes.fileKey()))) {
+                files.incrementAndGet();
+                Candidate candidate = new Candidate(path, attributes.size(), attributes.lastModifiedTime().toMillis());
+                bySize.compute(attributes.size(), (size, group) -> {
+                    List<Candidate> list = group == null ? new ArrayList<>(1) : group;
+                    list.add(candidate);
+                    return list;
+                });
+            }
+            return true;
+        });
+        List<Bucket> sameSize = new ArrayList<>();
+        for (List<Candidate> group : bySize.values()) {
+            if (group.size() > 1) {
+                sameSize.add(new Bucket(group, null));
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "personalDB-dupes");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicLong failed = new AtomicLong();
+        try {
+            long fingerprinted = count(sameSize);
+            List<Bucket> sameContent = new ArrayList<>();
+            List<Bucket> sameEnds = new ArrayList<>();
+            for (Bucket bucket : stage(pool, sameSize, file -> ContentHasher.hashEnds(file, END_LENGTH), failed)) {
+                // Small files were read whole, their fingerprint is already their hash
+                (bucket.files().get(0).size() <= 2L * END_LENGTH ? sameContent : sameEnds).add(bucket);
+            }
+            long hashed = count(sameEnds);
+            sameContent.addAll(stage(pool, sameEnds, ContentHasher::hash, failed));
+
+            List<Group> groups = new ArrayList<>(sameContent.size());
+            for (Bucket bucket : sameContent) {
+                List<Candidate> sorted = new ArrayList<>(bucket.files());
+                sorted.sort(Comparator.comparing(Candidate::path));
+                groups.add(new Group(sorted.get(0).size(), bucket.hash(),
+                        sorted.stream().map(Candidate::path).toList(),
+                        sorted.stream().map(Candidate::modified).toList()));
+            }
+            groups.sort(Comparator.comparingLong(Group::reclaimable).reversed()
+                    .thenComparing(group -> group.paths().get(0)));
+            return new Result(groups, files.get(), fingerprinted, hashed, failed.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Replaces every file of a group but the first with a hard link to the
+     * first. A file is only replaced if it was not modified since it was
+     * found, and the link is made under a temporary name and moved over the
+     * file, so the file is never missing. The files replaced are kept in the
+     * trash of the journal, their space is freed once the batch is forgotten.
+     * @param group Group of duplicates
+     * @param batch Batch of the journal the files replaced are recorded in
+     * @return Number of files replaced
+     * @throws IOException If a file cannot be replaced, files replaced before it stay replaced
+     */
+    public static int link(Group group, Journal.Batch batch) throws IOException {
+        Path original = group.paths().get(0);
+        int linked = 0;
+        for (int i = 1; i < group.paths().size(); i++) {
+            Path duplicate = group.paths().get(i);
+            BasicFileAttributes attributes = Files.readAttributes(duplicate, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (!attributes.isRegularFile() || attributes.size() != group.size()
+                    || attributes.lastModifiedTime().toMillis() != group.modified().get(i)) {
+                throw new IOException(duplicate + " changed since it was hashed");
+            }
+            Path temporary = duplicate.resolveSibling(duplicate.getFileName() + ".personaldb-link");
+            Files.deleteIfExists(temporary);
+            Files.createLink(temporary, original);
+            try {
+                batch.replaceFile(duplicate, temporary);
+            } catch (IOException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+            linked++;
+        }
+        return linked;
+    }
+
+    /**
+     * Runs one stage: hashes every file of every bucket on the pool and
+     * splits the buckets by hash. Files with a unique hash and files that
+     * could not be read are dropped.
+     * @return Buckets of files that are still alike
+     */
+    private static List<Bucket> stage(ExecutorService pool, List<Bucket> buckets, Hasher hasher, AtomicLong failed)
+            throws IOException {
+        List<List<Future<String>>> pending = new ArrayList<>(buckets.size());
+        for (Bucket bucket : buckets) {
+            List<Future<String>> hashes = new ArrayList<>(bucket.files().size());
+            for (Candidate candidate : bucket.files()) {
+                hashes.add(pool.submit(() -> {
+                    try {
+                        return hasher.hash(candidate.path());
+                    } catch (IOException | SecurityException e) {
+                        failed.incrementAndGet();
+                        return null;
+                    }
+                }));
+            }
+            pending.add(hashes);
+        }
+
+        List<Bucket> alike = new ArrayList<>();
+        for (int b = 0; b < buckets.size(); b++) {
+            Map<String, List<Candidate>> byHash = new HashMap<>();
+            List<Candidate> files = buckets.get(b).files();
+            for (int i = 0; i < files.size(); i++) {
+                String hash = await(pending.get(b).get(i));
+                if (hash != null) {
+                    byHash.computeIfAbsent(hash, key -> new ArrayList<>(2)).add(files.get(i));
+                }
+            }
+            for (Map.Entry<String, List<Candidate>> entry : byHash.entrySet()) {
+                if (entry.getValue().size() > 1) {
+                    alike.add(new Bucket(entry.getValue(), entry.getKey()));
+                }
+            }
+        }
+        return alike;
+    }
+
+    private static long count(List<Bucket> buckets) {
+        long count = 0;
+        for (Bucket bucket : buckets) {
+            count += bucket.files().size();
+        }
+        return count;
+    }
+
+    private static String await(Future<String> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing.", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+}
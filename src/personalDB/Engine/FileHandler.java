@@ -7,9 +7,18 @@
 
 package personalDB.Engine;
 
+import personalDB.Storage.ContentHasher;
+import personalDB.Storage.Journal;
+import personalDB.Storage.ObjectStore;
+
 import java.awt.*;
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
 
 /**
  * Objects of this class handle operations related to files
@@ -29,28 +38,66 @@ public class FileHandler {
     /**
      * Creates a new file in the current directory
      * @param filename Name of the new file
+     * @param batch Batch of the journal the creation is recorded in
      */
-    public void createFile(String filename) {
+    public void createFile(String filename, Journal.Batch batch) {
         try {
-            File newFile = new File(directory.getCurrentDir() + File.separator + filename);
-            newFile.createNewFile();
+            create(directory.resolve(filename), batch);
+        } catch (FileAlreadyExistsException e) {
+            // Nothing to do
+        } catch (InvalidPathException e) {
+            Status.fail("Invalid path: " + e.getReason() + ".");
         } catch (IOException e) {
-            System.out.println("IOError could not write file.\n" + e);
+            Status.fail("IOError could not write file.\n" + e);
         } catch (SecurityException e) {
-            System.out.println("Access denied could not write file.\n" + e);
+            Status.fail("Access denied could not write file.\n" + e);
         }
     }
 
     /**
-     * Deletes the specified file in the current directory
+     * Creates a new empty file
+     * @param file Path of the new file
+     * @param batch Batch of the journal the creation is recorded in
+     * @throws IOException If the file already exists or cannot be created
+     */
+    public void create(Path file, Journal.Batch batch) throws IOException {
+        batch.createFile(file);
+    }
+
+    /**
+     * Deletes the specified file in the current directory by moving it to
+     * the trash of the journal, a stored copy of that file is released from
+     * the object store
      * @param filename Name of the file to be deleted
+     * @param batch Batch of the journal the deletion is recorded in
      */
-    public void deleteFile(String filename) {
+    public void deleteFile(String filename, Journal.Batch batch) {
         try {
-            File newFile = new File(directory.getCurrentDir() + File.separator + filename);
-            newFile.delete();
+            delete(directory.resolve(filename), batch);
+        } catch (NoSuchFileException e) {
+            Status.fail("The specified file does not exist.");
+        } catch (InvalidPathException e) {
+            Status.fail("Invalid path: " + e.getReason() + ".");
         } catch (SecurityException e) {
-            System.out.println("Access denied could not delete file.\n" + e);
+            Status.fail("Access denied could not delete file.\n" + e);
+        } catch (IOException e) {
+            Status.fail("IOError could not delete file.\n" + e);
+        }
+    }
+
+    /**
+     * Deletes a file by moving it to the trash of the journal, a stored copy
+     * of that file is released from the object store as part of the same
+     * batch, so undoing the deletion stores it again
+     * @param file Path of the file
+     * @param batch Batch of the journal the deletion is recorded in
+     * @throws IOException If the path is a directory, or the file or the object store cannot be updated
+     */
+    public void delete(Path file, Journal.Batch batch) throws IOException {
+        if (ObjectStore.exists() && ObjectStore.open().getIndex().hash(file.toAbsolutePath().normalize().toString()) != null) {
+            batch.deleteStoredFile(file);
+        } else {
+            batch.deleteFile(file);
         }
     }
 
@@ -61,15 +108,123 @@ public class FileHandler {
     public void openFile(String filename) {
         try {
             if (Desktop.isDesktopSupported()) {
-                File tempFile = new File(directory.getCurrentDir() + File.separator + filename);
-                Desktop.getDesktop().open(tempFile);
+                Desktop.getDesktop().open(directory.resolve(filename).toFile());
             } else {
-                System.out.println("This is operation is not support on the current platform.");
+                Status.fail("This is operation is not support on the current platform.");
             }
         } catch (IOException e) {
-            System.out.println("the specified file has no associated application or the associated application fails to be launched.\n" + e);
+            Status.fail("the specified file has no associated application or the associated application fails to be launched.\n" + e);
+        } catch (InvalidPathException e) {
+            Status.fail("Invalid path: " + e.getReason() + ".");
         } catch (IllegalArgumentException e) {
-            System.out.println("The specified file does not exist.");
+            Status.fail("The specified file does not exist.");
+        }
+    }
+
+    /**
+     * Stores a copy of a file in the current directory in the object store
+     * @param filename Name of the file
+     */
+    public void storeFile(String filename) {
+        try {
+            Path file = directory.resolve(filename);
+            if (!Files.isRegularFile(file)) {
+                Status.fail("The specified file does not exist.");
+                return;
+            }
+            System.out.println(ObjectStore.open().put(file));
+        } catch (InvalidPathException e) {
+            Status.fail("Invalid path: " + e.getReason() + ".");
+        } catch (IOException e) {
+            Status.fail("IOError could not store file.\n" + e);
+        }
+    }
+
+    /**
+     * Stores a copy of a file in the object store, for bulk operations
+     * @param file Path of the file
+     * @throws IOException If the path is not a file, or the file cannot be read or stored
+     */
+    public void store(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            throw new IOException("Not a file");
+        }
+        ObjectStore.open().put(file);
+    }
+
+    /**
+     * Copies a stored object into a new file in the current directory
+     * @param hash Hash of the object, or an unambiguous prefix of it
+     * @param filename Name of the new file
+     */
+    public void retrieveFile(String hash, String filename) {
+        try {
+            ObjectStore.open().get(hash, directory.resolve(filename));
+        } catch (FileAlreadyExistsException e) {
+            Status.fail("The target file already exists.");
+        } catch (InvalidPathException e) {
+            Status.fail("Invalid path: " + e.getReason() + ".");
+        } catch (IOException e) {
+            Status.fail("IOError could not retrieve file.\n" + e);
+        }
+    }
+
+    /**
+     * Prints every path that was stored with the given content
+     * @param hash Hash of the object, or an unambiguous prefix of it
+     */
+    public void locateFile(String hash) {
+        try {
+            List<String> paths = ObjectStore.open().lookup(hash);
+            if (paths.isEmpty()) {
+                Status.fail("No path is known for that hash.");
+            }
+            for (String path : paths) {
+                System.out.println(path);
+            }
+        } catch (IOException e) {
+            Status.fail("IOError could not look up hash.\n" + e);
+        }
+    }
+
+    /**
+     * Prints the hash of a file in the current directory and how fast it was hashed
+     * @param filename Name of the file
+     */
+    public void hashFile(String filename) {
+        try {
+            Path file = directory.resolve(filename);
+            if (!Files.isRegularFile(file)) {
+                Status.fail("The specified file does not exist.");
+                return;
+            }
+            long start = System.nanoTime();
+            String hash = ContentHasher.hash(file);
+            double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+            System.out.println(hash);
+            System.out.printf("%.1f MB/s%n", Files.size(file) / 1e6 / seconds);
+        } catch (InvalidPathException e) {
+            Status.fail("Invalid path: " + e.getReason() + ".");
+        } catch (IOException e) {
+            Status.fail("IOError could not hash file.\n" + e);
+        }
+    }
+
+    /**
+     * Deletes every chunk of the object store no stored file refers to
+     * anymore and rewrites the pack segments that hold deleted objects
+     */
+    public void collectGarbage() {
+        try {
+            ObjectStore store = ObjectStore.open();
+            int deleted = store.collectGarbage();
+            System.out.println(deleted + " unused chunk(s) deleted.");
+            int compacted = store.compactPack();
+            if (compacted > 0) {
+                System.out.println(compacted + " pack segment(s) compacted.");
+            }
+        } catch (IOException e) {
+            Status.fail("IOError could not collect garbage.\n" + e);
         }
     }
 
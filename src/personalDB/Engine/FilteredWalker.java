@@ -0,0 +1,234 @@
+/**
+ * Tree walker that skips subtrees without a given name
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Engine;
+
+import personalDB.Index.BloomFilter;
+import personalDB.Index.NameIndex;
+import personalDB.Index.SubtreeFilters;
+import personalDB.Metrics.Metrics;
+import personalDB.Metrics.WalkEvent;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link TreeWalker} for searches that look for a single name or
+ * extension. Before a subdirectory is listed its {@link SubtreeFilters}
+ * summary is checked, and the whole subtree is skipped if its filter says the
+ * key is not in it, so entries under skipped subtrees are never visited.
+ * Every directory the walk lists gets its summary rebuilt, from its own
+ * entries and the summaries of its subdirectories, unless the summary it had
+ * is still usable and nothing under it changed. Symbolic links are never
+ * followed.
+ */
+public class FilteredWalker extends TreeWalker {
+    private final Path root;
+    private final long key;
+    private final SubtreeFilters filters = SubtreeFilters.open();
+    private final LongAdder scanned = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private long generation;
+    private long watchedSince;
+
+    /**
+     * Constructor
+     * @param root Directory where the walk starts
+     * @param key Key of the name or extension searched for, see {@link SubtreeFilters#nameKey(String)}
+     *            and {@link SubtreeFilters#extensionKey(String)}
+     */
+    public FilteredWalker(Path root, long key) {
+        super(root, false);
+        this.root = root.toAbsolutePath().normalize();
+        this.key = key;
+    }
+
+    /**
+     * Walks every subtree that might hold the key, returning only when all
+     * of them were visited or the walk was cancelled, then saves the
+     * summaries that changed
+     * @param visitor Visitor that receives every entry outside the skipped subtrees
+     */
+    @Override
+    public void walk(Visitor visitor) {
+        generation = filters.generation();
+        watchedSince = filters.watchedSince(root);
+        long modified;
+        try {
+            modified = Files.getLastModifiedTime(root).toMillis();
+        } catch (IOException | SecurityException e) {
+            return;
+        }
+        if (skip(root, modified)) {
+            return;
+        }
+        WalkEvent event = new WalkEvent();
+        event.begin();
+        ForkJoinPool.commonPool().invoke(new DirectoryTask(root, modified, visitor));
+        if (event.shouldCommit()) {
+            event.root = root.toString();
+            event.entries = scanned.sum();
+            event.commit();
+        }
+        try {
+            filters.save();
+        } catch (IOException e) {
+            // Summaries only speed searches up, they are rebuilt by the next walk
+        }
+    }
+
+    /**
+     * @return Number of subtrees skipped by the last walk, the root included
+     */
+    public long skippedCount() {
+        return skipped.sum();
+    }
+
+    /**
+     * Checks the summary of a directory about to be listed
+     * @return True if the key is certainly not under the directory
+     */
+    private boolean skip(Path directory, long modified) {
+        SubtreeFilters.Summary summary = filters.get(directory);
+        if (SubtreeFilters.isUsable(summary, modified, watchedSince) && !summary.filter().mightContain(key)) {
+            skipped.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Lists a single directory, forking a new task for each subdirectory
+     * that might hold the key, then rebuilds its summary if needed
+     */
+    private class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Path directory;
+        private final long modified;
+        private final Visitor visitor;
+        private boolean complete = false;
+        private long built;
+        // Keys of everything under the directory, only kept when its summary was rebuilt
+        private SubtreeFilters.LongList keys;
+
+        DirectoryTask(Path directory, long modified, Visitor visitor) {
+            this.directory = directory;
+            this.modified = modified;
+            this.visitor = visitor;
+        }
+
+        @Override
+        protected void compute() {
+            if (isCancelled()) {
+                return;
+            }
+            built = System.currentTimeMillis();
+            SubtreeFilters.Summary previous = filters.get(directory);
+            SubtreeFilters.LongList own = new SubtreeFilters.LongList();
+            List<String> subdirectories = new ArrayList<>();
+            List<Path> unchanged = new ArrayList<>();
+            List<DirectoryTask> subtasks = new ArrayList<>();
+            boolean listed = true;
+            long entries = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    if (isCancelled()) {
+                        listed = false;
+                        break;
+                    }
+                    entries++;
+                    if (Workspace.isWorkspace(entry)) {
+                        continue;
+                    }
+                    String name = entry.getFileName().toString();
+                    own.add(SubtreeFilters.nameKey(name));
+                    own.add(SubtreeFilters.extensionKey(NameIndex.extensionOf(name)));
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException | SecurityException e) {
+                        // Might be a directory, the summary would not cover it
+                        listed = false;
+                        continue;
+                    }
+                    boolean descend = visitor.visit(entry, attributes);
+                    if (!attributes.isDirectory()) {
+                        continue;
+                    }
+                    subdirectories.add(name);
+                    long subdirectoryModified = attributes.lastModifiedTime().toMillis();
+                    if (skip(entry, subdirectoryModified)) {
+                        unchanged.add(entry);
+                    } else if (descend) {
+                        DirectoryTask subtask = new DirectoryTask(entry, subdirectoryModified, visitor);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    } else {
+                        listed = false;
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException | SecurityException e) {
+                listed = false;
+            }
+            scanned.add(entries);
+            Metrics.add(Metrics.Counter.ENTRIES_SCANNED, entries);
+
+            boolean changed = !SubtreeFilters.isUsable(previous, modified, watchedSince);
+            for (DirectoryTask subtask : subtasks) {
+                subtask.join();
+                listed &= subtask.complete;
+                if (subtask.keys != null) {
+                    changed = true;
+                } else {
+                    unchanged.add(subtask.directory);
+                }
+            }
+            if (!listed || isCancelled()) {
+                return;
+            }
+            complete = true;
+            if (!changed) {
+                return;
+            }
+
+            SubtreeFilters.LongList all = new SubtreeFilters.LongList();
+            all.addAll(own);
+            for (DirectoryTask subtask : subtasks) {
+                if (subtask.keys != null) {
+                    all.addAll(subtask.keys);
+                    built = Math.min(built, subtask.built);
+                }
+            }
+            for (Path subdirectory : unchanged) {
+                SubtreeFilters.Summary summary = filters.get(subdirectory);
+                if (summary == null || !filters.collect(subdirectory, all)) {
+                    complete = false;
+                    return;
+                }
+                built = Math.min(built, summary.built());
+            }
+            BloomFilter filter = BloomFilter.create(all.size(), SubtreeFilters.BITS_PER_KEY);
+            for (int i = 0; i < all.size(); i++) {
+                filter.add(all.get(i));
+            }
+            filters.put(directory, new SubtreeFilters.Summary(modified, built, own.toSortedSet(),
+                    subdirectories.toArray(new String[0]), filter), generation);
+            keys = all;
+        }
+    }
+
+}
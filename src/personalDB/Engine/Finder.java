@@ -7,47 +7,278 @@
 
 package personalDB.Engine;
 
+import personalDB.Exceptions.InvalidInputException;
+import personalDB.Index.Catalog;
+import personalDB.Index.NameIndex;
+import personalDB.Index.SubtreeFilters;
+import personalDB.Parser.Query;
+import personalDB.Parser.QueryParser;
+
 import java.io.File;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
+/**
+ * Objects of this class search a directory tree for files matching a
+ * {@link Query}. The cheap part of the query, the name, is always checked
+ * before the part that needs the attributes of a file. When an index covers
+ * the directory the query is pushed down to it: a fresh {@link NameIndex}
+ * answers terms on the name without reading the disk, a fresh {@link Catalog}
+ * answers ranges of size or modification time, and only the candidates they
+ * return are checked against the disk. Otherwise the tree is walked in
+ * parallel by a {@link TreeWalker}, or by a {@link FilteredWalker} that skips
+ * the subtrees without the name or extension when the query fixes one.
+ */
 public class Finder {
-    private DirectoryHandler searchDirectory;
-    private String searchQuery;
+    private final DirectoryHandler searchDirectory;
+    private final Query query;
+    private final boolean followLinks;
 
+    /**
+     * How the search query is compared with file names
+     */
+    public enum Mode {
+        EXACT, PREFIX, EXTENSION
+    }
+
+    /**
+     * Constructor, searches for exact names without following symbolic links
+     * @param searchDirectory Directory where the search starts
+     * @param searchQuery Name of the file to search for
+     */
     public Finder(DirectoryHandler searchDirectory, String searchQuery) {
+        this(searchDirectory, searchQuery, Mode.EXACT, false);
+    }
+
+    /**
+     * Constructor
+     * @param searchDirectory Directory where the search starts
+     * @param searchQuery Name, start of the name or extension of the file to search for
+     * @param mode How the query is compared with file names
+     * @param followLinks True if symbolic links to directories should be searched
+     */
+    public Finder(DirectoryHandler searchDirectory, String searchQuery, Mode mode, boolean followLinks) {
+        this(searchDirectory, compile(searchQuery, mode), followLinks);
+    }
+
+    /**
+     * Constructor
+     * @param searchDirectory Directory where the search starts
+     * @param query Query the files must match
+     * @param followLinks True if symbolic links to directories should be searched
+     */
+    public Finder(DirectoryHandler searchDirectory, Query query, boolean followLinks) {
         this.searchDirectory = searchDirectory;
-        this.searchQuery = searchQuery;
+        this.query = query;
+        this.followLinks = followLinks;
     }
 
+    /**
+     * Searches for a file matching the search query, the search stops as
+     * soon as one is found
+     * @return First file found or null if there is none
+     */
     public File findFirstFileStrict() {
-        Queue<File> queue = new LinkedList<>();
-        File[] rootDirectoryContent = this.searchDirectory.getDirectory().listFiles();
-
-        if (rootDirectoryContent.length == 0) {
-            System.out.println("This directory is empty!");
-        } else {
-            for (File f : rootDirectoryContent) {
-                if (f.isFile()) {
-                    if (f.getName().equals(this.searchQuery)) {
-                        return f;
-                    }
-                } else {
-                    queue.add(f);
+        List<Path> indexed = indexedMatches();
+        if (indexed != null) {
+            return indexed.isEmpty() ? null : indexed.get(0).toFile();
+        }
+        AtomicReference<Path> match = new AtomicReference<>();
+        TreeWalker walker = walker();
+        walker.walk((path, attributes) -> {
+            if (matches(path, attributes) && match.compareAndSet(null, path)) {
+                walker.cancel();
+            }
+            return true;
+        });
+        return match.get() == null ? null : match.get().toFile();
+    }
+
+    /**
+     * Searches for every file matching the search query.
+     * Matches are handed to the consumer as soon as they are found, from
+     * several threads at once. Those threads do not share the output capture
+     * of the caller, a consumer that prints has to print to
+     * {@link personalDB.TerminalInterface.OutputCapture#current()} of the caller.
+     * @param onMatch Receives every file found
+     * @return Number of files found
+     */
+    public int findAllStrict(Consumer<Path> onMatch) {
+        List<Path> indexed = indexedMatches();
+        if (indexed != null) {
+            indexed.forEach(onMatch);
+            return indexed.size();
+        }
+        AtomicInteger found = new AtomicInteger();
+        walker().walk((path, attributes) -> {
+            if (matches(path, attributes)) {
+                found.incrementAndGet();
+                onMatch.accept(path);
+            }
+            return true;
+        });
+        return found.get();
+    }
+
+    private Path root() {
+        return this.searchDirectory.getDirectory().toPath();
+    }
+
+    /**
+     * @return A walker that skips the subtrees without the name or extension
+     * every match must have, or a plain walker if the query fixes neither
+     */
+    private TreeWalker walker() {
+        if (!followLinks && SubtreeFilters.isEnabled()) {
+            String name = query.exactName();
+            String extension = query.extension();
+            if (name != null) {
+                return new FilteredWalker(root(), SubtreeFilters.nameKey(name));
+            } else if (extension != null) {
+                return new FilteredWalker(root(), SubtreeFilters.extensionKey(extension));
+            }
+        }
+        return new TreeWalker(root(), followLinks);
+    }
+
+    /**
+     * Answers the search with an index covering the search directory, as long
+     * as that index is fresh and can answer part of the query. Indexes never
+     * follow symbolic links so those searches always walk the tree.
+     * @return Files found under the search directory or null if there is no usable index
+     */
+    private List<Path> indexedMatches() {
+        if (followLinks) {
+            return null;
+        }
+        Path root = root().toAbsolutePath().normalize();
+        List<Path> candidates = nameIndexCandidates(root);
+        if (candidates != null) {
+            List<Path> matches = new ArrayList<>();
+            for (Path path : candidates) {
+                if (path.startsWith(root) && query.matchesName(path.getFileName().toString())
+                        && (!query.needsAttributes() || matchesOnDisk(path))) {
+                    matches.add(path);
                 }
             }
-            for (File f : queue) {
-                if (f.isFile()) {
-                    if (f.getName().equals(this.searchQuery)) {
-                        return f;
+            return matches;
+        }
+        return catalogMatches(root);
+    }
+
+    /**
+     * Asks the name index for the files whose name fits the query
+     * @return Candidates, or null if there is no fresh index or the query does not fix the name
+     */
+    private List<Path> nameIndexCandidates(Path root) {
+        String name = query.exactName();
+        String extension = query.extension();
+        String prefix = query.namePrefix();
+        if (!query.excludesDirectories() || (name == null && extension == null && prefix == null)) {
+            return null;
+        }
+        NameIndex index = NameIndex.forDirectory(root);
+        if (index == null || !index.isFresh()) {
+            return null;
+        }
+        if (name != null) {
+            return index.exact(name);
+        }
+        return extension != null ? index.extension(extension) : index.prefix(prefix);
+    }
+
+    /**
+     * Asks the catalog for the entries in the range of size or modification
+     * time of the query, the catalog values are checked first and the
+     * entries that match are checked again on the disk
+     * @return Files found, or null if there is no fresh catalog or the query has no range
+     */
+    private List<Path> catalogMatches(Path root) {
+        if (!query.hasSizeBounds() && !query.hasModifiedBounds()) {
+            return null;
+        }
+        try {
+            Catalog catalog = Catalog.forDirectory(root);
+            if (catalog == null) {
+                return null;
+            }
+            String base = catalog.relativize(root);
+            String prefix = base.isEmpty() ? "" : base + "/";
+            if (!catalog.isFresh(prefix)) {
+                return null;
+            }
+            List<Path> matches = new ArrayList<>();
+            Catalog.EntryVisitor visitor = entry -> {
+                String path = entry.path();
+                if (path.startsWith(prefix) && path.length() > prefix.length()
+                        && query.matchesName(path.substring(path.lastIndexOf('/') + 1))
+                        && query.matchesAttributes(typeOf(entry.type()), entry.size(), entry.modified())) {
+                    Path file = catalog.getRoot().resolve(path);
+                    if (matchesOnDisk(file)) {
+                        matches.add(file);
                     }
-                } else {
-                    queue.add(f);
                 }
+                return true;
+            };
+            if (query.hasSizeBounds()) {
+                catalog.scanSize(query.getMinSize(), query.getMaxSize(), visitor);
+            } else {
+                catalog.scanModified(query.getMinModified(), query.getMaxModified(), visitor);
             }
+            return matches;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private boolean matches(Path path, BasicFileAttributes attributes) {
+        Path name = path.getFileName();
+        return name != null && query.matchesName(name.toString()) && query.matchesAttributes(attributes);
+    }
+
+    /**
+     * Checks the attributes of a candidate, this is the only system call made
+     * for it
+     */
+    private boolean matchesOnDisk(Path path) {
+        try {
+            return query.matchesAttributes(Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+        } catch (IOException | SecurityException e) {
+            return false;
+        }
+    }
+
+    private static char typeOf(Catalog.Type type) {
+        return switch (type) {
+            case FILE -> 'f';
+            case DIRECTORY -> 'd';
+            case LINK -> 'l';
+            case OTHER -> 'o';
+        };
+    }
+
+    /**
+     * Compiles a name, start of a name or extension into a query
+     */
+    private static Query compile(String searchQuery, Mode mode) {
+        String term = switch (mode) {
+            case EXACT -> "name=" + searchQuery;
+            case PREFIX -> "name~" + searchQuery + "*";
+            case EXTENSION -> "ext=" + searchQuery;
+        };
+        try {
+            return QueryParser.parse(List.of(term));
+        } catch (InvalidInputException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
         }
-        return null;
     }
 
 }
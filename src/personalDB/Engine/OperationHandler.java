@@ -8,22 +8,79 @@
 
 package personalDB.Engine;
 
+import personalDB.Exceptions.InvalidInputException;
+import personalDB.Index.Catalog;
+import personalDB.Index.NameIndex;
+import personalDB.Index.SnapshotStore;
+import personalDB.Index.TextIndex;
+import personalDB.Metrics.Metrics;
+import personalDB.Metrics.OperationEvent;
 import personalDB.Parser.Operation;
+import personalDB.Parser.QueryParser;
+import personalDB.Parser.TextQuery;
+import personalDB.Parser.TextQueryParser;
+import personalDB.Storage.Journal;
+import personalDB.Sync.SyncClient;
+import personalDB.Sync.SyncServer;
 import personalDB.TerminalInterface.Help;
 import personalDB.TerminalInterface.Interface;
+import personalDB.TerminalInterface.OutputCapture;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 
 public class OperationHandler {
+     private static final int MAX_SHOWN_ERRORS = 20;
+     private static final DateTimeFormatter SNAPSHOT_TIME =
+             DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
      private final DirectoryHandler directoryHandler;
      private final FileHandler fileHandler;
      private final Interface screen;
+     private final Map<Operation, Command> commands;
+     private SyncServer syncServer;
+
+    /**
+     * Handler of a single operation
+     */
+    private interface Command {
+        /**
+         * @param args Arguments given to the command
+         */
+        void run(List<String> args);
+    }
 
     public OperationHandler(DirectoryHandler directoryHandler, FileHandler fileHandler, Interface screen) {
         this.directoryHandler = directoryHandler;
         this.fileHandler = fileHandler;
         this.screen = screen;
+        this.commands = createCommands();
     }
 
     /**
@@ -33,66 +90,1124 @@ public class OperationHandler {
      *               would like to perform
      * @param args Arguments for said command
      * @requires args cannot be empty
+     * @return Status of the command, {@link Status#OK} if it succeeded
+     */
+    public int execute(Operation command, List<String> args) {
+        Status.reset();
+        OperationEvent event = new OperationEvent();
+        event.begin();
+        long start = System.nanoTime();
+        Command handler = commands.get(command);
+        if (handler != null) {
+            handler.run(args);
+        }
+        Metrics.record(command, System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            event.operation = command.name();
+            event.arguments = args.size();
+            event.status = Status.get();
+            event.commit();
+        }
+        return Status.get();
+    }
+
+    /**
+     * Maps every operation to the handler that executes it, built once so
+     * executing a command is a single array lookup
+     * @return Handlers of every operation but EXIT
+     */
+    private Map<Operation, Command> createCommands() {
+        Map<Operation, Command> map = new EnumMap<>(Operation.class);
+        map.put(Operation.HELP, Help::getHelp);
+        map.put(Operation.BACK, args -> directoryHandler.goBack());
+        map.put(Operation.CD, single(directoryHandler::cdDir));
+        map.put(Operation.LS, this::list);
+        map.put(Operation.RMDIR, journaled(Operation.RMDIR, (args, batch) -> {
+            if (args.size() == 1 && !BulkOperation.isPattern(args.get(0))) {
+                directoryHandler.deleteDir(args.get(0), batch);
+            } else {
+                bulk(args, BulkOperation.Target.DIRECTORIES, path -> directoryHandler.removeDirectory(path, batch),
+                        "Removed %d directory(ies)");
+            }
+        }));
+        map.put(Operation.MKDIR, journaled(Operation.MKDIR, (args, batch) -> {
+            if (args.size() == 1) {
+                directoryHandler.mkDir(args.get(0), batch);
+            } else {
+                bulk(args, null, path -> directoryHandler.makeDirectory(path, batch), "Created %d directory(ies)");
+            }
+        }));
+        map.put(Operation.CREATE, journaled(Operation.CREATE, (args, batch) -> {
+            if (args.size() == 1) {
+                fileHandler.createFile(args.get(0), batch);
+            } else {
+                bulk(args, null, path -> fileHandler.create(path, batch), "Created %d file(s)");
+            }
+        }));
+        map.put(Operation.DELETE, journaled(Operation.DELETE, (args, batch) -> {
+            if (args.size() == 1 && !BulkOperation.isPattern(args.get(0))) {
+                fileHandler.deleteFile(args.get(0), batch);
+            } else {
+                bulk(args, BulkOperation.Target.FILES, path -> fileHandler.delete(path, batch), "Deleted %d file(s)");
+            }
+        }));
+        map.put(Operation.OPEN, single(fileHandler::openFile));
+        map.put(Operation.PUT, args -> {
+            if (args.size() == 1 && !BulkOperation.isPattern(args.get(0))) {
+                fileHandler.storeFile(args.get(0));
+            } else {
+                bulk(args, BulkOperation.Target.FILES, fileHandler::store, "Stored %d file(s)");
+            }
+        });
+        map.put(Operation.GET, args -> {
+            if (args.size() == 2) {
+                fileHandler.retrieveFile(args.get(0), args.get(1));
+            } else {
+                Status.usage("Usage: GET HASH FILENAME");
+            }
+        });
+        map.put(Operation.HASH, single(fileHandler::hashFile));
+        map.put(Operation.GC, args -> fileHandler.collectGarbage());
+        map.put(Operation.WHERE, single(fileHandler::locateFile));
+        map.put(Operation.FIND, this::find);
+        map.put(Operation.INDEX, this::index);
+        map.put(Operation.SYNC, this::sync);
+        map.put(Operation.CATALOG, this::catalog);
+        map.put(Operation.DUPES, journaled(Operation.DUPES, this::dupes));
+        map.put(Operation.COPY, journaled(Operation.COPY, (args, batch) -> transfer(args, false, batch)));
+        map.put(Operation.MOVE, journaled(Operation.MOVE, (args, batch) -> transfer(args, true, batch)));
+        map.put(Operation.STATS, this::stats);
+        map.put(Operation.SNAPSHOT, this::snapshot);
+        map.put(Operation.DIFF, this::diff);
+        map.put(Operation.SEARCH, this::search);
+        map.put(Operation.UNDO, this::undo);
+        map.put(Operation.INVALID, args -> Status.usage("Invalid command specified."));
+        return map;
+    }
+
+    /**
+     * Handler of an operation whose changes are recorded in the journal
+     */
+    private interface JournaledCommand {
+        /**
+         * @param args Arguments given to the command
+         * @param batch Batch of the journal every change of the command is recorded in
+         */
+        void run(List<String> args, Journal.Batch batch);
+    }
+
+    /**
+     * @param operation Operation the command executes
+     * @param command Handler recording its changes in a batch
+     * @return Command that runs the handler in a batch of its own and commits it, so it can be undone as a whole
+     */
+    private static Command journaled(Operation operation, JournaledCommand command) {
+        return args -> {
+            Journal.Batch batch;
+            try {
+                batch = Journal.open().begin(operation + (args.isEmpty() ? "" : " " + String.join(" ", args)));
+            } catch (IOException e) {
+                Status.fail("IOError could not open the journal.\n" + e);
+                return;
+            }
+            try {
+                command.run(args, batch);
+            } finally {
+                try {
+                    batch.commit();
+                } catch (IOException e) {
+                    Status.fail("IOError could not write the journal.\n" + e);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param action Action taking exactly one argument
+     * @return Command that runs the action or rejects any other number of arguments
+     */
+    private static Command single(Consumer<String> action) {
+        return args -> {
+            if (args.size() == 1) {
+                action.accept(args.get(0));
+            } else {
+                Status.usage("Too many arguments.");
+            }
+        };
+    }
+
+    /**
+     * Applies an operation to several paths and patterns at once and prints
+     * a summary followed by the errors of the paths that failed. The flag
+     * -j COUNT sets how many operations run at the same time.
+     * @param args Paths, patterns and optional flag
+     * @param target Kind of entries patterns select, or null if patterns are not expanded
+     * @param action Operation applied to every path
+     * @param done Format of the summary, receives the number of paths that succeeded
+     */
+    private void bulk(List<String> args, BulkOperation.Target target, BulkOperation.Action action, String done) {
+        int concurrency = BulkOperation.DEFAULT_CONCURRENCY;
+        List<String> targets = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            if (args.get(i).equals("-j") && i + 1 < args.size()) {
+                try {
+                    concurrency = Integer.parseInt(args.get(++i));
+                } catch (NumberFormatException e) {
+                    Status.usage("-j takes the number of operations that run at the same time.");
+                    return;
+                }
+            } else {
+                targets.add(args.get(i));
+            }
+        }
+        if (targets.isEmpty()) {
+            Status.usage("No paths given.");
+            return;
+        }
+        BulkOperation.Summary summary = new BulkOperation(directoryHandler.getDirectory().toPath(), concurrency)
+                .run(targets, target, action);
+        String message = String.format(done, summary.succeeded());
+        if (summary.failed() == 0) {
+            System.out.println(message + ".");
+            return;
+        }
+        failWithErrors(message + ", " + summary.failed() + " failed:", summary.failed(), summary.errors());
+    }
+
+    /**
+     * Lists the current directory. Accepts the flags -l, to also show the
+     * type, size and modification time of every entry, and -n COUNT to stop
+     * after COUNT entries.
+     * @param args Optional flags
      */
-    public void execute(Operation command, List<String> args) {
-        switch(command) {
-            case HELP:
-                Help.getHelp(args);
-                break;
-            case BACK:
-                directoryHandler.goBack();
-                break;
-            case CD:
-                if (args.size() == 1) {
-                    directoryHandler.cdDir(args.get(0));
+    private void list(List<String> args) {
+        boolean details = false;
+        int limit = Integer.MAX_VALUE;
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i).toLowerCase();
+            try {
+                if (arg.equals("-l")) {
+                    details = true;
+                } else if (arg.equals("-n") && i + 1 < args.size()) {
+                    limit = Integer.parseInt(args.get(++i));
                 } else {
-                  System.out.println("Too many arguments.");
-                }
-                break;
-            case LS:
-                screen.displayDirectoryContent();
-                break;
-            case RMDIR:
-                if (args.size() == 1) {
-                    directoryHandler.deleteDir(args.get(0));
+                    throw new NumberFormatException();
+                }
+            } catch (NumberFormatException e) {
+                Status.usage("Usage: LS [-l] [-n COUNT]");
+                return;
+            }
+        }
+        screen.displayDirectoryContent(details, limit);
+    }
+
+    /**
+     * Searches the current directory tree for a file with the given name, or
+     * for the files matching a query such as ext=pdf size>10M mtime<7d.
+     * Accepts the flags -all, to print every match as it is found instead of
+     * stopping at the first one, -follow, to also search symbolic links, and
+     * -prefix or -ext to match the start of the name or the extension.
+     * @param args Name of the file or terms of the query, and optional flags
+     */
+    private void find(List<String> args) {
+        String usage = "Usage: FIND [-all] [-follow] [-prefix | -ext] FILENAME | FIND [-all] [-follow] TERM... | " +
+                "FIND -fuzzy [-n COUNT] TEXT";
+        boolean all = false;
+        boolean followLinks = false;
+        boolean fuzzy = false;
+        boolean limited = false;
+        int limit = 20;
+        Finder.Mode mode = null;
+        List<String> names = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.size(); i++) {
+                switch (args.get(i).toLowerCase()) {
+                    case "-all" -> all = true;
+                    case "-follow" -> followLinks = true;
+                    case "-prefix" -> mode = Finder.Mode.PREFIX;
+                    case "-ext" -> mode = Finder.Mode.EXTENSION;
+                    case "-fuzzy" -> fuzzy = true;
+                    case "-n" -> {
+                        limited = true;
+                        limit = i + 1 < args.size() ? Integer.parseInt(args.get(++i)) : -1;
+                    }
+                    default -> names.add(args.get(i));
+                }
+            }
+        } catch (NumberFormatException e) {
+            limit = -1;
+        }
+        if (fuzzy) {
+            if (names.isEmpty() || limit < 1 || all || followLinks || mode != null) {
+                Status.usage(usage);
+            } else {
+                findFuzzy(String.join(" ", names), limit);
+            }
+            return;
+        }
+        if (limited) {
+            Status.fail("-n only applies to fuzzy searches.\n" + usage);
+            return;
+        }
+        boolean isQuery = !names.isEmpty() && mode == null && names.stream().allMatch(QueryParser::isTerm);
+        if (!isQuery && names.size() != 1) {
+            Status.usage(usage);
+            return;
+        }
+        Finder finder;
+        if (isQuery) {
+            try {
+                finder = new Finder(directoryHandler, QueryParser.parse(names), followLinks);
+            } catch (InvalidInputException e) {
+                Status.usage(e.getMessage());
+                return;
+            }
+        } else {
+            finder = new Finder(directoryHandler, names.get(0), mode == null ? Finder.Mode.EXACT : mode, followLinks);
+        }
+        if (all) {
+            // Matches are printed from the walker threads, which do not share the capture of this one
+            PrintStream out = OutputCapture.current();
+            int found = finder.findAllStrict(path -> out.println(path));
+            System.out.println(found + " file(s) found.");
+        } else {
+            File file = finder.findFirstFileStrict();
+            if (file == null) {
+                Status.fail(isQuery ? "No file matching " + String.join(" ", names) + " was found."
+                        : "No file named " + names.get(0) + " was found.");
+            } else {
+                System.out.println(file.getPath());
+            }
+        }
+    }
+
+    /**
+     * Prints the files and directories under the current directory whose
+     * names are closest to a text, from the trigram index of the name index
+     * covering the directory
+     * @param text Part of a name, possibly misspelt
+     * @param limit Maximum number of paths printed
+     */
+    private void findFuzzy(String text, int limit) {
+        Path root = directoryHandler.getDirectory().toPath().toAbsolutePath().normalize();
+        NameIndex index = NameIndex.forDirectory(root);
+        if (index == null) {
+            Status.fail("This directory is not indexed, fuzzy searches need INDEX.");
+            return;
+        }
+        if (!index.isFresh()) {
+            Status.fail("The index is out of date, run INDEX again.");
+            return;
+        }
+        long start = System.nanoTime();
+        List<Path> found;
+        try {
+            found = index.fuzzy(text, limit, root);
+        } catch (IOException e) {
+            Status.fail("IOError could not search the index.\n" + e);
+            return;
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000;
+        PrintWriter out = bufferedOutput();
+        for (Path path : found) {
+            out.println(path);
+        }
+        out.printf("%d file(s) found in %.1f ms.%n", found.size(), elapsed / 1000.0);
+        out.flush();
+        if (found.isEmpty()) {
+            Status.fail("No name close to " + text + " was found.");
+        }
+    }
+
+    /**
+     * Indexes the file names in the current directory and keeps the index up
+     * to date while the program runs. An index that is still fresh is reused
+     * unless -rebuild is given, -drop removes the index instead.
+     * @param args Optional -rebuild or -drop flag
+     */
+    private void index(List<String> args) {
+        Path root = directoryHandler.getDirectory().toPath().toAbsolutePath().normalize();
+        try {
+            if (args.size() == 1 && args.get(0).equalsIgnoreCase("-drop")) {
+                if (NameIndex.drop(root)) {
+                    System.out.println("Index removed.");
                 } else {
-                    System.out.println("Too many arguments.");
+                    Status.fail("This directory is not indexed.");
                 }
-                break;
-            case MKDIR:
-                if (args.size() == 1) {
-                    directoryHandler.mkDir(args.get(0));
+                return;
+            }
+            boolean rebuild = args.size() == 1 && args.get(0).equalsIgnoreCase("-rebuild");
+            if (!args.isEmpty() && !rebuild) {
+                Status.usage("Usage: INDEX [-rebuild | -drop]");
+                return;
+            }
+            NameIndex index = NameIndex.forDirectory(root);
+            if (!rebuild && index != null && index.getRoot().equals(root) && index.isFresh()) {
+                System.out.println("Index is up to date, " + index.fileCount() + " files.");
+            } else {
+                long start = System.nanoTime();
+                index = NameIndex.build(root);
+                long elapsed = (System.nanoTime() - start) / 1_000_000;
+                System.out.println("Indexed " + index.fileCount() + " files in " + index.directoryCount() +
+                        " directories in " + elapsed + " ms.");
+            }
+            index.watch();
+        } catch (IOException e) {
+            Status.fail("Could not index directory.\n" + e);
+        }
+    }
+
+    /**
+     * Sends files to another instance of the program, or receives them.
+     * SYNC LISTEN [HOST:]PORT receives files into the current directory until
+     * SYNC STOP, on the loopback interface unless a host is given, SYNC HOST
+     * PORT sends a file, or the whole current directory when no file is
+     * given, and reports how much was saved over a full copy.
+     * @param args Subcommand and its arguments
+     */
+    private void sync(List<String> args) {
+        String usage = "Usage: SYNC LISTEN [HOST:]PORT | SYNC STOP | SYNC HOST PORT [FILENAME]";
+        try {
+            if (args.size() == 1 && args.get(0).equalsIgnoreCase("STOP")) {
+                if (syncServer == null) {
+                    Status.fail("Not receiving files.");
                 } else {
-                    System.out.println("Too many arguments.");
+                    syncServer.close();
+                    syncServer = null;
+                    System.out.println("Stopped receiving files.");
+                }
+            } else if (args.size() == 2 && args.get(0).equalsIgnoreCase("LISTEN")) {
+                if (syncServer != null) {
+                    syncServer.close();
+                }
+                String address = args.get(1);
+                int colon = address.lastIndexOf(':');
+                InetSocketAddress bound = colon < 0
+                        ? new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address))
+                        : new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+                syncServer = new SyncServer(directoryHandler.getDirectory().toPath(), bound);
+                System.out.println("Receiving files into " + syncServer.getRoot() + " on " + bound.getHostString()
+                        + " port " + syncServer.getPort() + ".");
+            } else if (args.size() == 2 || args.size() == 3) {
+                Path source = args.size() == 3
+                        ? Path.of(directoryHandler.getCurrentDir() + File.separator + args.get(2))
+                        : directoryHandler.getDirectory().toPath();
+                SyncClient client = new SyncClient(args.get(0), Integer.parseInt(args.get(1)), SyncClient.DEFAULT_CONNECTIONS);
+                long start = System.nanoTime();
+                SyncClient.Result result = client.push(source);
+                long elapsed = (System.nanoTime() - start) / 1_000_000;
+                double saved = result.totalBytes() == 0 ? 0 : 100.0 * result.savedBytes() / result.totalBytes();
+                System.out.printf("Synced %d file(s) in %d ms, sent %d of %d bytes, %d bytes (%.1f%%) saved.%n",
+                        result.files(), elapsed, result.literalBytes(), result.totalBytes(), result.savedBytes(), saved);
+                if (result.failed() > 0) {
+                    Status.fail(result.failed() + " file(s) could not be synced.");
+                }
+            } else {
+                Status.usage(usage);
+            }
+        } catch (IllegalArgumentException e) {
+            Status.usage(usage);
+        } catch (IOException e) {
+            Status.fail("IOError could not sync.\n" + e);
+        }
+    }
+
+    /**
+     * Records the metadata of every entry in the current directory tree and
+     * queries it. CATALOG [-hash] builds the catalog, CATALOG GET NAME shows
+     * one entry, CATALOG SCAN shows the entries under the current directory
+     * that match every filter given and CATALOG DROP removes the catalog.
+     * @param args Subcommand and its arguments
+     */
+    private void catalog(List<String> args) {
+        String usage = "Usage: CATALOG [-hash] | CATALOG GET NAME | CATALOG SCAN [-prefix PREFIX] [-size MIN:MAX] " +
+                "[-mtime FROM:TO] [-n COUNT] | CATALOG DROP";
+        Path directory = directoryHandler.getDirectory().toPath().toAbsolutePath().normalize();
+        String subcommand = args.isEmpty() ? "" : args.get(0).toLowerCase();
+        try {
+            switch (subcommand) {
+                case "", "-hash" -> {
+                    if (args.size() > 1) {
+                        Status.usage(usage);
+                        return;
+                    }
+                    long start = System.nanoTime();
+                    Catalog.BuildResult result = Catalog.build(directory, !args.isEmpty());
+                    long elapsed = (System.nanoTime() - start) / 1_000_000;
+                    System.out.println("Cataloged " + result.entries() + " entries in " + elapsed + " ms, " +
+                            result.hashed() + " file(s) hashed, " + result.reused() + " hash(es) reused.");
+                    if (result.skipped() > 0) {
+                        System.out.println(result.skipped() + " entries were left out, their paths are too long.");
+                    }
+                    if (result.failed() > 0) {
+                        Status.fail(result.failed() + " file(s) could not be read and have no hash.");
+                    }
+                }
+                case "get" -> {
+                    Catalog catalog = Catalog.forDirectory(directory);
+                    if (args.size() != 2) {
+                        Status.usage(usage);
+                    } else if (catalog == null) {
+                        Status.fail("This directory is not cataloged.");
+                    } else {
+                        long start = System.nanoTime();
+                        Catalog.Entry entry = catalog.get(directory.resolve(args.get(1)).normalize());
+                        long elapsed = (System.nanoTime() - start) / 1_000;
+                        if (entry == null) {
+                            Status.fail(args.get(1) + " is not in the catalog.");
+                        } else {
+                            System.out.println(describe(entry));
+                            System.out.println("Found in " + elapsed + " us.");
+                        }
+                    }
+                }
+                case "scan" -> scanCatalog(directory, args.subList(1, args.size()), usage);
+                case "drop" -> {
+                    if (args.size() != 1) {
+                        Status.usage(usage);
+                    } else if (Catalog.drop(directory)) {
+                        System.out.println("Catalog removed.");
+                    } else {
+                        Status.fail("This directory is not cataloged.");
+                    }
+                }
+                default -> Status.usage(usage);
+            }
+        } catch (IOException e) {
+            Status.fail("IOError could not use the catalog.\n" + e);
+        }
+    }
+
+    /**
+     * Prints the cataloged entries under the current directory that match
+     * every filter. The most selective index available is scanned, the size
+     * index if a size range is given, then the modification time index, and
+     * the other filters are checked on each entry.
+     * @param directory Current directory
+     * @param args Filters
+     * @param usage Usage message of the command
+     * @throws IOException If the catalog cannot be read
+     */
+    private void scanCatalog(Path directory, List<String> args, String usage) throws IOException {
+        String prefix = "";
+        long[] size = null;
+        long[] modified = null;
+        long limit = Long.MAX_VALUE;
+        try {
+            for (int i = 0; i < args.size(); i++) {
+                String arg = args.get(i).toLowerCase();
+                if (i + 1 == args.size()) {
+                    throw new IllegalArgumentException();
+                }
+                switch (arg) {
+                    case "-prefix" -> prefix = args.get(++i).replace(File.separatorChar, '/');
+                    case "-size" -> size = range(args.get(++i), (text, upper) -> QueryParser.parseSize(text));
+                    case "-mtime" -> modified = range(args.get(++i), OperationHandler::parseDate);
+                    case "-n" -> limit = Long.parseLong(args.get(++i));
+                    default -> throw new IllegalArgumentException();
                 }
-                break;
-            case CREATE:
-                if (args.size() == 1) {
-                    fileHandler.createFile(args.get(0));
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            Status.usage(usage);
+            return;
+        }
+        Catalog catalog = Catalog.forDirectory(directory);
+        if (catalog == null) {
+            Status.fail("This directory is not cataloged.");
+            return;
+        }
+
+        String base = catalog.relativize(directory);
+        String fullPrefix = base.isEmpty() ? prefix : base + "/" + prefix;
+        long[] sizeRange = size;
+        long[] modifiedRange = modified;
+        long max = limit;
+        long[] found = {0};
+        long start = System.nanoTime();
+        PrintWriter out = bufferedOutput();
+        Catalog.EntryVisitor visitor = entry -> {
+            if (entry.path().startsWith(fullPrefix) && entry.path().length() > base.length()
+                    && (sizeRange == null || (entry.size() >= sizeRange[0] && entry.size() <= sizeRange[1]))
+                    && (modifiedRange == null || (entry.modified() >= modifiedRange[0] && entry.modified() <= modifiedRange[1]))) {
+                out.println(describe(entry));
+                found[0]++;
+            }
+            return found[0] < max;
+        };
+        if (size != null) {
+            catalog.scanSize(size[0], size[1], visitor);
+        } else if (modified != null) {
+            catalog.scanModified(modified[0], modified[1], visitor);
+        } else {
+            catalog.scanPrefix(fullPrefix, visitor);
+        }
+        out.flush();
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        System.out.println(found[0] + " entries found in " + elapsed + " ms.");
+    }
+
+    /**
+     * Parses a range of the form MIN:MAX where either side can be left out
+     * @param text Range
+     * @param parser Parses each side, the upper side is given true
+     * @return Lower and upper bound, both inclusive
+     */
+    private static long[] range(String text, BiFunction<String, Boolean, Long> parser) {
+        int colon = text.indexOf(':');
+        if (colon < 0) {
+            long value = parser.apply(text, false);
+            return new long[] {value, parser.apply(text, true)};
+        }
+        String from = text.substring(0, colon);
+        String to = text.substring(colon + 1);
+        return new long[] {
+                from.isEmpty() ? Long.MIN_VALUE : parser.apply(from, false),
+                to.isEmpty() ? Long.MAX_VALUE : parser.apply(to, true)
+        };
+    }
+
+    /**
+     * Parses a date in the yyyy-MM-dd format in the local time zone
+     * @param text Date
+     * @param upper True to return the last millisecond of the day instead of the first
+     * @return Time in milliseconds
+     */
+    private static Long parseDate(String text, Boolean upper) {
+        LocalDate date = LocalDate.parse(text);
+        ZonedDateTime time = (upper ? date.plusDays(1) : date).atStartOfDay(ZoneId.systemDefault());
+        return time.toInstant().toEpochMilli() - (upper ? 1 : 0);
+    }
+
+    /**
+     * @param entry Cataloged entry
+     * @return Line describing the entry
+     */
+    private static String describe(Catalog.Entry entry) {
+        String line = String.format("%-9s %12d  %tF %<tR  %s", entry.type(), entry.size(), entry.modified(), entry.path());
+        return entry.hash() == null ? line : line + "  " + entry.hashHex();
+    }
+
+    /**
+     * Finds the files in the current directory tree that have the same
+     * content and prints them in groups, the groups that free the most bytes
+     * first. With -link every copy is replaced by a hard link.
+     * @param args Optional flags
+     * @param batch Batch of the journal the files replaced by links are kept in
+     */
+    private void dupes(List<String> args, Journal.Batch batch) {
+        String usage = "Usage: DUPES [-link] [-j COUNT] [-min SIZE] [-n COUNT]";
+        boolean link = false;
+        int concurrency = DuplicateFinder.DEFAULT_CONCURRENCY;
+        long minSize = 1;
+        int limit = Integer.MAX_VALUE;
+        try {
+            for (int i = 0; i < args.size(); i++) {
+                String arg = args.get(i).toLowerCase();
+                if (arg.equals("-link")) {
+                    link = true;
+                } else if (i + 1 == args.size()) {
+                    throw new NumberFormatException();
                 } else {
-                    System.out.println("Too many arguments.");
+                    switch (arg) {
+                        case "-j" -> concurrency = Integer.parseInt(args.get(++i));
+                        case "-min" -> minSize = QueryParser.parseSize(args.get(++i));
+                        case "-n" -> limit = Integer.parseInt(args.get(++i));
+                        default -> throw new NumberFormatException();
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            Status.usage(usage);
+            return;
+        }
+        if (limit < 0) {
+            Status.usage(usage);
+            return;
+        }
+
+        Path root = directoryHandler.getDirectory().toPath().toAbsolutePath().normalize();
+        DuplicateFinder.Result result;
+        long start = System.nanoTime();
+        try {
+            result = new DuplicateFinder(root, concurrency, minSize).find();
+        } catch (IOException e) {
+            Status.fail("IOError could not search for duplicates.\n" + e);
+            return;
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+        PrintWriter out = bufferedOutput();
+        for (DuplicateFinder.Group group : result.groups().subList(0, Math.min(limit, result.groups().size()))) {
+            out.printf("%d copies of %d bytes, %d bytes reclaimable, %s%n", group.paths().size(), group.size(),
+                    group.reclaimable(), group.hash().substring(0, 12));
+            for (Path path : group.paths()) {
+                out.println("  " + root.relativize(path));
+            }
+        }
+        out.flush();
+        System.out.printf("%d group(s) of duplicates, %d bytes reclaimable. Checked %d file(s) in %d ms, " +
+                        "%d fingerprinted, %d hashed whole.%n", result.groups().size(), result.reclaimable(),
+                result.files(), elapsed, result.fingerprinted(), result.hashed());
+
+        List<String> errors = new ArrayList<>();
+        if (result.failed() > 0) {
+            errors.add(result.failed() + " file(s) could not be read.");
+        }
+        if (link) {
+            long linked = 0;
+            long freed = 0;
+            for (DuplicateFinder.Group group : result.groups()) {
+                try {
+                    int replaced = DuplicateFinder.link(group, batch);
+                    linked += replaced;
+                    freed += replaced * group.size();
+                } catch (IOException | UnsupportedOperationException | SecurityException e) {
+                    errors.add("Could not link " + root.relativize(group.paths().get(0)) + ": " + e.getMessage());
                 }
-                break;
-            case DELETE:
-                if (args.size() == 1) {
-                    fileHandler.deleteFile(args.get(0));
+            }
+            System.out.println("Replaced " + linked + " file(s) with hard links, " + freed
+                    + " bytes freed once the journal forgets them.");
+        }
+        if (!errors.isEmpty()) {
+            Status.fail(String.join("\n", errors));
+        }
+    }
+
+    /**
+     * Copies or moves a file or directory tree. Progress is reported on the
+     * error stream every second while the transfer runs, and the throughput
+     * once it is done.
+     * @param args Optional flags, source and target
+     * @param move True to move instead of copying
+     * @param batch Batch of the journal the files overwritten and removed are recorded in
+     */
+    private void transfer(List<String> args, boolean move, Journal.Batch batch) {
+        String usage = "Usage: " + (move ? "MOVE" : "COPY") + " [-f] [-j COUNT] [-budget SIZE] SOURCE TARGET";
+        boolean overwrite = false;
+        int concurrency = Transfer.DEFAULT_CONCURRENCY;
+        long budget = Transfer.DEFAULT_BUDGET;
+        List<String> paths = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.size(); i++) {
+                String arg = args.get(i).toLowerCase();
+                if (arg.equals("-f")) {
+                    overwrite = true;
+                } else if (arg.equals("-j") && i + 1 < args.size()) {
+                    concurrency = Integer.parseInt(args.get(++i));
+                } else if (arg.equals("-budget") && i + 1 < args.size()) {
+                    budget = QueryParser.parseSize(args.get(++i));
                 } else {
-                    System.out.println("Too many arguments.");
+                    paths.add(args.get(i));
+                }
+            }
+        } catch (NumberFormatException e) {
+            Status.usage(usage);
+            return;
+        }
+        if (paths.size() != 2) {
+            Status.usage(usage);
+            return;
+        }
+
+        Path directory = directoryHandler.getDirectory().toPath();
+        Path source = directory.resolve(paths.get(0)).toAbsolutePath().normalize();
+        Path target = directory.resolve(paths.get(1)).toAbsolutePath().normalize();
+        if (Files.isDirectory(target) && source.getFileName() != null) {
+            target = target.resolve(source.getFileName().toString());
+        }
+
+        Transfer transfer = new Transfer(concurrency, budget, overwrite, batch);
+        long start = System.nanoTime();
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "personalDB-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        boolean[] reported = {false};
+        // Progress is for someone watching the terminal, in batch and server mode it would end up on the console
+        // of the process, away from the output of the command
+        if (!OutputCapture.isInstalled()) {
+            progress.scheduleAtFixedRate(() -> {
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.err.printf("\r%d file(s), %.1f MiB, %.1f MiB/s ", transfer.filesTransferred(),
+                        transfer.bytesTransferred() / 1048576.0, transfer.bytesTransferred() / 1048576.0 / seconds);
+                reported[0] = true;
+            }, 1, 1, TimeUnit.SECONDS);
+        }
+        Transfer.Summary summary;
+        try {
+            summary = move ? transfer.move(source, target) : transfer.copy(source, target);
+        } catch (FileAlreadyExistsException e) {
+            Status.fail(target + " already exists.");
+            return;
+        } catch (NoSuchFileException e) {
+            Status.fail(e.getFile() + " does not exist.");
+            return;
+        } catch (IOException | SecurityException e) {
+            Status.fail("IOError could not " + (move ? "move" : "copy") + ".\n" + e);
+            return;
+        } finally {
+            progress.shutdownNow();
+            try {
+                progress.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (reported[0]) {
+                System.err.println();
+            }
+        }
+
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        if (summary.renamed()) {
+            System.out.printf("Moved %s to %s in %.0f ms.%n", paths.get(0), target, seconds * 1000);
+        } else {
+            System.out.printf("%s %d file(s) and %d directory(ies), %d bytes in %.0f ms, %.1f MiB/s.%n",
+                    move ? "Moved" : "Copied", summary.files(), summary.directories(), summary.bytes(),
+                    seconds * 1000, summary.bytes() / 1048576.0 / seconds);
+            if (summary.skipped() > 0) {
+                System.out.println(summary.skipped() + " file(s) were already up to date.");
+            }
+        }
+        if (summary.failed() > 0) {
+            failWithErrors(summary.failed() + " file(s) failed" + (move ? ", the source was kept:" : ":"),
+                    summary.failed(), summary.errors());
+        }
+    }
+
+    /**
+     * Prints the latency of every operation, the bytes read and written,
+     * the directory entries scanned and the hit rate of the caches since the
+     * program started or the last reset. Accepts the flags -json, to print
+     * them as JSON or write them to FILE, and -reset, to start counting again
+     * afterwards.
+     * @param args Optional flags
+     */
+    private void stats(List<String> args) {
+        String usage = "Usage: STATS [-json [FILE]] [-reset]";
+        boolean json = false;
+        boolean reset = false;
+        String file = null;
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i).toLowerCase();
+            if (arg.equals("-json")) {
+                json = true;
+                if (i + 1 < args.size() && !args.get(i + 1).startsWith("-")) {
+                    file = args.get(++i);
+                }
+            } else if (arg.equals("-reset")) {
+                reset = true;
+            } else {
+                Status.usage(usage);
+                return;
+            }
+        }
+
+        if (file != null) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(directoryHandler.resolve(file)))) {
+                Metrics.printJson(out);
+            } catch (IOException | InvalidPathException e) {
+                Status.fail("IOError could not write the statistics.\n" + e);
+                return;
+            }
+        } else {
+            PrintWriter out = bufferedOutput();
+            if (json) {
+                Metrics.printJson(out);
+            } else {
+                Metrics.print(out);
+            }
+            out.flush();
+        }
+        if (reset) {
+            Metrics.reset();
+        }
+    }
+
+    /**
+     * Records the current directory tree as a named snapshot. Files whose
+     * size and modification time did not change since the last snapshot of
+     * the same directory keep their hash, so only new and changed files are
+     * read. SNAPSHOT -list shows every snapshot and SNAPSHOT -drop NAME
+     * deletes one along with the nodes no other snapshot shares.
+     * @param args Optional name, or a flag
+     */
+    private void snapshot(List<String> args) {
+        String usage = "Usage: SNAPSHOT [NAME] | SNAPSHOT -list | SNAPSHOT -drop NAME";
+        String flag = args.isEmpty() ? "" : args.get(0).toLowerCase();
+        try {
+            SnapshotStore store = SnapshotStore.open();
+            if (flag.equals("-list") && args.size() == 1) {
+                PrintWriter out = bufferedOutput();
+                for (SnapshotStore.Ref ref : store.list()) {
+                    out.printf("%-20s %s %s %s%n", ref.name(), SNAPSHOT_TIME.format(Instant.ofEpochMilli(ref.created())),
+                            ref.hashHex().substring(0, 12), ref.root());
                 }
-                break;
-            case OPEN:
-                if (args.size() == 1) {
-                    fileHandler.openFile(args.get(0));
+                out.flush();
+            } else if (flag.equals("-drop") && args.size() == 2) {
+                long deleted = store.drop(args.get(1));
+                if (deleted < 0) {
+                    Status.fail("There is no snapshot named " + args.get(1) + ".");
                 } else {
-                    System.out.println("Too many arguments.");
+                    System.out.println("Dropped " + args.get(1) + ", " + deleted + " node(s) deleted.");
+                }
+            } else if (args.size() <= 1 && !flag.startsWith("-")) {
+                String name = args.isEmpty() ? SNAPSHOT_TIME.format(Instant.now()).replace(' ', '-').replace(":", "")
+                        : args.get(0);
+                if (!SnapshotStore.isValidName(name)) {
+                    Status.fail("Invalid snapshot name " + name + ", use letters, digits, ., _ and -.");
+                    return;
                 }
-                break;
-            case FIND:
-                break;
-            case INVALID:
-                System.out.println("Invalid command specified.");
-                break;
+                Path root = directoryHandler.getDirectory().toPath();
+                long start = System.nanoTime();
+                SnapshotStore.Tree tree = store.read(root, store.latest(root));
+                SnapshotStore.Ref ref = store.save(name, tree);
+                long elapsed = (System.nanoTime() - start) / 1_000_000;
+                System.out.println("Snapshot " + name + " of " + tree.files() + " file(s) and " + tree.directories() +
+                        " directory(ies) in " + elapsed + " ms, " + tree.hashed() + " file(s) hashed, " +
+                        tree.reused() + " hash(es) reused, " + tree.created().size() + " new node(s).");
+                System.out.println("Root " + ref.hashHex());
+                if (tree.failed() > 0) {
+                    Status.fail(tree.failed() + " entries could not be read.");
+                }
+            } else {
+                Status.usage(usage);
+            }
+        } catch (IOException e) {
+            Status.fail("IOError could not take the snapshot.\n" + e);
+        }
+    }
+
+    /**
+     * Shows what changed between two snapshots, or between a snapshot and
+     * its directory as it is now. Directories with the same hash in both are
+     * skipped whole, so the time taken depends on how much changed rather
+     * than on the size of the tree.
+     * @param args Older snapshot, optional newer snapshot and flags
+     */
+    private void diff(List<String> args) {
+        String usage = "Usage: DIFF [-n COUNT] OLD [NEW]";
+        int limit = Integer.MAX_VALUE;
+        List<String> names = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.size(); i++) {
+                if (args.get(i).equalsIgnoreCase("-n") && i + 1 < args.size()) {
+                    limit = Integer.parseInt(args.get(++i));
+                } else {
+                    names.add(args.get(i));
+                }
+            }
+        } catch (NumberFormatException e) {
+            Status.usage(usage);
+            return;
+        }
+        if (names.isEmpty() || names.size() > 2) {
+            Status.usage(usage);
+            return;
+        }
+
+        try {
+            SnapshotStore store = SnapshotStore.open();
+            SnapshotStore.Ref before = store.get(names.get(0));
+            SnapshotStore.Ref after = names.size() == 2 ? store.get(names.get(1)) : null;
+            if (before == null || names.size() == 2 && after == null) {
+                Status.fail("There is no snapshot named " + names.get(before == null ? 0 : 1) + ".");
+                return;
+            }
+            long start = System.nanoTime();
+            byte[] current;
+            Map<String, byte[]> created = Map.of();
+            if (after != null) {
+                current = after.hash();
+            } else {
+                SnapshotStore.Tree tree = store.read(before.root(), before);
+                current = tree.hash();
+                created = tree.created();
+            }
+            PrintWriter out = bufferedOutput();
+            int shown = limit;
+            int[] printed = {0};
+            SnapshotStore.DiffResult result = store.diff(before.hash(), current, created, (change, path, was, is) -> {
+                if (printed[0]++ < shown) {
+                    out.println(switch (change) {
+                        case ADDED -> "+ ";
+                        case REMOVED -> "- ";
+                        case MODIFIED -> "M ";
+                        case TOUCHED -> "T ";
+                    } + path);
+                }
+            });
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            if (printed[0] > shown) {
+                out.println("... and " + (printed[0] - shown) + " more.");
+            }
+            out.printf("%d added, %d removed, %d modified, %d touched, %d directory(ies) compared in %d ms.%n",
+                    result.added(), result.removed(), result.modified(), result.touched(), result.compared(), elapsed);
+            out.flush();
+        } catch (IOException e) {
+            Status.fail("IOError could not compare the snapshots.\n" + e);
+        }
+    }
+
+    /**
+     * Finds the files under the current directory whose content matches a
+     * query, from the full text index covering the directory, without
+     * reading any file. SEARCH -index creates the index of the current
+     * directory or brings the index covering it up to date, reading only
+     * the files that changed, and SEARCH -drop removes it.
+     * @param args Words of the query and optional flags, or a single flag
+     */
+    private void search(List<String> args) {
+        String usage = "Usage: SEARCH -index | SEARCH -drop | SEARCH [-n COUNT] QUERY";
+        Path directory = directoryHandler.getDirectory().toPath().toAbsolutePath().normalize();
+        String flag = args.isEmpty() ? "" : args.get(0).toLowerCase();
+        try {
+            if (flag.equals("-index") && args.size() == 1) {
+                TextIndex index = TextIndex.forDirectory(directory);
+                Path root = index == null ? directory : index.getRoot();
+                long start = System.nanoTime();
+                TextIndex.UpdateResult result = TextIndex.update(root);
+                long elapsed = (System.nanoTime() - start) / 1_000_000;
+                System.out.printf("Indexed %d file(s) under %s in %d ms, %d file(s) read (%.1f MiB), %d removed, " +
+                                "%d not text or too large, %d segment(s).%n", result.files(), root, elapsed,
+                        result.read(), result.bytes() / (1024.0 * 1024), result.removed(), result.skipped(),
+                        result.segments());
+                return;
+            }
+            if (flag.equals("-drop") && args.size() == 1) {
+                if (TextIndex.drop(directory)) {
+                    System.out.println("Text index removed.");
+                } else {
+                    Status.fail("This directory has no text index.");
+                }
+                return;
+            }
+        } catch (IOException e) {
+            Status.fail("IOError could not update the text index.\n" + e);
+            return;
+        }
+
+        int limit = Integer.MAX_VALUE;
+        int first = 0;
+        if (flag.equals("-n")) {
+            try {
+                limit = Integer.parseInt(args.get(1));
+                first = 2;
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                limit = -1;
+            }
+        }
+        if (args.size() <= first || limit < 1 || flag.equals("-index") || flag.equals("-drop")) {
+            Status.usage(usage);
+            return;
+        }
+        TextQuery query;
+        try {
+            query = TextQueryParser.parse(args.subList(first, args.size()));
+        } catch (InvalidInputException e) {
+            Status.usage(e.getMessage());
+            return;
+        }
+        TextIndex index = TextIndex.forDirectory(directory);
+        if (index == null) {
+            Status.fail("This directory has no text index, run SEARCH -index first.");
+            return;
+        }
+        long start = System.nanoTime();
+        List<Path> found = index.search(query, directory);
+        long elapsed = (System.nanoTime() - start) / 1_000;
+        PrintWriter out = bufferedOutput();
+        for (Path path : found.subList(0, Math.min(limit, found.size()))) {
+            out.println(path);
+        }
+        if (found.size() > limit) {
+            out.println("... and " + (found.size() - limit) + " more.");
+        }
+        out.printf("%d file(s) found in %.1f ms.%n", found.size(), elapsed / 1000.0);
+        out.flush();
+        if (found.isEmpty()) {
+            Status.fail("No file matching " + query + " was found.");
+        }
+    }
+
+    /**
+     * Reverts the changes of the last COUNT commands that created or deleted
+     * files and directories, newest first, 1 if no count is given. Deleted
+     * files are moved back from the trash of the journal. The flag -l lists
+     * the commands that can be undone instead.
+     * @param args Optional count or flag
+     */
+    private void undo(List<String> args) {
+        String usage = "Usage: UNDO [COUNT] | UNDO -l";
+        int count = 1;
+        boolean list = false;
+        if (args.size() == 1 && args.get(0).equalsIgnoreCase("-l")) {
+            list = true;
+        } else if (args.size() == 1) {
+            try {
+                count = Integer.parseInt(args.get(0));
+            } catch (NumberFormatException e) {
+                count = -1;
+            }
+        }
+        if (args.size() > 1 || count < 1) {
+            Status.usage(usage);
+            return;
+        }
+        try {
+            Journal journal = Journal.open();
+            if (list) {
+                List<Journal.Summary> history = journal.history();
+                if (history.isEmpty()) {
+                    System.out.println("Nothing to undo.");
+                }
+                for (Journal.Summary summary : history) {
+                    System.out.printf("%s (%d operation(s))%n", summary.description(), summary.operations());
+                }
+                return;
+            }
+            List<Journal.Undone> undone = journal.undo(count);
+            if (undone.isEmpty()) {
+                Status.fail("Nothing to undo.");
+                return;
+            }
+            for (Journal.Undone batch : undone) {
+                if (batch.errors().isEmpty()) {
+                    System.out.printf("Undid %s, %d operation(s) reverted.%n", batch.description(), batch.reverted());
+                    continue;
+                }
+                failWithErrors(String.format("Could not undo %s, %d operation(s) reverted, %d failed:",
+                        batch.description(), batch.reverted(), batch.errors().size()), batch.errors().size(), batch.errors());
+            }
+        } catch (IOException e) {
+            Status.fail("IOError could not undo.\n" + e);
+        }
+    }
+
+    /**
+     * @return Buffered writer over System.out, for commands that print many
+     * lines, which must be flushed before the command returns
+     */
+    private static PrintWriter bufferedOutput() {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16), false);
+    }
+
+    /**
+     * Fails the command with a header followed by the first errors, one per line
+     * @param header First line of the report
+     * @param failed Number of failures, which can be more than the errors kept
+     * @param errors Errors of the first failures
+     */
+    private static void failWithErrors(String header, long failed, List<String> errors) {
+        StringBuilder report = new StringBuilder(header);
+        int shown = Math.min(errors.size(), MAX_SHOWN_ERRORS);
+        for (String error : errors.subList(0, shown)) {
+            report.append("\n  ").append(error);
+        }
+        if (failed > shown) {
+            report.append("\n  ... and ").append(failed - shown).append(" more.");
         }
+        Status.fail(report.toString());
     }
 
 }
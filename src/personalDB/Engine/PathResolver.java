@@ -0,0 +1,78 @@
+/**
+ * Resolves the paths given to commands
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Engine;
+
+import personalDB.Metrics.Metrics;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Turns a path typed by the user into an absolute, normalized path. The
+ * path is resolved against the current directory unless it is absolute, and
+ * . and .. are removed in a single pass, without touching the disk, so going
+ * up from a directory that no longer exists still works.
+ * On Windows a path like \Users has no drive and takes the drive of the
+ * current directory, and a path like D:notes is resolved against the current
+ * directory of that drive.
+ * Scripts and server sessions resolve the same few paths over and over, so
+ * the most recent results are kept in a small cache shared by every thread.
+ */
+public final class PathResolver {
+    public static final int CACHE_SIZE = 256;
+    private static final Map<Key, Path> cache = new LinkedHashMap<>(CACHE_SIZE * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Path> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private record Key(Path base, String pathname) {}
+
+    private PathResolver() {}
+
+    /**
+     * Resolves a path against a directory
+     * @param base Absolute directory relative paths start from
+     * @param pathname Path typed by the user
+     * @return Absolute normalized path, which might not exist
+     * @throws InvalidPathException If the path has characters the file system does not allow
+     */
+    public static Path resolve(Path base, String pathname) {
+        Key key = new Key(base, pathname);
+        synchronized (cache) {
+            Path cached = cache.get(key);
+            if (cached != null) {
+                Metrics.hit(Metrics.Cache.PATH);
+                return cached;
+            }
+        }
+        Metrics.miss(Metrics.Cache.PATH);
+        Path path = base.getFileSystem().getPath(pathname);
+        Path resolved;
+        if (path.isAbsolute()) {
+            resolved = path;
+        } else if (path.getRoot() != null && path.getRoot().toString().length() == 1) {
+            // Rooted but without a drive, e.g. \Users on Windows
+            resolved = base.getRoot().resolve(path.getRoot().relativize(path));
+        } else if (path.getRoot() != null) {
+            // Drive without a root, e.g. D:notes on Windows
+            resolved = path.toAbsolutePath();
+        } else {
+            resolved = base.resolve(path);
+        }
+        resolved = resolved.normalize();
+        synchronized (cache) {
+            cache.put(key, resolved);
+        }
+        return resolved;
+    }
+
+}
@@ -0,0 +1,61 @@
+/**
+ * Exit status of commands
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Engine;
+
+/**
+ * Keeps the status of the command running on the current thread. Handlers
+ * report errors through {@link #fail(String)} or {@link #usage(String)},
+ * which print the message like before and remember that the command did not
+ * succeed, so scripts can tell failed commands apart.
+ */
+public class Status {
+    public static final int OK = 0;
+    public static final int FAILED = 1;
+    public static final int USAGE = 2;
+    private static final ThreadLocal<int[]> current = ThreadLocal.withInitial(() -> new int[] {OK});
+
+    private Status() {}
+
+    /**
+     * Starts a new command on the current thread
+     */
+    public static void reset() {
+        current.get()[0] = OK;
+    }
+
+    /**
+     * Prints an error and marks the current command as failed
+     * @param message Error message
+     */
+    public static void fail(String message) {
+        System.out.println(message);
+        set(FAILED);
+    }
+
+    /**
+     * Prints a usage error and marks the current command as invalid
+     * @param message Usage message
+     */
+    public static void usage(String message) {
+        System.out.println(message);
+        set(USAGE);
+    }
+
+    /**
+     * @return Status of the current command
+     */
+    public static int get() {
+        return current.get()[0];
+    }
+
+    private static void set(int status) {
+        int[] holder = current.get();
+        holder[0] = Math.max(holder[0], status);
+    }
+
+}
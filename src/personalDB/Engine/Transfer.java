@@ -0,0 +1,378 @@
+/**
+ * Copies and moves files and directory trees
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Engine;
+
+import personalDB.Metrics.Metrics;
+import personalDB.Storage.Journal;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Objects of this class copy or move a file or a directory tree.
+ * File content is moved by {@link FileChannel#transferTo}, which the
+ * operating system can do without copying it through the program. A move
+ * within one file system is a single atomic rename, across file systems it
+ * is a copy followed by the removal of the source.
+ * Trees are walked in parallel and their files copied by {@code concurrency}
+ * threads, but only while the files being copied add up to less than the
+ * byte budget, so many large files do not compete for the disks at once.
+ * A file is copied into FILE.part next to its target and renamed when it is
+ * complete. An interrupted copy leaves the .part file behind and the next
+ * copy continues from where it stopped, and files whose target already has
+ * the same size and modification time are skipped, so running the same
+ * copy again resumes it.
+ * Every file and directory that is created, overwritten, renamed or removed
+ * is recorded in a batch of the journal, so the transfer can be undone
+ * without losing any file or leaving copies behind.
+ */
+public class Transfer {
+    public static final int DEFAULT_CONCURRENCY = 8;
+    public static final long DEFAULT_BUDGET = 256L << 20;
+    public static final String PART_SUFFIX = ".part";
+    private static final int MAX_KEPT_ERRORS = 1000;
+
+    private final int concurrency;
+    private final long budget;
+    private final boolean overwrite;
+    private final Journal.Batch batch;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong files = new AtomicLong();
+
+    /**
+     * Outcome of a transfer
+     * @param files Number of files copied or moved
+     * @param directories Number of directories created
+     * @param bytes Number of bytes written
+     * @param skipped Number of files skipped since their target was already up to date
+     * @param failed Number of files that could not be copied
+     * @param renamed True if the source was moved by a single rename
+     * @param errors Errors of the first files that failed
+     */
+    public record Summary(long files, long directories, long bytes, long skipped, long failed, boolean renamed,
+                          List<String> errors) {}
+
+    /**
+     * Constructor
+     * @param concurrency Maximum number of files copied at the same time
+     * @param budget Maximum number of bytes in the files being copied at the same time
+     * @param overwrite True to replace targets that already exist and are not up to date
+     * @param batch Batch of the journal the files replaced and removed are recorded in
+     */
+    public Transfer(int concurrency, long budget, boolean overwrite, Journal.Batch batch) {
+        this.concurrency = Math.max(1, concurrency);
+        this.budget = Math.max(1, budget);
+        this.overwrite = overwrite;
+        this.batch = batch;
+    }
+
+    /**
+     * @return Bytes written so far, safe to read while the transfer runs
+     */
+    public long bytesTransferred() {
+        return bytes.get();
+    }
+
+    /**
+     * @return Files copied so far, safe to read while the transfer runs
+     */
+    public long filesTransferred() {
+        return files.get();
+    }
+
+    /**
+     * Copies a file or a directory tree
+     * @param source File or directory to be copied
+     * @param target Path of the copy, its parent must exist
+     * @return Summary of the copy
+     * @throws IOException If the source cannot be read or the copy would be inside the source
+     */
+    public Summary copy(Path source, Path target) throws IOException {
+        Path from = source.toAbsolutePath().normalize();
+        Path to = target.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(from, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (to.equals(from) || (attributes.isDirectory() && to.startsWith(from))) {
+            throw new IOException("Cannot copy " + from + " into itself");
+        }
+        if (!attributes.isDirectory()) {
+            List<String> errors = new ArrayList<>();
+            long[] outcome = {0, 0, 0};
+            copyOne(from, to, attributes, outcome, errors);
+            return new Summary(outcome[0], 0, bytes.get(), outcome[1], outcome[2], false, errors);
+        }
+        return copyTree(from, to);
+    }
+
+    /**
+     * Moves a file or a directory tree, renaming it when source and target
+     * are on the same file system
+     * @param source File or directory to be moved
+     * @param target New path, its parent must exist
+     * @return Summary of the move
+     * @throws IOException If the source cannot be read, or the target exists and cannot be replaced
+     */
+    public Summary move(Path source, Path target) throws IOException {
+        Path from = source.toAbsolutePath().normalize();
+        Path to = target.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(from, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (attributes.isDirectory() && to.startsWith(from)) {
+            throw new IOException("Cannot move " + from + " into itself");
+        }
+        try {
+            if ((!overwrite || attributes.isDirectory()) && Files.exists(to, LinkOption.NOFOLLOW_LINKS)) {
+                throw new FileAlreadyExistsException(to.toString());
+            }
+            batch.rename(from, to);
+            files.incrementAndGet();
+            return new Summary(1, 0, 0, 0, 0, true, List.of());
+        } catch (AtomicMoveNotSupportedException e) {
+            // Different file systems, copy and remove the source
+        }
+
+        Summary copied = copy(from, to);
+        if (copied.failed() == 0) {
+            delete(from, attributes.isDirectory());
+        }
+        return copied;
+    }
+
+    /**
+     * Copies a tree, directories are created as they are found and files are
+     * copied on the pool while the byte budget allows it
+     */
+    private Summary copyTree(Path from, Path to) {
+        int budgetUnits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, budget >> 10));
+        Semaphore inFlight = new Semaphore(budgetUnits);
+        Semaphore slots = new Semaphore(concurrency);
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "personalDB-transfer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong directories = new AtomicLong();
+        long[] outcome = {0, 0, 0};
+        List<Path[]> directoryTimes = Collections.synchronizedList(new ArrayList<>());
+
+        try {
+            createDirectory(from, to, directories, directoryTimes, errors, outcome);
+            new TreeWalker(from, false).walk((path, attributes) -> {
+                Path copy = to.resolve(from.relativize(path).toString());
+                if (attributes.isDirectory()) {
+                    return createDirectory(path, copy, directories, directoryTimes, errors, outcome);
+                }
+                int units = (int) Math.min(budgetUnits, Math.max(1, attributes.size() >> 10));
+                slots.acquireUninterruptibly();
+                inFlight.acquireUninterruptibly(units);
+                pool.execute(() -> {
+                    try {
+                        copyOne(path, copy, attributes, outcome, errors);
+                    } finally {
+                        inFlight.release(units);
+                        slots.release();
+                    }
+                });
+                return true;
+            });
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Directories get their times last, copying into them changed them
+        directoryTimes.sort(Comparator.comparingInt((Path[] pair) -> pair[1].getNameCount()).reversed());
+        for (Path[] pair : directoryTimes) {
+            try {
+                Files.setLastModifiedTime(pair[1], Files.getLastModifiedTime(pair[0], LinkOption.NOFOLLOW_LINKS));
+            } catch (IOException e) {
+                // The times are a courtesy, the content was copied
+            }
+        }
+        synchronized (outcome) {
+            return new Summary(outcome[0], directories.get(), bytes.get(), outcome[1], outcome[2], false,
+                    List.copyOf(errors));
+        }
+    }
+
+    private boolean createDirectory(Path source, Path copy, AtomicLong directories, List<Path[]> directoryTimes,
+                                    List<String> errors, long[] outcome) {
+        try {
+            batch.makeDirectory(copy);
+            directories.incrementAndGet();
+            directoryTimes.add(new Path[] {source, copy});
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            if (Files.isDirectory(copy, LinkOption.NOFOLLOW_LINKS)) {
+                return true;
+            }
+            fail(copy, "exists and is not a directory", outcome, errors);
+        } catch (IOException | SecurityException e) {
+            fail(copy, describe(e), outcome, errors);
+        }
+        return false;
+    }
+
+    /**
+     * Copies a single file through its .part file, resuming a previous copy
+     * @param outcome Files copied, skipped and failed, updated under its own lock
+     */
+    private void copyOne(Path source, Path target, BasicFileAttributes attributes, long[] outcome, List<String> errors) {
+        try {
+            if (!attributes.isRegularFile()) {
+                if (attributes.isSymbolicLink()) {
+                    if (Files.isSymbolicLink(target) && Files.readSymbolicLink(target).equals(Files.readSymbolicLink(source))) {
+                        count(outcome, 1);
+                    } else if (!overwrite && Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+                        fail(target, "already exists", outcome, errors);
+                    } else {
+                        Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+                        Files.deleteIfExists(part);
+                        Files.copy(source, part, LinkOption.NOFOLLOW_LINKS);
+                        batch.replaceFile(target, part);
+                        count(outcome, 0);
+                    }
+                } else {
+                    fail(target, "not a regular file", outcome, errors);
+                }
+                return;
+            }
+            long size = attributes.size();
+            FileTime modified = attributes.lastModifiedTime();
+            try {
+                BasicFileAttributes existing = Files.readAttributes(target, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (existing.isRegularFile() && existing.size() == size && existing.lastModifiedTime().equals(modified)) {
+                    count(outcome, 1);
+                    return;
+                }
+                if (!overwrite) {
+                    fail(target, "already exists", outcome, errors);
+                    return;
+                }
+            } catch (IOException e) {
+                // No target yet
+            }
+
+            Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+            long position = resumePosition(part, modified, size);
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                out.truncate(position);
+                while (position < size) {
+                    long sent = in.transferTo(position, size - position, out.position(position));
+                    if (sent <= 0) {
+                        throw new IOException("Source shrank while it was copied");
+                    }
+                    position += sent;
+                    bytes.addAndGet(sent);
+                    Metrics.add(Metrics.Counter.BYTES_READ, sent);
+                    Metrics.add(Metrics.Counter.BYTES_WRITTEN, sent);
+                }
+                out.force(false);
+            }
+            Files.setLastModifiedTime(part, modified);
+            batch.replaceFile(target, part);
+            files.incrementAndGet();
+            count(outcome, 0);
+        } catch (IOException | SecurityException e) {
+            fail(target, describe(e), outcome, errors);
+        }
+    }
+
+    /**
+     * Decides where a copy into a .part file starts. A .part file left by an
+     * earlier copy is continued if it was written after the source was last
+     * modified and is not larger than the source, otherwise it is restarted.
+     * @return Number of bytes of the .part file that are kept
+     */
+    private static long resumePosition(Path part, FileTime sourceModified, long size) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(part, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (attributes.isRegularFile() && attributes.size() <= size
+                    && attributes.lastModifiedTime().compareTo(sourceModified) >= 0) {
+                return attributes.size();
+            }
+        } catch (IOException e) {
+            // No earlier copy
+        }
+        return 0;
+    }
+
+    /**
+     * Removes the source of a move once it was copied, its files are moved
+     * to the trash of the journal
+     */
+    private void delete(Path source, boolean directory) throws IOException {
+        if (!directory) {
+            batch.deleteFile(source);
+            return;
+        }
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(source)) {
+            stream.forEach(paths::add);
+        }
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            Path path = paths.get(i);
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                batch.removeDirectory(path);
+            } else {
+                batch.deleteFile(path);
+            }
+        }
+    }
+
+    private static void count(long[] outcome, int index) {
+        synchronized (outcome) {
+            outcome[index]++;
+        }
+    }
+
+    private static void fail(Path path, String error, long[] outcome, List<String> errors) {
+        synchronized (outcome) {
+            outcome[2]++;
+        }
+        if (errors.size() < MAX_KEPT_ERRORS) {
+            errors.add(path + ": " + error);
+        }
+    }
+
+    private static String describe(Exception e) {
+        if (e instanceof NoSuchFileException) {
+            return "does not exist";
+        } else if (e instanceof FileAlreadyExistsException) {
+            return "already exists";
+        } else if (e instanceof AccessDeniedException || e instanceof SecurityException) {
+            return "access denied";
+        }
+        return e.getMessage() == null ? e.toString() : e.getMessage();
+    }
+
+}
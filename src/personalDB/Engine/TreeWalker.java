@@ -0,0 +1,200 @@
+/**
+ * Parallel directory tree walker
+ * Every directory is listed by its own fork-join task, so idle workers steal
+ * subdirectories from busy ones and a large tree is spread across all cores
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Engine;
+
+import personalDB.Metrics.Metrics;
+import personalDB.Metrics.WalkEvent;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Objects of this class walk every entry under a root directory using NIO
+ * directory streams. Entries are handed to a {@link Visitor} from several
+ * threads at once, in no particular order. The workspace directory of the
+ * program is never walked.
+ */
+public class TreeWalker {
+    private final Path root;
+    private final boolean followLinks;
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private final Set<Object> visitedDirectories = ConcurrentHashMap.newKeySet();
+    private final LongAdder scanned = new LongAdder();
+
+    /**
+     * Receives the entries found by the walker
+     */
+    public interface Visitor {
+        /**
+         * Called once for every entry found under the root, possibly from
+         * several threads at the same time
+         * @param path Path of the entry
+         * @param attributes Attributes of the entry
+         * @return False if the entry is a directory whose content should not be walked
+         */
+        boolean visit(Path path, BasicFileAttributes attributes);
+    }
+
+    /**
+     * Constructor
+     * @param root Directory where the walk starts
+     * @param followLinks True if symbolic links to directories should be walked
+     */
+    public TreeWalker(Path root, boolean followLinks) {
+        this.root = root;
+        this.followLinks = followLinks;
+    }
+
+    /**
+     * Walks the whole tree, returning only when every directory was visited
+     * or the walk was cancelled
+     * @param visitor Visitor that receives every entry
+     */
+    public void walk(Visitor visitor) {
+        if (followLinks) {
+            try {
+                firstVisit(root, Files.readAttributes(root, BasicFileAttributes.class));
+            } catch (IOException e) {
+                return;
+            }
+        }
+        WalkEvent event = new WalkEvent();
+        event.begin();
+        ForkJoinPool.commonPool().invoke(new DirectoryTask(root, visitor));
+        if (event.shouldCommit()) {
+            event.root = root.toString();
+            event.entries = scanned.sum();
+            event.commit();
+        }
+    }
+
+
+    /**
+     * Stops the walk, directories not yet listed are skipped
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    /**
+     * @return True if the walk was cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * Reads the attributes of an entry, following symbolic links if requested.
+     * Broken links are reported as links instead of failing.
+     * @param entry Path of the entry
+     * @return Attributes of the entry or null if they could not be read
+     */
+    private BasicFileAttributes readAttributes(Path entry) {
+        try {
+            if (followLinks) {
+                try {
+                    return Files.readAttributes(entry, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                }
+            }
+            return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException | SecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Records a directory as visited, only needed when links are followed since
+     * that is the only way a directory can be reached twice.
+     * @param directory Path of the directory
+     * @param attributes Attributes of the directory
+     * @return True if the directory was not visited before
+     */
+    private boolean firstVisit(Path directory, BasicFileAttributes attributes) {
+        if (!followLinks) {
+            return true;
+        }
+        Object key = attributes.fileKey();
+        if (key == null) {
+            try {
+                key = directory.toRealPath();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return visitedDirectories.add(key);
+    }
+
+    /**
+     * Lists a single directory, forking a new task for each subdirectory
+     */
+    private class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Path directory;
+        private final Visitor visitor;
+
+        DirectoryTask(Path directory, Visitor visitor) {
+            this.directory = directory;
+            this.visitor = visitor;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled.get()) {
+                return;
+            }
+            List<DirectoryTask> subtasks = new ArrayList<>();
+            long entries = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    if (cancelled.get()) {
+                        break;
+                    }
+                    entries++;
+                    if (Workspace.isWorkspace(entry)) {
+                        continue;
+                    }
+                    BasicFileAttributes attributes = readAttributes(entry);
+                    if (attributes == null) {
+                        continue;
+                    }
+                    boolean descend = visitor.visit(entry, attributes);
+                    if (descend && attributes.isDirectory() && firstVisit(entry, attributes)) {
+                        DirectoryTask subtask = new DirectoryTask(entry, visitor);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException | SecurityException e) {
+                // Unreadable directories are skipped, the rest of the tree is still walked
+            }
+            scanned.add(entries);
+            Metrics.add(Metrics.Counter.ENTRIES_SCANNED, entries);
+            for (DirectoryTask subtask : subtasks) {
+                subtask.join();
+            }
+        }
+    }
+
+}
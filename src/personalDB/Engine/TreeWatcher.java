@@ -0,0 +1,373 @@
+/**
+ * Background watcher of directory trees
+ * Turns the events of a WatchService into batches of changes, so indexes
+ * can be kept up to date without walking the tree again
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Objects of this class watch every directory under a root on a daemon thread.
+ * Bursts of events are coalesced per path and handed to the listeners once the
+ * tree has been quiet for a moment, or when a batch grows too large or too old.
+ * Lost events (OVERFLOW) and new directories become a rescan of only the
+ * directory they belong to. A directory that cannot be registered, e.g. once
+ * the limit of watches is reached, makes the watcher degraded: it keeps
+ * running for the rest of the tree but can no longer vouch for all of it.
+ * {@link #sync()} delivers whatever is queued at once, for readers that
+ * cannot wait for the tree to be quiet.
+ */
+public class TreeWatcher implements Closeable {
+    private static final long QUIET_MILLIS = 200;
+    private static final long MAX_DELAY_MILLIS = 2000;
+    private static final int MAX_BATCH = 10_000;
+    private static final Map<Path, TreeWatcher> watchers = new ConcurrentHashMap<>();
+
+    private final Path root;
+    private final WatchService service;
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Thread thread;
+    // Changes not yet delivered, by path, guarded by its own lock
+    private final Map<Path, Kind> pending = new LinkedHashMap<>();
+    private long batchStart = 0;
+    private volatile boolean running = true;
+    private volatile boolean degraded = false;
+
+    /**
+     * Kinds of change reported to listeners
+     */
+    public enum Kind {
+        CREATED, MODIFIED, DELETED, RESCAN
+    }
+
+    /**
+     * A change to a single path, RESCAN means anything under that directory
+     * might have changed
+     * @param path Path that changed
+     * @param kind What happened to the path
+     */
+    public record Change(Path path, Kind kind) {}
+
+    /**
+     * Receives batches of changes
+     */
+    public interface Listener {
+        /**
+         * Called with every change since the previous batch, from the
+         * watcher thread or from a thread calling {@link #sync()}
+         * @param changes Changes, at most one per path
+         */
+        void onChanges(List<Change> changes);
+    }
+
+    /**
+     * Constructor, registers every directory under the root and starts watching
+     * @param root Root of the watched tree
+     * @throws IOException If the watch service cannot be created or the root registered
+     */
+    public TreeWatcher(Path root) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.service = this.root.getFileSystem().newWatchService();
+        registerTree(this.root);
+        this.thread = new Thread(this::run, "personalDB-watcher " + this.root);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Returns the watcher of a root, starting one if that root is not watched yet
+     * @param root Root of the watched tree
+     * @return Watcher of that root
+     * @throws IOException If a new watcher could not be started
+     */
+    public static TreeWatcher watch(Path root) throws IOException {
+        Path normalized = root.toAbsolutePath().normalize();
+        try {
+            // Atomic per root, so callers racing to watch the same root share a single watcher
+            return watchers.compute(normalized, (path, watcher) -> {
+                if (watcher != null && watcher.isRunning()) {
+                    return watcher;
+                }
+                try {
+                    return new TreeWatcher(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Checks if a root is being watched
+     * @param root Root of the tree
+     * @return True if there is a running watcher for that root
+     */
+    public static boolean isWatching(Path root) {
+        TreeWatcher watcher = watchers.get(root.toAbsolutePath().normalize());
+        return watcher != null && watcher.isRunning();
+    }
+
+    /**
+     * Checks if every directory under a root is being watched, so no change
+     * under it can go unnoticed
+     * @param root Root of the tree
+     * @return True if there is a running watcher for that root that could register every directory
+     */
+    public static boolean isWatchingWholeTree(Path root) {
+        TreeWatcher watcher = watchers.get(root.toAbsolutePath().normalize());
+        return watcher != null && watcher.isRunning() && !watcher.isDegraded();
+    }
+
+    /**
+     * Stops the watcher of a root, if there is one
+     * @param root Root of the tree
+     */
+    public static void stop(Path root) {
+        TreeWatcher watcher = watchers.remove(root.toAbsolutePath().normalize());
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    /**
+     * @return Every running watcher
+     */
+    public static List<TreeWatcher> active() {
+        List<TreeWatcher> result = new ArrayList<>();
+        for (TreeWatcher watcher : watchers.values()) {
+            if (watcher.isRunning()) {
+                result.add(watcher);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param listener Listener that will receive the next batches
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return Root of the watched tree
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @return True until the watcher is closed or fails
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return True once some directory of the tree could not be registered,
+     * changes under it are then missed
+     */
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    /**
+     * Delivers every change the watch service has queued and every change
+     * waiting for the tree to be quiet, so once this returns the listeners
+     * have seen every event the operating system reported so far
+     * @return True if the watcher is still running
+     */
+    public boolean sync() {
+        synchronized (pending) {
+            try {
+                for (WatchKey key = service.poll(); key != null; key = service.poll()) {
+                    collect(key);
+                }
+            } catch (ClosedWatchServiceException e) {
+                return false;
+            }
+            if (!pending.isEmpty()) {
+                flush();
+            }
+        }
+        return running;
+    }
+
+    /**
+     * Stops watching, changes not yet delivered are dropped
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            service.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+
+    /**
+     * Registers a directory and every directory under it
+     * @param directory Root of the subtree
+     */
+    private void registerTree(Path directory) throws IOException {
+        register(directory);
+        new TreeWalker(directory, false).walk((path, attributes) -> {
+            if (attributes.isDirectory()) {
+                try {
+                    register(path);
+                } catch (IOException e) {
+                    degraded = true;
+                    System.out.println("Could not watch " + path + "\n" + e);
+                }
+            }
+            return true;
+        });
+    }
+
+    private void register(Path directory) throws IOException {
+        WatchKey key = directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        keys.put(key, directory);
+    }
+
+    /**
+     * Main loop of the watcher thread
+     */
+    private void run() {
+        try {
+            while (running) {
+                boolean waiting;
+                synchronized (pending) {
+                    waiting = !pending.isEmpty();
+                }
+                WatchKey key = waiting ? service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS) : service.take();
+                synchronized (pending) {
+                    if (key != null) {
+                        collect(key);
+                    }
+                    if (!pending.isEmpty() && (key == null || pending.size() >= MAX_BATCH
+                            || System.currentTimeMillis() - batchStart >= MAX_DELAY_MILLIS)) {
+                        flush();
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed, the loop ends
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * Moves the events of a key into the pending batch, called while
+     * holding its lock
+     * @param key Signalled key
+     */
+    private void collect(WatchKey key) {
+        if (pending.isEmpty()) {
+            batchStart = System.currentTimeMillis();
+        }
+        Path directory = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (directory == null) {
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                coalesce(pending, directory, Kind.RESCAN);
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    // Whatever was created inside before the registration has no events of its own
+                    try {
+                        registerTree(path);
+                    } catch (IOException e) {
+                        degraded = true;
+                        System.out.println("Could not watch " + path + "\n" + e);
+                    }
+                    coalesce(pending, path, Kind.RESCAN);
+                } else {
+                    coalesce(pending, path, Kind.CREATED);
+                }
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                coalesce(pending, path, Kind.DELETED);
+            } else {
+                coalesce(pending, path, Kind.MODIFIED);
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+    }
+
+    /**
+     * Merges a new event with the one already pending for the same path,
+     * keeping only the net effect
+     * @param pending Changes not yet delivered, by path
+     * @param path Path of the event
+     * @param kind Kind of the event
+     */
+    private static void coalesce(Map<Path, Kind> pending, Path path, Kind kind) {
+        Kind previous = pending.get(path);
+        if (previous == null || previous == kind) {
+            pending.put(path, kind);
+            return;
+        }
+        if (previous == Kind.RESCAN || kind == Kind.RESCAN) {
+            pending.put(path, Kind.RESCAN);
+        } else if (previous == Kind.CREATED && kind == Kind.DELETED) {
+            pending.remove(path);
+        } else if (previous == Kind.DELETED) {
+            pending.put(path, Kind.MODIFIED);
+        } else if (kind == Kind.DELETED) {
+            pending.put(path, Kind.DELETED);
+        }
+    }
+
+    /**
+     * Delivers the pending batch to every listener and empties it, called
+     * while holding its lock
+     */
+    private void flush() {
+        List<Change> changes = new ArrayList<>(pending.size());
+        for (Map.Entry<Path, Kind> entry : pending.entrySet()) {
+            changes.add(new Change(entry.getKey(), entry.getValue()));
+        }
+        pending.clear();
+        for (Listener listener : listeners) {
+            try {
+                listener.onChanges(changes);
+            } catch (RuntimeException e) {
+                System.out.println("Watcher listener failed.\n" + e);
+            }
+        }
+    }
+
+}
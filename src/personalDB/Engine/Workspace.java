@@ -0,0 +1,91 @@
+/**
+ * Location of the data kept by the program between sessions
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Engine;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Everything the program stores (indexes, objects, journals...) lives under a
+ * single .personaldb directory in the users' home, or in the directory given by
+ * the personaldb.home system property
+ */
+public class Workspace {
+    public static final String DIRECTORY_NAME = ".personaldb";
+
+    private Workspace() {}
+
+    /**
+     * @return Path of the workspace directory, it might not exist yet
+     */
+    public static Path home() {
+        String home = System.getProperty("personaldb.home");
+        if (home != null) {
+            return Paths.get(home).toAbsolutePath();
+        }
+        return Paths.get(System.getProperty("user.home"), DIRECTORY_NAME).toAbsolutePath();
+    }
+
+    /**
+     * Returns a directory inside the workspace, creating it if needed
+     * @param name Name of the directory
+     * @return Path of the directory
+     * @throws IOException If the directory could not be created
+     */
+    public static Path directory(String name) throws IOException {
+        return Files.createDirectories(home().resolve(name));
+    }
+
+    /**
+     * Checks if a path is the workspace itself, walks skip it so the program
+     * never indexes or searches its own data
+     * @param path Path to be checked
+     * @return True if the path is named like a workspace directory
+     */
+    public static boolean isWorkspace(Path path) {
+        Path name = path.getFileName();
+        return name != null && name.toString().equals(DIRECTORY_NAME);
+    }
+
+    /**
+     * Returns a short key that identifies a root directory, used to name the
+     * files that hold data about that root
+     * @param root Root directory
+     * @return 16 hexadecimal characters
+     */
+    public static String rootKey(Path root) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(root.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+            return toHex(hash).substring(0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Converts bytes to a lowercase hexadecimal string
+     * @param bytes Bytes to convert
+     * @return Hexadecimal representation
+     */
+    public static String toHex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            result[i * 2] = digits[(bytes[i] >> 4) & 0xF];
+            result[i * 2 + 1] = digits[bytes[i] & 0xF];
+        }
+        return new String(result);
+    }
+
+}
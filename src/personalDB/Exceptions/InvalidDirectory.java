@@ -9,6 +9,7 @@
 package personalDB.Exceptions;
 
 public class InvalidDirectory extends Exception {
+    private static final long serialVersionUID = 1L;
 
     public InvalidDirectory (String errorMessage) {
         super(errorMessage);
@@ -8,6 +8,7 @@
 package personalDB.Exceptions;
 
 public class InvalidInputException extends Exception {
+    private static final long serialVersionUID = 1L;
 
     public InvalidInputException(String errorMessage) {
         super(errorMessage);
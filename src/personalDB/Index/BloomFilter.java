@@ -0,0 +1,146 @@
+/**
+ * Bloom filter of 64 bit keys
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Objects of this class answer whether a key might have been added, with no
+ * false negatives and a false positive rate set by the bits given to every
+ * key: at most about 5% with 6 bits per key, 1% with 10 and 0.1% with 15.
+ * The number of bits is rounded up to a power of two, which lowers the rate
+ * further, so a probe is a mask instead of a division, and the k probes of a
+ * key are derived from its two halves by double hashing, so a key is hashed
+ * once whatever k is.
+ */
+public final class BloomFilter {
+    public static final int MAX_HASHES = 16;
+    private static final int MIN_BITS = 64;
+
+    private final long[] bits;
+    private final long mask;
+    private final int hashes;
+
+    private BloomFilter(long[] bits, int hashes) {
+        this.bits = bits;
+        this.mask = (long) bits.length * 64 - 1;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Creates an empty filter
+     * @param keys Number of keys that will be added
+     * @param bitsPerKey Bits given to every key, more bits lower the false positive rate
+     * @return Empty filter
+     */
+    public static BloomFilter create(int keys, int bitsPerKey) {
+        long wanted = Math.max(MIN_BITS, (long) Math.max(keys, 1) * Math.max(bitsPerKey, 1));
+        long size = Math.min(Long.highestOneBit(wanted - 1) << 1, 1L << 36);
+        int hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(bitsPerKey * Math.log(2))));
+        return new BloomFilter(new long[(int) (size / 64)], hashes);
+    }
+
+    /**
+     * Hashes a string into a key, mixing every character so similar names
+     * give unrelated keys
+     * @param text String to be hashed
+     * @return Key of the string
+     */
+    public static long key(String text) {
+        long hash = 0x9E3779B97F4A7C15L ^ text.length();
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * 0xBF58476D1CE4E5B9L;
+            hash ^= hash >>> 29;
+        }
+        hash = (hash ^ (hash >>> 32)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * @param key Key to be added
+     */
+    public void add(long key) {
+        long probe = key;
+        long step = Long.rotateLeft(key, 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = probe & mask;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+            probe += step;
+        }
+    }
+
+    /**
+     * @param key Key to be checked
+     * @return False if the key was certainly never added, true if it might have been
+     */
+    public boolean mightContain(long key) {
+        long probe = key;
+        long step = Long.rotateLeft(key, 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = probe & mask;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+            probe += step;
+        }
+        return true;
+    }
+
+    /**
+     * @return Size of the filter in bytes
+     */
+    public int sizeInBytes() {
+        return bits.length * 8;
+    }
+
+    /**
+     * Estimates the false positive rate from the share of bits set
+     * @return Probability that a key never added is reported as present
+     */
+    public double falsePositiveRate() {
+        long set = 0;
+        for (long word : bits) {
+            set += Long.bitCount(word);
+        }
+        return Math.pow((double) set / (bits.length * 64L), hashes);
+    }
+
+    /**
+     * @param out Output
+     * @throws IOException If the output fails
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(hashes);
+        Encoding.writeVarInt(out, bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Reads a filter written by {@link #write(DataOutput)}
+     * @param in Input
+     * @return Filter read
+     * @throws IOException If the input fails or does not hold a filter
+     */
+    public static BloomFilter read(DataInput in) throws IOException {
+        int hashes = in.readUnsignedByte();
+        int words = Encoding.readVarInt(in);
+        if (hashes < 1 || hashes > MAX_HASHES || words < 1 || Integer.bitCount(words) != 1) {
+            throw new IOException("Not a Bloom filter");
+        }
+        long[] bits = new long[words];
+        for (int i = 0; i < words; i++) {
+            bits[i] = in.readLong();
+        }
+        return new BloomFilter(bits, hashes);
+    }
+
+}
@@ -0,0 +1,550 @@
+/**
+ * Metadata catalog of a directory tree
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Index;
+
+import personalDB.Engine.TreeWalker;
+import personalDB.Engine.Workspace;
+import personalDB.Storage.BPlusTree;
+import personalDB.Storage.ContentHasher;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Objects of this class hold the path, size, modification time, type and,
+ * once computed, the content hash of every entry under a root directory.
+ * Entries are kept in three {@link BPlusTree}s in the workspace: one by path,
+ * which answers lookups and scans of a subtree, and two secondary ones by
+ * size and by modification time that hold only the path of each entry, for
+ * range scans on those values. Queries never read the disk being cataloged.
+ * A catalog is a snapshot, {@link #build(Path, boolean)} walks the tree again
+ * and rebuilds it, keeping the hashes of files whose size and modification
+ * time did not change.
+ */
+public class Catalog implements Closeable {
+    private static final int CACHED_PAGES = 2048;
+    private static final Map<Path, Catalog> opened = new ConcurrentHashMap<>();
+
+    private final Path root;
+    private final long builtAt;
+    private final long rootModified;
+    private final BPlusTree byPath;
+    private final BPlusTree bySize;
+    private final BPlusTree byModified;
+
+    /**
+     * Kind of a cataloged entry
+     */
+    public enum Type {
+        FILE, DIRECTORY, LINK, OTHER
+    }
+
+    /**
+     * A cataloged entry
+     * @param path Path relative to the root of the catalog, separated by /
+     * @param size Size in bytes
+     * @param modified Last modification time in milliseconds
+     * @param type Kind of entry
+     * @param hash SHA-256 of the content, or null if it was not computed
+     */
+    public record Entry(String path, long size, long modified, Type type, byte[] hash) {
+
+        /**
+         * @return Hash in hexadecimal, or null if it was not computed
+         */
+        public String hashHex() {
+            return hash == null ? null : Workspace.toHex(hash);
+        }
+    }
+
+    /**
+     * Receives the entries of a scan
+     */
+    public interface EntryVisitor {
+        /**
+         * @param entry Entry found
+         * @return False to stop the scan
+         */
+        boolean visit(Entry entry);
+    }
+
+    /**
+     * Totals of a build
+     * @param entries Number of entries cataloged
+     * @param hashed Number of files hashed during the build
+     * @param reused Number of hashes kept from the previous catalog
+     * @param skipped Number of entries whose path is too long to be cataloged
+     * @param failed Number of files that could not be hashed and were cataloged without a hash
+     */
+    public record BuildResult(long entries, long hashed, long reused, long skipped, long failed) {}
+
+    private Catalog(Path root) throws IOException {
+        this.root = root;
+        this.byPath = new BPlusTree(treeFile(root, "paths"), CACHED_PAGES);
+        try {
+            this.bySize = new BPlusTree(treeFile(root, "sizes"), CACHED_PAGES / 4);
+            this.byModified = new BPlusTree(treeFile(root, "mtimes"), CACHED_PAGES / 4);
+        } catch (IOException e) {
+            byPath.close();
+            throw e;
+        }
+        byte[] metadata = byPath.getMetadata();
+        ByteBuffer header = ByteBuffer.wrap(metadata);
+        this.builtAt = metadata.length >= Long.BYTES ? header.getLong() : 0;
+        this.rootModified = metadata.length >= 2 * Long.BYTES ? header.getLong() : -1;
+    }
+
+    /**
+     * Walks a directory tree and replaces its catalog
+     * @param root Root directory of the catalog
+     * @param hash True to compute the hash of every file whose hash is not known
+     * @return Totals of the build
+     * @throws IOException If the tree cannot be walked or the catalog written
+     */
+    public static BuildResult build(Path root, boolean hash) throws IOException {
+        Path normalized = root.toAbsolutePath().normalize();
+        long builtAt = System.currentTimeMillis();
+        long rootModified = Files.getLastModifiedTime(normalized, LinkOption.NOFOLLOW_LINKS).toMillis();
+        ConcurrentLinkedQueue<Entry> found = new ConcurrentLinkedQueue<>();
+        new TreeWalker(normalized, false).walk((path, attributes) -> {
+            found.add(new Entry(key(normalized, path), attributes.size(), attributes.lastModifiedTime().toMillis(),
+                    typeOf(attributes), null));
+            return true;
+        });
+
+        List<Entry> entries = new ArrayList<>(found.size());
+        long skipped = 0;
+        for (Entry entry : found) {
+            if (encodeKey(entry.path()).length + 64 > BPlusTree.MAX_ENTRY_SIZE) {
+                skipped++;
+            } else {
+                entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparing(entry -> encodeKey(entry.path()), BPlusTree::compare));
+
+        long reused = 0;
+        Catalog previous;
+        try {
+            previous = open(normalized);
+        } catch (IOException e) {
+            // A catalog that was not closed cleanly is rebuilt from scratch
+            previous = null;
+        }
+        if (previous != null) {
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                Entry old = entry.type() == Type.FILE ? previous.get(entry.path()) : null;
+                if (old != null && old.hash() != null && old.size() == entry.size() && old.modified() == entry.modified()) {
+                    entries.set(i, new Entry(entry.path(), entry.size(), entry.modified(), entry.type(), old.hash()));
+                    reused++;
+                }
+            }
+            previous.close();
+        }
+
+        long hashed = 0;
+        long failed = 0;
+        if (hash) {
+            List<Integer> missing = new ArrayList<>();
+            List<Path> files = new ArrayList<>();
+            for (int i = 0; i < entries.size(); i++) {
+                if (entries.get(i).type() == Type.FILE && entries.get(i).hash() == null) {
+                    missing.add(i);
+                    files.add(resolve(normalized, entries.get(i).path()));
+                }
+            }
+            List<String> hashes;
+            try {
+                hashes = ContentHasher.hashAll(files);
+            } catch (IOException | RuntimeException e) {
+                // A file that vanished or cannot be read keeps no hash instead of aborting the build
+                hashes = new ArrayList<>(files.size());
+                for (Path file : files) {
+                    try {
+                        hashes.add(ContentHasher.hash(file));
+                    } catch (IOException | SecurityException failure) {
+                        failed++;
+                        hashes.add(null);
+                    }
+                }
+            }
+            for (int i = 0; i < missing.size(); i++) {
+                if (hashes.get(i) == null) {
+                    continue;
+                }
+                Entry entry = entries.get(missing.get(i));
+                entries.set(missing.get(i), new Entry(entry.path(), entry.size(), entry.modified(), entry.type(),
+                        HexFormat.of().parseHex(hashes.get(i))));
+            }
+            hashed = missing.size() - failed;
+        }
+
+        Files.createDirectories(treeFile(normalized, "paths").getParent());
+        byte[] metadata = ByteBuffer.allocate(2 * Long.BYTES).putLong(builtAt).putLong(rootModified).array();
+        writeTree(normalized, "paths", metadata, entries.stream()
+                .map(entry -> Map.entry(encodeKey(entry.path()), encodeValue(entry))).iterator());
+        entries.sort(Comparator.comparingLong(Entry::size).thenComparing(entry -> encodeKey(entry.path()), BPlusTree::compare));
+        writeTree(normalized, "sizes", metadata, entries.stream()
+                .map(entry -> Map.entry(secondaryKey(entry.size(), entry.path()), new byte[0])).iterator());
+        entries.sort(Comparator.comparingLong(Entry::modified).thenComparing(entry -> encodeKey(entry.path()), BPlusTree::compare));
+        writeTree(normalized, "mtimes", metadata, entries.stream()
+                .map(entry -> Map.entry(secondaryKey(entry.modified(), entry.path()), new byte[0])).iterator());
+        return new BuildResult(entries.size(), hashed, reused, skipped, failed);
+    }
+
+    /**
+     * Returns the catalog that covers a directory, which is the catalog of
+     * that directory or of its closest cataloged parent
+     * @param directory Directory to be queried
+     * @return Catalog covering the directory or null if there is none
+     */
+    public static Catalog forDirectory(Path directory) {
+        for (Path p = directory.toAbsolutePath().normalize(); p != null; p = p.getParent()) {
+            try {
+                Catalog catalog = open(p);
+                if (catalog != null) {
+                    return catalog;
+                }
+            } catch (IOException e) {
+                System.out.println("Could not read the catalog of " + p + "\n" + e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the catalog of a root directory
+     * @param root Root directory of the catalog
+     * @return True if there was a catalog to remove
+     * @throws IOException If the catalog cannot be deleted
+     */
+    public static boolean drop(Path root) throws IOException {
+        Path normalized = root.toAbsolutePath().normalize();
+        Catalog catalog = opened.remove(normalized);
+        if (catalog != null) {
+            catalog.close();
+        }
+        Files.deleteIfExists(treeFile(normalized, "sizes"));
+        Files.deleteIfExists(treeFile(normalized, "mtimes"));
+        try {
+            Files.delete(treeFile(normalized, "paths"));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Looks up a single entry
+     * @param path Path relative to the root, separated by /
+     * @return Entry or null if the path is not cataloged
+     * @throws IOException If the catalog cannot be read
+     */
+    public Entry get(String path) throws IOException {
+        byte[] value = byPath.get(encodeKey(path));
+        return value == null ? null : decodeValue(path, value);
+    }
+
+    /**
+     * Looks up a single entry
+     * @param path Path under the root
+     * @return Entry or null if the path is not cataloged
+     * @throws IOException If the catalog cannot be read
+     */
+    public Entry get(Path path) throws IOException {
+        return get(key(root, path.toAbsolutePath().normalize()));
+    }
+
+    /**
+     * Visits the entries whose path starts with a prefix, in path order
+     * @param prefix Prefix of the relative path, e.g. docs/ for everything under docs
+     * @param visitor Receives the entries
+     * @throws IOException If the catalog cannot be read
+     */
+    public void scanPrefix(String prefix, EntryVisitor visitor) throws IOException {
+        byte[] from = encodeKey(prefix);
+        byte[] to = successor(from);
+        byPath.scan(from.length == 0 ? null : from, to, (key, value) ->
+                visitor.visit(decodeValue(new String(key, StandardCharsets.UTF_8), value)));
+    }
+
+    /**
+     * Visits the entries with a size in a range, in increasing size
+     * @param min Smallest size, inclusive
+     * @param max Largest size, inclusive
+     * @param visitor Receives the entries
+     * @throws IOException If the catalog cannot be read
+     */
+    public void scanSize(long min, long max, EntryVisitor visitor) throws IOException {
+        scanSecondary(bySize, min, max, visitor);
+    }
+
+    /**
+     * Visits the entries modified in a range of time, oldest first
+     * @param from Earliest modification time in milliseconds, inclusive
+     * @param to Latest modification time in milliseconds, inclusive
+     * @param visitor Receives the entries
+     * @throws IOException If the catalog cannot be read
+     */
+    public void scanModified(long from, long to, EntryVisitor visitor) throws IOException {
+        scanSecondary(byModified, from, to, visitor);
+    }
+
+    /**
+     * Checks if the entries under a directory still match the disk, which is
+     * the case while none of the cataloged directories under it was modified
+     * or removed. Files changed in place do not change their directory, so
+     * their size and modification time can still be out of date.
+     * @param prefix Relative path of the directory followed by /, or empty for the root
+     * @return True if no entry under the directory was added, removed or renamed since the catalog was built
+     * @throws IOException If the catalog cannot be read
+     */
+    public boolean isFresh(String prefix) throws IOException {
+        Map<String, Long> directories = new HashMap<>();
+        if (prefix.isEmpty()) {
+            directories.put("", rootModified);
+        } else {
+            Entry directory = get(prefix.substring(0, prefix.length() - 1));
+            if (directory == null || directory.type() != Type.DIRECTORY) {
+                return false;
+            }
+            directories.put(directory.path(), directory.modified());
+        }
+        scanPrefix(prefix, entry -> {
+            if (entry.type() == Type.DIRECTORY) {
+                directories.put(entry.path(), entry.modified());
+            }
+            return true;
+        });
+        return directories.entrySet().parallelStream().allMatch(entry -> {
+            try {
+                return Files.getLastModifiedTime(resolve(root, entry.getKey()), LinkOption.NOFOLLOW_LINKS)
+                        .toMillis() == entry.getValue();
+            } catch (IOException e) {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * @return Root directory of the catalog
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @return Time the catalog was built in milliseconds
+     */
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    /**
+     * @return Number of cataloged entries
+     */
+    public long size() {
+        return byPath.size();
+    }
+
+    /**
+     * Converts a path under the root to the relative form used by the catalog
+     * @param path Path under the root
+     * @return Relative path separated by /, empty for the root itself
+     */
+    public String relativize(Path path) {
+        return key(root, path.toAbsolutePath().normalize());
+    }
+
+    /**
+     * @return Share of page reads served from memory since the catalog was opened
+     */
+    public double cacheHitRatio() {
+        long hits = byPath.cacheHits() + bySize.cacheHits() + byModified.cacheHits();
+        long total = hits + byPath.cacheMisses() + bySize.cacheMisses() + byModified.cacheMisses();
+        return total == 0 ? 1 : (double) hits / total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        opened.remove(root, this);
+        try {
+            byPath.close();
+        } finally {
+            try {
+                bySize.close();
+            } finally {
+                byModified.close();
+            }
+        }
+    }
+
+    private void scanSecondary(BPlusTree tree, long min, long max, EntryVisitor visitor) throws IOException {
+        if (min > max) {
+            return;
+        }
+        byte[] from = ByteBuffer.allocate(Long.BYTES).putLong(min ^ Long.MIN_VALUE).array();
+        byte[] to = max == Long.MAX_VALUE ? null : ByteBuffer.allocate(Long.BYTES).putLong((max + 1) ^ Long.MIN_VALUE).array();
+        IOException[] failure = {null};
+        tree.scan(from, to, (key, value) -> {
+            String path = new String(key, Long.BYTES, key.length - Long.BYTES, StandardCharsets.UTF_8);
+            try {
+                Entry entry = get(path);
+                return entry == null || visitor.visit(entry);
+            } catch (IOException e) {
+                failure[0] = e;
+                return false;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /**
+     * Opens the saved catalog of a root, if there is one
+     */
+    private static Catalog open(Path root) throws IOException {
+        Catalog catalog = opened.get(root);
+        if (catalog != null) {
+            return catalog;
+        }
+        if (!Files.isRegularFile(treeFile(root, "paths"))) {
+            return null;
+        }
+        synchronized (opened) {
+            catalog = opened.get(root);
+            if (catalog == null) {
+                catalog = new Catalog(root);
+                opened.put(root, catalog);
+            }
+            return catalog;
+        }
+    }
+
+    /**
+     * Writes a new tree next to the current one and replaces it
+     */
+    private static void writeTree(Path root, String name, byte[] metadata,
+                                  Iterator<Map.Entry<byte[], byte[]>> entries) throws IOException {
+        Path file = treeFile(root, name);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(temp);
+        try (BPlusTree tree = new BPlusTree(temp, 16)) {
+            tree.bulkLoad(entries);
+            tree.setMetadata(metadata);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path treeFile(Path root, String name) {
+        return Workspace.home().resolve("catalog").resolve(Workspace.rootKey(root) + "." + name + ".db");
+    }
+
+    private static String key(Path root, Path path) {
+        String relative = root.relativize(path).toString();
+        return File.separatorChar == '/' ? relative : relative.replace(File.separatorChar, '/');
+    }
+
+    private static Path resolve(Path root, String key) {
+        return key.isEmpty() ? root : root.resolve(key.replace('/', File.separatorChar));
+    }
+
+    private static Type typeOf(BasicFileAttributes attributes) {
+        if (attributes.isRegularFile()) {
+            return Type.FILE;
+        } else if (attributes.isDirectory()) {
+            return Type.DIRECTORY;
+        } else if (attributes.isSymbolicLink()) {
+            return Type.LINK;
+        }
+        return Type.OTHER;
+    }
+
+    private static byte[] encodeKey(String path) {
+        return path.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Smallest key larger than every key starting with the prefix, or null if there is none
+     */
+    private static byte[] successor(byte[] prefix) {
+        byte[] next = Arrays.copyOf(prefix, prefix.length);
+        for (int i = next.length - 1; i >= 0; i--) {
+            if (next[i] != (byte) 0xFF) {
+                next[i]++;
+                return Arrays.copyOf(next, i + 1);
+            }
+        }
+        return null;
+    }
+
+    private static byte[] secondaryKey(long value, String path) {
+        byte[] encodedPath = encodeKey(path);
+        return ByteBuffer.allocate(Long.BYTES + encodedPath.length)
+                .putLong(value ^ Long.MIN_VALUE).put(encodedPath).array();
+    }
+
+    private static byte[] encodeValue(Entry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(entry.size());
+            out.writeLong(entry.modified());
+            out.writeByte(entry.type().ordinal());
+            out.writeByte(entry.hash() == null ? 0 : entry.hash().length);
+            if (entry.hash() != null) {
+                out.write(entry.hash());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Entry decodeValue(String path, byte[] value) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+            long size = in.readLong();
+            long modified = in.readLong();
+            Type type = Type.values()[in.readByte()];
+            byte[] hash = new byte[in.readByte()];
+            in.readFully(hash);
+            return new Entry(path, size, modified, type, hash.length == 0 ? null : hash);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+/**
+ * Helpers shared by the binary formats of the indexes
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable length integers and front coded strings
+ */
+public class Encoding {
+
+    private Encoding() {}
+
+    /**
+     * Writes a non negative integer using 7 bits per byte, small values take a single byte
+     * @param out Output
+     * @param value Value to write
+     * @throws IOException If the output fails
+     */
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads an integer written by {@link #writeVarInt(DataOutput, int)}
+     * @param in Input
+     * @return Value read
+     * @throws IOException If the input fails
+     */
+    public static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Reads an integer written by {@link #writeVarInt(DataOutput, int)} at the
+     * position of a buffer, moving the position past it
+     * @param in Buffer, often a memory mapped file
+     * @return Value read
+     */
+    public static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Writes a non negative long using 7 bits per byte, small values take a single byte
+     * @param out Output
+     * @param value Value to write
+     * @throws IOException If the output fails
+     */
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Reads a long written by {@link #writeVarLong(DataOutput, long)}
+     * @param in Input
+     * @return Value read
+     * @throws IOException If the input fails
+     */
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Writes a string as the length of the prefix it shares with the previous
+     * string followed by the rest of it. Sorted strings take much less space this way.
+     * @param out Output
+     * @param previous Previously written string
+     * @param current String to write
+     * @throws IOException If the output fails
+     */
+    public static void writeFrontCoded(DataOutput out, String previous, String current) throws IOException {
+        int shared = 0;
+        int max = Math.min(previous.length(), current.length());
+        while (shared < max && previous.charAt(shared) == current.charAt(shared)) {
+            shared++;
+        }
+        writeVarInt(out, shared);
+        out.writeUTF(current.substring(shared));
+    }
+
+    /**
+     * Reads a string written by {@link #writeFrontCoded(DataOutput, String, String)}
+     * @param in Input
+     * @param previous Previously read string
+     * @return String read
+     * @throws IOException If the input fails
+     */
+    public static String readFrontCoded(DataInput in, String previous) throws IOException {
+        int shared = readVarInt(in);
+        return previous.substring(0, shared) + in.readUTF();
+    }
+
+}
@@ -0,0 +1,982 @@
+/**
+ * Persistent index of the file names under a root directory
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Index;
+
+import personalDB.Engine.TreeWalker;
+import personalDB.Engine.TreeWatcher;
+import personalDB.Engine.Workspace;
+import personalDB.Storage.LogReader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.UTFDataFormatException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Objects of this class hold every file name under a root directory sorted in
+ * memory, so exact, prefix and extension lookups are answered with a binary
+ * search instead of a walk. Indexes are saved in the workspace as a sorted
+ * string table with front coded names.
+ * An index is fresh while none of the directories it recorded was modified,
+ * which only takes a stat per directory to check.
+ * A watched index is kept up to date by a {@link TreeWatcher}: changes go to
+ * a small overlay on top of the sorted table and are appended to a log next
+ * to the index file, the table is only rewritten once the log grows large.
+ */
+public class NameIndex {
+    private static final int MAGIC = 0x50444E49;
+    private static final int LOG_MAGIC = 0x50444E4C;
+    private static final int TRIGRAM_MAGIC = 0x50444E54;
+    private static final int VERSION = 1;
+    private static final int MIN_COMPACTION_ENTRIES = 10_000;
+    private static final Map<Path, NameIndex> loaded = new ConcurrentHashMap<>();
+    // Watcher every root's index listens to, a watcher that restarted is a new one to listen to
+    private static final Map<Path, TreeWatcher> listening = new ConcurrentHashMap<>();
+
+    private static final byte ADD_FILE = 1;
+    private static final byte REMOVE_FILE = 2;
+    private static final byte REMOVE_DIRECTORY = 3;
+    private static final byte DIRECTORY_MTIME = 4;
+
+    private final Path root;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Table table;
+
+    private final NavigableMap<String, Set<Path>> addedByName = new TreeMap<>();
+    private final Set<Path> removedFiles = new HashSet<>();
+    private final Set<Path> removedDirectories = new HashSet<>();
+    private final Map<String, Long> directoryOverrides = new HashMap<>();
+    private int logEntries = 0;
+
+    /**
+     * The sorted, immutable part of the index
+     */
+    private static final class Table {
+        final long builtAt;
+        final String[] directories;
+        final long[] directoryMtimes;
+        final String[] names;
+        final int[] parents;
+        final int[] byExtension;
+        // Built on the first fuzzy search
+        volatile Fuzzy fuzzy;
+
+        Table(long builtAt, String[] directories, long[] directoryMtimes, String[] names, int[] parents,
+              int[] byExtension) {
+            this.builtAt = builtAt;
+            this.directories = directories;
+            this.directoryMtimes = directoryMtimes;
+            this.names = names;
+            this.parents = parents;
+            this.byExtension = byExtension;
+        }
+
+        /**
+         * Sorts the given files and directories into a table
+         * @param builtAt Time the entries were collected
+         * @param files Pairs of file name and relative path of its directory
+         * @param directories Relative paths of the directories and their mtimes
+         * @return The new table
+         */
+        static Table of(long builtAt, String[][] files, Map<String, Long> directories) {
+            String[] directoryPaths = directories.keySet().toArray(new String[0]);
+            Arrays.parallelSort(directoryPaths);
+            long[] directoryMtimes = new long[directoryPaths.length];
+            Map<String, Integer> directoryIds = new HashMap<>();
+            for (int i = 0; i < directoryPaths.length; i++) {
+                directoryMtimes[i] = directories.get(directoryPaths[i]);
+                directoryIds.put(directoryPaths[i], i);
+            }
+            Arrays.parallelSort(files, Comparator.comparing(f -> f[0]));
+            String[] names = new String[files.length];
+            int[] parents = new int[files.length];
+            for (int i = 0; i < files.length; i++) {
+                names[i] = files[i][0];
+                parents[i] = directoryIds.get(files[i][1]);
+            }
+            return new Table(builtAt, directoryPaths, directoryMtimes, names, parents, sortByExtension(names));
+        }
+    }
+
+    /**
+     * What fuzzy searches need on top of the sorted table
+     * @param trigrams Trigram index of every distinct file and directory name
+     * @param directoriesByName Directory ids sorted by the last component of their path
+     */
+    private record Fuzzy(TrigramIndex trigrams, int[] directoriesByName) {}
+
+    /**
+     * A path found by a fuzzy search, with what it is ranked by
+     */
+    private record Ranked(int distance, String name, Path path) {}
+
+    /**
+     * A single change to the index, as applied to the overlay and written to the log
+     */
+    private record Change(byte type, String path, long mtime) {}
+
+    private NameIndex(Path root, Table table) {
+        this.root = root;
+        this.table = table;
+    }
+
+    /**
+     * Walks a directory tree and builds an index of it, the index is saved
+     * in the workspace and used by later searches
+     * @param root Root directory of the index
+     * @return The new index
+     * @throws IOException If the root cannot be read or the index cannot be saved
+     */
+    public static NameIndex build(Path root) throws IOException {
+        root = root.toAbsolutePath().normalize();
+        long builtAt = System.currentTimeMillis();
+        ConcurrentLinkedQueue<String[]> files = new ConcurrentLinkedQueue<>();
+        Map<String, Long> directories = new ConcurrentHashMap<>();
+        directories.put("", Files.getLastModifiedTime(root).toMillis());
+
+        Path walkRoot = root;
+        new TreeWalker(root, false).walk((path, attributes) -> {
+            if (attributes.isDirectory()) {
+                directories.put(walkRoot.relativize(path).toString(), attributes.lastModifiedTime().toMillis());
+            } else {
+                files.add(new String[]{path.getFileName().toString(), walkRoot.relativize(path.getParent()).toString()});
+            }
+            return true;
+        });
+
+        NameIndex index = new NameIndex(root, Table.of(builtAt, files.toArray(new String[0][]), directories));
+        index.save();
+        loaded.put(root, index);
+        return index;
+    }
+
+    /**
+     * Returns the index that covers a directory, which is the index of that
+     * directory or of its closest indexed parent
+     * @param directory Directory to be searched
+     * @return Index covering the directory or null if there is none
+     */
+    public static NameIndex forDirectory(Path directory) {
+        for (Path p = directory.toAbsolutePath().normalize(); p != null; p = p.getParent()) {
+            NameIndex index = loaded.get(p);
+            if (index != null) {
+                return index;
+            }
+            Path file = indexFile(p);
+            if (Files.isRegularFile(file)) {
+                try {
+                    index = load(file);
+                    loaded.put(p, index);
+                    return index;
+                } catch (IOException e) {
+                    System.out.println("Could not read the index of " + p + "\n" + e);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Keeps the index up to date by watching its root, changes are applied
+     * in batches as the watcher delivers them
+     * @throws IOException If the root cannot be watched
+     */
+    public void watch() throws IOException {
+        TreeWatcher watcher = TreeWatcher.watch(root);
+        if (listening.put(root, watcher) != watcher) {
+            Path watchedRoot = root;
+            watcher.addListener(changes -> {
+                NameIndex current = loaded.get(watchedRoot);
+                if (current != null) {
+                    current.apply(changes);
+                }
+            });
+        }
+    }
+
+    /**
+     * Checks if the index still matches the disk. A watched index is fresh
+     * once the changes its watcher has queued are applied, unless some
+     * directory under it could not be watched, otherwise none of the
+     * directories it recorded can have been modified or removed since they
+     * were indexed.
+     * @return True if the index can be trusted
+     */
+    public boolean isFresh() {
+        TreeWatcher watcher = listening.get(root);
+        if (watcher != null && TreeWatcher.isWatchingWholeTree(root) && watcher.sync() && !watcher.isDegraded()) {
+            return true;
+        }
+        Map<String, Long> expected = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < table.directories.length; i++) {
+                if (!isHidden(root.resolve(table.directories[i]))) {
+                    expected.put(table.directories[i], table.directoryMtimes[i]);
+                }
+            }
+            expected.putAll(directoryOverrides);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return expected.entrySet().parallelStream().allMatch(entry -> {
+            try {
+                return Files.getLastModifiedTime(root.resolve(entry.getKey()), LinkOption.NOFOLLOW_LINKS)
+                        .toMillis() == entry.getValue();
+            } catch (IOException e) {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Returns every file with exactly the given name
+     * @param name Name of the file
+     * @return Paths of the files
+     */
+    public List<Path> exact(String name) {
+        lock.readLock().lock();
+        try {
+            List<Path> result = new ArrayList<>();
+            for (int i = lowerBound(name); i < table.names.length && table.names[i].equals(name); i++) {
+                addIfLive(result, i);
+            }
+            Set<Path> added = addedByName.get(name);
+            if (added != null) {
+                result.addAll(added);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns every file whose name starts with the given prefix
+     * @param prefix Start of the name
+     * @return Paths of the files
+     */
+    public List<Path> prefix(String prefix) {
+        lock.readLock().lock();
+        try {
+            List<Path> result = new ArrayList<>();
+            for (int i = lowerBound(prefix); i < table.names.length && table.names[i].startsWith(prefix); i++) {
+                addIfLive(result, i);
+            }
+            for (Map.Entry<String, Set<Path>> entry : addedByName.tailMap(prefix, true).entrySet()) {
+                if (!entry.getKey().startsWith(prefix)) {
+                    break;
+                }
+                result.addAll(entry.getValue());
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns every file with the given extension, ignoring case
+     * @param extension Extension without the dot
+     * @return Paths of the files
+     */
+    public List<Path> extension(String extension) {
+        String wanted = extension.toLowerCase();
+        lock.readLock().lock();
+        try {
+            int[] byExtension = table.byExtension;
+            int low = 0;
+            int high = byExtension.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (extensionOf(table.names[byExtension[middle]]).compareTo(wanted) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            List<Path> result = new ArrayList<>();
+            for (int i = low; i < byExtension.length && extensionOf(table.names[byExtension[i]]).equals(wanted); i++) {
+                addIfLive(result, byExtension[i]);
+            }
+            for (Map.Entry<String, Set<Path>> entry : addedByName.entrySet()) {
+                if (extensionOf(entry.getKey()).equals(wanted)) {
+                    result.addAll(entry.getValue());
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the files and directories whose names are closest to a text
+     * that might be misspelt or only part of a name, see {@link TrigramIndex}.
+     * The trigram index is built from the sorted table on the first fuzzy
+     * search and saved next to the index, files added since the table was
+     * built are compared one by one.
+     * @param text Text searched for, case is ignored
+     * @param limit Maximum number of paths returned
+     * @param under Only paths under this directory are returned
+     * @return Paths found, the closest first
+     * @throws IOException If the trigram index cannot be saved
+     */
+    public List<Path> fuzzy(String text, int limit, Path under) throws IOException {
+        int maxEdits = TrigramIndex.maxEdits(text.length());
+        String query = text.toLowerCase(Locale.ROOT);
+        Comparator<Ranked> order = Comparator.comparingInt(Ranked::distance)
+                .thenComparingInt(ranked -> ranked.name().length())
+                .thenComparing(Ranked::name)
+                .thenComparing(Ranked::path);
+        // The worst of the best paths so far is on top, so it is the one dropped
+        PriorityQueue<Ranked> best = new PriorityQueue<>(Math.max(1, limit) + 1, order.reversed());
+        lock.readLock().lock();
+        try {
+            Table table = this.table;
+            Fuzzy fuzzy = fuzzy(table);
+            TrigramIndex trigrams = fuzzy.trigrams();
+            // Names come best first, so once enough paths are found the next names cannot beat them
+            for (int wanted = Math.max(1, limit); ; wanted *= 4) {
+                best.clear();
+                List<TrigramIndex.Match> matches = trigrams.search(text, wanted, maxEdits);
+                for (TrigramIndex.Match match : matches) {
+                    String name = trigrams.term(match.term());
+                    List<Path> paths = new ArrayList<>();
+                    for (int i = lowerBound(name); i < table.names.length && table.names[i].equals(name); i++) {
+                        addIfLive(paths, i);
+                    }
+                    int[] byName = fuzzy.directoriesByName();
+                    for (int i = lowerBoundDirectory(table, byName, name);
+                         i < byName.length && lastComponent(table.directories[byName[i]]).equals(name); i++) {
+                        Path directory = root.resolve(table.directories[byName[i]]);
+                        if (!isHidden(directory)) {
+                            paths.add(directory);
+                        }
+                    }
+                    for (Path path : paths) {
+                        offer(best, new Ranked(match.distance(), name, path), under, limit);
+                    }
+                }
+                if (best.size() >= limit || matches.size() < wanted) {
+                    break;
+                }
+            }
+            for (Map.Entry<String, Set<Path>> entry : addedByName.entrySet()) {
+                int distance = TrigramIndex.distance(query, entry.getKey().toLowerCase(Locale.ROOT), maxEdits);
+                if (distance <= maxEdits) {
+                    for (Path path : entry.getValue()) {
+                        offer(best, new Ranked(distance, entry.getKey(), path), under, limit);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Ranked> ranked = new ArrayList<>(best);
+        ranked.sort(order);
+        List<Path> result = new ArrayList<>(ranked.size());
+        for (Ranked path : ranked) {
+            result.add(path.path());
+        }
+        return result;
+    }
+
+    private static void offer(PriorityQueue<Ranked> best, Ranked ranked, Path under, int limit) {
+        if (ranked.path().startsWith(under) && !ranked.path().equals(under)) {
+            best.add(ranked);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+    }
+
+    /**
+     * Returns the fuzzy search data of a table, reading it from the
+     * workspace or building it on first use
+     */
+    private Fuzzy fuzzy(Table table) throws IOException {
+        Fuzzy fuzzy = table.fuzzy;
+        if (fuzzy != null) {
+            return fuzzy;
+        }
+        synchronized (table) {
+            if (table.fuzzy == null) {
+                Path file = trigramFile(root);
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+                    if (in.readInt() == TRIGRAM_MAGIC && in.readLong() == table.builtAt) {
+                        int[] directoriesByName = new int[in.readInt()];
+                        for (int i = 0; i < directoriesByName.length; i++) {
+                            directoriesByName[i] = Encoding.readVarInt(in);
+                        }
+                        table.fuzzy = new Fuzzy(TrigramIndex.read(in), directoriesByName);
+                    }
+                } catch (NoSuchFileException | EOFException e) {
+                    // Not built yet, or torn
+                }
+                if (table.fuzzy == null) {
+                    table.fuzzy = buildFuzzy(table);
+                    saveFuzzy(table);
+                }
+            }
+            return table.fuzzy;
+        }
+    }
+
+    private static Fuzzy buildFuzzy(Table table) {
+        Set<String> distinct = new HashSet<>(Arrays.asList(table.names));
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < table.directories.length; i++) {
+            // The root itself has an empty path
+            if (!table.directories[i].isEmpty()) {
+                distinct.add(lastComponent(table.directories[i]));
+                ids.add(i);
+            }
+        }
+        String[] terms = distinct.toArray(new String[0]);
+        Arrays.parallelSort(terms);
+        ids.sort(Comparator.comparing(id -> lastComponent(table.directories[id])));
+        return new Fuzzy(TrigramIndex.build(terms), ids.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private void saveFuzzy(Table table) throws IOException {
+        Path file = trigramFile(root);
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(TRIGRAM_MAGIC);
+            out.writeLong(table.builtAt);
+            out.writeInt(table.fuzzy.directoriesByName().length);
+            for (int id : table.fuzzy.directoriesByName()) {
+                Encoding.writeVarInt(out, id);
+            }
+            table.fuzzy.trigrams().write(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String lastComponent(String directory) {
+        return directory.substring(directory.lastIndexOf(File.separatorChar) + 1);
+    }
+
+    private static int lowerBoundDirectory(Table table, int[] byName, String name) {
+        int low = 0;
+        int high = byName.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (lastComponent(table.directories[byName[middle]]).compareTo(name) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Applies a batch of changes reported by the watcher. The affected paths are
+     * read from the disk, the overlay is updated and the changes are appended to
+     * the log, compacting the index when the log grows too large.
+     * @param changes Changes under the root of the index
+     */
+    public void apply(List<TreeWatcher.Change> changes) {
+        List<Change> resolved = new ArrayList<>();
+        for (TreeWatcher.Change change : changes) {
+            Path path = change.path().toAbsolutePath().normalize();
+            if (!path.startsWith(root)) {
+                continue;
+            }
+            String relative = root.relativize(path).toString();
+            BasicFileAttributes attributes = change.kind() == TreeWatcher.Kind.DELETED ? null : readAttributes(path);
+            if (attributes == null) {
+                if (!path.equals(root)) {
+                    resolved.add(new Change(REMOVE_FILE, relative, 0));
+                    resolved.add(new Change(REMOVE_DIRECTORY, relative, 0));
+                }
+            } else if (attributes.isDirectory()) {
+                rescan(path, attributes, resolved);
+            } else {
+                resolved.add(new Change(ADD_FILE, relative, 0));
+            }
+            Path parent = path.getParent();
+            BasicFileAttributes parentAttributes = parent == null || !parent.startsWith(root) ? null : readAttributes(parent);
+            if (parentAttributes != null) {
+                resolved.add(new Change(DIRECTORY_MTIME, root.relativize(parent).toString(),
+                        parentAttributes.lastModifiedTime().toMillis()));
+            }
+        }
+        if (resolved.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Change change : resolved) {
+                applyToOverlay(change);
+            }
+            appendToLog(resolved);
+            if (logEntries > Math.max(MIN_COMPACTION_ENTRIES, table.names.length / 10)) {
+                compact();
+            }
+        } catch (IOException e) {
+            System.out.println("Could not update the index of " + root + "\n" + e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the sorted table with the overlay merged in and empties the log
+     * @throws IOException If the new index cannot be saved
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            List<String[]> files = new ArrayList<>();
+            for (int i = 0; i < table.names.length; i++) {
+                Path file = path(i);
+                if (!removedFiles.contains(file) && !isHidden(file.getParent())) {
+                    files.add(new String[]{table.names[i], table.directories[table.parents[i]]});
+                }
+            }
+            for (Set<Path> paths : addedByName.values()) {
+                for (Path file : paths) {
+                    files.add(new String[]{file.getFileName().toString(), root.relativize(file.getParent()).toString()});
+                }
+            }
+            Map<String, Long> directories = new HashMap<>();
+            for (int i = 0; i < table.directories.length; i++) {
+                if (!isHidden(root.resolve(table.directories[i]))) {
+                    directories.put(table.directories[i], table.directoryMtimes[i]);
+                }
+            }
+            directories.putAll(directoryOverrides);
+            for (String[] file : files) {
+                directories.putIfAbsent(file[1], 0L);
+            }
+            table = Table.of(System.currentTimeMillis(), files.toArray(new String[0][]), directories);
+            addedByName.clear();
+            removedFiles.clear();
+            removedDirectories.clear();
+            directoryOverrides.clear();
+            logEntries = 0;
+            save();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Root directory of the index
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @return Number of files in the index
+     */
+    public int fileCount() {
+        lock.readLock().lock();
+        try {
+            int added = 0;
+            for (Set<Path> paths : addedByName.values()) {
+                added += paths.size();
+            }
+            int live = table.names.length;
+            if (!removedFiles.isEmpty() || !removedDirectories.isEmpty()) {
+                live = 0;
+                for (int i = 0; i < table.names.length; i++) {
+                    Path file = path(i);
+                    if (!removedFiles.contains(file) && !isHidden(file.getParent())) {
+                        live++;
+                    }
+                }
+            }
+            return live + added;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of directories in the sorted table, including the root
+     */
+    public int directoryCount() {
+        return table.directories.length;
+    }
+
+    /**
+     * @return Time the sorted table was built in milliseconds since the epoch
+     */
+    public long getBuiltAt() {
+        return table.builtAt;
+    }
+
+    /**
+     * Returns the extension of a file name in lowercase
+     * @param name Name of the file
+     * @return Extension without the dot or an empty string if there is none
+     */
+    public static String extensionOf(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot <= 0 ? "" : name.substring(dot + 1).toLowerCase();
+    }
+
+    /**
+     * Writes the sorted table to the workspace, replacing the previous one
+     * atomically, and removes the log since it no longer applies
+     * @throws IOException If the index cannot be written
+     */
+    public void save() throws IOException {
+        Path file = indexFile(root);
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        Table table = this.table;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(root.toString());
+            out.writeLong(table.builtAt);
+            out.writeInt(table.directories.length);
+            String previous = "";
+            for (int i = 0; i < table.directories.length; i++) {
+                Encoding.writeFrontCoded(out, previous, table.directories[i]);
+                out.writeLong(table.directoryMtimes[i]);
+                previous = table.directories[i];
+            }
+            out.writeInt(table.names.length);
+            previous = "";
+            for (int i = 0; i < table.names.length; i++) {
+                Encoding.writeFrontCoded(out, previous, table.names[i]);
+                Encoding.writeVarInt(out, table.parents[i]);
+                previous = table.names[i];
+            }
+            for (int id : table.byExtension) {
+                Encoding.writeVarInt(out, id);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(logFile(root));
+    }
+
+    /**
+     * Reads an index saved by {@link #save()} and replays its log
+     * @param file File holding the index
+     * @return Index read
+     * @throws IOException If the file cannot be read or is not an index
+     */
+    public static NameIndex load(Path file) throws IOException {
+        NameIndex index;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a name index: " + file);
+            }
+            Path root = Paths.get(in.readUTF());
+            long builtAt = in.readLong();
+            String[] directories = new String[in.readInt()];
+            long[] directoryMtimes = new long[directories.length];
+            String previous = "";
+            for (int i = 0; i < directories.length; i++) {
+                directories[i] = Encoding.readFrontCoded(in, previous);
+                directoryMtimes[i] = in.readLong();
+                previous = directories[i];
+            }
+            String[] names = new String[in.readInt()];
+            int[] parents = new int[names.length];
+            previous = "";
+            for (int i = 0; i < names.length; i++) {
+                names[i] = Encoding.readFrontCoded(in, previous);
+                parents[i] = Encoding.readVarInt(in);
+                previous = names[i];
+            }
+            int[] byExtension = new int[names.length];
+            for (int i = 0; i < byExtension.length; i++) {
+                byExtension[i] = Encoding.readVarInt(in);
+            }
+            index = new NameIndex(root, new Table(builtAt, directories, directoryMtimes, names, parents, byExtension));
+        }
+        index.replayLog();
+        return index;
+    }
+
+    /**
+     * Removes the saved index of a root directory and stops watching it
+     * @param root Root directory of the index
+     * @return True if there was an index to remove
+     * @throws IOException If the index cannot be deleted
+     */
+    public static boolean drop(Path root) throws IOException {
+        root = root.toAbsolutePath().normalize();
+        loaded.remove(root);
+        TreeWatcher.stop(root);
+        listening.remove(root);
+        Files.deleteIfExists(logFile(root));
+        Files.deleteIfExists(trigramFile(root));
+        try {
+            Files.delete(indexFile(root));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the file where the index of a root directory is saved
+     * @param root Root directory
+     * @return Path of the index file
+     */
+    static Path indexFile(Path root) {
+        return Workspace.home().resolve("index").resolve(Workspace.rootKey(root) + ".names");
+    }
+
+    private static Path logFile(Path root) {
+        return Workspace.home().resolve("index").resolve(Workspace.rootKey(root) + ".names.log");
+    }
+
+    private static Path trigramFile(Path root) {
+        return Workspace.home().resolve("index").resolve(Workspace.rootKey(root) + ".trigrams");
+    }
+
+    /**
+     * Walks a directory that appeared or lost events, replacing whatever the
+     * index knew about it
+     * @param directory Directory to be walked
+     * @param attributes Attributes of the directory
+     * @param resolved Receives the resulting changes
+     */
+    private void rescan(Path directory, BasicFileAttributes attributes, List<Change> resolved) {
+        List<Change> found = new ArrayList<>();
+        found.add(new Change(REMOVE_DIRECTORY, root.relativize(directory).toString(), 0));
+        found.add(new Change(DIRECTORY_MTIME, root.relativize(directory).toString(),
+                attributes.lastModifiedTime().toMillis()));
+        ConcurrentLinkedQueue<Change> walked = new ConcurrentLinkedQueue<>();
+        new TreeWalker(directory, false).walk((path, entryAttributes) -> {
+            String relative = root.relativize(path).toString();
+            if (entryAttributes.isDirectory()) {
+                walked.add(new Change(DIRECTORY_MTIME, relative, entryAttributes.lastModifiedTime().toMillis()));
+            } else {
+                walked.add(new Change(ADD_FILE, relative, 0));
+            }
+            return true;
+        });
+        found.addAll(walked);
+        resolved.addAll(found);
+    }
+
+    /**
+     * Applies a single change to the overlay, must hold the write lock
+     * @param change Change to apply
+     */
+    private void applyToOverlay(Change change) {
+        Path path = root.resolve(change.path());
+        switch (change.type()) {
+            case ADD_FILE -> {
+                removedFiles.remove(path);
+                if (!inTable(path) || isHidden(path.getParent())) {
+                    addedByName.computeIfAbsent(path.getFileName().toString(), name -> new HashSet<>()).add(path);
+                }
+            }
+            case REMOVE_FILE -> {
+                Path name = path.getFileName();
+                if (name != null) {
+                    Set<Path> added = addedByName.get(name.toString());
+                    if (added != null && added.remove(path) && added.isEmpty()) {
+                        addedByName.remove(name.toString());
+                    }
+                }
+                if (inTable(path)) {
+                    removedFiles.add(path);
+                }
+            }
+            case REMOVE_DIRECTORY -> {
+                removedDirectories.add(path);
+                Iterator<Set<Path>> iterator = addedByName.values().iterator();
+                while (iterator.hasNext()) {
+                    Set<Path> added = iterator.next();
+                    added.removeIf(file -> file.startsWith(path) && !file.equals(path));
+                    if (added.isEmpty()) {
+                        iterator.remove();
+                    }
+                }
+                directoryOverrides.keySet().removeIf(directory -> root.resolve(directory).startsWith(path));
+            }
+            case DIRECTORY_MTIME -> directoryOverrides.put(change.path(), change.mtime());
+            default -> throw new IllegalArgumentException("Unknown index change " + change.type());
+        }
+    }
+
+    /**
+     * Appends changes to the log, creating it if needed
+     * @param changes Changes to append
+     * @throws IOException If the log cannot be written
+     */
+    private void appendToLog(List<Change> changes) throws IOException {
+        Path log = logFile(root);
+        boolean exists = Files.exists(log);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(log, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16))) {
+            if (!exists) {
+                out.writeInt(LOG_MAGIC);
+                out.writeLong(table.builtAt);
+            }
+            for (Change change : changes) {
+                out.writeByte(change.type());
+                out.writeUTF(change.path());
+                if (change.type() == DIRECTORY_MTIME) {
+                    out.writeLong(change.mtime());
+                }
+            }
+        }
+        logEntries += changes.size();
+    }
+
+    /**
+     * Applies the changes in the log of this index, a log written for an older
+     * table is ignored and a torn last record ends the replay and is cut off
+     */
+    private void replayLog() throws IOException {
+        Path log = logFile(root);
+        if (!Files.exists(log)) {
+            return;
+        }
+        try (LogReader reader = new LogReader(log)) {
+            DataInputStream in = reader.in();
+            try {
+                if (in.readInt() != LOG_MAGIC || in.readLong() != table.builtAt) {
+                    return;
+                }
+                reader.endRecord();
+                while (true) {
+                    byte type = in.readByte();
+                    String path = in.readUTF();
+                    long mtime = type == DIRECTORY_MTIME ? in.readLong() : 0;
+                    reader.endRecord();
+                    applyToOverlay(new Change(type, path, mtime));
+                    logEntries++;
+                }
+            } catch (EOFException | UTFDataFormatException e) {
+                // End of the log
+            }
+            reader.truncate();
+        }
+    }
+
+    private BasicFileAttributes readAttributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks if a path of the sorted table is hidden by a removed directory
+     * @param directory Directory to be checked
+     * @return True if the directory or one of its parents was removed
+     */
+    private boolean isHidden(Path directory) {
+        if (removedDirectories.isEmpty()) {
+            return false;
+        }
+        for (Path p = directory; p != null && p.startsWith(root); p = p.getParent()) {
+            if (removedDirectories.contains(p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean inTable(Path file) {
+        Path name = file.getFileName();
+        if (name == null) {
+            return false;
+        }
+        for (int i = lowerBound(name.toString()); i < table.names.length && table.names[i].equals(name.toString()); i++) {
+            if (path(i).equals(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addIfLive(List<Path> result, int file) {
+        Path path = path(file);
+        if (!removedFiles.contains(path) && !isHidden(path.getParent())) {
+            result.add(path);
+        }
+    }
+
+    private Path path(int file) {
+        return root.resolve(table.directories[table.parents[file]]).resolve(table.names[file]);
+    }
+
+    private int lowerBound(String key) {
+        String[] names = table.names;
+        int index = Arrays.binarySearch(names, key);
+        if (index < 0) {
+            return -index - 1;
+        }
+        while (index > 0 && names[index - 1].equals(key)) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * Orders the files by extension, files with the same extension keep
+     * their order by name since the sort is stable
+     * @param names Sorted names of the files
+     * @return File ids sorted by extension
+     */
+    private static int[] sortByExtension(String[] names) {
+        String[] extensions = new String[names.length];
+        Integer[] ids = new Integer[names.length];
+        for (int i = 0; i < names.length; i++) {
+            extensions[i] = extensionOf(names[i]);
+            ids[i] = i;
+        }
+        Arrays.parallelSort(ids, Comparator.comparing(id -> extensions[id]));
+        return Arrays.stream(ids).mapToInt(Integer::intValue).toArray();
+    }
+
+}
@@ -0,0 +1,145 @@
+/**
+ * Directory node of a snapshot
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Index;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A directory as recorded by a snapshot: the name, type, size, modification
+ * time and hash of every entry, sorted by name. The hash of a file is the
+ * hash of its content, the hash of a subdirectory is the hash of its own
+ * node and the hash of a link is the hash of its target, so the hash of a
+ * node changes whenever anything under it changes and two directories with
+ * the same hash are identical all the way down.
+ * Nodes are immutable and stored under their hash, so snapshots of trees
+ * that barely changed share almost every node.
+ * @param children Entries of the directory, sorted by name
+ */
+public record SnapshotNode(List<Child> children) {
+    public static final int HASH_LENGTH = 32;
+    private static final int VERSION = 1;
+
+    /**
+     * An entry of a directory
+     * @param name Name of the entry
+     * @param type Kind of entry
+     * @param size Size in bytes, 0 for directories
+     * @param modified Last modification time in milliseconds
+     * @param hash Hash of the content, of the node of a directory or of the target of a link,
+     *             all zeros if the entry could not be read
+     */
+    public record Child(String name, Catalog.Type type, long size, long modified, byte[] hash) {}
+
+    /**
+     * Constructor
+     * @param children Entries of the directory, in any order
+     */
+    public SnapshotNode(List<Child> children) {
+        List<Child> sorted = new ArrayList<>(children);
+        sorted.sort(Comparator.comparing(Child::name));
+        this.children = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Finds an entry by name
+     * @param name Name of the entry
+     * @return Entry, or null if the directory has none with that name
+     */
+    public Child find(String name) {
+        int low = 0;
+        int high = children.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = children.get(middle).name().compareTo(name);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return children.get(middle);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Encodes the node with front coded names and variable length numbers
+     * @return Encoded node, whose SHA-256 is the hash of the node
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + children.size() * 48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            Encoding.writeVarInt(out, children.size());
+            String previous = "";
+            for (Child child : children) {
+                Encoding.writeFrontCoded(out, previous, child.name());
+                out.writeByte(child.type().ordinal());
+                Encoding.writeVarLong(out, child.size());
+                Encoding.writeVarLong(out, Math.max(0, child.modified()));
+                out.write(child.hash());
+                previous = child.name();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a node written by {@link #encode()}
+     * @param encoded Encoded node
+     * @return Node
+     * @throws IOException If the bytes are not a node
+     */
+    public static SnapshotNode decode(byte[] encoded) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            if (in.readByte() != VERSION) {
+                throw new IOException("Unknown snapshot node version");
+            }
+            int count = Encoding.readVarInt(in);
+            List<Child> children = new ArrayList<>(count);
+            Catalog.Type[] types = Catalog.Type.values();
+            String previous = "";
+            for (int i = 0; i < count; i++) {
+                String name = Encoding.readFrontCoded(in, previous);
+                Catalog.Type type = types[in.readByte()];
+                long size = Encoding.readVarLong(in);
+                long modified = Encoding.readVarLong(in);
+                byte[] hash = new byte[HASH_LENGTH];
+                in.readFully(hash);
+                children.add(new Child(name, type, size, modified, hash));
+                previous = name;
+            }
+            return new SnapshotNode(children);
+        }
+    }
+
+    /**
+     * @param encoded Encoded node
+     * @return SHA-256 of the encoded node
+     */
+    public static byte[] hash(byte[] encoded) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(encoded);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,494 @@
+/**
+ * Snapshots of directory trees
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Index;
+
+import personalDB.Engine.Workspace;
+import personalDB.Metrics.Metrics;
+import personalDB.Storage.ContentHasher;
+import personalDB.Storage.PackStore;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The snapshot store records directory trees as Merkle trees of
+ * {@link SnapshotNode}s and compares them. Nodes are kept in a
+ * {@link PackStore} under their hash, so a directory that did not change
+ * between two snapshots is stored once and shared by both, and a snapshot of
+ * a tree that barely changed only adds the nodes on the paths to the
+ * changes. A snapshot itself is a small file under snapshots/refs naming the
+ * root directory and the hash of its node.
+ * Taking a snapshot lists the whole tree but only hashes files whose size or
+ * modification time differ from the previous snapshot of the same root.
+ * Comparing two snapshots skips every pair of directories with the same
+ * hash, so it only reads the nodes on the paths to what changed.
+ */
+public class SnapshotStore {
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]*");
+    private static final byte[] NO_HASH = new byte[SnapshotNode.HASH_LENGTH];
+    private static SnapshotStore instance;
+
+    private final Path refs;
+    private final PackStore nodes;
+
+    /**
+     * A named snapshot
+     * @param name Name of the snapshot
+     * @param root Directory the snapshot was taken of
+     * @param created When the snapshot was taken, in milliseconds
+     * @param hash Hash of the node of the root directory
+     */
+    public record Ref(String name, Path root, long created, byte[] hash) {
+
+        /**
+         * @return Hash of the root node in hexadecimal
+         */
+        public String hashHex() {
+            return Workspace.toHex(hash);
+        }
+    }
+
+    /**
+     * A tree that was read but not necessarily saved
+     * @param root Directory that was read
+     * @param hash Hash of the node of the root directory
+     * @param created Nodes that were not stored yet, by their hash in hexadecimal
+     * @param files Number of files found
+     * @param directories Number of directories found, the root included
+     * @param hashed Number of files hashed
+     * @param reused Number of hashes kept from the previous snapshot
+     * @param failed Number of entries that could not be read
+     */
+    public record Tree(Path root, byte[] hash, Map<String, byte[]> created, long files, long directories,
+                       long hashed, long reused, long failed) {}
+
+    /**
+     * Kind of a difference between two snapshots
+     */
+    public enum Change {
+        ADDED, REMOVED, MODIFIED, TOUCHED
+    }
+
+    /**
+     * Receives the differences found by a comparison, in the order of the paths
+     */
+    public interface ChangeVisitor {
+        /**
+         * @param change Kind of difference, a directory added or removed is reported once for its whole content
+         * @param path Path relative to the root, separated by /, ending with / for directories
+         * @param before Entry in the older snapshot, null if it was added
+         * @param after Entry in the newer snapshot, null if it was removed
+         */
+        void visit(Change change, String path, SnapshotNode.Child before, SnapshotNode.Child after);
+    }
+
+    /**
+     * Totals of a comparison
+     * @param added Number of entries added
+     * @param removed Number of entries removed
+     * @param modified Number of entries whose content changed
+     * @param touched Number of entries whose modification time alone changed
+     * @param compared Number of directory pairs that had to be read
+     */
+    public record DiffResult(long added, long removed, long modified, long touched, long compared) {}
+
+    private SnapshotStore(Path home) throws IOException {
+        this.refs = Files.createDirectories(home.resolve("refs"));
+        this.nodes = new PackStore(home.resolve("nodes"));
+    }
+
+    /**
+     * Returns the snapshot store of the workspace, opening it on first use
+     * @return The snapshot store
+     * @throws IOException If the store cannot be created or read
+     */
+    public static synchronized SnapshotStore open() throws IOException {
+        if (instance == null) {
+            instance = new SnapshotStore(Workspace.directory("snapshots"));
+        }
+        return instance;
+    }
+
+    /**
+     * Checks if a name can be used for a snapshot
+     * @param name Name of the snapshot
+     * @return True if the name only has letters, digits, ., _ and - and does not start with a dot
+     */
+    public static boolean isValidName(String name) {
+        return NAME.matcher(name).matches();
+    }
+
+    /**
+     * Reads a directory tree, hashing only the files that changed since a previous snapshot
+     * @param root Directory to be read
+     * @param previous Snapshot whose hashes are kept for files with the same size and
+     *                 modification time, null to hash every file
+     * @return The tree, to be compared or saved
+     * @throws IOException If the root cannot be read
+     */
+    public Tree read(Path root, Ref previous) throws IOException {
+        Path normalized = root.toAbsolutePath().normalize();
+        if (!Files.isDirectory(normalized)) {
+            throw new IOException(normalized + " is not a directory");
+        }
+        Builder builder = new Builder();
+        byte[] hash = builder.directory(normalized, previous == null ? null : node(previous.hash(), Map.of()));
+        return new Tree(normalized, hash, builder.created, builder.files, builder.directories,
+                builder.hashed, builder.reused, builder.failed);
+    }
+
+    /**
+     * Stores the nodes of a tree and names it
+     * @param name Name of the snapshot, an existing snapshot with that name is replaced
+     * @param tree Tree returned by {@link #read(Path, Ref)}
+     * @return The new snapshot
+     * @throws IOException If the snapshot cannot be written
+     */
+    public synchronized Ref save(String name, Tree tree) throws IOException {
+        if (!isValidName(name)) {
+            throw new IOException("Invalid snapshot name " + name);
+        }
+        nodes.putAll(tree.created());
+        Ref ref = new Ref(name, tree.root(), System.currentTimeMillis(), tree.hash());
+        Path staged = refs.resolve(name + ".tmp");
+        Files.writeString(staged, ref.root() + "\n" + ref.created() + "\n" + ref.hashHex() + "\n", StandardCharsets.UTF_8);
+        Files.move(staged, refs.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return ref;
+    }
+
+    /**
+     * @param name Name of a snapshot
+     * @return The snapshot, or null if there is none with that name
+     * @throws IOException If the snapshot cannot be read
+     */
+    public Ref get(String name) throws IOException {
+        if (!isValidName(name)) {
+            return null;
+        }
+        Path file = refs.resolve(name);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.size() < 3) {
+            throw new IOException("Damaged snapshot " + name);
+        }
+        try {
+            return new Ref(name, Paths.get(lines.get(0)), Long.parseLong(lines.get(1)),
+                    HexFormat.of().parseHex(lines.get(2)));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Damaged snapshot " + name, e);
+        }
+    }
+
+    /**
+     * @return Every snapshot, the oldest first
+     * @throws IOException If the snapshots cannot be read
+     */
+    public List<Ref> list() throws IOException {
+        List<Ref> all = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(refs)) {
+            for (Path file : stream) {
+                Ref ref = get(file.getFileName().toString());
+                if (ref != null) {
+                    all.add(ref);
+                }
+            }
+        }
+        all.sort(Comparator.comparingLong(Ref::created).thenComparing(Ref::name));
+        return all;
+    }
+
+    /**
+     * @param root A directory
+     * @return The most recent snapshot of that directory, or null if it has none
+     * @throws IOException If the snapshots cannot be read
+     */
+    public Ref latest(Path root) throws IOException {
+        Path normalized = root.toAbsolutePath().normalize();
+        Ref latest = null;
+        for (Ref ref : list()) {
+            if (ref.root().equals(normalized)) {
+                latest = ref;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Deletes a snapshot and every node no other snapshot refers to
+     * @param name Name of the snapshot
+     * @return Number of nodes deleted, or -1 if there is no snapshot with that name
+     * @throws IOException If the snapshot or its nodes cannot be deleted
+     */
+    public synchronized long drop(String name) throws IOException {
+        if (get(name) == null) {
+            return -1;
+        }
+        Files.delete(refs.resolve(name));
+        Set<String> reachable = new HashSet<>();
+        for (Ref ref : list()) {
+            mark(ref.hash(), reachable);
+        }
+        long deleted = 0;
+        for (String hash : nodes.matching("")) {
+            if (!reachable.contains(hash) && nodes.delete(hash)) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Compares two trees, only reading the directories whose hashes differ
+     * @param before Hash of the root node of the older tree
+     * @param after Hash of the root node of the newer tree
+     * @param created Nodes of the trees that were not saved, may be empty
+     * @param visitor Receives every difference
+     * @return Totals of the comparison
+     * @throws IOException If a node cannot be read
+     */
+    public DiffResult diff(byte[] before, byte[] after, Map<String, byte[]> created, ChangeVisitor visitor)
+            throws IOException {
+        long[] totals = new long[5];
+        compare(before, after, "", created, visitor, totals);
+        return new DiffResult(totals[0], totals[1], totals[2], totals[3], totals[4]);
+    }
+
+    private void compare(byte[] before, byte[] after, String prefix, Map<String, byte[]> created,
+                         ChangeVisitor visitor, long[] totals) throws IOException {
+        if (Arrays.equals(before, after)) {
+            return;
+        }
+        totals[4]++;
+        List<SnapshotNode.Child> old = node(before, created).children();
+        List<SnapshotNode.Child> current = node(after, created).children();
+        int i = 0;
+        int j = 0;
+        while (i < old.size() || j < current.size()) {
+            int order = i == old.size() ? 1 : j == current.size() ? -1
+                    : old.get(i).name().compareTo(current.get(j).name());
+            if (order < 0) {
+                report(Change.REMOVED, prefix, old.get(i++), null, visitor, totals);
+            } else if (order > 0) {
+                report(Change.ADDED, prefix, null, current.get(j++), visitor, totals);
+            } else {
+                SnapshotNode.Child was = old.get(i++);
+                SnapshotNode.Child is = current.get(j++);
+                if (was.type() != is.type()) {
+                    report(Change.REMOVED, prefix, was, null, visitor, totals);
+                    report(Change.ADDED, prefix, null, is, visitor, totals);
+                } else if (is.type() == Catalog.Type.DIRECTORY && (isUnread(was) || isUnread(is))) {
+                    // A directory that could not be read has no node to descend into
+                    if (!Arrays.equals(was.hash(), is.hash())) {
+                        report(Change.MODIFIED, prefix, was, is, visitor, totals);
+                    }
+                } else if (is.type() == Catalog.Type.DIRECTORY) {
+                    compare(was.hash(), is.hash(), prefix + is.name() + "/", created, visitor, totals);
+                } else if (!Arrays.equals(was.hash(), is.hash()) || was.size() != is.size()) {
+                    report(Change.MODIFIED, prefix, was, is, visitor, totals);
+                } else if (was.modified() != is.modified()) {
+                    report(Change.TOUCHED, prefix, was, is, visitor, totals);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return True if the child is a directory that could not be read when its snapshot was taken
+     */
+    private static boolean isUnread(SnapshotNode.Child child) {
+        return child.type() == Catalog.Type.DIRECTORY && Arrays.equals(child.hash(), NO_HASH);
+    }
+
+    private static void report(Change change, String prefix, SnapshotNode.Child before, SnapshotNode.Child after,
+                               ChangeVisitor visitor, long[] totals) {
+        SnapshotNode.Child child = after == null ? before : after;
+        totals[change.ordinal()]++;
+        visitor.visit(change, prefix + child.name() + (child.type() == Catalog.Type.DIRECTORY ? "/" : ""),
+                before, after);
+    }
+
+    /**
+     * Adds a node and every node under it to a set, skipping subtrees already in it
+     */
+    private void mark(byte[] hash, Set<String> reachable) throws IOException {
+        if (!reachable.add(Workspace.toHex(hash))) {
+            return;
+        }
+        for (SnapshotNode.Child child : node(hash, Map.of()).children()) {
+            if (child.type() == Catalog.Type.DIRECTORY && !isUnread(child)) {
+                mark(child.hash(), reachable);
+            }
+        }
+    }
+
+    private SnapshotNode node(byte[] hash, Map<String, byte[]> created) throws IOException {
+        String hex = Workspace.toHex(hash);
+        byte[] encoded = created.get(hex);
+        if (encoded == null) {
+            encoded = nodes.read(hex);
+        }
+        if (encoded == null) {
+            throw new IOException("Missing snapshot node " + hex);
+        }
+        return SnapshotNode.decode(encoded);
+    }
+
+    /**
+     * Reads a tree one directory at a time, keeping the nodes it creates
+     */
+    private class Builder {
+        final Map<String, byte[]> created = new HashMap<>();
+        long files = 0;
+        long directories = 0;
+        long hashed = 0;
+        long reused = 0;
+        long failed = 0;
+
+        /**
+         * @param directory Directory to be read
+         * @param previous Node of the same directory in the previous snapshot, or null
+         * @return Hash of the node of the directory
+         */
+        byte[] directory(Path directory, SnapshotNode previous) throws IOException {
+            directories++;
+            List<SnapshotNode.Child> children = new ArrayList<>();
+            List<Path> changed = new ArrayList<>();
+            List<BasicFileAttributes> changedAttributes = new ArrayList<>();
+            List<Path> subdirectories = new ArrayList<>();
+            List<BasicFileAttributes> subdirectoryAttributes = new ArrayList<>();
+            long entries = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    entries++;
+                    if (Workspace.isWorkspace(entry)) {
+                        continue;
+                    }
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException | SecurityException e) {
+                        failed++;
+                        continue;
+                    }
+                    String name = entry.getFileName().toString();
+                    long modified = attributes.lastModifiedTime().toMillis();
+                    if (attributes.isDirectory()) {
+                        subdirectories.add(entry);
+                        subdirectoryAttributes.add(attributes);
+                    } else if (attributes.isRegularFile()) {
+                        files++;
+                        SnapshotNode.Child old = previous == null ? null : previous.find(name);
+                        if (old != null && old.type() == Catalog.Type.FILE && old.size() == attributes.size()
+                                && old.modified() == modified && !Arrays.equals(old.hash(), NO_HASH)) {
+                            children.add(old);
+                            reused++;
+                        } else {
+                            changed.add(entry);
+                            changedAttributes.add(attributes);
+                        }
+                    } else if (attributes.isSymbolicLink()) {
+                        byte[] target;
+                        try {
+                            target = Files.readSymbolicLink(entry).toString().getBytes(StandardCharsets.UTF_8);
+                        } catch (IOException | SecurityException e) {
+                            failed++;
+                            target = new byte[0];
+                        }
+                        children.add(new SnapshotNode.Child(name, Catalog.Type.LINK, attributes.size(), modified,
+                                SnapshotNode.hash(target)));
+                    } else {
+                        children.add(new SnapshotNode.Child(name, Catalog.Type.OTHER, attributes.size(), modified, NO_HASH));
+                    }
+                }
+            } catch (DirectoryIteratorException e) {
+                throw e.getCause();
+            } finally {
+                Metrics.add(Metrics.Counter.ENTRIES_SCANNED, entries);
+            }
+
+            List<String> hashes = hash(changed);
+            for (int i = 0; i < changed.size(); i++) {
+                BasicFileAttributes attributes = changedAttributes.get(i);
+                String hash = hashes.get(i);
+                children.add(new SnapshotNode.Child(changed.get(i).getFileName().toString(), Catalog.Type.FILE,
+                        attributes.size(), attributes.lastModifiedTime().toMillis(),
+                        hash == null ? NO_HASH : HexFormat.of().parseHex(hash)));
+            }
+            for (int i = 0; i < subdirectories.size(); i++) {
+                Path subdirectory = subdirectories.get(i);
+                String name = subdirectory.getFileName().toString();
+                SnapshotNode.Child old = previous == null ? null : previous.find(name);
+                SnapshotNode oldNode = old != null && old.type() == Catalog.Type.DIRECTORY && !isUnread(old)
+                        ? node(old.hash(), created) : null;
+                byte[] hash;
+                try {
+                    hash = directory(subdirectory, oldNode);
+                } catch (IOException | SecurityException e) {
+                    failed++;
+                    hash = NO_HASH;
+                }
+                children.add(new SnapshotNode.Child(name, Catalog.Type.DIRECTORY, 0,
+                        subdirectoryAttributes.get(i).lastModifiedTime().toMillis(), hash));
+            }
+
+            byte[] encoded = new SnapshotNode(children).encode();
+            byte[] hash = SnapshotNode.hash(encoded);
+            String hex = Workspace.toHex(hash);
+            if (!nodes.contains(hex)) {
+                created.put(hex, encoded);
+            }
+            return hash;
+        }
+
+        /**
+         * Hashes the files of a directory as a batch, one at a time if any of them fails
+         * @return Hash of every file in hexadecimal, null for the files that could not be read
+         */
+        private List<String> hash(List<Path> changed) {
+            if (changed.isEmpty()) {
+                return List.of();
+            }
+            hashed += changed.size();
+            try {
+                return ContentHasher.hashAll(changed);
+            } catch (IOException | RuntimeException e) {
+                List<String> hashes = new ArrayList<>(changed.size());
+                for (Path file : changed) {
+                    try {
+                        hashes.add(ContentHasher.hash(file));
+                    } catch (IOException | SecurityException failure) {
+                        failed++;
+                        hashes.add(null);
+                    }
+                }
+                return hashes;
+            }
+        }
+    }
+
+}
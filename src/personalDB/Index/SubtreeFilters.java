@@ -0,0 +1,368 @@
+/**
+ * Bloom filter summaries of the names under every directory
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Index;
+
+import personalDB.Engine.TreeWatcher;
+import personalDB.Engine.Workspace;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a {@link Summary} for every directory a search walked: the keys of
+ * the names directly inside it, the names of its subdirectories and a
+ * {@link BloomFilter} of every name and extension anywhere under it. A walk
+ * looking for a single name or extension skips a subdirectory whose filter
+ * says it is certainly not there, so looking for something that is rare or
+ * missing only lists the directories on the way to the matches.
+ * The modification time of a directory only changes with the entries
+ * directly inside it, not deeper, so a summary is only used while a
+ * {@link TreeWatcher} that registered every directory of the tree has been
+ * running since the summary was built: every change it reports drops the
+ * summaries of the directories above it. Without such a watcher summaries
+ * are still built but not trusted, unless -Dpersonaldb.filter.maxage allows
+ * them to be trusted for that many seconds, missing files created deeper
+ * meanwhile.
+ * Filters get {@link #BITS_PER_KEY} bits for every key, set with
+ * -Dpersonaldb.filter.bits, 0 turning them off. Summaries are saved in the
+ * workspace after every walk that changed them.
+ */
+public class SubtreeFilters {
+    public static final int BITS_PER_KEY = Integer.getInteger("personaldb.filter.bits", 10);
+    public static final long MAX_AGE_MILLIS = Long.getLong("personaldb.filter.maxage", 0) * 1000;
+    private static final int MAGIC = 0x50444246;
+    private static final int VERSION = 1;
+    private static SubtreeFilters instance;
+
+    private final Path file;
+    private final Map<Path, Summary> summaries = new ConcurrentHashMap<>();
+    private final Map<TreeWatcher, Long> listening = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile boolean dirty = false;
+
+    /**
+     * What a walk learned about a directory
+     * @param modified Modification time of the directory when it was listed
+     * @param built When the oldest listing the summary depends on started
+     * @param keys Sorted keys of the names and extensions directly inside the directory
+     * @param subdirectories Names of the subdirectories
+     * @param filter Keys of everything under the directory
+     */
+    public record Summary(long modified, long built, long[] keys, String[] subdirectories, BloomFilter filter) {}
+
+    private SubtreeFilters(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the summaries of the workspace, reading them on first use
+     * @return The summaries, empty if none were saved or they could not be read
+     */
+    public static synchronized SubtreeFilters open() {
+        if (instance == null) {
+            instance = new SubtreeFilters(Workspace.home().resolve("filters").resolve("summaries"));
+            try {
+                instance.load();
+            } catch (IOException e) {
+                // Summaries only speed searches up, a search without them is still correct
+                instance.summaries.clear();
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return True unless filters were turned off
+     */
+    public static boolean isEnabled() {
+        return BITS_PER_KEY > 0;
+    }
+
+    /**
+     * @param name Name of an entry
+     * @return Key the filters hold for that name
+     */
+    public static long nameKey(String name) {
+        return BloomFilter.key(name);
+    }
+
+    /**
+     * @param extension Extension in lowercase, without the dot
+     * @return Key the filters hold for that extension, which never equals the key of a name
+     */
+    public static long extensionKey(String extension) {
+        // No name can contain a NUL
+        return BloomFilter.key("\0" + extension);
+    }
+
+    /**
+     * @return Number that changes every time a watcher drops summaries, a walk
+     * that saw it change while it ran may have missed a change
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Returns the time from which summaries of a tree are kept up to date by
+     * a watcher, listening to the watcher covering the tree if there is one.
+     * Changes the watcher has queued are delivered first, so the summaries
+     * they affect are already dropped.
+     * @param root Root of the walk
+     * @return When summaries started being dropped on changes, or
+     * {@link Long#MAX_VALUE} if no watcher covers every directory of the tree
+     */
+    public long watchedSince(Path root) {
+        for (TreeWatcher watcher : TreeWatcher.active()) {
+            if (root.startsWith(watcher.getRoot()) && TreeWatcher.isWatchingWholeTree(watcher.getRoot())) {
+                long since = listening.computeIfAbsent(watcher, added -> {
+                    added.addListener(this::invalidate);
+                    return System.currentTimeMillis();
+                });
+                if (watcher.sync() && !watcher.isDegraded()) {
+                    return since;
+                }
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * @param directory A directory
+     * @return Its summary, or null if it has none
+     */
+    public Summary get(Path directory) {
+        return summaries.get(directory);
+    }
+
+    /**
+     * Checks if a summary still describes its directory
+     * @param summary Summary of the directory
+     * @param modified Current modification time of the directory
+     * @param watchedSince Value returned by {@link #watchedSince(Path)} for the walk
+     * @return True if the filter of the summary can be trusted
+     */
+    public static boolean isUsable(Summary summary, long modified, long watchedSince) {
+        return summary != null && summary.modified() == modified
+                && (summary.built() >= watchedSince || System.currentTimeMillis() - summary.built() < MAX_AGE_MILLIS);
+    }
+
+    /**
+     * Records the summary of a directory, unless summaries were dropped since the walk began
+     * @param directory Directory described
+     * @param summary Its summary
+     * @param generation Value of {@link #generation()} when the walk began
+     */
+    public void put(Path directory, Summary summary, long generation) {
+        synchronized (this.generation) {
+            if (this.generation.get() == generation) {
+                summaries.put(directory, summary);
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Collects the keys of every name under a directory from the summaries,
+     * without touching the disk
+     * @param directory Directory whose summary is usable
+     * @param keys Where the keys are added
+     * @return False if a subdirectory has no summary, the keys are then incomplete
+     */
+    public boolean collect(Path directory, LongList keys) {
+        Summary summary = summaries.get(directory);
+        if (summary == null) {
+            return false;
+        }
+        keys.addAll(summary.keys());
+        for (String subdirectory : summary.subdirectories()) {
+            if (!collect(directory.resolve(subdirectory), keys)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of directories summarized
+     */
+    public int size() {
+        return summaries.size();
+    }
+
+    /**
+     * Drops the summaries of the directories above every change, and of
+     * everything under the directories that were removed or must be rescanned
+     * @param changes Changes reported by a watcher
+     */
+    private void invalidate(List<TreeWatcher.Change> changes) {
+        synchronized (generation) {
+            generation.incrementAndGet();
+            for (TreeWatcher.Change change : changes) {
+                Path path = change.path().toAbsolutePath().normalize();
+                if (change.kind() == TreeWatcher.Kind.DELETED || change.kind() == TreeWatcher.Kind.RESCAN) {
+                    summaries.keySet().removeIf(directory -> directory.startsWith(path));
+                }
+                for (Path parent = path.getParent(); parent != null; parent = parent.getParent()) {
+                    summaries.remove(parent);
+                }
+            }
+            dirty = true;
+        }
+    }
+
+    /**
+     * Writes the summaries to the workspace if they changed since they were
+     * last read or written
+     * @throws IOException If the summaries cannot be written
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            List<Map.Entry<Path, Summary>> entries = new ArrayList<>(summaries.entrySet());
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<Path, Summary> entry : entries) {
+                Summary summary = entry.getValue();
+                out.writeUTF(entry.getKey().toString());
+                out.writeLong(summary.modified());
+                out.writeLong(summary.built());
+                Encoding.writeVarInt(out, summary.keys().length);
+                for (long key : summary.keys()) {
+                    out.writeLong(key);
+                }
+                Encoding.writeVarInt(out, summary.subdirectories().length);
+                for (String subdirectory : summary.subdirectories()) {
+                    out.writeUTF(subdirectory);
+                }
+                summary.filter().write(out);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            dirty = true;
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a filter file: " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String directory = in.readUTF();
+                long modified = in.readLong();
+                long built = in.readLong();
+                long[] keys = new long[Encoding.readVarInt(in)];
+                for (int j = 0; j < keys.length; j++) {
+                    keys[j] = in.readLong();
+                }
+                String[] subdirectories = new String[Encoding.readVarInt(in)];
+                for (int j = 0; j < subdirectories.length; j++) {
+                    subdirectories[j] = in.readUTF();
+                }
+                summaries.put(Paths.get(directory), new Summary(modified, built, keys, subdirectories, BloomFilter.read(in)));
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing saved yet
+        }
+    }
+
+    /**
+     * Growable array of keys
+     */
+    public static final class LongList {
+        private long[] values = new long[16];
+        private int size = 0;
+
+        /**
+         * @param value Value appended
+         */
+        public void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * @param added Values appended
+         */
+        public void addAll(long[] added) {
+            addAll(added, added.length);
+        }
+
+        /**
+         * @param added Values appended
+         */
+        public void addAll(LongList added) {
+            addAll(added.values, added.size);
+        }
+
+        private void addAll(long[] added, int length) {
+            if (size + length > values.length) {
+                values = Arrays.copyOf(values, Math.max(size + length, size * 2));
+            }
+            System.arraycopy(added, 0, values, size, length);
+            size += length;
+        }
+
+        /**
+         * @return Number of values
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param index Position of a value
+         * @return The value
+         */
+        public long get(int index) {
+            return values[index];
+        }
+
+        /**
+         * @return The values sorted, without repetitions
+         */
+        public long[] toSortedSet() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int unique = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (unique == 0 || sorted[i] != sorted[unique - 1]) {
+                    sorted[unique++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, unique);
+        }
+    }
+
+}
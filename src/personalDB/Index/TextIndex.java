@@ -0,0 +1,806 @@
+/**
+ * Full text index of the files under a root directory
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Index;
+
+import personalDB.Engine.TreeWalker;
+import personalDB.Engine.Workspace;
+import personalDB.Metrics.Metrics;
+import personalDB.Parser.TextQuery;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Objects of this class hold the words of every text file under a root
+ * directory, so content searches are answered without reading any file.
+ * The index is a list of immutable {@link TextSegment}s plus, for every
+ * segment, the set of its documents that were deleted since it was written.
+ * An update walks the tree and only reads the files whose size or
+ * modification time changed: their old documents are marked deleted and
+ * their words are written to new segments, at most
+ * {@link #BUFFER_BYTES} of them held in memory at a time. Segments of
+ * about the same size are merged in the background, {@link #MERGE_FACTOR}
+ * at a time, which also drops the deleted documents, so the number of
+ * segments a search visits grows with the logarithm of the size of the index.
+ * The list of segments and deletions is saved in a manifest that is replaced
+ * atomically, segment files it does not name are left overs of an interrupted
+ * update or merge and are deleted when the index is opened.
+ * Files larger than {@link #MAX_FILE_BYTES} or that are not text are recorded
+ * without words, so they are not read again until they change.
+ * Set with -Dpersonaldb.search.buffer=MB, -Dpersonaldb.search.maxsize=MB and
+ * -Dpersonaldb.search.mergefactor.
+ */
+public class TextIndex {
+    public static final long BUFFER_BYTES = Long.getLong("personaldb.search.buffer", 64) << 20;
+    public static final long MAX_FILE_BYTES = Long.getLong("personaldb.search.maxsize", 16) << 20;
+    public static final int MERGE_FACTOR = Math.max(2, Integer.getInteger("personaldb.search.mergefactor", 8));
+    private static final long MAX_MERGED_BYTES = TextSegment.MAX_BYTES / 2;
+    private static final long SMALLEST_TIER_BYTES = 1 << 20;
+    private static final int MAGIC = 0x5044544D;
+    private static final int VERSION = 1;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final Map<Path, TextIndex> opened = new ConcurrentHashMap<>();
+    private static final ExecutorService merger = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "personalDB-merger");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path root;
+    private final Path directory;
+    // Held by updates and merges, searches never wait for it
+    private final ReentrantLock writer = new ReentrantLock();
+    private volatile State state;
+    private int nextSegment;
+    private boolean dropped = false;
+
+    /**
+     * A segment and the documents deleted from it since it was written
+     * @param segment The segment
+     * @param deleted Deleted documents as a bit set, never modified once in a {@link State}
+     * @param live Number of documents not deleted
+     */
+    private record Segment(TextSegment segment, long[] deleted, int live) {
+
+        boolean isDeleted(int document) {
+            return (deleted[document >>> 6] & (1L << document)) != 0;
+        }
+    }
+
+    /**
+     * Segments searched, replaced as a whole by updates and merges
+     * @param updated When the last update started
+     * @param segments Segments, none of them fully deleted
+     */
+    private record State(long updated, List<Segment> segments) {}
+
+    /**
+     * A file seen by the walk of an update
+     */
+    private record Found(String path, long size, long modified) {}
+
+    /**
+     * Totals of an update
+     * @param files Number of files indexed after the update
+     * @param read Number of files read because they were new or changed
+     * @param removed Number of files that were indexed and are gone
+     * @param skipped Number of files read that were not text or too large
+     * @param bytes Number of bytes read
+     * @param segments Number of segments right after the update, merges may lower it
+     */
+    public record UpdateResult(long files, long read, long removed, long skipped, long bytes, int segments) {}
+
+    private TextIndex(Path root, Path directory, State state, int nextSegment) {
+        this.root = root;
+        this.directory = directory;
+        this.state = state;
+        this.nextSegment = nextSegment;
+    }
+
+    /**
+     * Brings the index of a directory tree up to date, creating it if needed.
+     * Only new and changed files are read.
+     * @param root Root directory of the index
+     * @return Totals of the update
+     * @throws IOException If the tree cannot be walked or the index cannot be written
+     */
+    public static UpdateResult update(Path root) throws IOException {
+        Path normalized = root.toAbsolutePath().normalize();
+        TextIndex index;
+        try {
+            index = open(normalized);
+        } catch (IOException e) {
+            // An index that cannot be read is rebuilt from scratch
+            drop(normalized);
+            index = null;
+        }
+        if (index == null) {
+            index = opened.computeIfAbsent(normalized, added -> new TextIndex(added, directoryOf(added),
+                    new State(0, List.of()), 0));
+        }
+        return index.update();
+    }
+
+    /**
+     * Returns the index that covers a directory, which is the index of that
+     * directory or of its closest indexed parent
+     * @param directory Directory to be searched
+     * @return Index covering the directory or null if there is none
+     */
+    public static TextIndex forDirectory(Path directory) {
+        for (Path p = directory.toAbsolutePath().normalize(); p != null; p = p.getParent()) {
+            try {
+                TextIndex index = open(p);
+                if (index != null) {
+                    return index;
+                }
+            } catch (IOException e) {
+                System.out.println("Could not read the text index of " + p + "\n" + e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the index of a root directory, waiting for a merge in progress
+     * @param root Root directory of the index
+     * @return True if there was an index to remove
+     * @throws IOException If the index cannot be deleted
+     */
+    public static boolean drop(Path root) throws IOException {
+        Path normalized = root.toAbsolutePath().normalize();
+        TextIndex index = opened.remove(normalized);
+        if (index != null) {
+            index.writer.lock();
+            index.dropped = true;
+            index.writer.unlock();
+        }
+        Path directory = directoryOf(normalized);
+        if (!Files.isDirectory(directory)) {
+            return false;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.delete(directory);
+        return true;
+    }
+
+    /**
+     * @return Root directory of the index
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @return When the last update started, in milliseconds
+     */
+    public long updatedAt() {
+        return state.updated();
+    }
+
+    /**
+     * @return Number of files indexed
+     */
+    public long fileCount() {
+        long files = 0;
+        for (Segment segment : state.segments()) {
+            files += segment.live();
+        }
+        return files;
+    }
+
+    /**
+     * @return Number of segments
+     */
+    public int segmentCount() {
+        return state.segments().size();
+    }
+
+    /**
+     * @return Bytes taken by the segment files
+     */
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (Segment segment : state.segments()) {
+            bytes += segment.segment().sizeInBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Finds the files matching a query, without reading any of them
+     * @param query Compiled query
+     * @param under Only files under this directory are returned
+     * @return Paths of the files, sorted
+     */
+    public List<Path> search(TextQuery query, Path under) {
+        String relative = root.relativize(under.toAbsolutePath().normalize()).toString();
+        String prefix = relative.isEmpty() ? "" : relative + File.separator;
+        List<String> found = new ArrayList<>();
+        for (Segment segment : state.segments()) {
+            int[] documents = evaluate(query.getRoot(), segment.segment());
+            for (int document : documents) {
+                if (!segment.isDeleted(document)) {
+                    String path = segment.segment().path(document);
+                    if (path.startsWith(prefix)) {
+                        found.add(path);
+                    }
+                }
+            }
+        }
+        found.sort(null);
+        List<Path> result = new ArrayList<>(found.size());
+        for (String path : found) {
+            result.add(root.resolve(path));
+        }
+        return result;
+    }
+
+    /**
+     * Finds the documents of a segment matching a node of a query, deleted ones included
+     * @return Sorted document numbers
+     */
+    private static int[] evaluate(TextQuery.Node node, TextSegment segment) {
+        if (node instanceof TextQuery.Word word) {
+            int number = segment.find(word.word().getBytes(StandardCharsets.UTF_8));
+            return number < 0 ? new int[0] : documents(segment.postings(number));
+        } else if (node instanceof TextQuery.Prefix prefix) {
+            byte[] start = prefix.prefix().getBytes(StandardCharsets.UTF_8);
+            long[] matched = new long[(segment.documentCount() + 63) >>> 6];
+            for (int number = segment.lowerBound(start); number < segment.wordCount() && segment.startsWith(number, start); number++) {
+                TextSegment.Postings postings = segment.postings(number);
+                while (postings.next()) {
+                    matched[postings.document() >>> 6] |= 1L << postings.document();
+                }
+            }
+            return toArray(matched);
+        } else if (node instanceof TextQuery.Phrase phrase) {
+            return phrase(phrase.words(), segment);
+        } else if (node instanceof TextQuery.Or or) {
+            long[] matched = new long[(segment.documentCount() + 63) >>> 6];
+            for (TextQuery.Node term : or.terms()) {
+                for (int document : evaluate(term, segment)) {
+                    matched[document >>> 6] |= 1L << document;
+                }
+            }
+            return toArray(matched);
+        } else if (node instanceof TextQuery.And and) {
+            List<int[]> included = new ArrayList<>();
+            List<int[]> excluded = new ArrayList<>();
+            for (TextQuery.Node term : and.terms()) {
+                if (term instanceof TextQuery.Not not) {
+                    excluded.add(evaluate(not.term(), segment));
+                } else {
+                    int[] documents = evaluate(term, segment);
+                    if (documents.length == 0) {
+                        return documents;
+                    }
+                    included.add(documents);
+                }
+            }
+            included.sort(Comparator.comparingInt(documents -> documents.length));
+            int[] result = included.get(0);
+            for (int i = 1; i < included.size() && result.length > 0; i++) {
+                result = intersect(result, included.get(i));
+            }
+            for (int[] documents : excluded) {
+                result = subtract(result, documents);
+            }
+            return result;
+        }
+        throw new IllegalArgumentException("Unexpected query node " + node);
+    }
+
+    /**
+     * Finds the documents holding the words of a phrase in order. Documents
+     * holding every word are found first, then the positions of each word
+     * are decoded for those documents only.
+     */
+    private static int[] phrase(List<String> words, TextSegment segment) {
+        TextSegment.Postings[] postings = new TextSegment.Postings[words.size()];
+        int[] candidates = null;
+        for (int i = 0; i < words.size(); i++) {
+            int number = segment.find(words.get(i).getBytes(StandardCharsets.UTF_8));
+            if (number < 0) {
+                return new int[0];
+            }
+            postings[i] = segment.postings(number);
+            int[] documents = documents(segment.postings(number));
+            candidates = candidates == null ? documents : intersect(candidates, documents);
+        }
+        int[] result = new int[candidates.length];
+        int found = 0;
+        int[][] positions = new int[words.size()][];
+        for (int candidate : candidates) {
+            for (int i = 0; i < postings.length; i++) {
+                while (postings[i].document() < candidate) {
+                    postings[i].next();
+                }
+                int[] values = new int[postings[i].frequency()];
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = postings[i].nextPosition();
+                }
+                positions[i] = values;
+            }
+            if (isPhrase(positions)) {
+                result[found++] = candidate;
+            }
+        }
+        return Arrays.copyOf(result, found);
+    }
+
+    /**
+     * @param positions Sorted positions of every word of a phrase in a document
+     * @return True if some position of the first word is followed by the other words in order
+     */
+    private static boolean isPhrase(int[][] positions) {
+        for (int start : positions[0]) {
+            boolean matches = true;
+            for (int i = 1; i < positions.length && matches; i++) {
+                matches = Arrays.binarySearch(positions[i], start + i) >= 0;
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] documents(TextSegment.Postings postings) {
+        int[] documents = new int[postings.count()];
+        for (int i = 0; postings.next(); i++) {
+            documents[i] = postings.document();
+        }
+        return documents;
+    }
+
+    private static int[] toArray(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        int[] documents = new int[count];
+        int next = 0;
+        for (int i = 0; i < bits.length; i++) {
+            for (long word = bits[i]; word != 0; word &= word - 1) {
+                documents[next++] = (i << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * Intersects two sorted arrays, galloping through the longer one so a
+     * rare word next to a common one costs about the length of the rare one
+     */
+    private static int[] intersect(int[] shorter, int[] longer) {
+        if (shorter.length > longer.length) {
+            return intersect(longer, shorter);
+        }
+        int[] result = new int[shorter.length];
+        int found = 0;
+        int low = 0;
+        for (int document : shorter) {
+            int step = 1;
+            int high = low;
+            while (high < longer.length && longer[high] < document) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            int index = Arrays.binarySearch(longer, low, Math.min(high + 1, longer.length), document);
+            if (index >= 0) {
+                result[found++] = document;
+                low = index + 1;
+            } else {
+                low = -index - 1;
+            }
+            if (low >= longer.length) {
+                break;
+            }
+        }
+        return Arrays.copyOf(result, found);
+    }
+
+    private static int[] subtract(int[] documents, int[] excluded) {
+        int[] result = new int[documents.length];
+        int found = 0;
+        int j = 0;
+        for (int document : documents) {
+            while (j < excluded.length && excluded[j] < document) {
+                j++;
+            }
+            if (j == excluded.length || excluded[j] != document) {
+                result[found++] = document;
+            }
+        }
+        return Arrays.copyOf(result, found);
+    }
+
+    /**
+     * Walks the tree, marks the documents of changed and removed files as
+     * deleted and indexes the new and changed files into new segments
+     */
+    private UpdateResult update() throws IOException {
+        writer.lock();
+        try {
+            long started = System.currentTimeMillis();
+            List<Segment> segments = state.segments();
+            Map<String, int[]> known = new HashMap<>();
+            for (int s = 0; s < segments.size(); s++) {
+                TextSegment segment = segments.get(s).segment();
+                for (int document = 0; document < segment.documentCount(); document++) {
+                    if (!segments.get(s).isDeleted(document)) {
+                        known.put(segment.path(document), new int[] {s, document});
+                    }
+                }
+            }
+
+            ConcurrentLinkedQueue<Found> walked = new ConcurrentLinkedQueue<>();
+            new TreeWalker(root, false).walk((path, attributes) -> {
+                if (attributes.isRegularFile()) {
+                    walked.add(new Found(root.relativize(path).toString(), attributes.size(),
+                            attributes.lastModifiedTime().toMillis()));
+                }
+                return true;
+            });
+
+            long[][] deleted = new long[segments.size()][];
+            int[] live = new int[segments.size()];
+            for (int s = 0; s < segments.size(); s++) {
+                live[s] = segments.get(s).live();
+            }
+            List<Found> changed = new ArrayList<>();
+            for (Found file : walked) {
+                int[] at = known.remove(file.path());
+                if (at != null) {
+                    TextSegment segment = segments.get(at[0]).segment();
+                    if (segment.size(at[1]) == file.size() && segment.modified(at[1]) == file.modified()) {
+                        continue;
+                    }
+                    delete(deleted, live, segments, at);
+                }
+                changed.add(file);
+            }
+            for (int[] at : known.values()) {
+                delete(deleted, live, segments, at);
+            }
+            changed.sort(Comparator.comparing(Found::path));
+
+            List<Segment> added = new ArrayList<>();
+            LongAdder bytes = new LongAdder();
+            LongAdder skipped = new LongAdder();
+            TextSegment.Builder builder = new TextSegment.Builder();
+            long read = 0;
+            // Files are read and split in parallel a batch at a time, so the text held at once stays bounded
+            for (int start = 0; start < changed.size(); ) {
+                int end = start;
+                long batchBytes = 0;
+                while (end < changed.size()) {
+                    batchBytes += Math.min(changed.get(end).size(), MAX_FILE_BYTES);
+                    if (end > start && batchBytes > BUFFER_BYTES / 4) {
+                        break;
+                    }
+                    end++;
+                }
+                List<TextSegment.Document> documents = changed.subList(start, end).parallelStream()
+                        .map(file -> read(file, bytes, skipped))
+                        .toList();
+                for (TextSegment.Document document : documents) {
+                    if (document != null) {
+                        builder.add(document);
+                        read++;
+                    }
+                    if (builder.memory() >= BUFFER_BYTES) {
+                        added.add(flush(builder));
+                        builder = new TextSegment.Builder();
+                    }
+                }
+                start = end;
+            }
+            if (builder.size() > 0) {
+                added.add(flush(builder));
+            }
+
+            List<Segment> kept = new ArrayList<>();
+            List<TextSegment> removed = new ArrayList<>();
+            for (int s = 0; s < segments.size(); s++) {
+                Segment segment = segments.get(s);
+                if (live[s] == 0) {
+                    removed.add(segment.segment());
+                } else if (deleted[s] == null) {
+                    kept.add(segment);
+                } else {
+                    kept.add(new Segment(segment.segment(), deleted[s], live[s]));
+                }
+            }
+            kept.addAll(added);
+            commit(new State(started, List.copyOf(kept)), removed);
+            scheduleMerges();
+            return new UpdateResult(fileCount(), read, known.size(), skipped.sum(), bytes.sum(), kept.size());
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    /**
+     * Marks a document as deleted in a copy of the deletions of its segment
+     * @param at Number of the segment and of the document
+     */
+    private static void delete(long[][] deleted, int[] live, List<Segment> segments, int[] at) {
+        if (deleted[at[0]] == null) {
+            deleted[at[0]] = segments.get(at[0]).deleted().clone();
+        }
+        deleted[at[0]][at[1] >>> 6] |= 1L << at[1];
+        live[at[0]]--;
+    }
+
+    /**
+     * Reads a file into a document
+     * @return The document, without words if the file is not text, or null if it cannot be read
+     */
+    private TextSegment.Document read(Found file, LongAdder bytes, LongAdder skipped) {
+        if (file.size() > MAX_FILE_BYTES) {
+            skipped.increment();
+            return new TextSegment.Document(file.path(), file.size(), file.modified());
+        }
+        byte[] content;
+        try {
+            content = Files.readAllBytes(root.resolve(file.path()));
+        } catch (IOException | SecurityException | OutOfMemoryError e) {
+            // Tried again by the next update
+            return null;
+        }
+        bytes.add(content.length);
+        Metrics.add(Metrics.Counter.BYTES_READ, content.length);
+        if (!Tokenizer.isText(content, content.length)) {
+            skipped.increment();
+            return new TextSegment.Document(file.path(), file.size(), file.modified());
+        }
+        return TextSegment.Document.of(file.path(), file.size(), file.modified(),
+                new String(content, StandardCharsets.UTF_8));
+    }
+
+    private Segment flush(TextSegment.Builder builder) throws IOException {
+        TextSegment segment = builder.write(segmentFile(nextSegment++));
+        return new Segment(segment, new long[(segment.documentCount() + 63) >>> 6], segment.documentCount());
+    }
+
+    private static Segment withDeletions(TextSegment segment, long[] deleted) {
+        int live = segment.documentCount();
+        for (long word : deleted) {
+            live -= Long.bitCount(word);
+        }
+        return new Segment(segment, deleted, live);
+    }
+
+    /**
+     * Merges segments in the background until no tier holds
+     * {@link #MERGE_FACTOR} segments. Updates wait for the merge in progress,
+     * searches keep using the segments they started with.
+     */
+    private void scheduleMerges() {
+        merger.execute(() -> {
+            while (true) {
+                writer.lock();
+                try {
+                    List<Segment> picked = dropped ? null : pickMerge(state.segments());
+                    if (picked == null) {
+                        return;
+                    }
+                    merge(picked);
+                } catch (IOException e) {
+                    // The segments stay as they are, the next update tries again
+                    return;
+                } finally {
+                    writer.unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * Picks the segments of the next merge: a segment with more deleted than
+     * live documents on its own, otherwise the {@link #MERGE_FACTOR} smallest
+     * segments of the lowest tier that has that many, tiers growing by
+     * {@link #MERGE_FACTOR} times from {@link #SMALLEST_TIER_BYTES}
+     * @return Segments to be merged, or null if there is nothing to merge
+     */
+    private static List<Segment> pickMerge(List<Segment> segments) {
+        for (Segment segment : segments) {
+            if (segment.live() * 2 < segment.segment().documentCount() && segment.segment().sizeInBytes() <= MAX_MERGED_BYTES) {
+                return List.of(segment);
+            }
+        }
+        Map<Integer, List<Segment>> tiers = new HashMap<>();
+        for (Segment segment : segments) {
+            long size = Math.max(segment.segment().sizeInBytes(), SMALLEST_TIER_BYTES);
+            int tier = (int) (Math.log((double) size / SMALLEST_TIER_BYTES) / Math.log(MERGE_FACTOR));
+            tiers.computeIfAbsent(tier, added -> new ArrayList<>()).add(segment);
+        }
+        List<Integer> levels = new ArrayList<>(tiers.keySet());
+        levels.sort(null);
+        for (int level : levels) {
+            List<Segment> tier = tiers.get(level);
+            if (tier.size() >= MERGE_FACTOR) {
+                tier.sort(Comparator.comparingLong(segment -> segment.segment().sizeInBytes()));
+                List<Segment> picked = tier.subList(0, MERGE_FACTOR);
+                long bytes = 0;
+                for (Segment segment : picked) {
+                    bytes += segment.segment().sizeInBytes();
+                }
+                if (bytes <= MAX_MERGED_BYTES) {
+                    return picked;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces segments with a single one holding their live documents, in
+     * the place of the first of them
+     */
+    private void merge(List<Segment> picked) throws IOException {
+        List<TextSegment> sources = new ArrayList<>();
+        List<long[]> deleted = new ArrayList<>();
+        for (Segment segment : picked) {
+            sources.add(segment.segment());
+            deleted.add(segment.deleted());
+        }
+        TextSegment merged = TextSegment.merge(sources, deleted, segmentFile(nextSegment++));
+        Set<Segment> replaced = new HashSet<>(picked);
+        List<Segment> segments = new ArrayList<>();
+        boolean placed = false;
+        for (Segment segment : state.segments()) {
+            if (!replaced.contains(segment)) {
+                segments.add(segment);
+            } else if (!placed) {
+                if (merged.documentCount() > 0) {
+                    segments.add(new Segment(merged, new long[(merged.documentCount() + 63) >>> 6], merged.documentCount()));
+                }
+                placed = true;
+            }
+        }
+        if (merged.documentCount() == 0) {
+            sources.add(merged);
+        }
+        commit(new State(state.updated(), List.copyOf(segments)), sources);
+    }
+
+    /**
+     * Saves a new list of segments and only then deletes the segment files
+     * it no longer names. Searches still running on the old list keep their
+     * mappings, which stay valid after the files are deleted.
+     */
+    private void commit(State next, List<TextSegment> removed) throws IOException {
+        Files.createDirectories(directory);
+        Path manifest = directory.resolve("manifest");
+        Path temp = Files.createTempFile(directory, "manifest", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(root.toString());
+            out.writeLong(next.updated());
+            out.writeInt(nextSegment);
+            out.writeInt(next.segments().size());
+            for (Segment segment : next.segments()) {
+                out.writeUTF(segment.segment().getFile().getFileName().toString());
+                Encoding.writeVarInt(out, segment.deleted().length);
+                for (long word : segment.deleted()) {
+                    out.writeLong(word);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        state = next;
+        for (TextSegment segment : removed) {
+            try {
+                Files.deleteIfExists(segment.getFile());
+            } catch (IOException e) {
+                // Some systems do not delete mapped files, it is deleted when the index is next opened
+            }
+        }
+    }
+
+    /**
+     * Returns the index of a root directory, reading its manifest on first use
+     * @return The index, or null if the directory has none
+     */
+    private static TextIndex open(Path root) throws IOException {
+        TextIndex index = opened.get(root);
+        if (index != null) {
+            return index;
+        }
+        Path directory = directoryOf(root);
+        Path manifest = directory.resolve("manifest");
+        List<Segment> segments = new ArrayList<>();
+        long updated;
+        int nextSegment;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(root.toString())) {
+                throw new IOException("Not a text index manifest: " + manifest);
+            }
+            updated = in.readLong();
+            nextSegment = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                TextSegment segment = TextSegment.open(directory.resolve(in.readUTF()));
+                long[] deleted = new long[Encoding.readVarInt(in)];
+                if (deleted.length != (segment.documentCount() + 63) >>> 6) {
+                    throw new IOException("Deletions do not match " + segment.getFile());
+                }
+                for (int j = 0; j < deleted.length; j++) {
+                    deleted[j] = in.readLong();
+                }
+                segments.add(withDeletions(segment, deleted));
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        Set<Path> named = new HashSet<>();
+        for (Segment segment : segments) {
+            named.add(segment.segment().getFile());
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (!named.contains(file) && !file.equals(manifest)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        TextIndex loaded = new TextIndex(root, directory, new State(updated, List.copyOf(segments)), nextSegment);
+        TextIndex previous = opened.putIfAbsent(root, loaded);
+        if (previous != null) {
+            return previous;
+        }
+        // Merges the last session did not finish
+        loaded.scheduleMerges();
+        return loaded;
+    }
+
+    private Path segmentFile(int number) {
+        return directory.resolve(String.format("%08d", number) + SEGMENT_SUFFIX);
+    }
+
+    private static Path directoryOf(Path root) {
+        return Workspace.home().resolve("search").resolve(Workspace.rootKey(root));
+    }
+
+}
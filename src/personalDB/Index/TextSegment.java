@@ -0,0 +1,701 @@
+/**
+ * Immutable segment of the full text index
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A segment holds the words of a set of documents as an inverted index: for
+ * every word, the documents that contain it and where. Segments are written
+ * once, by a {@link Builder} or by merging older segments, and then memory
+ * mapped, so opening one reads nothing and a search only touches the pages of
+ * the words it looks up.
+ * A segment file is laid out as
+ * <pre>
+ * MAGIC VERSION
+ * postings    for every word: (document gap, frequency) varints, then position gaps
+ * words       varint length + UTF-8 bytes, sorted by their bytes
+ * word table  word offset, postings offset, positions offset, document count
+ * documents   varint length + UTF-8 path, size, modification time
+ * offsets     offset of every document
+ * footer      documents, words, word table offset, document table offset, MAGIC
+ * </pre>
+ * Every offset is an int, so a segment holds at most 2 GB.
+ */
+public final class TextSegment {
+    public static final long MAX_BYTES = Integer.MAX_VALUE;
+    private static final int MAGIC = 0x50445453;
+    private static final int VERSION = 1;
+    private static final int HEADER = 2 * Integer.BYTES;
+    private static final int FOOTER = 5 * Integer.BYTES;
+    private static final int WORD_ENTRY = 4 * Integer.BYTES;
+
+    private final Path file;
+    private final ByteBuffer data;
+    private final int documents;
+    private final int words;
+    private final int wordTable;
+    private final int documentTable;
+    private final int documentOffsets;
+
+    private TextSegment(Path file, ByteBuffer data) throws IOException {
+        this.file = file;
+        this.data = data;
+        int footer = data.limit() - FOOTER;
+        this.documents = data.getInt(footer);
+        this.words = data.getInt(footer + Integer.BYTES);
+        this.wordTable = data.getInt(footer + 2 * Integer.BYTES);
+        this.documentTable = data.getInt(footer + 3 * Integer.BYTES);
+        this.documentOffsets = footer - documents * Integer.BYTES;
+        if (data.getInt(0) != MAGIC || data.getInt(Integer.BYTES) != VERSION || data.getInt(footer + 4 * Integer.BYTES) != MAGIC
+                || documents < 0 || words < 0 || wordTable < HEADER || wordTable + (long) words * WORD_ENTRY > documentTable
+                || documentTable > documentOffsets) {
+            throw new IOException("Not a text segment: " + file);
+        }
+    }
+
+    /**
+     * Maps a segment file into memory
+     * @param file Segment file
+     * @return The segment
+     * @throws IOException If the file cannot be mapped or is not a segment
+     */
+    public static TextSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER + FOOTER || size > MAX_BYTES) {
+                throw new IOException("Not a text segment: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            return new TextSegment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * @return Path of the segment file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return Number of documents, deleted ones included
+     */
+    public int documentCount() {
+        return documents;
+    }
+
+    /**
+     * @return Number of distinct words
+     */
+    public int wordCount() {
+        return words;
+    }
+
+    /**
+     * @return Size of the segment file in bytes
+     */
+    public long sizeInBytes() {
+        return data.limit();
+    }
+
+    /**
+     * @param document Number of a document
+     * @return Its path relative to the root of the index
+     */
+    public String path(int document) {
+        ByteBuffer in = at(data.getInt(documentOffsets + document * Integer.BYTES));
+        byte[] path = new byte[Encoding.readVarInt(in)];
+        in.get(path);
+        return new String(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param document Number of a document
+     * @return Size of the file when it was indexed
+     */
+    public long size(int document) {
+        ByteBuffer in = at(data.getInt(documentOffsets + document * Integer.BYTES));
+        int length = Encoding.readVarInt(in);
+        return in.getLong(in.position() + length);
+    }
+
+    /**
+     * @param document Number of a document
+     * @return Modification time of the file when it was indexed, in milliseconds
+     */
+    public long modified(int document) {
+        ByteBuffer in = at(data.getInt(documentOffsets + document * Integer.BYTES));
+        int length = Encoding.readVarInt(in);
+        return in.getLong(in.position() + length + Long.BYTES);
+    }
+
+    /**
+     * Looks a word up with a binary search of the word table
+     * @param word Word in UTF-8
+     * @return Number of the word, or -1 if no document contains it
+     */
+    public int find(byte[] word) {
+        int found = lowerBound(word);
+        return found < words && compare(found, word) == 0 ? found : -1;
+    }
+
+    /**
+     * @param word Word in UTF-8
+     * @return Number of the first word that is not smaller than the given one
+     */
+    public int lowerBound(byte[] word) {
+        int low = 0;
+        int high = words;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(middle, word) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param number Number of a word
+     * @param prefix Start of a word in UTF-8
+     * @return True if the word starts with the prefix
+     */
+    public boolean startsWith(int number, byte[] prefix) {
+        ByteBuffer in = at(wordOffset(number));
+        int length = Encoding.readVarInt(in);
+        if (length < prefix.length) {
+            return false;
+        }
+        int start = in.position();
+        for (int i = 0; i < prefix.length; i++) {
+            if (data.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param number Number of a word
+     * @return The word in UTF-8
+     */
+    public byte[] word(int number) {
+        ByteBuffer in = at(wordOffset(number));
+        byte[] word = new byte[Encoding.readVarInt(in)];
+        in.get(word);
+        return word;
+    }
+
+    /**
+     * @param number Number of a word
+     * @return Cursor over the documents that contain the word
+     */
+    public Postings postings(int number) {
+        int entry = wordTable + number * WORD_ENTRY;
+        return new Postings(at(data.getInt(entry + Integer.BYTES)), at(data.getInt(entry + 2 * Integer.BYTES)),
+                data.getInt(entry + 3 * Integer.BYTES));
+    }
+
+    private int wordOffset(int number) {
+        return data.getInt(wordTable + number * WORD_ENTRY);
+    }
+
+    private ByteBuffer at(int offset) {
+        return data.duplicate().position(offset);
+    }
+
+    private int compare(int number, byte[] word) {
+        ByteBuffer in = at(wordOffset(number));
+        int length = Encoding.readVarInt(in);
+        int start = in.position();
+        int shared = Math.min(length, word.length);
+        for (int i = 0; i < shared; i++) {
+            int difference = (data.get(start + i) & 0xFF) - (word[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - word.length;
+    }
+
+    /**
+     * Cursor over the documents that contain a word, in increasing order.
+     * Positions are only decoded for the documents they are asked for.
+     */
+    public static final class Postings {
+        private final ByteBuffer documents;
+        private final ByteBuffer positions;
+        private final int count;
+        private int read = 0;
+        private int document = -1;
+        private int frequency = 0;
+        private int pending = 0;
+        private int position = 0;
+
+        private Postings(ByteBuffer documents, ByteBuffer positions, int count) {
+            this.documents = documents;
+            this.positions = positions;
+            this.count = count;
+        }
+
+        /**
+         * @return Number of documents containing the word
+         */
+        public int count() {
+            return count;
+        }
+
+        /**
+         * Moves to the next document
+         * @return False if there are no more documents
+         */
+        public boolean next() {
+            if (read == count) {
+                return false;
+            }
+            while (pending > 0) {
+                while ((positions.get() & 0x80) != 0) {
+                    // Skips a varint
+                }
+                pending--;
+            }
+            document += Encoding.readVarInt(documents);
+            frequency = Encoding.readVarInt(documents);
+            pending = frequency;
+            position = 0;
+            read++;
+            return true;
+        }
+
+        /**
+         * @return Current document
+         */
+        public int document() {
+            return document;
+        }
+
+        /**
+         * @return Number of times the word appears in the current document
+         */
+        public int frequency() {
+            return frequency;
+        }
+
+        /**
+         * Decodes the next position of the word in the current document, at
+         * most {@link #frequency()} times per document
+         * @return Number of words before it in the document
+         */
+        public int nextPosition() {
+            pending--;
+            position += Encoding.readVarInt(positions);
+            return position;
+        }
+    }
+
+    /**
+     * Words of a single file, ready to be added to a segment
+     */
+    public static final class Document {
+        private final String path;
+        private final long size;
+        private final long modified;
+        // Word at every position, null for words too long to be indexed
+        private String[] words;
+        private int positions = 0;
+
+        /**
+         * Builds a document without words, for files that are not text
+         * @param path Path relative to the root of the index
+         * @param size Size of the file
+         * @param modified Modification time of the file in milliseconds
+         */
+        public Document(String path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.words = new String[0];
+        }
+
+        /**
+         * Splits a text into words
+         * @param path Path relative to the root of the index
+         * @param size Size of the file
+         * @param modified Modification time of the file in milliseconds
+         * @param text Content of the file
+         * @return The document
+         */
+        public static Document of(String path, long size, long modified, CharSequence text) {
+            Document document = new Document(path, size, modified);
+            document.words = new String[Math.max(16, text.length() / 6)];
+            document.positions = Tokenizer.tokenize(text, (word, position) -> {
+                if (position >= document.words.length) {
+                    document.words = Arrays.copyOf(document.words, Math.max(position + 1, document.words.length * 2));
+                }
+                document.words[position] = word;
+            });
+            return document;
+        }
+    }
+
+    /**
+     * Growable array of bytes holding varints
+     */
+    private static final class Bytes {
+        byte[] values = new byte[16];
+        int size = 0;
+
+        void writeVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                values[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            values[size++] = (byte) value;
+        }
+
+        void write(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, values, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeInt(int value) {
+            ensure(Integer.BYTES);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                values[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeLong(long value) {
+            ensure(Long.BYTES);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                values[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > values.length) {
+                values = Arrays.copyOf(values, Math.max(size + extra, values.length * 2));
+            }
+        }
+    }
+
+    /**
+     * Documents and positions of a word while a segment is built
+     */
+    private static final class WordPostings {
+        final Bytes documents = new Bytes();
+        final Bytes positions = new Bytes();
+        int count = 0;
+        int last = -1;
+        // Document being added by a builder, its frequency and last position so far
+        int current = -1;
+        int frequency;
+        int position;
+
+        void add(int document, int[] values, int size) {
+            documents.writeVarInt(document - last);
+            documents.writeVarInt(size);
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                positions.writeVarInt(values[i] - previous);
+                previous = values[i];
+            }
+            last = document;
+            count++;
+        }
+
+        void clear() {
+            documents.size = 0;
+            positions.size = 0;
+            count = 0;
+            last = -1;
+        }
+    }
+
+    /**
+     * Collects documents in memory and writes them as a new segment
+     */
+    public static final class Builder {
+        private final Map<String, WordPostings> postings = new HashMap<>();
+        private final List<Document> documents = new ArrayList<>();
+        private final List<WordPostings> touched = new ArrayList<>();
+        private long memory = 0;
+
+        /**
+         * Adds a document, which gets the next document number
+         * @param document Document to be added
+         */
+        public void add(Document document) {
+            int number = documents.size();
+            touched.clear();
+            String[] words = document.words;
+            for (int position = 0; position < document.positions; position++) {
+                String word = words[position];
+                if (word == null) {
+                    continue;
+                }
+                WordPostings postings = this.postings.get(word);
+                if (postings == null) {
+                    postings = new WordPostings();
+                    this.postings.put(word, postings);
+                    memory += 160 + 2L * word.length();
+                }
+                if (postings.current != number) {
+                    postings.current = number;
+                    postings.frequency = 0;
+                    postings.position = 0;
+                    touched.add(postings);
+                    memory += 4;
+                }
+                postings.positions.writeVarInt(position - postings.position);
+                postings.position = position;
+                postings.frequency++;
+                memory += 2;
+            }
+            // Positions went straight to every word, the document entries follow once frequencies are known
+            for (WordPostings postings : touched) {
+                postings.documents.writeVarInt(number - postings.last);
+                postings.documents.writeVarInt(postings.frequency);
+                postings.last = number;
+                postings.count++;
+            }
+            memory += 64 + 2L * document.path.length();
+            document.words = null;
+            documents.add(document);
+        }
+
+        /**
+         * @return Number of documents added
+         */
+        public int size() {
+            return documents.size();
+        }
+
+        /**
+         * @return Rough number of bytes of heap the builder holds
+         */
+        public long memory() {
+            return memory;
+        }
+
+        /**
+         * Writes the documents added as a new segment
+         * @param file Segment file, replaced once it is complete
+         * @return The new segment, mapped
+         * @throws IOException If the segment cannot be written
+         */
+        public TextSegment write(Path file) throws IOException {
+            List<Map.Entry<byte[], WordPostings>> sorted = new ArrayList<>(postings.size());
+            for (Map.Entry<String, WordPostings> entry : postings.entrySet()) {
+                sorted.add(Map.entry(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue()));
+            }
+            sorted.sort(Map.Entry.comparingByKey(Arrays::compareUnsigned));
+            try (Writer writer = new Writer(file)) {
+                for (Map.Entry<byte[], WordPostings> entry : sorted) {
+                    writer.word(entry.getKey(), entry.getValue());
+                }
+                for (Document document : documents) {
+                    writer.document(document.path, document.size, document.modified);
+                }
+                return writer.finish();
+            }
+        }
+    }
+
+    /**
+     * Merges segments into a single one, leaving out deleted documents.
+     * Documents keep their order, and the words of every segment are read in
+     * order and merged through a heap, so merging never holds more than the
+     * postings of a single word in memory.
+     * @param sources Segments to be merged
+     * @param deleted Deleted documents of every segment, as bit sets
+     * @param file File of the new segment, replaced once it is complete
+     * @return The new segment, mapped
+     * @throws IOException If the segment cannot be written
+     */
+    public static TextSegment merge(List<TextSegment> sources, List<long[]> deleted, Path file) throws IOException {
+        record Head(int source, int number, byte[] word) {}
+
+        try (Writer writer = new Writer(file)) {
+            int[][] renumbered = new int[sources.size()][];
+            int next = 0;
+            for (int s = 0; s < sources.size(); s++) {
+                TextSegment source = sources.get(s);
+                long[] bits = deleted.get(s);
+                renumbered[s] = new int[source.documents];
+                for (int document = 0; document < source.documents; document++) {
+                    if ((bits[document >>> 6] & (1L << document)) != 0) {
+                        renumbered[s][document] = -1;
+                    } else {
+                        renumbered[s][document] = next++;
+                        writer.document(source.path(document), source.size(document), source.modified(document));
+                    }
+                }
+            }
+
+            Comparator<Head> order = (a, b) -> Arrays.compareUnsigned(a.word(), b.word());
+            PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, sources.size()),
+                    order.thenComparingInt(Head::source));
+            for (int s = 0; s < sources.size(); s++) {
+                if (sources.get(s).words > 0) {
+                    heads.add(new Head(s, 0, sources.get(s).word(0)));
+                }
+            }
+            WordPostings merged = new WordPostings();
+            int[] values = new int[16];
+            while (!heads.isEmpty()) {
+                byte[] word = heads.peek().word();
+                merged.clear();
+                // Sources come out in order, so document numbers keep increasing
+                while (!heads.isEmpty() && Arrays.equals(heads.peek().word(), word)) {
+                    Head head = heads.poll();
+                    TextSegment source = sources.get(head.source());
+                    Postings postings = source.postings(head.number());
+                    while (postings.next()) {
+                        int document = renumbered[head.source()][postings.document()];
+                        if (document < 0) {
+                            continue;
+                        }
+                        int frequency = postings.frequency();
+                        if (frequency > values.length) {
+                            values = new int[Math.max(frequency, values.length * 2)];
+                        }
+                        for (int i = 0; i < frequency; i++) {
+                            values[i] = postings.nextPosition();
+                        }
+                        merged.add(document, values, frequency);
+                    }
+                    if (head.number() + 1 < source.words) {
+                        heads.add(new Head(head.source(), head.number() + 1, source.word(head.number() + 1)));
+                    }
+                }
+                if (merged.count > 0) {
+                    writer.word(word, merged);
+                }
+            }
+            return writer.finish();
+        }
+    }
+
+    /**
+     * Writes a segment to a temporary file, postings first since they are
+     * the bulk of it, keeping the words and documents in memory until the end
+     */
+    private static final class Writer implements AutoCloseable {
+        private final Path file;
+        private final Path temp;
+        private final DataOutputStream out;
+        private final Bytes words = new Bytes();
+        private final Bytes entries = new Bytes();
+        private final Bytes documents = new Bytes();
+        private int[] offsets = new int[16];
+        private int wordCount = 0;
+        private int documentCount = 0;
+        private boolean finished = false;
+
+        Writer(Path file) throws IOException {
+            this.file = file;
+            Files.createDirectories(file.getParent());
+            this.temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        void word(byte[] word, WordPostings postings) throws IOException {
+            reserve((long) postings.documents.size + postings.positions.size);
+            int[] entry = {words.size, out.size(), out.size() + postings.documents.size, postings.count};
+            out.write(postings.documents.values, 0, postings.documents.size);
+            out.write(postings.positions.values, 0, postings.positions.size);
+            words.writeVarInt(word.length);
+            words.write(word);
+            for (int value : entry) {
+                entries.writeInt(value);
+            }
+            wordCount++;
+        }
+
+        void document(String path, long size, long modified) {
+            if (documentCount == offsets.length) {
+                offsets = Arrays.copyOf(offsets, documentCount * 2);
+            }
+            offsets[documentCount++] = documents.size;
+            byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+            documents.writeVarInt(bytes.length);
+            documents.write(bytes);
+            documents.writeLong(size);
+            documents.writeLong(modified);
+        }
+
+        TextSegment finish() throws IOException {
+            reserve((long) words.size + entries.size + documents.size + (long) documentCount * Integer.BYTES + FOOTER);
+            int wordsStart = out.size();
+            out.write(words.values, 0, words.size);
+            int wordTable = out.size();
+            ByteBuffer table = ByteBuffer.wrap(entries.values, 0, entries.size);
+            while (table.hasRemaining()) {
+                int entry = table.position();
+                out.writeInt(table.getInt() + wordsStart);
+                out.writeInt(table.getInt());
+                out.writeInt(table.getInt());
+                out.writeInt(table.getInt());
+                table.position(entry + WORD_ENTRY);
+            }
+            int documentTable = out.size();
+            out.write(documents.values, 0, documents.size);
+            for (int i = 0; i < documentCount; i++) {
+                out.writeInt(offsets[i] + documentTable);
+            }
+            out.writeInt(documentCount);
+            out.writeInt(wordCount);
+            out.writeInt(wordTable);
+            out.writeInt(documentTable);
+            out.writeInt(MAGIC);
+            out.close();
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+            return open(file);
+        }
+
+        private void reserve(long bytes) throws IOException {
+            if (out.size() + bytes > MAX_BYTES - FOOTER) {
+                throw new IOException("Text segment would be larger than 2 GB: " + file);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                out.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/**
+ * Splits text into the words of the full text index
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A word is a run of letters and digits, in lowercase, so "Quarterly-Report_2023"
+ * is the three words quarterly, report and 2023. Words longer than
+ * {@link #MAX_WORD_LENGTH} characters are still counted as a position but not
+ * indexed, they are mostly encoded data nobody searches for. Files and queries
+ * go through the same tokenizer, so a phrase typed with any punctuation
+ * matches the same words in a file.
+ */
+public final class Tokenizer {
+    public static final int MAX_WORD_LENGTH = 64;
+    private static final int SNIFFED_BYTES = 8192;
+
+    private Tokenizer() {}
+
+    /**
+     * Receives the words of a text
+     */
+    public interface WordVisitor {
+        /**
+         * @param word Word in lowercase
+         * @param position Number of words before it in the text
+         */
+        void visit(String word, int position);
+    }
+
+    /**
+     * Visits every word of a text in order
+     * @param text Text to be split
+     * @param visitor Receives the words
+     * @return Number of positions used, including the words too long to be indexed
+     */
+    public static int tokenize(CharSequence text, WordVisitor visitor) {
+        char[] word = new char[MAX_WORD_LENGTH + 2];
+        int wordLength = 0;
+        int position = 0;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int c = text.charAt(i++);
+            boolean part;
+            if (c < 0x80) {
+                // Most text is ASCII, which needs neither code points nor Unicode tables
+                part = (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z');
+                if (c >= 'A' && c <= 'Z') {
+                    c |= 0x20;
+                }
+            } else {
+                if (Character.isHighSurrogate((char) c) && i < length && Character.isLowSurrogate(text.charAt(i))) {
+                    c = Character.toCodePoint((char) c, text.charAt(i++));
+                }
+                part = Character.isLetterOrDigit(c);
+                c = Character.toLowerCase(c);
+            }
+            if (part) {
+                if (wordLength <= MAX_WORD_LENGTH) {
+                    wordLength += Character.toChars(c, word, wordLength);
+                }
+            } else if (wordLength > 0) {
+                emit(word, wordLength, position++, visitor);
+                wordLength = 0;
+            }
+        }
+        if (wordLength > 0) {
+            emit(word, wordLength, position++, visitor);
+        }
+        return position;
+    }
+
+    /**
+     * @param text Text to be split
+     * @return Words of the text in order, leaving out those too long to be indexed
+     */
+    public static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        tokenize(text, (word, position) -> words.add(word));
+        return words;
+    }
+
+    /**
+     * Guesses if a file is text from its first bytes, binary files nearly
+     * always hold a NUL byte early on while text in UTF-8 or any 8 bit
+     * encoding never does
+     * @param content Content of the file
+     * @param length Number of bytes of content
+     * @return True if the file should be tokenized
+     */
+    public static boolean isText(byte[] content, int length) {
+        int sniffed = Math.min(length, SNIFFED_BYTES);
+        for (int i = 0; i < sniffed; i++) {
+            if (content[i] == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void emit(char[] word, int length, int position, WordVisitor visitor) {
+        if (length <= MAX_WORD_LENGTH) {
+            visitor.visit(new String(word, 0, length), position);
+        }
+    }
+
+}
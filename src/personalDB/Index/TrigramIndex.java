@@ -0,0 +1,412 @@
+/**
+ * Inverted index of the trigrams of a set of names
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * Objects of this class find the names closest to a text that might be
+ * misspelt or only part of a name. Every name is split into its overlapping
+ * trigrams, in lowercase, and each trigram keeps the sorted ids of the names
+ * it appears in, stored as varint gaps so a posting list takes about a byte
+ * per name. A search counts how many trigrams of the text each name shares,
+ * a typo can only break three of them, so only names sharing enough trigrams
+ * are compared with the text, by the number of edits needed to turn the text
+ * into some part of the name. A name must share at least one trigram, so a
+ * text of five characters or less with a typo in its middle is not found.
+ */
+public final class TrigramIndex {
+    private static final int MAGIC = 0x50445447;
+    private static final int VERSION = 1;
+
+    private final String[] terms;
+    // The names in lowercase, sharing the strings that already were
+    private final String[] lowercase;
+    private final int[] keys;
+    private final int[] offsets;
+    private final byte[] postings;
+
+    /**
+     * A name close to the text searched for
+     * @param term Id of the name
+     * @param distance Edits needed to turn the text into part of the name, 0 if the name contains it
+     */
+    public record Match(int term, int distance) {}
+
+    private TrigramIndex(String[] terms, int[] keys, int[] offsets, byte[] postings) {
+        this.terms = terms;
+        this.lowercase = new String[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            lowercase[i] = terms[i].toLowerCase(Locale.ROOT);
+        }
+        this.keys = keys;
+        this.offsets = offsets;
+        this.postings = postings;
+    }
+
+    /**
+     * Builds the index of a set of names
+     * @param terms Names, their position is their id
+     * @return The index
+     */
+    public static TrigramIndex build(String[] terms) {
+        long[] pairs = new long[16];
+        int count = 0;
+        int[] termKeys = new int[64];
+        for (int id = 0; id < terms.length; id++) {
+            if (termKeys.length < terms[id].length()) {
+                termKeys = new int[terms[id].length()];
+            }
+            int distinct = trigrams(terms[id].toLowerCase(Locale.ROOT), termKeys);
+            if (count + distinct > pairs.length) {
+                pairs = Arrays.copyOf(pairs, Math.max(count + distinct, pairs.length * 2));
+            }
+            for (int i = 0; i < distinct; i++) {
+                pairs[count++] = (long) termKeys[i] << 32 | id;
+            }
+        }
+        Arrays.parallelSort(pairs, 0, count);
+
+        List<Integer> keyList = new ArrayList<>();
+        List<Integer> offsetList = new ArrayList<>();
+        byte[] postings = new byte[Math.max(16, count)];
+        int size = 0;
+        int previousId = 0;
+        for (int i = 0; i < count; i++) {
+            int key = (int) (pairs[i] >>> 32);
+            int id = (int) pairs[i];
+            if (i == 0 || key != (int) (pairs[i - 1] >>> 32)) {
+                keyList.add(key);
+                offsetList.add(size);
+                previousId = 0;
+            }
+            if (size + 5 > postings.length) {
+                postings = Arrays.copyOf(postings, postings.length * 2);
+            }
+            size = writeVarInt(postings, size, id - previousId);
+            previousId = id;
+        }
+        offsetList.add(size);
+        return new TrigramIndex(terms, keyList.stream().mapToInt(Integer::intValue).toArray(),
+                offsetList.stream().mapToInt(Integer::intValue).toArray(), Arrays.copyOf(postings, size));
+    }
+
+    /**
+     * Finds the names closest to a text. Names that contain the text come
+     * first, then names that need more edits, ties going to shorter names.
+     * @param text Text searched for, case is ignored
+     * @param limit Maximum number of names returned
+     * @return The closest names, best first
+     */
+    public List<Match> search(String text, int limit) {
+        return search(text, limit, maxEdits(text.length()));
+    }
+
+    /**
+     * Finds the names closest to a text. Candidates are compared starting
+     * with the ones sharing the most trigrams, and the comparison stops once
+     * the names left share too few trigrams to beat the ones already found.
+     * @param text Text searched for, case is ignored
+     * @param limit Maximum number of names returned
+     * @param maxEdits Names needing more edits than this are left out
+     * @return The closest names, best first
+     */
+    public List<Match> search(String text, int limit, int maxEdits) {
+        String query = text.toLowerCase(Locale.ROOT);
+        Scorer scorer = new Scorer(query, maxEdits);
+        Comparator<Match> order = order();
+        // The worst of the best matches so far is on top, so it is the one dropped
+        PriorityQueue<Match> best = new PriorityQueue<>(Math.max(1, limit) + 1, order.reversed());
+        int[] queryKeys = new int[Math.max(1, query.length())];
+        int distinct = trigrams(query, queryKeys);
+        if (distinct == 0) {
+            // Too short for a trigram, every name is checked
+            for (int term = 0; term < terms.length; term++) {
+                offer(best, term, scorer.distance(lowercase[term]), maxEdits, limit);
+            }
+        } else {
+            // An edit breaks at most three trigrams of the text, so a match shares the rest of them
+            int needed = Math.max(1, distinct - 3 * maxEdits);
+            int[][] byShared = candidates(queryKeys, distinct, needed);
+            for (int shared = byShared.length - 1; shared >= needed; shared--) {
+                int fewestEdits = (distinct - shared + 2) / 3;
+                if (best.size() >= limit && best.peek().distance() < fewestEdits) {
+                    break;
+                }
+                for (int term : byShared[shared]) {
+                    offer(best, term, scorer.distance(lowercase[term]), maxEdits, limit);
+                }
+            }
+        }
+        List<Match> result = new ArrayList<>(best);
+        result.sort(order);
+        return result;
+    }
+
+    private static void offer(PriorityQueue<Match> best, int term, int distance, int maxEdits, int limit) {
+        if (distance <= maxEdits) {
+            best.add(new Match(term, distance));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+    }
+
+    /**
+     * Order of the matches, best first
+     * @return Comparator of matches
+     */
+    public Comparator<Match> order() {
+        return Comparator.comparingInt(Match::distance)
+                .thenComparingInt(match -> terms[match.term()].length())
+                .thenComparing(match -> terms[match.term()]);
+    }
+
+    /**
+     * Number of edits tolerated by default, one typo in short texts and more
+     * in longer ones
+     * @param length Length of the text searched for
+     * @return Edits tolerated
+     */
+    public static int maxEdits(int length) {
+        return length < 5 ? 0 : length < 10 ? 1 : 2;
+    }
+
+    /**
+     * @param term Id of a name
+     * @return The name
+     */
+    public String term(int term) {
+        return terms[term];
+    }
+
+    /**
+     * @return Number of names
+     */
+    public int size() {
+        return terms.length;
+    }
+
+    /**
+     * @return Size of the posting lists in bytes
+     */
+    public int postingBytes() {
+        return postings.length;
+    }
+
+    /**
+     * Counts the trigrams of the text each name shares by walking their
+     * posting lists
+     * @return Ids of the names sharing at least the trigrams needed, grouped by how many they share
+     */
+    private int[][] candidates(int[] queryKeys, int distinct, int needed) {
+        int[] shared = new int[terms.length];
+        int[] matched = new int[16];
+        int found = 0;
+        for (int i = 0; i < distinct; i++) {
+            int slot = Arrays.binarySearch(keys, queryKeys[i]);
+            if (slot < 0) {
+                continue;
+            }
+            int id = 0;
+            for (int position = offsets[slot]; position < offsets[slot + 1]; ) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = postings[position++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                id += gap;
+                if (++shared[id] == needed) {
+                    if (found == matched.length) {
+                        matched = Arrays.copyOf(matched, found * 2);
+                    }
+                    matched[found++] = id;
+                }
+            }
+        }
+        int[] sizes = new int[distinct + 1];
+        for (int i = 0; i < found; i++) {
+            sizes[shared[matched[i]]]++;
+        }
+        int[][] byShared = new int[distinct + 1][];
+        for (int count = 0; count <= distinct; count++) {
+            byShared[count] = new int[sizes[count]];
+            sizes[count] = 0;
+        }
+        for (int i = 0; i < found; i++) {
+            int count = shared[matched[i]];
+            byShared[count][sizes[count]++] = matched[i];
+        }
+        return byShared;
+    }
+
+    /**
+     * Fewest edits turning the query into a substring of the name, where an
+     * edit inserts, removes or changes a character or swaps two adjacent ones
+     * @param query Text in lowercase
+     * @param name Name in lowercase
+     * @param maxEdits Edits allowed, any result above it only means the name is too far
+     * @return Edits needed, 0 if the name contains the query
+     */
+    static int distance(String query, String name, int maxEdits) {
+        return new Scorer(query, maxEdits).distance(name);
+    }
+
+    /**
+     * Compares names with a single text, reusing its rows between names
+     */
+    private static final class Scorer {
+        private final String query;
+        private final int maxEdits;
+        private int[] beforePrevious;
+        private int[] previous;
+        private int[] current;
+
+        Scorer(String query, int maxEdits) {
+            this.query = query;
+            this.maxEdits = maxEdits;
+            this.beforePrevious = new int[query.length() + 1];
+            this.previous = new int[query.length() + 1];
+            this.current = new int[query.length() + 1];
+        }
+
+        int distance(String name) {
+            int m = query.length();
+            if (name.contains(query)) {
+                return 0;
+            } else if (maxEdits == 0) {
+                return m;
+            }
+            for (int i = 0; i <= m; i++) {
+                previous[i] = i;
+            }
+            int best = m;
+            char before = 0;
+            for (int j = 0; j < name.length() && best > 0; j++) {
+                char c = name.charAt(j);
+                // The match may start anywhere in the name
+                current[0] = 0;
+                for (int i = 1; i <= m; i++) {
+                    char wanted = query.charAt(i - 1);
+                    int edits = Math.min(Math.min(current[i - 1], previous[i]) + 1,
+                            previous[i - 1] + (wanted == c ? 0 : 1));
+                    if (i > 1 && j > 0 && wanted == before && query.charAt(i - 2) == c) {
+                        edits = Math.min(edits, beforePrevious[i - 2] + 1);
+                    }
+                    current[i] = edits;
+                }
+                best = Math.min(best, current[m]);
+                int[] swap = beforePrevious;
+                beforePrevious = previous;
+                previous = current;
+                current = swap;
+                before = c;
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Writes the distinct trigram keys of a lowercase string
+     * @return Number of keys written
+     */
+    private static int trigrams(String text, int[] keys) {
+        int count = 0;
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            int key = key(text.charAt(i), text.charAt(i + 1), text.charAt(i + 2));
+            boolean seen = false;
+            for (int j = 0; j < count && !seen; j++) {
+                seen = keys[j] == key;
+            }
+            if (!seen) {
+                keys[count++] = key;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Packs three characters below 1024 exactly, anything else is hashed,
+     * which at worst makes a few more names candidates
+     */
+    private static int key(char a, char b, char c) {
+        if (a < 1024 && b < 1024 && c < 1024) {
+            return a << 20 | b << 10 | c;
+        }
+        return (((a * 31 + b) * 31 + c) & 0x3FFFFFFF) | 0x40000000;
+    }
+
+    private static int writeVarInt(byte[] out, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * @param out Output
+     * @throws IOException If the output fails
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        Encoding.writeVarInt(out, terms.length);
+        String previous = "";
+        for (String term : terms) {
+            Encoding.writeFrontCoded(out, previous, term);
+            previous = term;
+        }
+        Encoding.writeVarInt(out, keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            out.writeInt(keys[i]);
+            Encoding.writeVarInt(out, offsets[i + 1] - offsets[i]);
+        }
+        out.write(postings);
+    }
+
+    /**
+     * Reads an index written by {@link #write(DataOutput)}
+     * @param in Input
+     * @return Index read
+     * @throws IOException If the input fails or does not hold an index
+     */
+    public static TrigramIndex read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a trigram index");
+        }
+        String[] terms = new String[Encoding.readVarInt(in)];
+        String previous = "";
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = Encoding.readFrontCoded(in, previous);
+            previous = terms[i];
+        }
+        int[] keys = new int[Encoding.readVarInt(in)];
+        int[] offsets = new int[keys.length + 1];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = in.readInt();
+            offsets[i + 1] = offsets[i] + Encoding.readVarInt(in);
+        }
+        byte[] postings = new byte[offsets[keys.length]];
+        in.readFully(postings);
+        return new TrigramIndex(terms, keys, offsets, postings);
+    }
+
+}
@@ -1,59 +1,138 @@
-/**
- * personalDB
- * Program to help you manage files in your personal computer and in between servers/cloud storage
- * This was made because I was tired of managing files between my laptop, desktop, server and cloud
- * Right now it's just a simple file explorer, but I hope to add database like features, such as
- * storing files in an efficient way and retrieving then using hashes and some algorithms
- * This is a personal project designed to expand my knowledge in these areas of computing and not
- * meant to be anything serious or even useful
- * @author: Luís Ferreirinha
- * @email: luispedroferreirinha@gmail.com
- * @date: 02/04/2022
- */
-
-package personalDB;
-
-import personalDB.Engine.DirectoryHandler;
-import personalDB.Engine.FileHandler;
-import personalDB.Engine.OperationHandler;
-import personalDB.Parser.Operation;
-import personalDB.Parser.Parser;
-import personalDB.TerminalInterface.Interface;
-import personalDB.Exceptions.InvalidDirectory;
-import personalDB.Exceptions.InvalidInputException;
-
-import java.util.List;
-import java.util.Scanner;
-
-public class JpersonalDB {
-
-    public static void main(String[] args) {
-
-        try {
-            boolean exit = false;
-
-            DirectoryHandler directoryHandler = new DirectoryHandler(System.getProperty("user.dir"));
-            FileHandler fileHandler = new FileHandler(directoryHandler);
-            Interface screen = new Interface(directoryHandler);
-            OperationHandler opHandler = new OperationHandler(directoryHandler, fileHandler, screen);
-            screen.drawStartScreen();
-
-            while (!exit) {
-
-                screen.drawScreen();
-                Scanner scannedString = new Scanner(System.in);
-                Parser input = new Parser(scannedString.nextLine());
-                Operation command = input.getCommand();
-
-                if (command == Operation.EXIT) {
-                    exit = true;
-                } else {
-                    List<String> arguments = input.getArguments();
-                    opHandler.execute(command, arguments);
-                }
-            }
-        } catch (InvalidDirectory e) {
-            System.out.println("Could not read user directory.");
-        }
-    }
-}
+/**
+ * personalDB
+ * Program to help you manage files in your personal computer and in between servers/cloud storage
+ * This was made because I was tired of managing files between my laptop, desktop, server and cloud
+ * Right now it's just a simple file explorer, but I hope to add database like features, such as
+ * storing files in an efficient way and retrieving then using hashes and some algorithms
+ * This is a personal project designed to expand my knowledge in these areas of computing and not
+ * meant to be anything serious or even useful
+ * @author: Luís Ferreirinha
+ * @email: luispedroferreirinha@gmail.com
+ * @date: 02/04/2022
+ */
+
+package personalDB;
+
+import personalDB.Engine.BatchRunner;
+import personalDB.Engine.DirectoryHandler;
+import personalDB.Engine.FileHandler;
+import personalDB.Engine.OperationHandler;
+import personalDB.Parser.Operation;
+import personalDB.Parser.Parser;
+import personalDB.Server.CommandServer;
+import personalDB.TerminalInterface.Interface;
+import personalDB.Exceptions.InvalidDirectory;
+import personalDB.Exceptions.InvalidInputException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class JpersonalDB {
+
+    /**
+     * Starts the terminal interface, or runs a script when called with
+     * --batch FILE, where FILE can be - to read the script from stdin.
+     * In batch mode the exit code is 1 if any command failed.
+     * With --server [ADDRESS] commands are served to clients instead, see
+     * {@link CommandServer}.
+     * @param args Command line arguments
+     */
+    public static void main(String[] args) {
+
+        try {
+            boolean exit = false;
+
+            DirectoryHandler directoryHandler = new DirectoryHandler(System.getProperty("user.dir"));
+            FileHandler fileHandler = new FileHandler(directoryHandler);
+            Interface screen = new Interface(directoryHandler);
+            OperationHandler opHandler = new OperationHandler(directoryHandler, fileHandler, screen);
+
+            if (args.length == 2 && args[0].equals("--batch")) {
+                System.exit(runBatch(opHandler, args[1]) == 0 ? 0 : 1);
+            } else if (args.length <= 2 && args.length > 0 && args[0].equals("--server")) {
+                System.exit(runServer(directoryHandler.getDirectory().toPath(),
+                        args.length == 2 ? args[1] : String.valueOf(CommandServer.DEFAULT_PORT)));
+            } else if (args.length > 0) {
+                System.out.println("Usage: JpersonalDB [--batch FILE | --batch - | --server [ADDRESS]]");
+                System.exit(2);
+            }
+
+            screen.drawStartScreen();
+            Scanner scannedString = new Scanner(System.in);
+            Parser input = new Parser();
+
+            while (!exit) {
+
+                screen.drawScreen();
+                if (!scannedString.hasNextLine()) {
+                    break;
+                }
+                input.parse(scannedString.nextLine());
+                Operation command = input.getCommand();
+
+                if (command == Operation.EXIT) {
+                    exit = true;
+                } else if (!input.isEmpty()) {
+                    List<String> arguments = input.getArguments();
+                    opHandler.execute(command, arguments);
+                }
+            }
+        } catch (InvalidDirectory e) {
+            System.out.println("Could not read user directory.");
+        }
+    }
+
+    /**
+     * Runs a script of commands without drawing the interface
+     * @param opHandler Handler that executes the commands
+     * @param script Path of the script, or - for stdin
+     * @return Number of commands that failed, or -1 if the script could not be read
+     */
+    private static int runBatch(OperationHandler opHandler, String script) {
+        try (BufferedReader reader = script.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : Files.newBufferedReader(Path.of(script))) {
+            return new BatchRunner(opHandler, Runtime.getRuntime().availableProcessors()).run(reader);
+        } catch (IOException e) {
+            System.err.println("IOError could not read script.\n" + e);
+            return -1;
+        }
+    }
+
+    /**
+     * Serves commands until the process is killed
+     * @param root Directory every session starts in
+     * @param address PORT, HOST:PORT or the path of a Unix domain socket
+     * @return Exit code, only returns if the server could not start
+     */
+    private static int runServer(Path root, String address) {
+        Thread serving = Thread.currentThread();
+        CountDownLatch closed = new CountDownLatch(1);
+        try (CommandServer server = new CommandServer(root, address)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                // Interrupting the accept closes the channel and ends serve(), the server is then closed below
+                serving.interrupt();
+                try {
+                    closed.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // Exiting anyway
+                }
+            }));
+            System.out.println("Serving " + root + " on " + server.getAddress());
+            server.serve();
+            return 0;
+        } catch (IOException e) {
+            System.err.println("IOError could not start the server.\n" + e);
+            return 1;
+        } finally {
+            closed.countDown();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Distribution of latencies
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Objects of this class count values, e.g. latencies in nanoseconds, in
+ * buckets whose width grows with the value: every power of two is split
+ * into {@link #SUB_BUCKETS} buckets, so any percentile is reported within
+ * about 3% of the real value while the whole range of a long fits in a
+ * couple thousand counters. Recording a value is a few increments without
+ * locks, so any thread can record at any time.
+ */
+public class Histogram {
+    public static final int SUB_BUCKETS = 32;
+    private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Summary of the values recorded
+     * @param count Number of values
+     * @param mean Average value
+     * @param p50 Median
+     * @param p99 99th percentile
+     * @param p999 99.9th percentile
+     * @param max Largest value
+     */
+    public record Snapshot(long count, double mean, long p50, long p99, long p999, long max) {}
+
+    /**
+     * Records a value
+     * @param value Value to be recorded, negative values count as 0
+     */
+    public void record(long value) {
+        long recorded = Math.max(0, value);
+        counts.incrementAndGet(bucket(recorded));
+        count.increment();
+        sum.add(recorded);
+        if (recorded > max.get()) {
+            max.accumulateAndGet(recorded, Math::max);
+        }
+    }
+
+    /**
+     * @return Number of values recorded
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the value below which a share of the recorded values fall
+     * @param quantile Share of the values, between 0 and 1
+     * @return Upper end of the bucket the percentile falls in, 0 if nothing was recorded
+     */
+    public long percentile(double quantile) {
+        long[] snapshot = copyCounts();
+        return percentile(snapshot, total(snapshot), quantile);
+    }
+
+    /**
+     * @return Summary of the values recorded so far
+     */
+    public Snapshot snapshot() {
+        long[] snapshot = copyCounts();
+        long total = total(snapshot);
+        return new Snapshot(total, total == 0 ? 0 : (double) sum.sum() / total,
+                percentile(snapshot, total, 0.5), percentile(snapshot, total, 0.99),
+                percentile(snapshot, total, 0.999), max.get());
+    }
+
+    /**
+     * Forgets every value recorded
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    private long[] copyCounts() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    private static long total(long[] snapshot) {
+        long total = 0;
+        for (long bucketCount : snapshot) {
+            total += bucketCount;
+        }
+        return total;
+    }
+
+    private long percentile(long[] snapshot, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Values below {@link #SUB_BUCKETS} get a bucket each, larger values are
+     * placed by their highest bit and the {@link #SUB_BITS} bits after it
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long upper = ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+
+}
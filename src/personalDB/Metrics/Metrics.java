@@ -0,0 +1,208 @@
+/**
+ * Counters and latencies of the whole program
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Metrics;
+
+import personalDB.Parser.Operation;
+
+import java.io.PrintWriter;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects where the program spends its time: a latency {@link Histogram}
+ * for every {@link Operation}, the bytes read and written by the engine, the
+ * directory entries scanned and the hits and misses of the caches.
+ * Everything is kept in striped counters and lock free histograms, so
+ * recording costs a few uncontended increments and is always on.
+ * The same events are also sent to Java Flight Recorder, see
+ * {@link OperationEvent} and {@link WalkEvent}.
+ */
+public final class Metrics {
+
+    /**
+     * Amounts counted across the whole program
+     */
+    public enum Counter {
+        BYTES_READ, BYTES_WRITTEN, ENTRIES_SCANNED
+    }
+
+    /**
+     * Caches whose hit rate is tracked
+     */
+    public enum Cache {
+        PATH, LISTING, PAGE
+    }
+
+    private static final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private static final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+    private static final Map<Cache, LongAdder> hits = new EnumMap<>(Cache.class);
+    private static final Map<Cache, LongAdder> misses = new EnumMap<>(Cache.class);
+    private static volatile long since = System.currentTimeMillis();
+
+    static {
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new Histogram());
+        }
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new LongAdder());
+        }
+        for (Cache cache : Cache.values()) {
+            hits.put(cache, new LongAdder());
+            misses.put(cache, new LongAdder());
+        }
+    }
+
+    private Metrics() {}
+
+    /**
+     * Records how long an operation took
+     * @param operation Operation that ran
+     * @param nanos Time it took in nanoseconds
+     */
+    public static void record(Operation operation, long nanos) {
+        latencies.get(operation).record(nanos);
+    }
+
+    /**
+     * Adds to a counter
+     * @param counter Counter to be increased
+     * @param amount Amount added
+     */
+    public static void add(Counter counter, long amount) {
+        counters.get(counter).add(amount);
+    }
+
+    /**
+     * Counts a lookup that found its value in a cache
+     * @param cache Cache that was looked up
+     */
+    public static void hit(Cache cache) {
+        hits.get(cache).increment();
+    }
+
+    /**
+     * Counts a lookup that missed a cache
+     * @param cache Cache that was looked up
+     */
+    public static void miss(Cache cache) {
+        misses.get(cache).increment();
+    }
+
+    /**
+     * @param operation An operation
+     * @return Latencies recorded for the operation, in nanoseconds
+     */
+    public static Histogram.Snapshot latency(Operation operation) {
+        return latencies.get(operation).snapshot();
+    }
+
+    /**
+     * @param counter A counter
+     * @return Current value of the counter
+     */
+    public static long get(Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    /**
+     * Forgets everything recorded so far
+     */
+    public static void reset() {
+        latencies.values().forEach(Histogram::reset);
+        counters.values().forEach(LongAdder::reset);
+        hits.values().forEach(LongAdder::reset);
+        misses.values().forEach(LongAdder::reset);
+        since = System.currentTimeMillis();
+    }
+
+    /**
+     * Prints a table of the latencies of every operation that ran, followed
+     * by the counters and the hit rate of every cache
+     * @param out Where the report is printed
+     */
+    public static void print(PrintWriter out) {
+        out.printf(Locale.ROOT, "Since %.1f s ago%n", (System.currentTimeMillis() - since) / 1000.0);
+        out.printf(Locale.ROOT, "%-10s %10s %10s %10s %10s %10s %10s%n",
+                "OPERATION", "COUNT", "MEAN", "P50", "P99", "P99.9", "MAX");
+        for (Operation operation : Operation.values()) {
+            Histogram.Snapshot snapshot = latency(operation);
+            if (snapshot.count() > 0) {
+                out.printf(Locale.ROOT, "%-10s %10d %10s %10s %10s %10s %10s%n", operation, snapshot.count(),
+                        duration((long) snapshot.mean()), duration(snapshot.p50()), duration(snapshot.p99()),
+                        duration(snapshot.p999()), duration(snapshot.max()));
+            }
+        }
+        out.printf(Locale.ROOT, "Bytes read: %d%nBytes written: %d%nEntries scanned: %d%n",
+                get(Counter.BYTES_READ), get(Counter.BYTES_WRITTEN), get(Counter.ENTRIES_SCANNED));
+        for (Cache cache : Cache.values()) {
+            long hit = hits.get(cache).sum();
+            long total = hit + misses.get(cache).sum();
+            out.printf(Locale.ROOT, "%s cache: %d of %d lookups hit (%.1f%%)%n", name(cache), hit, total,
+                    total == 0 ? 0.0 : 100.0 * hit / total);
+        }
+    }
+
+    /**
+     * Writes everything recorded as a JSON object, latencies in nanoseconds
+     * @param out Where the JSON is written
+     */
+    public static void printJson(PrintWriter out) {
+        out.print("{\"since\":" + since + ",\"now\":" + System.currentTimeMillis() + ",\"operations\":{");
+        boolean first = true;
+        for (Operation operation : Operation.values()) {
+            Histogram.Snapshot snapshot = latency(operation);
+            if (snapshot.count() == 0) {
+                continue;
+            }
+            out.print(first ? "" : ",");
+            first = false;
+            out.printf(Locale.ROOT, "\"%s\":{\"count\":%d,\"mean\":%.0f,\"p50\":%d,\"p99\":%d,\"p999\":%d,\"max\":%d}",
+                    operation.name().toLowerCase(), snapshot.count(), snapshot.mean(), snapshot.p50(),
+                    snapshot.p99(), snapshot.p999(), snapshot.max());
+        }
+        out.print("},\"counters\":{");
+        first = true;
+        for (Counter counter : Counter.values()) {
+            out.print((first ? "\"" : ",\"") + counter.name().toLowerCase() + "\":" + get(counter));
+            first = false;
+        }
+        out.print("},\"caches\":{");
+        first = true;
+        for (Cache cache : Cache.values()) {
+            out.print((first ? "\"" : ",\"") + cache.name().toLowerCase() + "\":{\"hits\":" + hits.get(cache).sum()
+                    + ",\"misses\":" + misses.get(cache).sum() + "}");
+            first = false;
+        }
+        out.println("}}");
+    }
+
+    private static String name(Cache cache) {
+        return switch (cache) {
+            case PATH -> "Path";
+            case LISTING -> "Directory listing";
+            case PAGE -> "B+tree page";
+        };
+    }
+
+    /**
+     * Formats nanoseconds with the unit that keeps the number short
+     */
+    private static String duration(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + " ns";
+        } else if (nanos < 1_000_000) {
+            return String.format(Locale.ROOT, "%.1f us", nanos / 1e3);
+        } else if (nanos < 1_000_000_000L) {
+            return String.format(Locale.ROOT, "%.1f ms", nanos / 1e6);
+        }
+        return String.format(Locale.ROOT, "%.1f s", nanos / 1e9);
+    }
+
+}
@@ -0,0 +1,35 @@
+/**
+ * Flight recorder event of a command
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded by Java Flight Recorder for every command that runs, e.g. with
+ * java -XX:StartFlightRecording=filename=run.jfr. Events that are not being
+ * recorded cost close to nothing.
+ */
+@Name("personalDB.Operation")
+@Label("Operation")
+@Category("personalDB")
+@Description("A command run by personalDB")
+public class OperationEvent extends Event {
+    @Label("Operation")
+    public String operation;
+
+    @Label("Arguments")
+    public int arguments;
+
+    @Label("Status")
+    @Description("0 if the command succeeded, 1 if it failed and 2 if it was misused")
+    public int status;
+}
@@ -0,0 +1,30 @@
+/**
+ * Flight recorder event of a tree walk
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded by Java Flight Recorder for every walk of a directory tree, the
+ * part of most commands that reads the disk the most.
+ */
+@Name("personalDB.Walk")
+@Label("Tree Walk")
+@Category("personalDB")
+@Description("A walk of a directory tree")
+public class WalkEvent extends Event {
+    @Label("Root")
+    public String root;
+
+    @Label("Entries")
+    public long entries;
+}
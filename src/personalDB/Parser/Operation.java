@@ -11,5 +11,17 @@ package personalDB.Parser;
  * All types of operations supported by the program
  */
 public enum Operation {
-    EXIT, HELP, FIND, DELETE, CREATE, CD, OPEN, BACK, INVALID, MKDIR, RMDIR, LS
+    EXIT, HELP, FIND, DELETE, CREATE, CD, OPEN, BACK, INVALID, MKDIR, RMDIR, LS, INDEX, PUT, GET, WHERE, HASH, GC, SYNC, CATALOG, DUPES, COPY, MOVE, STATS, SNAPSHOT, DIFF, SEARCH, UNDO;
+
+    /**
+     * Operations that neither change files nor the current directory, so they
+     * can run at the same time as each other
+     * @return True if this operation only reads
+     */
+    public boolean isReadOnly() {
+        return switch (this) {
+            case HELP, FIND, LS, WHERE, HASH, DIFF, INVALID -> true;
+            default -> false;
+        };
+    }
 }
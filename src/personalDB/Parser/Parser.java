@@ -12,16 +12,32 @@ package personalDB.Parser;
 
 import personalDB.Exceptions.InvalidInputException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Objects of this class represent an input that has been parsed and
- * divided into lexemes, according to the programs' defined syntax
+ * divided into lexemes, according to the programs' defined syntax.
+ * Lexemes are kept as offsets into the input, a String is only created for
+ * an argument when the arguments are asked for, and the command is looked up
+ * straight from the input without copying it. A parser can be reused for
+ * many inputs through {@link #parse(String)}.
  */
 public class Parser {
-    private final String source;
-    private List<String> lexemes = new ArrayList<>();
-    private int current = 0;
+    private static final Operation[][] COMMANDS = commandTable();
+
+    private String source = "";
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private boolean[] quoted = new boolean[8];
+    private int count = 0;
+    private boolean invalid = false;
+
+    /**
+     * Constructs a parser with no input, meant to be reused for many
+     * inputs through {@link #parse(String)}
+     */
+    public Parser() {}
 
     /**
      * Constructs an object of this class by automatically parsing
@@ -30,8 +46,32 @@ public class Parser {
      *              be according to the programs' defined syntax.
      */
     public Parser(String input) {
+        this.parse(input);
+    }
+
+    /**
+     * Parses a new input, replacing the previous one. Argument lists
+     * returned for the previous input stay valid.
+     * @param input String representing user input
+     */
+    public void parse(String input) {
         this.source = input;
-        this.parseInput();
+        this.count = 0;
+        this.invalid = false;
+        try {
+            this.parseInput();
+        } catch (InvalidInputException e) {
+            System.out.println(e);
+            this.count = 0;
+            this.invalid = true;
+        }
+    }
+
+    /**
+     * @return True if the input had no lexemes, e.g. an empty line
+     */
+    public boolean isEmpty() {
+        return count == 0 && !invalid;
     }
 
     /**
@@ -39,22 +79,15 @@ public class Parser {
      * if said lexeme is a string matching a valid operation
      * @return Command matching the input
      */
-    @SuppressWarnings("DuplicatedCode")
     public Operation getCommand() {
-        return switch (this.lexemes.get(0).toUpperCase()) {
-            case "EXIT" -> Operation.EXIT;
-            case "HELP" -> Operation.HELP;
-            case "FIND" -> Operation.FIND;
-            case "DELETE" -> Operation.DELETE;
-            case "CREATE" -> Operation.CREATE;
-            case "CD" -> Operation.CD;
-            case "OPEN" -> Operation.OPEN;
-            case "BACK" -> Operation.BACK;
-            case "MKDIR" -> Operation.MKDIR;
-            case "RMDIR" -> Operation.RMDIR;
-            case "LS" -> Operation.LS;
-            default -> Operation.INVALID;
-        };
+        if (count == 0) {
+            return Operation.INVALID;
+        }
+        if (quoted[0]) {
+            String command = lexeme(0);
+            return lookup(command, 0, command.length());
+        }
+        return lookup(source, starts[0], ends[0]);
     }
 
     /**
@@ -63,22 +96,8 @@ public class Parser {
      * @param command String representing a valid operation
      * @return Command corresponding to the given string
      */
-    @SuppressWarnings("DuplicatedCode")
     public static Operation getCommand(String command) {
-        return switch (command.toUpperCase()) {
-            case "EXIT" -> Operation.EXIT;
-            case "HELP" -> Operation.HELP;
-            case "FIND" -> Operation.FIND;
-            case "DELETE" -> Operation.DELETE;
-            case "CREATE" -> Operation.CREATE;
-            case "CD" -> Operation.CD;
-            case "OPEN" -> Operation.OPEN;
-            case "BACK" -> Operation.BACK;
-            case "MKDIR" -> Operation.MKDIR;
-            case "RMDIR" -> Operation.RMDIR;
-            case "LS" -> Operation.LS;
-            default -> Operation.INVALID;
-        };
+        return lookup(command, 0, command.length());
     }
 
     /**
@@ -89,14 +108,13 @@ public class Parser {
      * @return List<String> containing the arguments.
      */
     public List<String> getArguments() {
-        if (lexemes.size() > 1) {
-            return lexemes.subList(1, lexemes.size());
-        } else {
-            return new ArrayList<>();
+        List<String> arguments = new ArrayList<>(Math.max(0, count - 1));
+        for (int i = 1; i < count; i++) {
+            arguments.add(lexeme(i));
         }
+        return arguments;
     }
 
-
     /**
      * Parses the input given by the user.
      * It uses spaces (char ' ') has a separator for
@@ -105,55 +123,113 @@ public class Parser {
      * with spaces inside those quotes (e.g. cd \Users\"Awesome Directory"\Test)
      * it ignores the space character inside quotes and returns the correct
      * lexemes for that string.
-     * Each time a lexeme is constructed it is added to a private attribute of the
-     * current object.
+     * Only the start and end of each lexeme are recorded, consecutive spaces
+     * do not produce empty lexemes.
+     * @throws InvalidInputException If quotation marks are not closed
      */
-    private void parseInput() {
-        try {
-            StringBuilder lexeme = new StringBuilder();
-            while (!isAtEnd()) {
-                if (isQuote(peek())) {
-                    lexeme.append(getQuotedString());
-                } else if (isSpace(peek())) {
-                    lexemes.add(lexeme.toString());
-                    lexeme.setLength(0);
-                    advance();
-                } else if (peekNext() == '\0') {
-                    lexeme.append(advance());
-                    lexemes.add(lexeme.toString());
-                    lexeme.setLength(0);
+    private void parseInput() throws InvalidInputException {
+        int length = source.length();
+        int current = 0;
+        while (current < length) {
+            while (current < length && isSpace(source.charAt(current))) {
+                current++;
+            }
+            if (current == length) {
+                break;
+            }
+            int start = current;
+            boolean hasQuotes = false;
+            while (current < length && !isSpace(source.charAt(current))) {
+                if (isQuote(source.charAt(current))) {
+                    int closing = source.indexOf('"', current + 1);
+                    if (closing < 0) {
+                        throw new InvalidInputException("Quotation marks not closed!");
+                    }
+                    hasQuotes = true;
+                    current = closing + 1;
                 } else {
-                    lexeme.append(advance());
+                    current++;
                 }
             }
-            if (lexeme.length() > 0) {
-                lexemes.add(lexeme.toString());
+            addLexeme(start, current, hasQuotes);
+        }
+    }
+
+    private void addLexeme(int start, int end, boolean hasQuotes) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+            quoted = Arrays.copyOf(quoted, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        quoted[count] = hasQuotes;
+        count++;
+    }
+
+    /**
+     * Creates the String of a lexeme, leaving out its quotation marks
+     * @param index Index of the lexeme
+     * @return Lexeme
+     */
+    private String lexeme(int index) {
+        if (!quoted[index]) {
+            return source.substring(starts[index], ends[index]);
+        }
+        StringBuilder lexeme = new StringBuilder(ends[index] - starts[index]);
+        for (int i = starts[index]; i < ends[index]; i++) {
+            char c = source.charAt(i);
+            if (!isQuote(c)) {
+                lexeme.append(c);
             }
-        } catch (InvalidInputException e) {
-            System.out.println(e);
-            lexemes = List.of("Invalid");
         }
+        return lexeme.toString();
     }
 
     /**
-     * Parses a string with quotes surrounding it returning the content
-     * inside it.
-     * @return String inside of quotes
-     * @throws InvalidInputException If quotes are not closed before the
-     *         loop reaches the end of the string.
+     * Finds the operation named by a region of a string, ignoring case
+     * @param text String holding the name
+     * @param start Start of the name
+     * @param end End of the name
+     * @return Operation with that name, or INVALID if there is none
      */
-    private String getQuotedString() throws InvalidInputException {
-        StringBuilder tempStr = new StringBuilder();
-        advance();
-        while (!isQuote(peek()) && peek() != '\0') {
-            tempStr.append(advance());
+    private static Operation lookup(String text, int start, int end) {
+        if (start >= end) {
+            return Operation.INVALID;
         }
-        if (peek() == '\0') {
-            throw new InvalidInputException("Quotation marks not closed!");
-        } else {
-            advance();
-            return tempStr.toString();
+        int first = (text.charAt(start) | 0x20) - 'a';
+        if (first < 0 || first >= COMMANDS.length) {
+            return Operation.INVALID;
+        }
+        int length = end - start;
+        for (Operation operation : COMMANDS[first]) {
+            String name = operation.name();
+            if (name.length() == length && text.regionMatches(true, start, name, 0, length)) {
+                return operation;
+            }
         }
+        return Operation.INVALID;
+    }
+
+    /**
+     * Groups the operations a user can type by the first letter of their name
+     * @return Operations indexed by first letter, from a to z
+     */
+    private static Operation[][] commandTable() {
+        List<List<Operation>> table = new ArrayList<>();
+        for (int i = 0; i < 26; i++) {
+            table.add(new ArrayList<>());
+        }
+        for (Operation operation : Operation.values()) {
+            if (operation != Operation.INVALID) {
+                table.get(operation.name().charAt(0) - 'A').add(operation);
+            }
+        }
+        Operation[][] commands = new Operation[26][];
+        for (int i = 0; i < 26; i++) {
+            commands[i] = table.get(i).toArray(new Operation[0]);
+        }
+        return commands;
     }
 
     /**
@@ -176,47 +252,4 @@ public class Parser {
         return c == ' ';
     }
 
-    /**
-     * Returns the current char without advancing the cursor
-     * in the string. If it reaches the end of the string
-     * it returns '\0'
-     * @return Current char || '\0' if at end of string
-     */
-    private char peek() {
-        if (isAtEnd()) {
-            return '\0';
-        }
-        return source.charAt(current);
-    }
-
-    /**
-     * Returns the next character (current + 1) without advancing the cursor
-     * in the string. If it reaches the end of the string it returns '\0'.
-     * @return Next character || '\0' if at end of string
-     */
-    private char peekNext() {
-        if (current + 1 >= source.length()) {
-            return '\0';
-        }
-        return source.charAt(current + 1);
-    }
-
-    /**
-     * Checks if the current cursor is at the end of the string
-     * @return True if the cursor reached or surpassed the total length
-     *         of the string
-     */
-    private boolean isAtEnd() {
-        return current >= source.length();
-    }
-
-    /**
-     * Returns the character at the current position of the cursor and
-     * advances the cursor one position ahead.
-     * @return Char at current position
-     */
-    private char advance() {
-        return source.charAt(current++);
-    }
-
 }
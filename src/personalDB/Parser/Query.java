@@ -0,0 +1,299 @@
+/**
+ * Compiled search query
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Parser;
+
+import personalDB.Index.NameIndex;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Objects of this class are the predicates of a search, as compiled by
+ * {@link QueryParser}. An entry matches when every term matches.
+ * Terms are split in two stages: terms on the name are checked first, since
+ * they only need the name of the entry, and terms on the size, modification
+ * time or type are only checked for entries whose name matched, since they
+ * need the attributes of the entry. The bounds of the query are also exposed
+ * so an index that can answer part of it is asked for candidates instead of
+ * every entry being checked.
+ */
+public class Query {
+    private final List<Term> nameTerms;
+    private final List<Term> attributeTerms;
+    private final long minSize;
+    private final long maxSize;
+    private final long minModified;
+    private final long maxModified;
+    private final boolean typed;
+
+    /**
+     * Attribute of an entry a term compares
+     */
+    public enum Field {
+        NAME, EXT, SIZE, MTIME, TYPE
+    }
+
+    /**
+     * How a term compares the attribute with its value
+     */
+    public enum Comparison {
+        EQ, NE, LT, LE, GT, GE, MATCH
+    }
+
+    /**
+     * A single predicate of the query
+     * @param field Attribute compared
+     * @param comparison How it is compared
+     * @param text Value of name, extension and type terms, the extension in lowercase
+     * @param number Value of size and modification time terms, in bytes or milliseconds
+     * @param pattern Compiled glob of name~ terms, null otherwise
+     */
+    public record Term(Field field, Comparison comparison, String text, long number, Pattern pattern) {
+
+        /**
+         * @param name Name of the entry
+         * @param extension Extension of the entry in lowercase
+         * @return True if the name satisfies this term, only for NAME and EXT terms
+         */
+        boolean matchesName(String name, String extension) {
+            String value = field == Field.NAME ? name : extension;
+            return switch (comparison) {
+                case EQ -> value.equals(text);
+                case NE -> !value.equals(text);
+                case MATCH -> pattern.matcher(value).matches();
+                default -> false;
+            };
+        }
+
+        /**
+         * @param type Type of the entry, f, d, l or o
+         * @param size Size of the entry in bytes
+         * @param modified Modification time of the entry in milliseconds
+         * @return True if the entry satisfies this term, only for SIZE, MTIME and TYPE terms
+         */
+        boolean matchesAttributes(char type, long size, long modified) {
+            if (field == Field.TYPE) {
+                return (type == text.charAt(0)) == (comparison == Comparison.EQ);
+            }
+            long value = field == Field.SIZE ? size : modified;
+            return switch (comparison) {
+                case EQ -> value == number;
+                case NE -> value != number;
+                case LT -> value < number;
+                case LE -> value <= number;
+                case GT -> value > number;
+                case GE -> value >= number;
+                default -> false;
+            };
+        }
+    }
+
+    /**
+     * Constructor
+     * @param terms Terms of the query, every one must match
+     */
+    Query(List<Term> terms) {
+        this.nameTerms = terms.stream()
+                .filter(term -> term.field() == Field.NAME || term.field() == Field.EXT)
+                .sorted((a, b) -> Boolean.compare(a.pattern() != null, b.pattern() != null))
+                .toList();
+        this.attributeTerms = terms.stream()
+                .filter(term -> term.field() != Field.NAME && term.field() != Field.EXT)
+                .toList();
+        long[] size = bounds(terms, Field.SIZE, 0);
+        long[] modified = bounds(terms, Field.MTIME, Long.MIN_VALUE);
+        this.minSize = size[0];
+        this.maxSize = size[1];
+        this.minModified = modified[0];
+        this.maxModified = modified[1];
+        this.typed = terms.stream().anyMatch(term -> term.field() == Field.TYPE);
+    }
+
+    /**
+     * First stage of the query, needs no system call
+     * @param name Name of the entry
+     * @return True if the name satisfies every name and extension term
+     */
+    public boolean matchesName(String name) {
+        if (nameTerms.isEmpty()) {
+            return true;
+        }
+        String extension = NameIndex.extensionOf(name);
+        for (Term term : nameTerms) {
+            if (!term.matchesName(name, extension)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Second stage of the query. Without a type term only entries that are
+     * not directories match, as FIND has always done.
+     * @param attributes Attributes of the entry
+     * @return True if the attributes satisfy every size, modification time and type term
+     */
+    public boolean matchesAttributes(BasicFileAttributes attributes) {
+        return matchesAttributes(typeOf(attributes), attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Second stage of the query, for attributes known without a system call
+     * @param type Type of the entry, f for files, d for directories, l for links and o for anything else
+     * @param size Size of the entry in bytes
+     * @param modified Modification time of the entry in milliseconds
+     * @return True if the attributes satisfy every size, modification time and type term
+     */
+    public boolean matchesAttributes(char type, long size, long modified) {
+        if (!typed && type == 'd') {
+            return false;
+        }
+        for (Term term : attributeTerms) {
+            if (!term.matchesAttributes(type, size, modified)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return True if some term needs the attributes of the entry
+     */
+    public boolean needsAttributes() {
+        return !attributeTerms.isEmpty();
+    }
+
+    /**
+     * @return True if directories cannot match, which is the case unless a type term asks for them
+     */
+    public boolean excludesDirectories() {
+        return !typed || attributeTerms.stream().anyMatch(term -> term.field() == Field.TYPE
+                && (term.comparison() == Comparison.EQ) != term.text().equals("d"));
+    }
+
+    /**
+     * @return Name every match has, or null if the query does not fix it
+     */
+    public String exactName() {
+        for (Term term : nameTerms) {
+            if (term.field() == Field.NAME && term.comparison() == Comparison.EQ) {
+                return term.text();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Start every matching name has, or null if the query does not fix it
+     */
+    public String namePrefix() {
+        for (Term term : nameTerms) {
+            if (term.field() == Field.NAME && term.comparison() == Comparison.MATCH) {
+                int wildcard = QueryParser.firstWildcard(term.text());
+                if (wildcard > 0) {
+                    return term.text().substring(0, wildcard);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Extension every match has in lowercase, or null if the query does not fix it
+     */
+    public String extension() {
+        for (Term term : nameTerms) {
+            if (term.field() == Field.EXT && term.comparison() == Comparison.EQ) {
+                return term.text();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return True if the query bounds the size of the matches
+     */
+    public boolean hasSizeBounds() {
+        return minSize > 0 || maxSize < Long.MAX_VALUE;
+    }
+
+    /**
+     * @return True if the query bounds the modification time of the matches
+     */
+    public boolean hasModifiedBounds() {
+        return minModified > Long.MIN_VALUE || maxModified < Long.MAX_VALUE;
+    }
+
+    /**
+     * @return Smallest size a match can have, inclusive
+     */
+    public long getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * @return Largest size a match can have, inclusive
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return Earliest modification time a match can have in milliseconds, inclusive
+     */
+    public long getMinModified() {
+        return minModified;
+    }
+
+    /**
+     * @return Latest modification time a match can have in milliseconds, inclusive
+     */
+    public long getMaxModified() {
+        return maxModified;
+    }
+
+    private static char typeOf(BasicFileAttributes attributes) {
+        if (attributes.isRegularFile()) {
+            return 'f';
+        } else if (attributes.isDirectory()) {
+            return 'd';
+        } else if (attributes.isSymbolicLink()) {
+            return 'l';
+        }
+        return 'o';
+    }
+
+    /**
+     * Intersects the ranges of every term on a numeric field
+     * @return Lower and upper bound, both inclusive
+     */
+    private static long[] bounds(List<Term> terms, Field field, long lowest) {
+        long min = lowest;
+        long max = Long.MAX_VALUE;
+        for (Term term : terms) {
+            if (term.field() != field) {
+                continue;
+            }
+            long value = term.number();
+            switch (term.comparison()) {
+                case EQ -> {
+                    min = Math.max(min, value);
+                    max = Math.min(max, value);
+                }
+                case LT -> max = Math.min(max, value == Long.MIN_VALUE ? value : value - 1);
+                case LE -> max = Math.min(max, value);
+                case GT -> min = Math.max(min, value == Long.MAX_VALUE ? value : value + 1);
+                case GE -> min = Math.max(min, value);
+                default -> { }
+            }
+        }
+        return new long[] {min, max};
+    }
+
+}
@@ -0,0 +1,283 @@
+/**
+ * Parser of search queries
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Parser;
+
+import personalDB.Exceptions.InvalidInputException;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles the terms of a search into a {@link Query}. Every term has the
+ * form FIELD OPERATOR VALUE with no spaces, e.g. ext=pdf size>10M mtime<7d
+ * name~report*, and a query matches the entries that satisfy all its terms.
+ * <ul>
+ *     <li>name: = and != compare the whole name, ~ matches a glob where * is any
+ *     run of characters and ? a single character</li>
+ *     <li>ext: =, != and ~ on the extension, ignoring case</li>
+ *     <li>size: =, !=, &lt;, &lt;=, &gt; and &gt;= on the size, with an optional
+ *     K, M, G or T suffix in powers of 1024</li>
+ *     <li>mtime: &lt;, &lt;=, &gt; and &gt;= on the age of the entry when given
+ *     as a duration, e.g. mtime&lt;7d is modified in the last 7 days, with an
+ *     s, m, h, d or w suffix, or on the modification time when given as a
+ *     yyyy-MM-dd date, which also accepts =</li>
+ *     <li>type: = and != with f for files, d for directories and l for links</li>
+ * </ul>
+ */
+public class QueryParser {
+    private static final String[] OPERATORS = {"<=", ">=", "!=", "=", "<", ">", "~"};
+    private static final Query.Comparison[] COMPARISONS = {
+            Query.Comparison.LE, Query.Comparison.GE, Query.Comparison.NE, Query.Comparison.EQ,
+            Query.Comparison.LT, Query.Comparison.GT, Query.Comparison.MATCH
+    };
+
+    private QueryParser() {}
+
+    /**
+     * Checks if an argument is a term of a query rather than a file name
+     * @param argument Argument of a command
+     * @return True if the argument starts with a known field followed by an operator
+     */
+    public static boolean isTerm(String argument) {
+        int operator = operatorStart(argument);
+        return operator > 0 && field(argument.substring(0, operator)) != null;
+    }
+
+    /**
+     * Compiles the terms of a search
+     * @param terms Terms, each one as a separate string
+     * @return Query matching the entries that satisfy every term
+     * @throws InvalidInputException If a term is not valid
+     */
+    public static Query parse(List<String> terms) throws InvalidInputException {
+        return parse(terms, System.currentTimeMillis());
+    }
+
+    /**
+     * Compiles the terms of a search
+     * @param terms Terms, each one as a separate string
+     * @param now Time durations in mtime terms are counted back from, in milliseconds
+     * @return Query matching the entries that satisfy every term
+     * @throws InvalidInputException If a term is not valid
+     */
+    public static Query parse(List<String> terms, long now) throws InvalidInputException {
+        List<Query.Term> compiled = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            int start = operatorStart(term);
+            Query.Field field = start > 0 ? field(term.substring(0, start)) : null;
+            if (field == null) {
+                throw new InvalidInputException("Invalid search term " + term + ", expected FIELD OPERATOR VALUE.");
+            }
+            int index = operatorIndex(term, start);
+            if (index < 0) {
+                throw new InvalidInputException("Invalid operator in search term " + term + ".");
+            }
+            Query.Comparison comparison = COMPARISONS[index];
+            String value = term.substring(start + OPERATORS[index].length());
+            if (value.isEmpty()) {
+                throw new InvalidInputException("Search term " + term + " has no value.");
+            }
+            switch (field) {
+                case NAME -> compiled.add(textTerm(term, field, comparison, value));
+                case EXT -> compiled.add(textTerm(term, field, comparison,
+                        (value.startsWith(".") ? value.substring(1) : value).toLowerCase()));
+                case SIZE -> compiled.add(sizeTerm(term, comparison, value));
+                case MTIME -> modifiedTerms(term, comparison, value, now, compiled);
+                case TYPE -> compiled.add(typeTerm(term, comparison, value));
+            }
+        }
+        return new Query(compiled);
+    }
+
+    /**
+     * Parses a size with an optional K, M, G or T suffix in powers of 1024
+     * @param text Size, e.g. 10M
+     * @return Size in bytes
+     * @throws NumberFormatException If the size is not valid
+     */
+    public static long parseSize(String text) {
+        if (text.isEmpty()) {
+            throw new NumberFormatException("Empty size");
+        }
+        int shift = switch (Character.toUpperCase(text.charAt(text.length() - 1))) {
+            case 'K' -> 10;
+            case 'M' -> 20;
+            case 'G' -> 30;
+            case 'T' -> 40;
+            default -> 0;
+        };
+        long value = Long.parseLong(shift == 0 ? text : text.substring(0, text.length() - 1));
+        if (value < 0 || value > Long.MAX_VALUE >> shift) {
+            throw new NumberFormatException("Size out of range: " + text);
+        }
+        return value << shift;
+    }
+
+    /**
+     * @param glob Glob pattern
+     * @return Index of the first * or ? in the pattern, or -1 if there is none
+     */
+    static int firstWildcard(String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            if (glob.charAt(i) == '*' || glob.charAt(i) == '?') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Query.Term textTerm(String term, Query.Field field, Query.Comparison comparison, String value)
+            throws InvalidInputException {
+        return switch (comparison) {
+            case EQ, NE -> new Query.Term(field, comparison, value, 0, null);
+            case MATCH -> new Query.Term(field, comparison, value, 0, compileGlob(value, field == Query.Field.EXT));
+            default -> throw new InvalidInputException("Search term " + term + " only takes =, != or ~.");
+        };
+    }
+
+    private static Query.Term sizeTerm(String term, Query.Comparison comparison, String value)
+            throws InvalidInputException {
+        if (comparison == Query.Comparison.MATCH) {
+            throw new InvalidInputException("Search term " + term + " cannot use ~.");
+        }
+        try {
+            return new Query.Term(Query.Field.SIZE, comparison, value, parseSize(value), null);
+        } catch (NumberFormatException e) {
+            throw new InvalidInputException("Invalid size in search term " + term + ", e.g. size>10M.");
+        }
+    }
+
+    /**
+     * Compiles an mtime term into terms on the modification time. A duration
+     * is an age, so its comparison is reversed, and a date is a whole day.
+     */
+    private static void modifiedTerms(String term, Query.Comparison comparison, String value, long now,
+                                      List<Query.Term> compiled) throws InvalidInputException {
+        char unit = Character.toLowerCase(value.charAt(value.length() - 1));
+        if (Character.isDigit(value.charAt(0)) && "smhdw".indexOf(unit) >= 0 && value.indexOf('-') < 0) {
+            long amount;
+            try {
+                amount = Long.parseLong(value.substring(0, value.length() - 1));
+            } catch (NumberFormatException e) {
+                throw new InvalidInputException("Invalid duration in search term " + term + ", e.g. mtime<7d.");
+            }
+            long seconds = switch (unit) {
+                case 'm' -> 60;
+                case 'h' -> 3600;
+                case 'd' -> 86_400;
+                case 'w' -> 604_800;
+                default -> 1;
+            };
+            long time = now - Math.min(amount, Long.MAX_VALUE / 1000 / seconds) * seconds * 1000;
+            Query.Comparison reversed = switch (comparison) {
+                case LT -> Query.Comparison.GT;
+                case LE -> Query.Comparison.GE;
+                case GT -> Query.Comparison.LT;
+                case GE -> Query.Comparison.LE;
+                default -> throw new InvalidInputException("Search term " + term +
+                        " compares an age, it only takes <, <=, > or >=.");
+            };
+            compiled.add(new Query.Term(Query.Field.MTIME, reversed, value, time, null));
+            return;
+        }
+
+        long dayStart;
+        long dayEnd;
+        try {
+            LocalDate date = LocalDate.parse(value);
+            dayStart = date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            dayEnd = date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() - 1;
+        } catch (DateTimeParseException e) {
+            throw new InvalidInputException("Invalid time in search term " + term + ", e.g. mtime<7d or mtime>=2024-01-31.");
+        }
+        switch (comparison) {
+            case LT, GE -> compiled.add(new Query.Term(Query.Field.MTIME, comparison, value, dayStart, null));
+            case LE, GT -> compiled.add(new Query.Term(Query.Field.MTIME, comparison, value, dayEnd, null));
+            case EQ -> {
+                compiled.add(new Query.Term(Query.Field.MTIME, Query.Comparison.GE, value, dayStart, null));
+                compiled.add(new Query.Term(Query.Field.MTIME, Query.Comparison.LE, value, dayEnd, null));
+            }
+            default -> throw new InvalidInputException("Search term " + term + " only takes =, <, <=, > or >=.");
+        }
+    }
+
+    private static Query.Term typeTerm(String term, Query.Comparison comparison, String value)
+            throws InvalidInputException {
+        String type = switch (value.toLowerCase()) {
+            case "f", "file" -> "f";
+            case "d", "dir", "directory" -> "d";
+            case "l", "link" -> "l";
+            default -> throw new InvalidInputException("Invalid type in search term " + term + ", expected f, d or l.");
+        };
+        if (comparison != Query.Comparison.EQ && comparison != Query.Comparison.NE) {
+            throw new InvalidInputException("Search term " + term + " only takes = or !=.");
+        }
+        return new Query.Term(Query.Field.TYPE, comparison, type, 0, null);
+    }
+
+    /**
+     * Translates a glob where * is any run of characters and ? a single
+     * character into a regular expression, everything else is literal
+     */
+    private static Pattern compileGlob(String glob, boolean ignoreCase) {
+        StringBuilder regex = new StringBuilder(glob.length() + 8);
+        int literal = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal < i) {
+                    regex.append(Pattern.quote(glob.substring(literal, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literal = i + 1;
+            }
+        }
+        if (literal < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literal)));
+        }
+        return Pattern.compile(regex.toString(), ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.DOTALL : Pattern.DOTALL);
+    }
+
+    /**
+     * @return Index of the first operator character of a term, or -1 if there is none
+     */
+    private static int operatorStart(String term) {
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c == '<' || c == '>' || c == '=' || c == '!' || c == '~') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int operatorIndex(String term, int start) {
+        for (int i = 0; i < OPERATORS.length; i++) {
+            if (term.startsWith(OPERATORS[i], start)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Query.Field field(String name) {
+        return switch (name.toLowerCase()) {
+            case "name" -> Query.Field.NAME;
+            case "ext" -> Query.Field.EXT;
+            case "size" -> Query.Field.SIZE;
+            case "mtime" -> Query.Field.MTIME;
+            case "type" -> Query.Field.TYPE;
+            default -> null;
+        };
+    }
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Compiled full text query
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Parser;
+
+import java.util.List;
+
+/**
+ * Objects of this class are the content searches compiled by
+ * {@link TextQueryParser}, a tree of words, word prefixes and phrases joined
+ * by AND, OR and NOT. Every word is already in the form the index holds it,
+ * see {@link personalDB.Index.Tokenizer}. Exclusions only appear among the
+ * terms of an AND that also has a term that is not excluded, so every query
+ * can be answered from the documents holding some word instead of from
+ * every document.
+ */
+public class TextQuery {
+    private final Node root;
+    private final String text;
+
+    /**
+     * A node of the query tree
+     */
+    public interface Node {}
+
+    /**
+     * Documents containing a word
+     * @param word Word in lowercase
+     */
+    public record Word(String word) implements Node {}
+
+    /**
+     * Documents containing a word that starts with a prefix
+     * @param prefix Start of the word in lowercase
+     */
+    public record Prefix(String prefix) implements Node {}
+
+    /**
+     * Documents containing the words one right after the other
+     * @param words Two words or more, in order
+     */
+    public record Phrase(List<String> words) implements Node {}
+
+    /**
+     * Documents matching every term that is not a {@link Not}, and none of those that are
+     * @param terms At least one term that is not a {@link Not}
+     */
+    public record And(List<Node> terms) implements Node {}
+
+    /**
+     * Documents matching any of the terms
+     * @param terms Terms, none of them a {@link Not}
+     */
+    public record Or(List<Node> terms) implements Node {}
+
+    /**
+     * Documents not matching a term, only found inside an {@link And}
+     * @param term Term excluded
+     */
+    public record Not(Node term) implements Node {}
+
+    /**
+     * Constructor
+     * @param root Root of the query tree
+     * @param text Query as it was typed
+     */
+    public TextQuery(Node root, String text) {
+        this.root = root;
+        this.text = text;
+    }
+
+    /**
+     * @return Root of the query tree
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+}
@@ -0,0 +1,167 @@
+/**
+ * Parser of full text queries
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Parser;
+
+import personalDB.Exceptions.InvalidInputException;
+import personalDB.Index.Tokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles the arguments of a content search into a {@link TextQuery}.
+ * <ul>
+ *     <li>A word matches the files containing it, ignoring case. A word ending
+ *     with * matches any word starting with it.</li>
+ *     <li>An argument made of several words, e.g. "quarterly report" in quotes
+ *     or quarterly-report, is a phrase and matches the words one right after
+ *     the other.</li>
+ *     <li>Terms next to each other must all match, AND can also be written.
+ *     OR matches either side and binds looser than AND.</li>
+ *     <li>NOT or a leading - excludes the files matching a term.</li>
+ *     <li>Parentheses group terms, e.g. (invoice OR receipt) -draft.</li>
+ * </ul>
+ * AND, OR and NOT are only operators in uppercase.
+ */
+public class TextQueryParser {
+    private final List<String> tokens;
+    private int next = 0;
+
+    private TextQueryParser(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Compiles a content search
+     * @param arguments Arguments of the command, quoted phrases as a single argument
+     * @return The query
+     * @throws InvalidInputException If the arguments are not a valid query
+     */
+    public static TextQuery parse(List<String> arguments) throws InvalidInputException {
+        TextQueryParser parser = new TextQueryParser(split(arguments));
+        if (parser.tokens.isEmpty()) {
+            throw new InvalidInputException("No words to search for.");
+        }
+        TextQuery.Node root = parser.parseOr();
+        if (parser.next < parser.tokens.size()) {
+            throw new InvalidInputException("Unexpected " + parser.tokens.get(parser.next) + " in the query.");
+        }
+        return new TextQuery(root, String.join(" ", arguments));
+    }
+
+    /**
+     * Splits parentheses from the arguments they are attached to
+     */
+    private static List<String> split(List<String> arguments) {
+        List<String> tokens = new ArrayList<>();
+        for (String argument : arguments) {
+            int start = 0;
+            int end = argument.length();
+            while (start < end && argument.charAt(start) == '(') {
+                tokens.add("(");
+                start++;
+            }
+            int closing = 0;
+            while (end > start && argument.charAt(end - 1) == ')') {
+                closing++;
+                end--;
+            }
+            if (start < end) {
+                tokens.add(argument.substring(start, end));
+            }
+            for (int i = 0; i < closing; i++) {
+                tokens.add(")");
+            }
+        }
+        return tokens;
+    }
+
+    private TextQuery.Node parseOr() throws InvalidInputException {
+        List<TextQuery.Node> terms = new ArrayList<>();
+        terms.add(parseAnd());
+        while (next < tokens.size() && tokens.get(next).equals("OR")) {
+            next++;
+            terms.add(parseAnd());
+        }
+        return terms.size() == 1 ? terms.get(0) : new TextQuery.Or(terms);
+    }
+
+    private TextQuery.Node parseAnd() throws InvalidInputException {
+        List<TextQuery.Node> terms = new ArrayList<>();
+        boolean included = false;
+        while (next < tokens.size() && !tokens.get(next).equals("OR") && !tokens.get(next).equals(")")) {
+            if (tokens.get(next).equals("AND")) {
+                if (terms.isEmpty()) {
+                    throw new InvalidInputException("AND needs a term on each side.");
+                }
+                next++;
+            }
+            TextQuery.Node term = parseUnary();
+            included |= !(term instanceof TextQuery.Not);
+            terms.add(term);
+        }
+        if (terms.isEmpty()) {
+            throw new InvalidInputException(next < tokens.size()
+                    ? "Missing term before " + tokens.get(next) + "." : "Missing term at the end of the query.");
+        }
+        if (!included) {
+            throw new InvalidInputException("Terms can only be excluded from another term, e.g. report -draft.");
+        }
+        return terms.size() == 1 ? terms.get(0) : new TextQuery.And(terms);
+    }
+
+    private TextQuery.Node parseUnary() throws InvalidInputException {
+        if (next == tokens.size()) {
+            throw new InvalidInputException("Missing term at the end of the query.");
+        }
+        String token = tokens.get(next++);
+        switch (token) {
+            case "NOT" -> {
+                return not(parseUnary());
+            }
+            case "(" -> {
+                TextQuery.Node group = parseOr();
+                if (next == tokens.size() || !tokens.get(next).equals(")")) {
+                    throw new InvalidInputException("Missing ) in the query.");
+                }
+                next++;
+                return group;
+            }
+            case ")", "OR", "AND" -> throw new InvalidInputException("Missing term before " + token + ".");
+            default -> {
+                if (token.length() > 1 && token.charAt(0) == '-') {
+                    return not(words(token.substring(1)));
+                }
+                return words(token);
+            }
+        }
+    }
+
+    private static TextQuery.Node not(TextQuery.Node term) {
+        return term instanceof TextQuery.Not not ? not.term() : new TextQuery.Not(term);
+    }
+
+    /**
+     * Turns an argument into a word, a prefix or a phrase
+     */
+    private static TextQuery.Node words(String token) throws InvalidInputException {
+        boolean prefix = token.endsWith("*");
+        List<String> words = Tokenizer.words(prefix ? token.substring(0, token.length() - 1) : token);
+        if (words.isEmpty()) {
+            throw new InvalidInputException(token + " has no letters or digits to search for.");
+        }
+        if (prefix) {
+            if (words.size() > 1) {
+                throw new InvalidInputException("Only a single word can end with *, " + token + " is a phrase.");
+            }
+            return new TextQuery.Prefix(words.get(0));
+        }
+        return words.size() == 1 ? new TextQuery.Word(words.get(0)) : new TextQuery.Phrase(words);
+    }
+
+}
@@ -0,0 +1,328 @@
+/**
+ * Serves commands to clients over a socket
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Server;
+
+import personalDB.Engine.DirectoryHandler;
+import personalDB.Engine.FileHandler;
+import personalDB.Engine.OperationHandler;
+import personalDB.Engine.Status;
+import personalDB.Exceptions.InvalidDirectory;
+import personalDB.Parser.Operation;
+import personalDB.Parser.Parser;
+import personalDB.TerminalInterface.Interface;
+import personalDB.TerminalInterface.OutputCapture;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Objects of this class run personalDB as a daemon that many clients use at
+ * the same time, over TCP or a Unix domain socket. Every connection is a
+ * session with its own current directory, starting at the root of the
+ * server, while the indexes, the catalog, the object store and the caches
+ * are shared by all of them. Each connection is served by its own thread, a
+ * virtual thread when the runtime has them.
+ * The protocol is a line of UTF-8 per request, the command as it would be
+ * typed, e.g. FIND ext=pdf size&gt;10M. Every response is a line with the
+ * status of the command, 0 if it succeeded, 1 if it failed and 2 if it was
+ * misused, followed by the output of the command and a line with a single
+ * dot. Output lines starting with a dot get a second one, so the end of a
+ * response is never ambiguous. EXIT closes the connection.
+ * Commands that only read, and the ones that only change the current
+ * directory of their session, run at the same time as each other. Any
+ * other command runs alone, like in a script.
+ */
+public class CommandServer implements Closeable {
+    public static final int DEFAULT_PORT = 7070;
+    public static final int MAX_LINE_LENGTH = 64 << 10;
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFSOCK = 0140000;
+
+    private final Path root;
+    private final ServerSocketChannel channel;
+    private final SocketAddress address;
+    private final ExecutorService clients = newExecutor();
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private final ReadWriteLock commandLock = new ReentrantReadWriteLock();
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Starts listening, connections are only accepted once {@link #serve()} is called
+     * @param root Directory every session starts in
+     * @param address Where to listen: PORT or HOST:PORT for TCP, by default on
+     *                the loopback interface, or the path of a Unix domain socket
+     * @throws IOException If the address cannot be bound
+     */
+    public CommandServer(Path root, String address) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        SocketAddress bound = parseAddress(address);
+        if (bound instanceof UnixDomainSocketAddress unix) {
+            removeStaleSocket(unix);
+            this.channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            this.channel = ServerSocketChannel.open();
+        }
+        channel.bind(bound, 1024);
+        this.address = channel.getLocalAddress();
+    }
+
+    /**
+     * Deletes a socket file left behind by a server that was killed. Anything
+     * else at that path, a regular file or a socket a server still answers
+     * on, is left alone.
+     * @param address Address of the Unix domain socket
+     * @throws BindException If the path exists and is not a stale socket
+     * @throws IOException If the stale socket cannot be deleted
+     */
+    private static void removeStaleSocket(UnixDomainSocketAddress address) throws IOException {
+        Path path = address.getPath();
+        int mode;
+        try {
+            mode = (Integer) Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            throw new BindException("Address already in use: " + path);
+        }
+        if ((mode & S_IFMT) != S_IFSOCK) {
+            throw new BindException("Address already in use: " + path + " is not a socket");
+        }
+        try {
+            SocketChannel.open(address).close();
+        } catch (ConnectException e) {
+            Files.deleteIfExists(path);
+            return;
+        }
+        throw new BindException("Address already in use: a server is listening on " + path);
+    }
+
+    /**
+     * Turns an address given on the command line into a socket address
+     * @param address PORT, HOST:PORT, or anything containing a / for the path of a Unix domain socket
+     * @return Socket address
+     * @throws IOException If the address is not valid
+     */
+    public static SocketAddress parseAddress(String address) throws IOException {
+        if (address.contains("/")) {
+            return UnixDomainSocketAddress.of(address);
+        }
+        int colon = address.lastIndexOf(':');
+        try {
+            if (colon < 0) {
+                return new InetSocketAddress("127.0.0.1", Integer.parseInt(address));
+            }
+            return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid address " + address + ", expected PORT, HOST:PORT or the path of a socket.");
+        }
+    }
+
+    /**
+     * @return Address the server is listening on
+     */
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * @return Number of requests answered since the server started
+     */
+    public long requestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Accepts connections until the server is closed
+     */
+    public void serve() {
+        OutputCapture.install();
+        while (channel.isOpen()) {
+            SocketChannel client;
+            try {
+                client = channel.accept();
+            } catch (IOException e) {
+                // Closed, or a connection that failed before it was accepted
+                continue;
+            }
+            connections.add(client);
+            clients.execute(() -> {
+                try {
+                    handle(client);
+                } catch (IOException | InvalidDirectory e) {
+                    // The client went away
+                } finally {
+                    connections.remove(client);
+                    try {
+                        client.close();
+                    } catch (IOException e) {
+                        // Already closed
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        for (SocketChannel client : connections) {
+            client.close();
+        }
+        clients.shutdownNow();
+        if (address instanceof UnixDomainSocketAddress unix) {
+            Files.deleteIfExists(unix.getPath());
+        }
+    }
+
+    /**
+     * Serves a single connection, one request at a time
+     */
+    private void handle(SocketChannel client) throws IOException, InvalidDirectory {
+        DirectoryHandler directoryHandler = new DirectoryHandler(root.toString());
+        OperationHandler handler = new OperationHandler(directoryHandler, new FileHandler(directoryHandler),
+                new Interface(directoryHandler));
+        Parser parser = new Parser();
+        InputStream in = new BufferedInputStream(Channels.newInputStream(client), 1 << 14);
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(client), 1 << 16);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        while (readLine(in, line)) {
+            String command = line.toString(StandardCharsets.UTF_8).strip();
+            int status = Status.OK;
+            byte[] output = new byte[0];
+            if (!command.isEmpty()) {
+                parser.parse(command);
+                Operation operation = parser.getCommand();
+                if (operation == Operation.EXIT) {
+                    break;
+                }
+                List<String> arguments = parser.getArguments();
+                OutputCapture.start();
+                try {
+                    status = execute(handler, operation, arguments);
+                } finally {
+                    output = OutputCapture.stop();
+                }
+            }
+            writeResponse(out, status, output);
+            requests.incrementAndGet();
+            // Requests sent ahead are answered before the answers are flushed
+            if (in.available() == 0) {
+                out.flush();
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Runs a command under the lock that keeps commands changing files
+     * from running at the same time as any other
+     */
+    private int execute(OperationHandler handler, Operation operation, List<String> arguments) {
+        boolean shared = operation.isReadOnly() || operation == Operation.CD || operation == Operation.BACK;
+        Lock lock = shared ? commandLock.readLock() : commandLock.writeLock();
+        lock.lock();
+        try {
+            return handler.execute(operation, arguments);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a line without its end of line
+     * @return False if the connection was closed before a line started
+     * @throws IOException If the line is longer than {@link #MAX_LINE_LENGTH}
+     */
+    private static boolean readLine(InputStream in, ByteArrayOutputStream line) throws IOException {
+        line.reset();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                return true;
+            }
+            if (line.size() >= MAX_LINE_LENGTH) {
+                throw new IOException("Request too long");
+            }
+            line.write(b);
+        }
+        return line.size() > 0;
+    }
+
+    /**
+     * Writes the status, the output with every line starting with a dot
+     * doubled, and the final dot
+     */
+    static void writeResponse(OutputStream out, int status, byte[] output) throws IOException {
+        out.write('0' + status);
+        out.write('\n');
+        boolean lineStart = true;
+        int start = 0;
+        for (int i = 0; i < output.length; i++) {
+            if (lineStart && output[i] == '.') {
+                out.write(output, start, i - start);
+                out.write('.');
+                start = i;
+            }
+            lineStart = output[i] == '\n';
+        }
+        out.write(output, start, output.length - start);
+        if (output.length > 0 && output[output.length - 1] != '\n') {
+            out.write('\n');
+        }
+        out.write('.');
+        out.write('\n');
+    }
+
+    /**
+     * Runs every connection on its own virtual thread when the runtime
+     * supports them, otherwise on its own platform thread
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "personalDB-client");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+/**
+ * Measures the throughput of a command server
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Server;
+
+import personalDB.Metrics.Histogram;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opens many connections to a {@link CommandServer} and sends the same
+ * commands over all of them as fast as the server answers, then prints the
+ * throughput and the latency percentiles of the requests. Every client sends
+ * its commands in turn, waiting for each response before the next request,
+ * so the number of clients is the number of requests in flight.
+ * Usage: LoadGenerator ADDRESS CLIENTS REQUESTS COMMAND [; COMMAND...]
+ * where ADDRESS is PORT, HOST:PORT or the path of a socket, REQUESTS is the
+ * number of requests sent by every client and commands are separated by ;.
+ */
+public class LoadGenerator {
+    private final SocketAddress address;
+    private final int clients;
+    private final int requests;
+    private final List<byte[]> commands;
+    private final Histogram latencies = new Histogram();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Outcome of a run
+     * @param requests Number of requests answered
+     * @param failed Number of requests answered with a status other than 0
+     * @param errors Number of clients that lost their connection
+     * @param seconds Duration of the run
+     * @param latency Latencies of the requests in nanoseconds
+     */
+    public record Result(long requests, long failed, long errors, double seconds, Histogram.Snapshot latency) {
+
+        /**
+         * @return Requests answered per second
+         */
+        public double throughput() {
+            return requests / Math.max(seconds, 1e-9);
+        }
+    }
+
+    /**
+     * Constructor
+     * @param address Address of the server
+     * @param clients Number of connections opened at the same time
+     * @param requests Number of requests sent by every connection
+     * @param commands Commands sent in turn
+     */
+    public LoadGenerator(SocketAddress address, int clients, int requests, List<String> commands) {
+        this.address = address;
+        this.clients = Math.max(1, clients);
+        this.requests = Math.max(1, requests);
+        this.commands = new ArrayList<>(commands.size());
+        for (String command : commands) {
+            this.commands.add((command + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.out.println("Usage: LoadGenerator ADDRESS CLIENTS REQUESTS COMMAND [; COMMAND...]");
+            System.exit(2);
+        }
+        List<String> commands = new ArrayList<>();
+        for (String command : String.join(" ", Arrays.asList(args).subList(3, args.length)).split(";")) {
+            if (!command.isBlank()) {
+                commands.add(command.strip());
+            }
+        }
+        LoadGenerator generator = new LoadGenerator(CommandServer.parseAddress(args[0]),
+                Integer.parseInt(args[1]), Integer.parseInt(args[2]), commands);
+        Result result = generator.run();
+        System.out.printf(Locale.ROOT, "%d request(s) in %.2f s, %.0f requests/s, %d failed, %d connection error(s)%n",
+                result.requests(), result.seconds(), result.throughput(), result.failed(), result.errors());
+        Histogram.Snapshot latency = result.latency();
+        System.out.printf(Locale.ROOT, "Latency: mean %.1f us, p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                latency.mean() / 1e3, latency.p50() / 1e3, latency.p99() / 1e3, latency.p999() / 1e3,
+                latency.max() / 1e3);
+    }
+
+    /**
+     * Opens every connection, then sends the requests once all of them are open
+     * @return Throughput and latencies of the run
+     * @throws InterruptedException If interrupted while waiting for the clients
+     */
+    public Result run() throws InterruptedException {
+        CountDownLatch connected = new CountDownLatch(clients);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(clients);
+        AtomicLong answered = new AtomicLong();
+        for (int i = 0; i < clients; i++) {
+            Thread client = new Thread(() -> {
+                try (SocketChannel channel = address instanceof UnixDomainSocketAddress
+                        ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open()) {
+                    channel.connect(address);
+                    connected.countDown();
+                    start.await();
+                    answered.addAndGet(send(channel));
+                } catch (IOException e) {
+                    errors.incrementAndGet();
+                    connected.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "personalDB-load-" + i);
+            client.setDaemon(true);
+            client.start();
+        }
+        connected.await();
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        return new Result(answered.get(), failed.get(), errors.get(), seconds, latencies.snapshot());
+    }
+
+    /**
+     * Sends the requests of one client
+     * @return Number of requests answered
+     */
+    private long send(SocketChannel channel) throws IOException {
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 12);
+        InputStream in = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+        long answered = 0;
+        for (int i = 0; i < requests; i++) {
+            long sent = System.nanoTime();
+            out.write(commands.get(i % commands.size()));
+            out.flush();
+            int status = readResponse(in);
+            latencies.record(System.nanoTime() - sent);
+            if (status != 0) {
+                failed.incrementAndGet();
+            }
+            answered++;
+        }
+        return answered;
+    }
+
+    /**
+     * Reads a response up to its final dot, discarding the output
+     * @return Status of the command
+     */
+    private static int readResponse(InputStream in) throws IOException {
+        int status = in.read() - '0';
+        if (status < 0 || in.read() != '\n') {
+            throw new IOException("Unexpected response");
+        }
+        boolean lineStart = true;
+        boolean dotLine = false;
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                if (dotLine) {
+                    return status;
+                }
+                lineStart = true;
+                continue;
+            }
+            dotLine = lineStart && b == '.';
+            lineStart = false;
+        }
+        throw new IOException("Connection closed");
+    }
+
+}
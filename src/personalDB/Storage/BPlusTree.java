@@ -0,0 +1,618 @@
+/**
+ * Page based B+tree stored in a single file
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Objects of this class map byte string keys to byte string values, sorted
+ * by the unsigned order of the keys, in a file of {@link #PAGE_SIZE} pages.
+ * Leaves hold the entries and are linked to the next leaf, so range scans
+ * read consecutive leaves without going back up the tree. Pages are decoded
+ * once and kept in a {@link BufferPool}, a lookup whose pages are cached
+ * never touches the file.
+ * Page 0 is a header with the root, the number of entries, a few bytes of
+ * metadata for the owner of the tree and a clean flag. The flag is cleared
+ * before the first change is written and set again by {@link #flush()}, a
+ * tree that was not closed cleanly cannot be opened, its owner is expected
+ * to rebuild it. Deleted entries leave their space in the leaf, trees that
+ * shrink a lot should be rebuilt with {@link #bulkLoad(Iterator)}.
+ */
+public class BPlusTree implements Closeable {
+    public static final int PAGE_SIZE = 16 << 10;
+    public static final int MAX_ENTRY_SIZE = PAGE_SIZE / 4;
+    public static final int MAX_METADATA_SIZE = 1 << 10;
+    private static final int MAGIC = 0x50444254;
+    private static final int VERSION = 1;
+    private static final byte LEAF = 1;
+    private static final byte INNER = 2;
+    private static final int NODE_HEADER = 1 + 2 + 4;
+    private static final int BULK_FILL = PAGE_SIZE * 9 / 10;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final BufferPool<Node> pool;
+    private int root;
+    private int pageCount;
+    private long size;
+    private byte[] metadata = new byte[0];
+    private boolean clean = true;
+
+    /**
+     * Receives the entries of a range scan in key order
+     */
+    public interface EntryVisitor {
+        /**
+         * @param key Key of the entry, must not be modified
+         * @param value Value of the entry, must not be modified
+         * @return False to stop the scan
+         */
+        boolean visit(byte[] key, byte[] value);
+    }
+
+    /**
+     * Decoded page, a leaf or an inner node
+     */
+    private static final class Node {
+        private final boolean leaf;
+        private final List<byte[]> keys = new ArrayList<>();
+        private final List<byte[]> values = new ArrayList<>();
+        private final List<Integer> children = new ArrayList<>();
+        private int next = -1;
+        private int bytes = NODE_HEADER;
+
+        private Node(boolean leaf) {
+            this.leaf = leaf;
+        }
+
+        private static int entrySize(boolean leaf, byte[] key, byte[] value) {
+            return leaf ? 2 + key.length + 2 + value.length : 2 + key.length + 4;
+        }
+    }
+
+    private record Split(byte[] key, int page) {}
+
+    /**
+     * Opens a tree, creating an empty one if the file does not exist
+     * @param file File of the tree
+     * @param cachedPages Number of pages kept in memory
+     * @throws IOException If the file cannot be opened, is not a tree or was not closed cleanly
+     */
+    public BPlusTree(Path file, int cachedPages) throws IOException {
+        this.file = file;
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.pool = new BufferPool<>(new BufferPool.PageIO<>() {
+            @Override
+            public Node read(int page) throws IOException {
+                return readNode(page);
+            }
+
+            @Override
+            public void write(int page, Node content) throws IOException {
+                writeNode(page, content);
+            }
+        }, cachedPages);
+        try {
+            if (exists) {
+                readHeader();
+            } else {
+                pageCount = 2;
+                root = 1;
+                writeNode(root, new Node(true));
+                writeHeader();
+                channel.force(true);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Looks up a key
+     * @param key Key to be found
+     * @return Value of the key or null if the key is not in the tree
+     * @throws IOException If a page cannot be read
+     */
+    public synchronized byte[] get(byte[] key) throws IOException {
+        Node node = findLeaf(key);
+        int position = search(node.keys, key);
+        return position >= 0 ? node.values.get(position) : null;
+    }
+
+    /**
+     * Inserts an entry or replaces the value of an existing key
+     * @param key Key of the entry
+     * @param value Value of the entry
+     * @throws IOException If a page cannot be read or written
+     * @throws IllegalArgumentException If the entry is larger than {@link #MAX_ENTRY_SIZE}
+     */
+    public synchronized void put(byte[] key, byte[] value) throws IOException {
+        checkEntry(key, value);
+        markChanged();
+        Split split = insert(root, key, value);
+        if (split != null) {
+            Node newRoot = new Node(false);
+            newRoot.children.add(root);
+            newRoot.keys.add(split.key());
+            newRoot.children.add(split.page());
+            newRoot.bytes += Node.entrySize(false, split.key(), null);
+            root = allocate();
+            pool.markDirty(root, newRoot);
+        }
+    }
+
+    /**
+     * Removes a key
+     * @param key Key to be removed
+     * @return True if the key was in the tree
+     * @throws IOException If a page cannot be read or written
+     */
+    public synchronized boolean delete(byte[] key) throws IOException {
+        int page = root;
+        Node node = pool.get(page);
+        while (!node.leaf) {
+            page = node.children.get(childIndex(node.keys, key));
+            node = pool.get(page);
+        }
+        int position = search(node.keys, key);
+        if (position < 0) {
+            return false;
+        }
+        markChanged();
+        node.bytes -= Node.entrySize(true, node.keys.get(position), node.values.get(position));
+        node.keys.remove(position);
+        node.values.remove(position);
+        pool.markDirty(page, node);
+        size--;
+        return true;
+    }
+
+    /**
+     * Visits every entry with a key in a range, in key order
+     * @param from First key of the range, inclusive, or null to start at the first key
+     * @param to End of the range, exclusive, or null to scan until the last key
+     * @param visitor Receives the entries
+     * @throws IOException If a page cannot be read
+     */
+    public synchronized void scan(byte[] from, byte[] to, EntryVisitor visitor) throws IOException {
+        Node node = from == null ? leftmostLeaf() : findLeaf(from);
+        int position = 0;
+        if (from != null) {
+            position = search(node.keys, from);
+            position = position >= 0 ? position : -position - 1;
+        }
+        while (true) {
+            for (; position < node.keys.size(); position++) {
+                byte[] key = node.keys.get(position);
+                if (to != null && compare(key, to) >= 0) {
+                    return;
+                }
+                if (!visitor.visit(key, node.values.get(position))) {
+                    return;
+                }
+            }
+            if (node.next < 0) {
+                return;
+            }
+            node = pool.get(node.next);
+            position = 0;
+        }
+    }
+
+    /**
+     * Replaces the content of the tree with entries given in increasing key
+     * order, writing full leaves from left to right and building the inner
+     * levels on top of them
+     * @param entries Entries sorted by key, without duplicates
+     * @throws IOException If a page cannot be written
+     * @throws IllegalArgumentException If the entries are not sorted or an entry is too large
+     */
+    public synchronized void bulkLoad(Iterator<Map.Entry<byte[], byte[]>> entries) throws IOException {
+        markChanged();
+        pool.clear();
+        pageCount = 1;
+        size = 0;
+        List<byte[]> firstKeys = new ArrayList<>();
+        List<Integer> pages = new ArrayList<>();
+        Node leaf = new Node(true);
+        int leafPage = allocate();
+        byte[] previous = null;
+        while (entries.hasNext()) {
+            Map.Entry<byte[], byte[]> entry = entries.next();
+            byte[] key = entry.getKey();
+            byte[] value = entry.getValue();
+            checkEntry(key, value);
+            if (previous != null && compare(previous, key) >= 0) {
+                throw new IllegalArgumentException("Keys are not in increasing order.");
+            }
+            int entrySize = Node.entrySize(true, key, value);
+            if (!leaf.keys.isEmpty() && leaf.bytes + entrySize > BULK_FILL) {
+                int nextPage = allocate();
+                leaf.next = nextPage;
+                firstKeys.add(leaf.keys.get(0));
+                pages.add(leafPage);
+                writeNode(leafPage, leaf);
+                leaf = new Node(true);
+                leafPage = nextPage;
+            }
+            leaf.keys.add(key);
+            leaf.values.add(value);
+            leaf.bytes += entrySize;
+            previous = key;
+            size++;
+        }
+        firstKeys.add(leaf.keys.isEmpty() ? new byte[0] : leaf.keys.get(0));
+        pages.add(leafPage);
+        writeNode(leafPage, leaf);
+
+        while (pages.size() > 1) {
+            List<byte[]> upperKeys = new ArrayList<>();
+            List<Integer> upperPages = new ArrayList<>();
+            Node inner = null;
+            for (int i = 0; i < pages.size(); i++) {
+                int entrySize = Node.entrySize(false, firstKeys.get(i), null);
+                if (inner == null || inner.bytes + entrySize > BULK_FILL) {
+                    if (inner != null) {
+                        int page = allocate();
+                        writeNode(page, inner);
+                        upperPages.add(page);
+                    }
+                    inner = new Node(false);
+                    inner.children.add(pages.get(i));
+                    upperKeys.add(firstKeys.get(i));
+                } else {
+                    inner.keys.add(firstKeys.get(i));
+                    inner.children.add(pages.get(i));
+                    inner.bytes += entrySize;
+                }
+            }
+            int page = allocate();
+            writeNode(page, inner);
+            upperPages.add(page);
+            firstKeys = upperKeys;
+            pages = upperPages;
+        }
+        root = pages.get(0);
+        channel.truncate((long) pageCount * PAGE_SIZE);
+    }
+
+    /**
+     * @return Number of entries in the tree
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @return Metadata stored in the header by the owner of the tree
+     */
+    public synchronized byte[] getMetadata() {
+        return metadata.clone();
+    }
+
+    /**
+     * Stores a few bytes in the header, written on the next flush
+     * @param metadata Metadata of at most {@link #MAX_METADATA_SIZE} bytes
+     * @throws IOException If the header cannot be written
+     */
+    public synchronized void setMetadata(byte[] metadata) throws IOException {
+        if (metadata.length > MAX_METADATA_SIZE) {
+            throw new IllegalArgumentException("Metadata is too large.");
+        }
+        markChanged();
+        this.metadata = metadata.clone();
+    }
+
+    /**
+     * @return Number of page reads answered by the buffer pool
+     */
+    public synchronized long cacheHits() {
+        return pool.hits();
+    }
+
+    /**
+     * @return Number of page reads that went to the file
+     */
+    public synchronized long cacheMisses() {
+        return pool.misses();
+    }
+
+    /**
+     * Writes every changed page and marks the file as clean
+     * @throws IOException If the file cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        if (clean) {
+            return;
+        }
+        pool.flush();
+        channel.force(false);
+        clean = true;
+        writeHeader();
+        channel.force(true);
+    }
+
+    /**
+     * Flushes and closes the file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return File of the tree
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Compares two keys as unsigned byte strings
+     * @param a First key
+     * @param b Second key
+     * @return Negative, zero or positive as a is smaller, equal or larger than b
+     */
+    public static int compare(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+
+    private Split insert(int page, byte[] key, byte[] value) throws IOException {
+        Node node = pool.get(page);
+        if (node.leaf) {
+            int position = search(node.keys, key);
+            if (position >= 0) {
+                node.bytes += value.length - node.values.get(position).length;
+                node.values.set(position, value);
+            } else {
+                position = -position - 1;
+                node.keys.add(position, key);
+                node.values.add(position, value);
+                node.bytes += Node.entrySize(true, key, value);
+                size++;
+            }
+            pool.markDirty(page, node);
+            return node.bytes > PAGE_SIZE ? split(page, node) : null;
+        }
+        int index = childIndex(node.keys, key);
+        Split split = insert(node.children.get(index), key, value);
+        if (split == null) {
+            return null;
+        }
+        node.keys.add(index, split.key());
+        node.children.add(index + 1, split.page());
+        node.bytes += Node.entrySize(false, split.key(), null);
+        pool.markDirty(page, node);
+        return node.bytes > PAGE_SIZE ? split(page, node) : null;
+    }
+
+    /**
+     * Moves the upper half of an overflowing node, by size, to a new node
+     */
+    private Split split(int page, Node node) throws IOException {
+        int half = node.bytes / 2;
+        int accumulated = NODE_HEADER;
+        int middle = 0;
+        while (middle < node.keys.size() - 1 && accumulated < half) {
+            accumulated += Node.entrySize(node.leaf, node.keys.get(middle),
+                    node.leaf ? node.values.get(middle) : null);
+            middle++;
+        }
+        middle = Math.max(1, node.leaf ? middle : Math.min(middle, node.keys.size() - 2));
+        Node right = new Node(node.leaf);
+        int rightPage = allocate();
+        byte[] separator;
+        if (node.leaf) {
+            separator = node.keys.get(middle);
+            moveTail(node.keys, middle, right.keys);
+            moveTail(node.values, middle, right.values);
+            right.next = node.next;
+            node.next = rightPage;
+        } else {
+            separator = node.keys.get(middle);
+            moveTail(node.keys, middle + 1, right.keys);
+            node.keys.remove(middle);
+            moveTail(node.children, middle + 1, right.children);
+        }
+        recount(node);
+        recount(right);
+        pool.markDirty(page, node);
+        pool.markDirty(rightPage, right);
+        return new Split(separator, rightPage);
+    }
+
+    private static <E> void moveTail(List<E> from, int start, List<E> to) {
+        List<E> tail = from.subList(start, from.size());
+        to.addAll(tail);
+        tail.clear();
+    }
+
+    private static void recount(Node node) {
+        node.bytes = NODE_HEADER;
+        for (int i = 0; i < node.keys.size(); i++) {
+            node.bytes += Node.entrySize(node.leaf, node.keys.get(i), node.leaf ? node.values.get(i) : null);
+        }
+    }
+
+    private Node findLeaf(byte[] key) throws IOException {
+        Node node = pool.get(root);
+        while (!node.leaf) {
+            node = pool.get(node.children.get(childIndex(node.keys, key)));
+        }
+        return node;
+    }
+
+    private Node leftmostLeaf() throws IOException {
+        Node node = pool.get(root);
+        while (!node.leaf) {
+            node = pool.get(node.children.get(0));
+        }
+        return node;
+    }
+
+    /**
+     * @return Index of the key, or -(insertion point) - 1 if it is not in the list
+     */
+    private static int search(List<byte[]> keys, byte[] key) {
+        int low = 0;
+        int high = keys.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(keys.get(middle), key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * @return Index of the child of an inner node whose subtree holds the key
+     */
+    private static int childIndex(List<byte[]> keys, byte[] key) {
+        int position = search(keys, key);
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+
+    private static void checkEntry(byte[] key, byte[] value) {
+        if (Node.entrySize(true, key, value) > MAX_ENTRY_SIZE) {
+            throw new IllegalArgumentException("Entry is larger than " + MAX_ENTRY_SIZE + " bytes.");
+        }
+    }
+
+    private int allocate() {
+        return pageCount++;
+    }
+
+    /**
+     * Clears the clean flag on disk before the first change after a flush
+     */
+    private void markChanged() throws IOException {
+        if (clean) {
+            clean = false;
+            writeHeader();
+            channel.force(false);
+        }
+    }
+
+    private Node readNode(int page) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        readFully(buffer, (long) page * PAGE_SIZE);
+        buffer.flip();
+        byte type = buffer.get();
+        if (type != LEAF && type != INNER) {
+            throw new IOException("Corrupted page " + page + " in " + file);
+        }
+        Node node = new Node(type == LEAF);
+        int count = Short.toUnsignedInt(buffer.getShort());
+        int link = buffer.getInt();
+        if (node.leaf) {
+            node.next = link;
+        } else {
+            node.children.add(link);
+        }
+        for (int i = 0; i < count; i++) {
+            byte[] key = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(key);
+            node.keys.add(key);
+            if (node.leaf) {
+                byte[] value = new byte[Short.toUnsignedInt(buffer.getShort())];
+                buffer.get(value);
+                node.values.add(value);
+            } else {
+                node.children.add(buffer.getInt());
+            }
+        }
+        node.bytes = buffer.position();
+        return node;
+    }
+
+    private void writeNode(int page, Node node) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        buffer.put(node.leaf ? LEAF : INNER);
+        buffer.putShort((short) node.keys.size());
+        buffer.putInt(node.leaf ? node.next : node.children.get(0));
+        for (int i = 0; i < node.keys.size(); i++) {
+            byte[] key = node.keys.get(i);
+            buffer.putShort((short) key.length);
+            buffer.put(key);
+            if (node.leaf) {
+                byte[] value = node.values.get(i);
+                buffer.putShort((short) value.length);
+                buffer.put(value);
+            } else {
+                buffer.putInt(node.children.get(i + 1));
+            }
+        }
+        buffer.rewind();
+        writeFully(buffer, (long) page * PAGE_SIZE);
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        readFully(buffer, 0);
+        buffer.flip();
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != PAGE_SIZE) {
+            throw new IOException("Not a B+tree file: " + file);
+        }
+        root = buffer.getInt();
+        pageCount = buffer.getInt();
+        size = buffer.getLong();
+        if (buffer.get() != 1) {
+            throw new IOException("B+tree was not closed cleanly: " + file);
+        }
+        metadata = new byte[buffer.getShort()];
+        buffer.get(metadata);
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(PAGE_SIZE);
+        buffer.putInt(root).putInt(pageCount).putLong(size);
+        buffer.put((byte) (clean ? 1 : 0));
+        buffer.putShort((short) metadata.length).put(metadata);
+        buffer.rewind();
+        writeFully(buffer, 0);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + file);
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+/**
+ * Cache of decoded pages of a page file
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Storage;
+
+import personalDB.Metrics.Metrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Objects of this class keep the most recently used pages of a file in
+ * memory, already decoded, so reading a cached page costs a hash lookup.
+ * Pages are loaded and written through a {@link PageIO}. A page changed by
+ * its user must be passed to {@link #markDirty(int, Object)}, dirty pages are
+ * written back when they are evicted or on {@link #flush()}.
+ * Not thread safe, the owner of the pool serializes access to it.
+ * @param <T> Type of a decoded page
+ */
+public class BufferPool<T> {
+    private final PageIO<T> io;
+    private final int capacity;
+    private final Map<Integer, Frame<T>> frames;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Reads and writes pages
+     * @param <T> Type of a decoded page
+     */
+    public interface PageIO<T> {
+        /**
+         * @param page Number of the page
+         * @return Decoded page
+         * @throws IOException If the page cannot be read
+         */
+        T read(int page) throws IOException;
+
+        /**
+         * @param page Number of the page
+         * @param content Decoded page
+         * @throws IOException If the page cannot be written
+         */
+        void write(int page, T content) throws IOException;
+    }
+
+    private static final class Frame<T> {
+        private final T content;
+        private boolean dirty;
+
+        private Frame(T content, boolean dirty) {
+            this.content = content;
+            this.dirty = dirty;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param io Reads and writes the pages
+     * @param capacity Maximum number of pages kept in memory
+     */
+    public BufferPool(PageIO<T> io, int capacity) {
+        this.io = io;
+        this.capacity = Math.max(8, capacity);
+        this.frames = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns a page, reading it if it is not cached
+     * @param page Number of the page
+     * @return Decoded page
+     * @throws IOException If the page cannot be read, or a dirty page written to make room
+     */
+    public T get(int page) throws IOException {
+        Frame<T> frame = frames.get(page);
+        if (frame != null) {
+            hits++;
+            Metrics.hit(Metrics.Cache.PAGE);
+            return frame.content;
+        }
+        misses++;
+        Metrics.miss(Metrics.Cache.PAGE);
+        T content = io.read(page);
+        frames.put(page, new Frame<>(content, false));
+        evict();
+        return content;
+    }
+
+    /**
+     * Records that a page changed, adding it to the pool if it had been evicted meanwhile
+     * @param page Number of the page
+     * @param content Decoded page
+     * @throws IOException If a dirty page cannot be written to make room
+     */
+    public void markDirty(int page, T content) throws IOException {
+        Frame<T> frame = frames.get(page);
+        if (frame != null && frame.content == content) {
+            frame.dirty = true;
+        } else {
+            frames.put(page, new Frame<>(content, true));
+            evict();
+        }
+    }
+
+    /**
+     * Writes every dirty page, pages stay cached
+     * @throws IOException If a page cannot be written
+     */
+    public void flush() throws IOException {
+        List<Integer> pages = new ArrayList<>(frames.keySet());
+        pages.sort(null);
+        for (int page : pages) {
+            Frame<T> frame = frames.get(page);
+            if (frame.dirty) {
+                io.write(page, frame.content);
+                frame.dirty = false;
+            }
+        }
+    }
+
+    /**
+     * Drops every cached page without writing it
+     */
+    public void clear() {
+        frames.clear();
+    }
+
+    /**
+     * @return Number of reads answered from memory
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * @return Number of reads that went to the file
+     */
+    public long misses() {
+        return misses;
+    }
+
+    private void evict() throws IOException {
+        while (frames.size() > capacity) {
+            Map.Entry<Integer, Frame<T>> eldest = frames.entrySet().iterator().next();
+            if (eldest.getValue().dirty) {
+                io.write(eldest.getKey(), eldest.getValue().content);
+            }
+            frames.remove(eldest.getKey());
+        }
+    }
+
+}
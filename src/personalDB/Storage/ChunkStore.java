@@ -0,0 +1,229 @@
+/**
+ * Reference counted storage of file chunks
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Storage;
+
+import personalDB.Engine.Workspace;
+import personalDB.Metrics.Metrics;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Objects of this class store every distinct chunk once, under the SHA-256 of
+ * its content, and count how many manifests reference it. Counts are kept in
+ * memory and every change is appended to a log, which is cut after its last
+ * complete record when it is replayed. A chunk whose count drops to
+ * zero becomes an orphan, orphans are deleted a few at a time by
+ * {@link #collectGarbage(int)} so a large delete never stalls.
+ */
+public class ChunkStore {
+    private static final int MAGIC = 0x50444352;
+    private static final int DELETED = Integer.MIN_VALUE;
+
+    private final Path chunks;
+    private final Path temp;
+    private final Path refsFile;
+    private final Map<String, Integer> references = new HashMap<>();
+    private final Set<String> orphans = new LinkedHashSet<>();
+    private final MessageDigest digest = MerkleTree.newDigest();
+    private DataOutputStream log;
+    private int logEntries = 0;
+
+    /**
+     * Opens the chunk store of a workspace, replaying its reference log
+     * @param home Workspace directory
+     * @throws IOException If the store cannot be created or its log read
+     */
+    public ChunkStore(Path home) throws IOException {
+        this.chunks = Files.createDirectories(home.resolve("chunks"));
+        this.temp = Files.createDirectories(home.resolve("tmp"));
+        this.refsFile = chunks.resolve("refs.log");
+        if (Files.exists(refsFile)) {
+            replay();
+        }
+    }
+
+    /**
+     * Adds a reference to a chunk, storing its content if it is new
+     * @param data Buffer holding the chunk
+     * @param offset Start of the chunk
+     * @param length Length of the chunk
+     * @return Hash of the chunk in hexadecimal
+     * @throws IOException If the chunk or the log cannot be written
+     */
+    public synchronized String addReference(byte[] data, int offset, int length) throws IOException {
+        digest.reset();
+        digest.update(data, offset, length);
+        String hash = Workspace.toHex(digest.digest());
+        Path chunk = chunkPath(hash);
+        if (!references.containsKey(hash) || !Files.exists(chunk)) {
+            Path staged = Files.createTempFile(temp, "chunk", ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(staged)) {
+                    out.write(data, offset, length);
+                }
+                Metrics.add(Metrics.Counter.BYTES_WRITTEN, length);
+                Files.createDirectories(chunk.getParent());
+                Files.move(staged, chunk, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Same content
+            } finally {
+                Files.deleteIfExists(staged);
+            }
+        }
+        change(hash, 1);
+        return hash;
+    }
+
+    /**
+     * Drops a reference to a chunk, the chunk becomes an orphan once nothing references it
+     * @param hash Hash of the chunk
+     * @throws IOException If the log cannot be written
+     */
+    public synchronized void release(String hash) throws IOException {
+        if (references.getOrDefault(hash, 0) > 0) {
+            change(hash, -1);
+        }
+    }
+
+    /**
+     * Reads a chunk
+     * @param hash Hash of the chunk
+     * @return Content of the chunk
+     * @throws IOException If the chunk does not exist
+     */
+    public byte[] read(String hash) throws IOException {
+        byte[] content = Files.readAllBytes(chunkPath(hash));
+        Metrics.add(Metrics.Counter.BYTES_READ, content.length);
+        return content;
+    }
+
+    /**
+     * Deletes orphaned chunks
+     * @param limit Maximum number of chunks to delete
+     * @return Number of chunks deleted
+     * @throws IOException If a chunk or the log cannot be written
+     */
+    public synchronized int collectGarbage(int limit) throws IOException {
+        int deleted = 0;
+        Iterator<String> iterator = new ArrayList<>(orphans).iterator();
+        while (iterator.hasNext() && deleted < limit) {
+            String hash = iterator.next();
+            if (references.getOrDefault(hash, 0) == 0) {
+                Files.deleteIfExists(chunkPath(hash));
+                change(hash, DELETED);
+                deleted++;
+            }
+        }
+        if (logEntries > 4096 && logEntries > 4 * references.size()) {
+            compact();
+        }
+        return deleted;
+    }
+
+    /**
+     * @return Number of chunks waiting to be deleted
+     */
+    public synchronized int orphanCount() {
+        return orphans.size();
+    }
+
+    private void change(String hash, int delta) throws IOException {
+        if (log == null) {
+            boolean exists = Files.exists(refsFile);
+            log = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(refsFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+            if (!exists) {
+                log.writeInt(MAGIC);
+            }
+        }
+        log.writeUTF(hash);
+        log.writeInt(delta);
+        log.flush();
+        apply(hash, delta);
+    }
+
+    private void apply(String hash, int delta) {
+        logEntries++;
+        if (delta == DELETED) {
+            references.remove(hash);
+            orphans.remove(hash);
+            return;
+        }
+        int count = references.getOrDefault(hash, 0) + delta;
+        references.put(hash, count);
+        if (count == 0) {
+            orphans.add(hash);
+        } else {
+            orphans.remove(hash);
+        }
+    }
+
+    private void replay() throws IOException {
+        try (LogReader reader = new LogReader(refsFile)) {
+            DataInputStream in = reader.in();
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a chunk reference log: " + refsFile);
+                }
+                reader.endRecord();
+                while (true) {
+                    String hash = in.readUTF();
+                    int delta = in.readInt();
+                    reader.endRecord();
+                    apply(hash, delta);
+                }
+            } catch (EOFException | UTFDataFormatException e) {
+                // End of the log, a torn last record is dropped
+            }
+            reader.truncate();
+        }
+    }
+
+    /**
+     * Rewrites the log with a single entry per live chunk
+     */
+    private void compact() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+        Path compacted = refsFile.resolveSibling("refs.log.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(compacted), 1 << 16))) {
+            out.writeInt(MAGIC);
+            for (Map.Entry<String, Integer> entry : references.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        }
+        Files.move(compacted, refsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logEntries = references.size();
+    }
+
+    private Path chunkPath(String hash) {
+        return chunks.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+    }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * Content defined chunking of files
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+/**
+ * Splits files into variable size chunks using FastCDC. Cut points are
+ * chosen by a gear rolling hash over the content itself, so inserting or
+ * removing bytes only changes the chunks around the edit and every other
+ * chunk keeps its hash.
+ * Chunks are between 2 and 64 KiB and average 8 KiB, using the normalized
+ * chunking masks from the FastCDC paper.
+ */
+public class Chunker {
+    public static final int MIN_SIZE = 2 << 10;
+    public static final int AVERAGE_SIZE = 8 << 10;
+    public static final int MAX_SIZE = 64 << 10;
+    private static final long MASK_SMALL = 0x0003590703530000L;
+    private static final long MASK_LARGE = 0x0000d90003530000L;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed seed, changing it would change every cut point and the hash of every stored chunk
+        SplittableRandom random = new SplittableRandom(0x706572736F6E616CL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Receives the chunks of a file in order
+     */
+    public interface ChunkConsumer {
+        /**
+         * @param data Buffer holding the chunk, only valid during the call
+         * @param offset Start of the chunk in the buffer
+         * @param length Length of the chunk
+         * @throws IOException If the chunk cannot be handled
+         */
+        void accept(byte[] data, int offset, int length) throws IOException;
+    }
+
+    private Chunker() {}
+
+    /**
+     * Reads a file and hands every chunk to the consumer
+     * @param file File to be split
+     * @param consumer Receives the chunks
+     * @throws IOException If the file cannot be read or the consumer fails
+     */
+    public static void split(Path file, ChunkConsumer consumer) throws IOException {
+        byte[] buffer = new byte[MAX_SIZE * 4];
+        int start = 0;
+        int end = 0;
+        boolean eof = false;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (true) {
+                if (!eof && end - start < MAX_SIZE) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                    ByteBuffer wrapped = ByteBuffer.wrap(buffer, end, buffer.length - end);
+                    while (wrapped.hasRemaining()) {
+                        if (channel.read(wrapped) == -1) {
+                            eof = true;
+                            break;
+                        }
+                    }
+                    end = wrapped.position();
+                }
+                if (start == end) {
+                    return;
+                }
+                int length = cut(buffer, start, end - start);
+                consumer.accept(buffer, start, length);
+                start += length;
+            }
+        }
+    }
+
+    /**
+     * Finds the next cut point
+     * @param data Buffer with the content
+     * @param offset Start of the content not yet chunked
+     * @param available Bytes available from the offset
+     * @return Length of the next chunk
+     */
+    static int cut(byte[] data, int offset, int available) {
+        if (available <= MIN_SIZE) {
+            return available;
+        }
+        int limit = Math.min(available, MAX_SIZE);
+        int normal = Math.min(limit, AVERAGE_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xFF];
+            if ((hash & MASK_SMALL) == 0) {
+                return i;
+            }
+        }
+        for (; i < limit; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xFF];
+            if ((hash & MASK_LARGE) == 0) {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+}
@@ -0,0 +1,281 @@
+/**
+ * Parallel hashing of file contents
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Storage;
+
+import personalDB.Engine.Workspace;
+import personalDB.Metrics.Metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Hashes files into the digests used by the object store.
+ * Large files are split into fixed size chunks that are memory mapped and
+ * hashed in parallel on a pool with one thread per core, the chunk digests
+ * are then combined into a {@link MerkleTree}. Small files are read through
+ * a buffer and a digest that each thread reuses, and many of them can be
+ * hashed as a batch so a single task handles several files.
+ * A file that fits in a single chunk is a tree of one leaf, its hash is the
+ * SHA-256 of the leaf prefix followed by its content.
+ */
+public class ContentHasher {
+    public static final int CHUNK_SIZE = 4 << 20;
+    private static final int SMALL_FILES_PER_TASK = 64;
+    private static final int BUFFER_SIZE = 64 << 10;
+
+    private static final ExecutorService pool = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "personalDB-hasher");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(MerkleTree::newDigest);
+    private static final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(BUFFER_SIZE));
+
+    /**
+     * Hashes content handed over a piece at a time, in the order it appears
+     * in the file, to the same hash {@link #hash(Path)} gives the whole file.
+     * Lets a file be hashed while it is copied, so the hash always matches
+     * the bytes that were copied even if the file changes meanwhile.
+     */
+    public static final class Incremental {
+        private final MessageDigest digest = MerkleTree.startLeaf(MerkleTree.newDigest());
+        private final List<byte[]> leaves = new ArrayList<>();
+        private int inChunk = 0;
+
+        /**
+         * @param data Buffer holding the next bytes of the content
+         * @param offset Start of the bytes in the buffer
+         * @param length Number of bytes
+         */
+        public void update(byte[] data, int offset, int length) {
+            while (length > 0) {
+                int taken = Math.min(length, CHUNK_SIZE - inChunk);
+                digest.update(data, offset, taken);
+                inChunk += taken;
+                offset += taken;
+                length -= taken;
+                if (inChunk == CHUNK_SIZE) {
+                    leaves.add(digest.digest());
+                    MerkleTree.startLeaf(digest);
+                    inChunk = 0;
+                }
+            }
+        }
+
+        /**
+         * @return Hash of everything handed over, in hexadecimal
+         */
+        public String finish() {
+            if (inChunk > 0 || leaves.isEmpty()) {
+                leaves.add(digest.digest());
+                MerkleTree.startLeaf(digest);
+                inChunk = 0;
+            }
+            return Workspace.toHex(new MerkleTree(leaves.toArray(new byte[0][])).root());
+        }
+    }
+
+    private ContentHasher() {}
+
+    /**
+     * Hashes a file, choosing the parallel path for files larger than a chunk
+     * @param file File to be hashed
+     * @return Hash in hexadecimal
+     * @throws IOException If the file cannot be read
+     */
+    public static String hash(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() <= CHUNK_SIZE) {
+                return Workspace.toHex(hashSmall(channel));
+            }
+        }
+        return Workspace.toHex(tree(file).root());
+    }
+
+    /**
+     * Hashes every chunk of a file in parallel and builds the tree over them
+     * @param file File to be hashed
+     * @return Tree of the chunk digests
+     * @throws IOException If the file cannot be read
+     */
+    public static MerkleTree tree(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunks = Math.max(1, (int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE));
+            List<Future<byte[]>> digests = new ArrayList<>(chunks);
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int index = chunk;
+                digests.add(pool.submit(() -> hashChunk(channel, index)));
+            }
+            byte[][] leaves = new byte[chunks][];
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                leaves[chunk] = await(digests.get(chunk));
+            }
+            return new MerkleTree(leaves);
+        }
+    }
+
+    /**
+     * Rehashes a single chunk of a file whose tree is known, for when only
+     * that region changed
+     * @param file File the tree belongs to
+     * @param tree Tree of the file, updated in place
+     * @param chunk Index of the chunk that changed
+     * @return New hash of the file in hexadecimal
+     * @throws IOException If the file cannot be read
+     */
+    public static String rehashChunk(Path file, MerkleTree tree, int chunk) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            tree.update(chunk, hashChunk(channel, chunk));
+        }
+        return Workspace.toHex(tree.root());
+    }
+
+    /**
+     * Hashes only the first and last bytes of a file, a cheap fingerprint
+     * that tells most files of the same size apart. A file no larger than
+     * both ends together is read whole, so its fingerprint is its hash.
+     * @param file File to be fingerprinted
+     * @param length Number of bytes read from each end, at most 32 KiB
+     * @return Fingerprint in hexadecimal
+     * @throws IOException If the file cannot be read
+     */
+    public static String hashEnds(Path file, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= 2L * length) {
+                return Workspace.toHex(hashSmall(channel));
+            }
+            MessageDigest digest = digests.get();
+            ByteBuffer buffer = buffers.get();
+            digest.reset();
+            for (long position : new long[] {0, size - length}) {
+                buffer.clear().limit(length);
+                int read = 0;
+                while (buffer.hasRemaining() && read != -1) {
+                    read = channel.read(buffer, position + buffer.position());
+                }
+                buffer.flip();
+                Metrics.add(Metrics.Counter.BYTES_READ, buffer.remaining());
+                digest.update(buffer);
+            }
+            return Workspace.toHex(digest.digest());
+        }
+    }
+
+    /**
+     * Hashes many files at once. Small files are grouped into batches that run
+     * on the pool, large files are hashed one at a time, each one in parallel.
+     * @param files Files to be hashed
+     * @return Hash of every file in hexadecimal, in the same order as the files
+     * @throws IOException If any of the files cannot be read
+     */
+    public static List<String> hashAll(List<Path> files) throws IOException {
+        String[] hashes = new String[files.size()];
+        List<Integer> small = new ArrayList<>();
+        List<Integer> large = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            if (files.get(i).toFile().length() <= CHUNK_SIZE) {
+                small.add(i);
+            } else {
+                large.add(i);
+            }
+        }
+        List<Future<?>> batches = new ArrayList<>();
+        for (int start = 0; start < small.size(); start += SMALL_FILES_PER_TASK) {
+            List<Integer> batch = small.subList(start, Math.min(small.size(), start + SMALL_FILES_PER_TASK));
+            batches.add(pool.submit(() -> {
+                for (int i : batch) {
+                    try (FileChannel channel = FileChannel.open(files.get(i), StandardOpenOption.READ)) {
+                        hashes[i] = Workspace.toHex(hashSmall(channel));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (int i : large) {
+            hashes[i] = Workspace.toHex(tree(files.get(i)).root());
+        }
+        for (Future<?> batch : batches) {
+            await(batch);
+        }
+        return List.of(hashes);
+    }
+
+    /**
+     * Hashes a whole channel through the buffer of the current thread
+     * @param channel Open channel positioned at the start
+     * @return Leaf digest of the content
+     */
+    private static byte[] hashSmall(FileChannel channel) throws IOException {
+        MessageDigest digest = MerkleTree.startLeaf(digests.get());
+        ByteBuffer buffer = buffers.get();
+        buffer.clear();
+        long read = 0;
+        while (channel.read(buffer) != -1) {
+            read += buffer.position();
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+        Metrics.add(Metrics.Counter.BYTES_READ, read);
+        return digest.digest();
+    }
+
+    /**
+     * Maps a single chunk of a file and hashes it
+     * @param channel Open channel of the file
+     * @param chunk Index of the chunk
+     * @return Leaf digest of the chunk
+     */
+    private static byte[] hashChunk(FileChannel channel, int chunk) throws IOException {
+        long offset = (long) chunk * CHUNK_SIZE;
+        long length = Math.min(CHUNK_SIZE, Math.max(0, channel.size() - offset));
+        MessageDigest digest = MerkleTree.startLeaf(digests.get());
+        if (length > 0) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            digest.update(mapped);
+            Metrics.add(Metrics.Counter.BYTES_READ, length);
+        }
+        return digest.digest();
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+/**
+ * Append only file with group commit
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Storage;
+
+import personalDB.Metrics.Metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Objects of this class append records to a file and make them durable in
+ * groups. Appending only writes the record, {@link #sync(long)} then waits
+ * until the file was flushed at least up to the end of that record. The
+ * first writer that needs a flush does it for everyone: while it runs other
+ * writers keep appending, and once it is done a single flush covers all the
+ * records they appended meanwhile. Many writers committing at the same time
+ * therefore share a few flushes instead of paying one each.
+ * Appends are serialized, syncs and positional reads can run from any thread.
+ */
+public class GroupCommitLog implements Closeable {
+    private final Path file;
+    private final FileChannel channel;
+    private final Object syncLock = new Object();
+    private final AtomicLong appends = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private volatile long end;
+    private long durable;
+    private boolean syncing = false;
+
+    /**
+     * Opens a log, creating it if it does not exist
+     * @param file Path of the log
+     * @param validLength Length of the file that holds complete records, anything after it is cut off
+     * @throws IOException If the file cannot be opened
+     */
+    public GroupCommitLog(Path file, long validLength) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() > validLength) {
+            channel.truncate(validLength);
+        }
+        this.end = channel.size();
+        this.durable = end;
+    }
+
+    /**
+     * Writes a record at the end of the log, without waiting for it to be durable
+     * @param record Record to be written, from its position to its limit
+     * @return Position of the end of the record, to be given to {@link #sync(long)}
+     * @throws IOException If the record cannot be written
+     */
+    public synchronized long append(ByteBuffer record) throws IOException {
+        long position = end;
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        Metrics.add(Metrics.Counter.BYTES_WRITTEN, position - end);
+        end = position;
+        appends.incrementAndGet();
+        return position;
+    }
+
+    /**
+     * Waits until every record up to a position is durable, flushing the log
+     * if no other thread is doing it already
+     * @param position End of the last record that has to be durable
+     * @throws IOException If the log cannot be flushed
+     */
+    public void sync(long position) throws IOException {
+        synchronized (syncLock) {
+            while (durable < position && syncing) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the log to be flushed.", e);
+                }
+            }
+            if (durable >= position) {
+                return;
+            }
+            syncing = true;
+        }
+        long flushed = end;
+        boolean done = false;
+        try {
+            channel.force(false);
+            syncs.incrementAndGet();
+            done = true;
+        } finally {
+            synchronized (syncLock) {
+                if (done) {
+                    durable = Math.max(durable, flushed);
+                }
+                syncing = false;
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Reads from the log at a position, safe to call while others append
+     * @param buffer Buffer filled up to its limit
+     * @param position Position in the log
+     * @throws IOException If the log ends before the buffer is full
+     */
+    public void read(ByteBuffer buffer, long position) throws IOException {
+        Metrics.add(Metrics.Counter.BYTES_READ, buffer.remaining());
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + file);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * @return Length of the log, including records that are not durable yet
+     */
+    public long size() {
+        return end;
+    }
+
+    /**
+     * @return Number of records appended since the log was opened
+     */
+    public long appendCount() {
+        return appends.get();
+    }
+
+    /**
+     * @return Number of flushes since the log was opened
+     */
+    public long syncCount() {
+        return syncs.get();
+    }
+
+    /**
+     * @return Path of the log
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
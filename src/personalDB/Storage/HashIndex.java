@@ -0,0 +1,193 @@
+/**
+ * Persistent map from content hashes to the paths that had that content
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Storage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Objects of this class keep both directions of the hash to path mapping in
+ * memory, so lookups never touch the disk. Every change is appended to a log
+ * that is replayed when the index is opened, cutting off a record torn by a
+ * crash, and rewritten once most of it describes removed entries.
+ */
+public class HashIndex {
+    private static final int MAGIC = 0x50444848;
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+
+    private final Path file;
+    private final Map<String, Set<String>> pathsByHash = new HashMap<>();
+    private final Map<String, String> hashByPath = new HashMap<>();
+    private DataOutputStream log;
+    private int logEntries = 0;
+
+    /**
+     * Opens the index stored in the given file, creating it if needed
+     * @param file Log file of the index
+     * @throws IOException If the log exists but cannot be read
+     */
+    public HashIndex(Path file) throws IOException {
+        this.file = file;
+        if (Files.exists(file)) {
+            replay();
+        }
+    }
+
+    /**
+     * Records that a path has the given content, replacing what was known about that path
+     * @param hash Content hash
+     * @param path Absolute path
+     * @throws IOException If the log cannot be written
+     */
+    public synchronized void add(String hash, String path) throws IOException {
+        if (hash.equals(hashByPath.get(path))) {
+            return;
+        }
+        append(ADD, hash, path);
+        apply(ADD, hash, path);
+    }
+
+    /**
+     * Forgets a path
+     * @param path Absolute path
+     * @return Hash the path had or null if it was not known
+     * @throws IOException If the log cannot be written
+     */
+    public synchronized String remove(String path) throws IOException {
+        String hash = hashByPath.get(path);
+        if (hash != null) {
+            append(REMOVE, hash, path);
+            apply(REMOVE, hash, path);
+            if (logEntries > 1024 && logEntries > 2 * hashByPath.size()) {
+                compact();
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @param hash Content hash
+     * @return Every path known to have that content
+     */
+    public synchronized List<String> paths(String hash) {
+        Set<String> paths = pathsByHash.get(hash);
+        return paths == null ? new ArrayList<>() : new ArrayList<>(paths);
+    }
+
+    /**
+     * @param path Absolute path
+     * @return Hash of the content the path had or null if it is not known
+     */
+    public synchronized String hash(String path) {
+        return hashByPath.get(path);
+    }
+
+    /**
+     * @param hash Content hash
+     * @return True if at least one path has that content
+     */
+    public synchronized boolean isReferenced(String hash) {
+        return pathsByHash.containsKey(hash);
+    }
+
+    private void apply(byte type, String hash, String path) {
+        if (type == ADD) {
+            String previous = hashByPath.put(path, hash);
+            if (previous != null) {
+                unlink(previous, path);
+            }
+            pathsByHash.computeIfAbsent(hash, h -> new LinkedHashSet<>()).add(path);
+        } else if (hashByPath.remove(path, hash)) {
+            unlink(hash, path);
+        }
+        logEntries++;
+    }
+
+    private void unlink(String hash, String path) {
+        Set<String> paths = pathsByHash.get(hash);
+        if (paths != null && paths.remove(path) && paths.isEmpty()) {
+            pathsByHash.remove(hash);
+        }
+    }
+
+    private void append(byte type, String hash, String path) throws IOException {
+        if (log == null) {
+            boolean exists = Files.exists(file);
+            log = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+            if (!exists) {
+                log.writeInt(MAGIC);
+            }
+        }
+        writeRecord(log, type, hash, path);
+        log.flush();
+    }
+
+    private static void writeRecord(DataOutputStream out, byte type, String hash, String path) throws IOException {
+        out.writeByte(type);
+        out.writeUTF(hash);
+        out.writeUTF(path);
+    }
+
+    private void replay() throws IOException {
+        try (LogReader reader = new LogReader(file)) {
+            DataInputStream in = reader.in();
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a hash index: " + file);
+                }
+                reader.endRecord();
+                while (true) {
+                    byte type = in.readByte();
+                    String hash = in.readUTF();
+                    String path = in.readUTF();
+                    reader.endRecord();
+                    apply(type, hash, path);
+                }
+            } catch (EOFException | UTFDataFormatException e) {
+                // End of the log, a torn last record is dropped
+            }
+            reader.truncate();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the live entries
+     */
+    private void compact() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            for (Map.Entry<String, String> entry : hashByPath.entrySet()) {
+                writeRecord(out, ADD, entry.getValue(), entry.getKey());
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logEntries = hashByPath.size();
+    }
+
+}
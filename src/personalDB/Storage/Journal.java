@@ -0,0 +1,1047 @@
+/**
+ * Write ahead journal of the changes made to files and directories
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Storage;
+
+import personalDB.Engine.Workspace;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+
+/**
+ * The journal records every file and directory a command creates or
+ * deletes before it is touched, so the changes of a command can be undone
+ * and a command cut short by a crash never leaves half of its changes
+ * behind.
+ * Every command that changes files is a batch. Before each change an intent
+ * record naming it is appended to the log and made durable, then the change
+ * is applied and a done record is appended. Deleted files are not unlinked
+ * but moved into the trash of the journal under the number of their
+ * operation, so deleting them can be undone. A file on another file system
+ * than the journal is renamed next to itself instead, to
+ * .personaldb-trash-NUMBER, since moving it to the trash would copy it and a
+ * crash could leave half of it behind. Files that are overwritten or renamed
+ * over are kept the same way, hard linked rather than moved where the file
+ * system allows it so their path is never missing, and files released from
+ * the object store are stored again when their deletion is undone. A file
+ * moved into a path where nothing was, like a copy, is recorded as created,
+ * so undoing it deletes the file.
+ * Records are queued in memory
+ * and the thread that flushes the log writes all of them at once, so the
+ * many threads of a bulk operation share their writes and flushes, and done
+ * records are only flushed with a later intent or the commit record that
+ * ends the batch. Writing while a flush runs would wait for it on most file
+ * systems, which is why records are not written to the log one at a time.
+ * When the journal is opened, every batch without a commit record is rolled
+ * back: whether each of its operations was applied is read from the files
+ * themselves, e.g. a deleted file is either still in place or in the trash.
+ * {@link #undo(int)} reverts the last committed batches, newest first. Only
+ * the last {@link #KEPT_BATCHES} batches can be undone, older ones are
+ * forgotten and their files deleted from the trash.
+ * The log is rewritten with only the batches still kept once it is mostly
+ * made of forgotten ones, when it is opened or after a commit that leaves
+ * no batch open.
+ */
+public class Journal {
+    public static final int KEPT_BATCHES = Integer.getInteger("personaldb.journal.keep", 100);
+    private static final long CHECKPOINT_SIZE = 1 << 20;
+    private static final byte BEGIN = 1;
+    private static final byte INTENT = 2;
+    private static final byte DONE = 3;
+    private static final byte FAILED = 4;
+    private static final byte UNDONE = 5;
+    private static final byte COMMIT = 6;
+    private static final byte FORGET = 7;
+    private static final int HEADER_SIZE = Integer.BYTES + 1 + Long.BYTES + Integer.BYTES;
+
+    private static Journal instance;
+
+    private final Path directory;
+    private final Path trash;
+    private final Map<Long, BatchState> batches = new LinkedHashMap<>();
+    private final Map<Long, Entry> entries = new LinkedHashMap<>();
+    private GroupCommitLog log;
+    private List<ByteBuffer> pending = new ArrayList<>();
+    private Round filling = new Round();
+    private boolean flushing = false;
+    private long nextId = 1;
+    private long records = 0;
+
+    /**
+     * Kinds of operations the journal records
+     */
+    private enum Kind {
+        DELETE_FILE, REMOVE_DIRECTORY, CREATE_FILE, MAKE_DIRECTORY, DELETE_STORED_FILE, REPLACE_FILE, RENAME, ADD_FILE;
+
+        /**
+         * @return True if the operation keeps a file in the trash
+         */
+        boolean keepsFile() {
+            return this == DELETE_FILE || this == DELETE_STORED_FILE || this == REPLACE_FILE || this == RENAME;
+        }
+    }
+
+    /**
+     * A change to a single path
+     */
+    private static final class Entry {
+        final long id;
+        final long batch;
+        final Kind kind;
+        final Path path;
+        // Path a renamed file came from, null for every other kind
+        final Path source;
+        byte state = INTENT;
+
+        Entry(long id, long batch, Kind kind, Path path, Path source) {
+            this.id = id;
+            this.batch = batch;
+            this.kind = kind;
+            this.path = path;
+            this.source = source;
+        }
+
+        /**
+         * @return Payload of the intent record: batch, kind and path, followed by a NUL and the source of a rename
+         */
+        byte[] intent() {
+            String paths = source == null ? path.toString() : path + "\0" + source;
+            byte[] name = paths.getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.allocate(Long.BYTES + 1 + name.length).putLong(batch).put((byte) kind.ordinal())
+                    .put(name).array();
+        }
+    }
+
+    /**
+     * Records written to the log by the same flush
+     */
+    private static final class Round {
+        final CompletableFuture<Void> durable = new CompletableFuture<>();
+        boolean needed = false;
+    }
+
+    /**
+     * The changes of a single command
+     */
+    private static final class BatchState {
+        final long id;
+        final String description;
+        final List<Entry> entries = new ArrayList<>();
+        boolean committed = false;
+
+        BatchState(long id, String description) {
+            this.id = id;
+            this.description = description;
+        }
+
+        int applied() {
+            int applied = 0;
+            for (Entry entry : entries) {
+                if (entry.state == DONE) {
+                    applied++;
+                }
+            }
+            return applied;
+        }
+    }
+
+    /**
+     * Outcome of undoing a batch
+     * @param description Command the batch was made by
+     * @param reverted Number of operations reverted
+     * @param errors Operations that could not be reverted, the batch is kept if there is any other than
+     *               a restored file that could not be stored again
+     */
+    public record Undone(String description, int reverted, List<String> errors) {}
+
+    /**
+     * A batch that can still be undone
+     * @param description Command the batch was made by
+     * @param operations Number of operations applied
+     */
+    public record Summary(String description, int operations) {}
+
+    /**
+     * Opens the journal in a directory, rolling back interrupted batches.
+     * Only {@link #open()} and tests open a journal, there must be a single
+     * one for each directory.
+     * @param directory Directory of the log and the trash
+     * @throws IOException If the journal cannot be read or recovered
+     */
+    Journal(Path directory) throws IOException {
+        this.directory = directory;
+        this.trash = Files.createDirectories(directory.resolve("trash"));
+        Path file = directory.resolve("journal.log");
+        long valid = Files.exists(file) ? load(file) : 0;
+        this.log = new GroupCommitLog(file, valid);
+        recover();
+        forgetOld();
+        removeOrphans();
+        if (needsCheckpoint()) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Returns the journal of the workspace, opening it and rolling back
+     * interrupted batches on first use
+     * @return The journal
+     * @throws IOException If the journal cannot be read or recovered
+     */
+    public static synchronized Journal open() throws IOException {
+        if (instance == null) {
+            instance = new Journal(Workspace.directory("journal"));
+        }
+        return instance;
+    }
+
+    /**
+     * Starts the batch of a command, nothing is written until its first operation
+     * @param description Command as it was typed
+     * @return The batch
+     */
+    public Batch begin(String description) {
+        return new Batch(description);
+    }
+
+    /**
+     * The operations of a single command, safe to use from many threads
+     */
+    public final class Batch {
+        private final String description;
+        private long id = 0;
+
+        private Batch(String description) {
+            this.description = description;
+        }
+
+        /**
+         * Deletes a file by moving it to the trash
+         * @param file Path of the file
+         * @throws IOException If the path is a directory, or the file cannot be moved
+         */
+        public void deleteFile(Path file) throws IOException {
+            if (Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory()) {
+                throw new IOException("Is a directory");
+            }
+            record(Kind.DELETE_FILE, file, null, id -> moveToTrash(file, id));
+        }
+
+        /**
+         * Deletes a file that is in the object store by moving it to the
+         * trash, then releases it from the store once the deletion is
+         * recorded. Undoing the deletion stores the file again.
+         * @param file Path of the file
+         * @throws IOException If the path is a directory, or the file or the object store cannot be updated
+         */
+        public void deleteStoredFile(Path file) throws IOException {
+            if (Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory()) {
+                throw new IOException("Is a directory");
+            }
+            record(Kind.DELETE_STORED_FILE, file, null, id -> moveToTrash(file, id));
+            ObjectStore.open().release(file);
+        }
+
+        /**
+         * Moves a new file over an existing one, which is kept in the trash.
+         * If nothing is at the path the new file is moved there and recorded
+         * as created, so undoing it deletes the file.
+         * @param file Path of the file that is replaced
+         * @param replacement File moved into its place, on the same file system
+         * @throws IOException If the path is a directory, or either file cannot be moved
+         */
+        public void replaceFile(Path file, Path replacement) throws IOException {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (NoSuchFileException e) {
+                record(Kind.ADD_FILE, file, null, id -> Files.move(replacement, file, StandardCopyOption.ATOMIC_MOVE));
+                return;
+            }
+            if (attributes.isDirectory()) {
+                throw new IOException("Is a directory");
+            }
+            record(Kind.REPLACE_FILE, file, null, id -> keepAndMove(replacement, file, attributes, id));
+        }
+
+        /**
+         * Renames a file or directory within its file system. A file at the
+         * new path is replaced and kept in the trash, undoing the rename
+         * moves it back to its old path.
+         * @param source Path of the file or directory
+         * @param target New path
+         * @throws AtomicMoveNotSupportedException If the paths are on different file systems, nothing is changed
+         * @throws IOException If the new path is a directory, or the file cannot be renamed
+         */
+        public void rename(Path source, Path target) throws IOException {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(target, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (NoSuchFileException e) {
+                attributes = null;
+            }
+            if (attributes != null && attributes.isDirectory()) {
+                throw new FileAlreadyExistsException(target.toString());
+            }
+            BasicFileAttributes replaced = attributes;
+            record(Kind.RENAME, target, source.toAbsolutePath().normalize(), id -> {
+                if (replaced == null) {
+                    Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    keepAndMove(source, target, replaced, id);
+                }
+            });
+        }
+
+        /**
+         * Deletes an empty directory
+         * @param directory Path of the directory
+         * @throws IOException If the path is not a directory, the directory is not empty or cannot be deleted
+         */
+        public void removeDirectory(Path directory) throws IOException {
+            if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+                throw new NotDirectoryException(directory.toString());
+            }
+            record(Kind.REMOVE_DIRECTORY, directory, null, id -> Files.delete(directory));
+        }
+
+        /**
+         * Creates a new empty file
+         * @param file Path of the new file
+         * @throws IOException If the file already exists or cannot be created
+         */
+        public void createFile(Path file) throws IOException {
+            if (Files.exists(file, LinkOption.NOFOLLOW_LINKS)) {
+                throw new FileAlreadyExistsException(file.toString());
+            }
+            record(Kind.CREATE_FILE, file, null, id -> Files.createFile(file));
+        }
+
+        /**
+         * Creates a directory, its parent must already exist
+         * @param directory Path of the new directory
+         * @throws IOException If the directory already exists or cannot be created
+         */
+        public void makeDirectory(Path directory) throws IOException {
+            if (Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+                throw new FileAlreadyExistsException(directory.toString());
+            }
+            record(Kind.MAKE_DIRECTORY, directory, null, id -> Files.createDirectory(directory));
+        }
+
+        /**
+         * Creates a directory and every missing parent, each one recorded as
+         * a new directory
+         * @param directory Path of the directory
+         * @throws IOException If a file that is not a directory is in the way, or a directory cannot be created
+         */
+        public void makeDirectories(Path directory) throws IOException {
+            List<Path> missing = new ArrayList<>();
+            for (Path path = directory.toAbsolutePath().normalize(); path != null && !Files.isDirectory(path);
+                 path = path.getParent()) {
+                missing.add(path);
+            }
+            for (int i = missing.size() - 1; i >= 0; i--) {
+                try {
+                    makeDirectory(missing.get(i));
+                } catch (FileAlreadyExistsException e) {
+                    if (!Files.isDirectory(missing.get(i))) {
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Ends the batch, returning once all of its records are durable
+         * @throws IOException If the commit record cannot be written
+         */
+        public void commit() throws IOException {
+            Round round;
+            synchronized (Journal.this) {
+                if (id == 0) {
+                    return;
+                }
+                BatchState state = batches.get(id);
+                if (state.applied() == 0) {
+                    batches.remove(id);
+                    state.entries.forEach(entry -> entries.remove(entry.id));
+                }
+                state.committed = true;
+                round = append(COMMIT, id, new byte[0]);
+                id = 0;
+            }
+            flush(round);
+            forgetOld();
+            synchronized (Journal.this) {
+                // Only while nothing is being written, the checkpoint replaces the log
+                if (!flushing && pending.isEmpty() && batches.values().stream().allMatch(batch -> batch.committed)
+                        && needsCheckpoint()) {
+                    checkpoint();
+                }
+            }
+        }
+
+        private void record(Kind kind, Path path, Path source, IdChange change) throws IOException {
+            Path absolute = path.toAbsolutePath().normalize();
+            Round intent;
+            Entry entry;
+            synchronized (Journal.this) {
+                if (id == 0) {
+                    id = nextId++;
+                    batches.put(id, new BatchState(id, description));
+                    append(BEGIN, id, description.getBytes(StandardCharsets.UTF_8));
+                }
+                entry = new Entry(nextId++, id, kind, absolute, source);
+                intent = append(INTENT, entry.id, entry.intent());
+                batches.get(id).entries.add(entry);
+                entries.put(entry.id, entry);
+            }
+            flush(intent);
+            try {
+                change.apply(entry.id);
+            } catch (IOException | RuntimeException e) {
+                setState(entry, FAILED);
+                throw e;
+            }
+            setState(entry, DONE);
+        }
+    }
+
+    /**
+     * Operation that needs the number of its intent
+     */
+    private interface IdChange {
+        void apply(long id) throws IOException;
+    }
+
+    /**
+     * Reverts the last batches that were committed, newest first, stopping
+     * at the first batch that cannot be reverted completely
+     * @param count Number of batches to revert
+     * @return Outcome of every batch that was reverted or tried
+     * @throws IOException If the journal cannot be written
+     */
+    public List<Undone> undo(int count) throws IOException {
+        List<Undone> undone = new ArrayList<>();
+        List<List<Path>> restored = new ArrayList<>();
+        Round last;
+        synchronized (this) {
+            List<BatchState> candidates = new ArrayList<>(batches.values());
+            for (int i = candidates.size() - 1; i >= 0 && undone.size() < count; i--) {
+                BatchState batch = candidates.get(i);
+                if (!batch.committed) {
+                    continue;
+                }
+                List<Path> stored = new ArrayList<>();
+                Undone result = revert(batch, false, stored);
+                undone.add(result);
+                restored.add(stored);
+                if (!result.errors().isEmpty()) {
+                    break;
+                }
+            }
+            last = filling;
+        }
+        flush(last);
+        for (int i = 0; i < undone.size(); i++) {
+            undone.get(i).errors().addAll(storeAgain(restored.get(i)));
+        }
+        return undone;
+    }
+
+    /**
+     * @return The batches that can be undone, newest first
+     */
+    public synchronized List<Summary> history() {
+        List<Summary> history = new ArrayList<>();
+        for (BatchState batch : batches.values()) {
+            if (batch.committed) {
+                history.add(0, new Summary(batch.description, batch.applied()));
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Reverts the applied operations of a batch in the reverse order they
+     * were made, forgetting the batch once nothing of it is left
+     * @param interrupted True if the batch was never committed, operations without a done record are then also checked
+     * @param restored Where the files that have to be stored again are added
+     */
+    private Undone revert(BatchState batch, boolean interrupted, List<Path> restored) {
+        int reverted = 0;
+        List<String> errors = new ArrayList<>();
+        for (int i = batch.entries.size() - 1; i >= 0; i--) {
+            Entry entry = batch.entries.get(i);
+            if (entry.state == DONE || (interrupted && entry.state == INTENT)) {
+                try {
+                    if (revert(entry, restored)) {
+                        reverted++;
+                    }
+                    setState(entry, UNDONE);
+                } catch (IOException e) {
+                    errors.add(entry.path + ": " + describe(e));
+                }
+            }
+        }
+        if (errors.isEmpty()) {
+            batches.remove(batch.id);
+            batch.entries.forEach(entry -> entries.remove(entry.id));
+            append(FORGET, batch.id, new byte[0]);
+        }
+        return new Undone(batch.description, reverted, errors);
+    }
+
+    /**
+     * Puts a path back the way it was before an operation, checking the
+     * files first so reverting an operation twice or one that was never
+     * applied does nothing
+     * @param restored Where a file released from the object store is added, to be stored again
+     * @return True if something was changed
+     * @throws IOException If the path changed since and reverting would lose data
+     */
+    private boolean revert(Entry entry, List<Path> restored) throws IOException {
+        Path path = entry.path;
+        boolean exists = Files.exists(path, LinkOption.NOFOLLOW_LINKS);
+        switch (entry.kind) {
+            case DELETE_FILE, DELETE_STORED_FILE -> {
+                Path trashed = trashed(entry);
+                if (trashed == null) {
+                    if (!exists) {
+                        throw new IOException("its copy in the trash is missing");
+                    }
+                    return false;
+                }
+                if (exists) {
+                    throw new FileAlreadyExistsException(path.toString());
+                }
+                Files.move(trashed, path);
+                if (entry.kind == Kind.DELETE_STORED_FILE) {
+                    restored.add(path);
+                }
+                return true;
+            }
+            case REPLACE_FILE -> {
+                Path trashed = trashed(entry);
+                if (trashed == null) {
+                    if (entry.state == DONE) {
+                        throw new IOException("its copy in the trash is missing");
+                    }
+                    return false;
+                }
+                // Drops the file that replaced it, or the link to itself if it was never replaced
+                restore(trashed, path);
+                return true;
+            }
+            case RENAME -> {
+                boolean changed = false;
+                boolean sourceExists = Files.exists(entry.source, LinkOption.NOFOLLOW_LINKS);
+                if (exists && !sourceExists) {
+                    Files.move(path, entry.source, StandardCopyOption.ATOMIC_MOVE);
+                    changed = true;
+                } else if (entry.state == DONE) {
+                    throw sourceExists ? new FileAlreadyExistsException(entry.source.toString())
+                            : new IOException("it was moved or deleted since");
+                }
+                Path trashed = trashed(entry);
+                if (trashed != null) {
+                    restore(trashed, path);
+                    changed = true;
+                }
+                return changed;
+            }
+            case REMOVE_DIRECTORY -> {
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    return false;
+                }
+                Files.createDirectory(path);
+                return true;
+            }
+            case ADD_FILE -> {
+                if (!exists) {
+                    return false;
+                }
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    throw new IOException("it was replaced by a directory since");
+                }
+                Files.delete(path);
+                return true;
+            }
+            case CREATE_FILE -> {
+                if (!exists) {
+                    return false;
+                }
+                if (!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS) || Files.size(path) > 0) {
+                    throw new IOException("it was written to since");
+                }
+                Files.delete(path);
+                return true;
+            }
+            default -> {
+                if (!exists) {
+                    return false;
+                }
+                Files.delete(path);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Rolls back every batch that was never committed
+     */
+    private void recover() throws IOException {
+        boolean recovered = false;
+        List<Path> restored = new ArrayList<>();
+        for (BatchState batch : new ArrayList<>(batches.values())) {
+            if (!batch.committed) {
+                Undone result = revert(batch, true, restored);
+                if (!result.errors().isEmpty()) {
+                    // Whatever could not be put back stays in the journal for a later UNDO
+                    batch.entries.removeIf(entry -> entry.state != DONE && entry.state != INTENT);
+                    for (Entry entry : batch.entries) {
+                        if (entry.state == INTENT) {
+                            setState(entry, DONE);
+                        }
+                    }
+                    batch.committed = true;
+                    append(COMMIT, batch.id, new byte[0]);
+                }
+                recovered = true;
+            }
+        }
+        if (recovered) {
+            flush(filling);
+        }
+        // The files are back in place either way, only their stored copies are missing
+        storeAgain(restored);
+    }
+
+    /**
+     * Stores again the files whose deletion was undone, without holding the
+     * lock of the journal since storing a large file takes a while
+     * @return What went wrong for every file that could not be stored
+     */
+    private static List<String> storeAgain(List<Path> files) {
+        List<String> errors = new ArrayList<>();
+        for (Path file : files) {
+            try {
+                ObjectStore.open().put(file);
+            } catch (IOException e) {
+                errors.add(file + ": could not be stored again, " + describe(e));
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Forgets the oldest batches past {@link #KEPT_BATCHES}, deleting their
+     * files from the trash
+     */
+    private void forgetOld() throws IOException {
+        List<BatchState> forgotten = new ArrayList<>();
+        Round last;
+        synchronized (this) {
+            long committed = batches.values().stream().filter(batch -> batch.committed).count();
+            Iterator<BatchState> iterator = batches.values().iterator();
+            while (committed > KEPT_BATCHES && iterator.hasNext()) {
+                BatchState batch = iterator.next();
+                if (batch.committed) {
+                    iterator.remove();
+                    batch.entries.forEach(entry -> entries.remove(entry.id));
+                    append(FORGET, batch.id, new byte[0]);
+                    forgotten.add(batch);
+                    committed--;
+                }
+            }
+            last = filling;
+        }
+        if (forgotten.isEmpty()) {
+            return;
+        }
+        flush(last);
+        for (BatchState batch : forgotten) {
+            for (Entry entry : batch.entries) {
+                if (entry.kind.keepsFile()) {
+                    Files.deleteIfExists(trashPath(entry.id));
+                    Files.deleteIfExists(stagedPath(entry.path, entry.id));
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the files in the trash no batch refers to, left behind by a
+     * crash while a batch was being forgotten. Files kept next to their
+     * path are only found through their batch, a crash at that moment
+     * leaves them behind.
+     */
+    private void removeOrphans() throws IOException {
+        Set<Path> kept = new HashSet<>();
+        for (Entry entry : entries.values()) {
+            if (entry.kind.keepsFile()) {
+                kept.add(trashPath(entry.id));
+            }
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(trash)) {
+            for (Path file : stream) {
+                if (!kept.contains(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads every record of the log, leaving out batches that were forgotten
+     * @return Length of the log that holds complete records
+     */
+    private long load(Path file) throws IOException {
+        long size = Files.size(file);
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            CRC32 crc = new CRC32();
+            while (valid + HEADER_SIZE <= size) {
+                int checksum = in.readInt();
+                byte type = in.readByte();
+                long id = in.readLong();
+                int length = in.readInt();
+                if (type < BEGIN || type > FORGET || length < 0 || valid + HEADER_SIZE + length > size) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(type);
+                crc.update(ByteBuffer.allocate(Long.BYTES).putLong(id).array());
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                apply(type, id, payload);
+                valid += HEADER_SIZE + length;
+                records++;
+            }
+        }
+        Set<Long> orphans = new HashSet<>();
+        for (Entry entry : entries.values()) {
+            if (!batches.containsKey(entry.batch)) {
+                orphans.add(entry.id);
+            }
+        }
+        entries.keySet().removeAll(orphans);
+        return valid;
+    }
+
+    /**
+     * Applies a record found while loading
+     */
+    private void apply(byte type, long id, byte[] payload) {
+        nextId = Math.max(nextId, id + 1);
+        switch (type) {
+            case BEGIN -> batches.put(id, new BatchState(id, new String(payload, StandardCharsets.UTF_8)));
+            case INTENT -> {
+                ByteBuffer buffer = ByteBuffer.wrap(payload);
+                long batch = buffer.getLong();
+                Kind kind = Kind.values()[buffer.get()];
+                String paths = new String(payload, buffer.position(), buffer.remaining(), StandardCharsets.UTF_8);
+                int separator = paths.indexOf('\0');
+                Entry entry = separator < 0 ? new Entry(id, batch, kind, Paths.get(paths), null)
+                        : new Entry(id, batch, kind, Paths.get(paths.substring(0, separator)),
+                                Paths.get(paths.substring(separator + 1)));
+                BatchState state = batches.get(batch);
+                if (state != null) {
+                    state.entries.add(entry);
+                    entries.put(id, entry);
+                }
+            }
+            case DONE, FAILED, UNDONE -> {
+                Entry entry = entries.get(id);
+                if (entry != null) {
+                    entry.state = type;
+                }
+            }
+            case COMMIT -> {
+                BatchState batch = batches.get(id);
+                if (batch != null) {
+                    batch.committed = true;
+                    if (batch.applied() == 0) {
+                        batches.remove(id);
+                        batch.entries.forEach(entry -> entries.remove(entry.id));
+                    }
+                }
+            }
+            default -> {
+                BatchState batch = batches.remove(id);
+                if (batch != null) {
+                    batch.entries.forEach(entry -> entries.remove(entry.id));
+                }
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log with the records of the batches still kept
+     */
+    private synchronized void checkpoint() throws IOException {
+        Path file = log.getFile();
+        Path staged = directory.resolve("journal.log.tmp");
+        Files.deleteIfExists(staged);
+        long written = 0;
+        try (GroupCommitLog rewritten = new GroupCommitLog(staged, 0)) {
+            for (BatchState batch : batches.values()) {
+                rewritten.append(encode(BEGIN, batch.id, batch.description.getBytes(StandardCharsets.UTF_8)));
+                for (Entry entry : batch.entries) {
+                    if (entry.state == DONE) {
+                        rewritten.append(encode(INTENT, entry.id, entry.intent()));
+                        rewritten.append(encode(DONE, entry.id, new byte[0]));
+                        written += 2;
+                    }
+                }
+                rewritten.append(encode(COMMIT, batch.id, new byte[0]));
+                written += 2;
+            }
+            rewritten.sync(rewritten.size());
+        }
+        log.close();
+        Files.move(staged, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log = new GroupCommitLog(file, Long.MAX_VALUE);
+        records = written;
+    }
+
+    /**
+     * @return True if the log is large and mostly made of records no batch needs
+     */
+    private boolean needsCheckpoint() {
+        return log.size() > CHECKPOINT_SIZE && records > 2L * liveRecords();
+    }
+
+    /**
+     * @return Number of records the batches still kept need
+     */
+    private long liveRecords() {
+        long live = 0;
+        for (BatchState batch : batches.values()) {
+            live += 2 + 2L * batch.applied();
+        }
+        return live;
+    }
+
+    /**
+     * Records the outcome of an operation, without waiting for it to be
+     * durable, the commit of its batch flushes it
+     */
+    private synchronized void setState(Entry entry, byte state) {
+        entry.state = state;
+        append(state, entry.id, new byte[0]);
+    }
+
+    /**
+     * Queues a record, called while holding the lock of the journal
+     * @return Flush the record is written by, to be given to {@link #flush(Round)}
+     */
+    private Round append(byte type, long id, byte[] payload) {
+        records++;
+        pending.add(encode(type, id, payload));
+        return filling;
+    }
+
+    /**
+     * Waits until the records of a flush are durable. The first thread that
+     * needs a flush writes every queued record with a single write and keeps
+     * flushing for as long as others wait for the records queued meanwhile,
+     * every other thread only wakes up once its own records are durable.
+     * @param round Flush given by {@link #append(byte, long, byte[])}
+     */
+    private void flush(Round round) throws IOException {
+        boolean leader;
+        synchronized (this) {
+            round.needed = true;
+            leader = !flushing && !round.durable.isDone();
+            if (leader) {
+                flushing = true;
+            }
+        }
+        while (leader) {
+            List<ByteBuffer> written;
+            Round flushed;
+            synchronized (this) {
+                if (!filling.needed) {
+                    flushing = false;
+                    break;
+                }
+                written = pending;
+                flushed = filling;
+                pending = new ArrayList<>();
+                filling = new Round();
+            }
+            try {
+                int size = 0;
+                for (ByteBuffer buffer : written) {
+                    size += buffer.remaining();
+                }
+                ByteBuffer all = ByteBuffer.allocate(size);
+                written.forEach(all::put);
+                log.sync(log.append(all.flip()));
+                flushed.durable.complete(null);
+            } catch (IOException | RuntimeException e) {
+                flushed.durable.completeExceptionally(e);
+            }
+        }
+        try {
+            round.durable.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the journal to be flushed.", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException cause ? cause : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Encodes a record: checksum, type, number, length and payload
+     */
+    private static ByteBuffer encode(byte type, long id, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(id).array());
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putInt((int) crc.getValue()).put(type).putLong(id).putInt(payload.length).put(payload);
+        return record.flip();
+    }
+
+    private Path trashPath(long id) {
+        return trash.resolve(String.format("%016x", id));
+    }
+
+    /**
+     * @return Path a file on another file system than the trash is kept at, next to itself
+     */
+    private static Path stagedPath(Path file, long id) {
+        return file.resolveSibling(String.format(".personaldb-trash-%016x", id));
+    }
+
+    /**
+     * @return Where the file kept by an operation is, or null if it is in neither place
+     */
+    private Path trashed(Entry entry) {
+        for (Path kept : List.of(trashPath(entry.id), stagedPath(entry.path, entry.id))) {
+            if (Files.exists(kept, LinkOption.NOFOLLOW_LINKS)) {
+                return kept;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves a file to the trash, or next to itself if the trash is on
+     * another file system, always with a single rename
+     * @return Where the file was moved
+     */
+    private Path moveToTrash(Path file, long id) throws IOException {
+        try {
+            return Files.move(file, trashPath(id), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            return Files.move(file, stagedPath(file, id), StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Keeps the file at a path in the trash and moves another file there.
+     * A regular file is hard linked into the trash, so the path is never
+     * missing, other files or file systems without hard links are moved.
+     * If the move fails the path is left as it was.
+     * @param attributes Attributes of the file at the path
+     */
+    private void keepAndMove(Path from, Path path, BasicFileAttributes attributes, long id) throws IOException {
+        Path kept = null;
+        if (attributes.isRegularFile()) {
+            for (Path link : List.of(trashPath(id), stagedPath(path, id))) {
+                try {
+                    kept = Files.createLink(link, path);
+                    break;
+                } catch (FileSystemException | UnsupportedOperationException e) {
+                    // Another file system, or one without hard links
+                }
+            }
+        }
+        boolean linked = kept != null;
+        if (!linked) {
+            kept = moveToTrash(path, id);
+        }
+        try {
+            Files.move(from, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            try {
+                if (linked) {
+                    Files.delete(kept);
+                } else {
+                    Files.move(kept, path);
+                }
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Puts a file kept in the trash back in its place, over whatever file is there
+     * @throws FileAlreadyExistsException If a directory is in its place
+     */
+    private static void restore(Path kept, Path path) throws IOException {
+        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(path.toString());
+        }
+        if (Files.exists(path, LinkOption.NOFOLLOW_LINKS) && Files.isSameFile(kept, path)) {
+            // Still a link to itself, renaming one link over another would leave both
+            Files.delete(kept);
+            return;
+        }
+        Files.move(kept, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String describe(IOException e) {
+        if (e instanceof FileAlreadyExistsException) {
+            return "a file is in its place";
+        } else if (e instanceof DirectoryNotEmptyException) {
+            return "directory is not empty";
+        } else if (e instanceof NoSuchFileException) {
+            return "its parent directory does not exist";
+        }
+        return e.getMessage() == null ? e.toString() : e.getMessage();
+    }
+
+}
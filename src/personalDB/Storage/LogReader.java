@@ -0,0 +1,119 @@
+/**
+ * Reader of append only logs that can end with a torn record
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Storage;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Objects of this class read a log written with a DataOutputStream and
+ * remember where its last complete record ends. A crash while appending
+ * leaves part of a record at the end of the log, which replaying drops.
+ * Appending after it would leave that garbage in front of every later record
+ * and misalign the next replay, so {@link #truncate()} cuts the log back to
+ * its last complete record before it is appended to again.
+ */
+public class LogReader implements Closeable {
+    private final Path file;
+    private final Counter counter;
+    private final DataInputStream in;
+    private long complete = 0;
+
+    /**
+     * Counts the bytes handed to the DataInputStream, which is what was
+     * consumed of the log
+     */
+    private static final class Counter extends FilterInputStream {
+        long position = 0;
+
+        Counter(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                position++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            position += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Opens a log
+     * @param file Path of the log
+     * @throws IOException If the log cannot be opened
+     */
+    public LogReader(Path file) throws IOException {
+        this.file = file;
+        this.counter = new Counter(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        this.in = new DataInputStream(counter);
+    }
+
+    /**
+     * @return Stream the records are read from
+     */
+    public DataInputStream in() {
+        return in;
+    }
+
+    /**
+     * Marks everything read so far, the header or a record, as complete
+     */
+    public void endRecord() {
+        complete = counter.position;
+    }
+
+    /**
+     * Cuts the log after its last complete record, deleting it if not even
+     * its header was complete so it is started again with a new header
+     * @throws IOException If the log cannot be truncated
+     */
+    public void truncate() throws IOException {
+        if (complete == 0) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            if (channel.size() > complete) {
+                channel.truncate(complete);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * Merkle tree over the chunk digests of a file
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Objects of this class keep every level of a binary hash tree, from the
+ * digests of the chunks up to the root. Changing one chunk only needs the
+ * digests on its path to the root to be recomputed.
+ * Leaves hash a 0x00 byte followed by the chunk and inner nodes hash a 0x01
+ * byte followed by their children, a node without a sibling being hashed
+ * alone. No inner node can then collide with a leaf or with a shorter tree,
+ * so a file made of the digests of another file's chunks does not get its
+ * hash. The root of a single chunk file is its leaf, the SHA-256 of 0x00
+ * followed by its content, not the plain SHA-256 of the content. Hashes
+ * stored before the prefixes were added differ from the current ones: their
+ * objects can still be read, but putting the same file again stores it anew.
+ */
+public class MerkleTree {
+    private static final byte LEAF_PREFIX = 0x00;
+    private static final byte NODE_PREFIX = 0x01;
+
+    private final byte[][][] levels;
+
+    /**
+     * Builds the tree over the given chunk digests
+     * @param leaves Digest of every chunk, in order, at least one
+     */
+    public MerkleTree(byte[][] leaves) {
+        int height = 1;
+        for (int width = leaves.length; width > 1; width = (width + 1) / 2) {
+            height++;
+        }
+        levels = new byte[height][][];
+        levels[0] = leaves;
+        for (int level = 1; level < height; level++) {
+            levels[level] = new byte[(levels[level - 1].length + 1) / 2][];
+        }
+        MessageDigest digest = newDigest();
+        for (int level = 1; level < height; level++) {
+            for (int node = 0; node < levels[level].length; node++) {
+                levels[level][node] = combine(digest, level, node);
+            }
+        }
+    }
+
+    /**
+     * @return Digest of the whole file
+     */
+    public byte[] root() {
+        return levels[levels.length - 1][0];
+    }
+
+    /**
+     * @return Number of chunks
+     */
+    public int leafCount() {
+        return levels[0].length;
+    }
+
+    /**
+     * @param chunk Index of the chunk
+     * @return Digest of that chunk
+     */
+    public byte[] leaf(int chunk) {
+        return levels[0][chunk];
+    }
+
+    /**
+     * Replaces the digest of a chunk and recomputes its path to the root
+     * @param chunk Index of the chunk
+     * @param digest New digest of the chunk
+     */
+    public void update(int chunk, byte[] digest) {
+        levels[0][chunk] = digest;
+        MessageDigest hasher = newDigest();
+        int node = chunk;
+        for (int level = 1; level < levels.length; level++) {
+            node /= 2;
+            levels[level][node] = combine(hasher, level, node);
+        }
+    }
+
+    /**
+     * Writes the chunk digests, the inner nodes are recomputed when read
+     * @param out Output
+     * @throws IOException If the output fails
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(levels[0].length);
+        for (byte[] leaf : levels[0]) {
+            out.write(leaf);
+        }
+    }
+
+    /**
+     * Reads a tree written by {@link #write(DataOutput)}
+     * @param in Input
+     * @return Tree read
+     * @throws IOException If the input fails
+     */
+    public static MerkleTree read(DataInput in) throws IOException {
+        byte[][] leaves = new byte[in.readInt()][];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = new byte[32];
+            in.readFully(leaves[i]);
+        }
+        return new MerkleTree(leaves);
+    }
+
+    private byte[] combine(MessageDigest digest, int level, int node) {
+        byte[][] children = levels[level - 1];
+        int left = node * 2;
+        digest.update(NODE_PREFIX);
+        digest.update(children[left]);
+        if (left + 1 < children.length) {
+            digest.update(children[left + 1]);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Prepares a digest to hash the content of a chunk into a leaf
+     * @param digest Digest, reset before use
+     * @return The same digest
+     */
+    static MessageDigest startLeaf(MessageDigest digest) {
+        digest.reset();
+        digest.update(LEAF_PREFIX);
+        return digest;
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,500 @@
+/**
+ * Content addressed storage of files
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Storage;
+
+import personalDB.Engine.Workspace;
+import personalDB.Metrics.Metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The object store keeps a copy of every file put into it under the hash of
+ * its content given by {@link ContentHasher}, so identical files are only
+ * stored once and are never copied again.
+ * Objects live in the workspace under objects/ab/cdef..., the first two
+ * characters of the hash naming the shard directory. Every object is written
+ * to a temporary file first and renamed into place, so a crash never leaves a
+ * partial object behind.
+ * Files of at least {@link #CHUNKING_THRESHOLD} bytes are not stored whole:
+ * they are split by the {@link Chunker} and kept as a manifest listing their
+ * chunks, which live in the {@link ChunkStore}, so similar large files share
+ * storage for the parts they have in common. Once no path refers to an object
+ * it is deleted, releasing its chunks.
+ * Files smaller than {@link #PACK_THRESHOLD} bytes can be kept in the
+ * {@link PackStore} instead, appended to a few large segment files rather
+ * than taking a file each. Packing is turned on with the system property
+ * personaldb.pack=true, and once objects were packed the pack is always read.
+ */
+public class ObjectStore {
+    public static final int MIN_PREFIX_LENGTH = 8;
+    public static final long CHUNKING_THRESHOLD = 1 << 20;
+    public static final long PACK_THRESHOLD = 64 << 10;
+    private static final int MANIFEST_MAGIC = 0x5044464D;
+    private static final int GARBAGE_PER_RELEASE = 256;
+    private static final int LOCK_STRIPES = 64;
+    private static ObjectStore instance;
+
+    private final Path objects;
+    private final Path manifests;
+    private final Path temp;
+    private final HashIndex index;
+    private final ChunkStore chunkStore;
+    private final PackStore pack;
+    private final boolean packing;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private ObjectStore(Path home) throws IOException {
+        this.objects = Files.createDirectories(home.resolve("objects"));
+        this.manifests = Files.createDirectories(home.resolve("manifests"));
+        this.temp = Files.createDirectories(home.resolve("tmp"));
+        this.index = new HashIndex(home.resolve("hashes.log"));
+        this.chunkStore = new ChunkStore(home);
+        Path packs = home.resolve("packs");
+        this.packing = Boolean.getBoolean("personaldb.pack");
+        this.pack = packing || Files.isDirectory(packs) ? new PackStore(packs) : null;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * @return True if the object store of the workspace was ever created
+     */
+    public static boolean exists() {
+        return Files.isDirectory(Workspace.home().resolve("objects"));
+    }
+
+    /**
+     * Returns the object store of the workspace, opening it on first use
+     * @return The object store
+     * @throws IOException If the store cannot be created or its index read
+     */
+    public static synchronized ObjectStore open() throws IOException {
+        if (instance == null) {
+            instance = new ObjectStore(Workspace.home());
+        }
+        return instance;
+    }
+
+    /**
+     * Stores a file, only keeping its content if no object has that content
+     * yet. The file is hashed while it is read, so the object always holds
+     * the bytes its hash was computed from even if the file changes meanwhile.
+     * A path stored again with other content releases the object it had.
+     * @param file File to be stored
+     * @return Hash of the content
+     * @throws IOException If the file cannot be read or the object written
+     */
+    public String put(Path file) throws IOException {
+        String path = file.toAbsolutePath().normalize().toString();
+        long size = Files.size(file);
+        if (size >= CHUNKING_THRESHOLD) {
+            return putChunked(file, path);
+        } else if (packing && size < PACK_THRESHOLD) {
+            return putPacked(file, path);
+        }
+        return putWhole(file, path);
+    }
+
+    /**
+     * Forgets a path, deleting its object if no other path refers to it and
+     * collecting some of the chunks that became orphans
+     * @param path Path that no longer exists
+     * @throws IOException If the store cannot be updated
+     */
+    public void release(Path path) throws IOException {
+        String key = path.toAbsolutePath().normalize().toString();
+        while (true) {
+            String hash = index.hash(key);
+            if (hash == null) {
+                return;
+            }
+            synchronized (lock(hash)) {
+                if (!hash.equals(index.hash(key))) {
+                    // Stored again with other content meanwhile, release that one
+                    continue;
+                }
+                index.remove(key);
+                if (!deleteIfUnreferenced(hash)) {
+                    return;
+                }
+            }
+            chunkStore.collectGarbage(GARBAGE_PER_RELEASE);
+            return;
+        }
+    }
+
+    /**
+     * Deletes an object no path refers to any longer, called while holding
+     * its lock
+     * @param hash Hash of the object
+     * @return True if chunks may have become orphans
+     */
+    private boolean deleteIfUnreferenced(String hash) throws IOException {
+        if (index.isReferenced(hash) || (pack != null && pack.delete(hash))) {
+            return false;
+        }
+        Path manifest = manifestPath(hash);
+        if (Files.exists(manifest)) {
+            for (String chunk : readManifest(manifest)) {
+                chunkStore.release(chunk);
+            }
+            Files.delete(manifest);
+        } else {
+            Files.deleteIfExists(objectPath(hash));
+        }
+        return true;
+    }
+
+    /**
+     * Indexes a path under the object it was stored as and releases the
+     * object the path had before, if its content changed. Called while
+     * holding the lock of the new object, the old one is released under
+     * its own lock once no other path refers to it.
+     * @param hash Hash of the object just stored
+     * @param path Absolute path of the file
+     * @return Hash the path had before, or null if it had none or the same
+     */
+    private String relink(String hash, String path) throws IOException {
+        String previous = index.hash(path);
+        index.add(hash, path);
+        return hash.equals(previous) ? null : previous;
+    }
+
+    /**
+     * Deletes the object a path referred to before it was stored again
+     * @param previous Hash returned by {@link #relink(String, String)}
+     */
+    private void releasePrevious(String previous) throws IOException {
+        if (previous == null) {
+            return;
+        }
+        boolean orphans;
+        synchronized (lock(previous)) {
+            orphans = deleteIfUnreferenced(previous);
+        }
+        if (orphans) {
+            chunkStore.collectGarbage(GARBAGE_PER_RELEASE);
+        }
+    }
+
+    /**
+     * Deletes every orphaned chunk
+     * @return Number of chunks deleted
+     * @throws IOException If the chunks cannot be deleted
+     */
+    public int collectGarbage() throws IOException {
+        return chunkStore.collectGarbage(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Rewrites every full segment of the pack that holds deleted objects
+     * @return Number of segments rewritten, 0 if nothing was ever packed
+     * @throws IOException If a segment cannot be rewritten
+     */
+    public int compactPack() throws IOException {
+        return pack == null ? 0 : pack.compact(0);
+    }
+
+    /**
+     * Copies an object out of the store
+     * @param hash Hash of the object, or an unambiguous prefix of it
+     * @param target File to be created with the content of the object
+     * @throws IOException If the object does not exist or the target cannot be written
+     */
+    public void get(String hash, Path target) throws IOException {
+        String resolved = resolve(hash);
+        if (pack != null && pack.contains(resolved)) {
+            byte[] content = pack.read(resolved);
+            if (content == null) {
+                throw new IOException("No object with hash " + hash + ".");
+            }
+            Files.write(target, content, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            Metrics.add(Metrics.Counter.BYTES_WRITTEN, content.length);
+            return;
+        }
+        Path manifest = manifestPath(resolved);
+        if (!Files.exists(manifest)) {
+            Files.copy(objectPath(resolved), target);
+            copied(Files.size(target));
+            return;
+        }
+        if (Files.exists(target)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+        Path staged = Files.createTempFile(temp, "get", ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(staged), 1 << 16)) {
+                for (String chunk : readManifest(manifest)) {
+                    byte[] content = chunkStore.read(chunk);
+                    out.write(content);
+                    Metrics.add(Metrics.Counter.BYTES_WRITTEN, content.length);
+                }
+            }
+            Files.move(staged, target);
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    /**
+     * Returns the paths that were stored with the given content
+     * @param hash Hash of the object, or an unambiguous prefix of it
+     * @return Absolute paths, empty if there are none
+     * @throws IOException If the prefix is ambiguous or there is no such object
+     */
+    public List<String> lookup(String hash) throws IOException {
+        return index.paths(resolve(hash));
+    }
+
+    /**
+     * @param hash Full hash of an object
+     * @return True if the object is stored
+     */
+    public boolean contains(String hash) {
+        return (pack != null && pack.contains(hash)) || Files.exists(objectPath(hash)) || Files.exists(manifestPath(hash));
+    }
+
+    /**
+     * @return Index of the paths stored in the object store
+     */
+    public HashIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Expands a hash prefix into the full hash of an object, listing only
+     * the shard the prefix belongs to
+     * @param prefix Hash or start of a hash
+     * @return Full hash
+     * @throws IOException If no object or more than one object matches
+     */
+    public String resolve(String prefix) throws IOException {
+        String wanted = prefix.toLowerCase();
+        if (wanted.length() < MIN_PREFIX_LENGTH || !wanted.matches("[0-9a-f]+")) {
+            throw new IOException("Hashes must have at least " + MIN_PREFIX_LENGTH + " hexadecimal characters.");
+        }
+        if (wanted.length() == 64) {
+            if (!contains(wanted)) {
+                throw new IOException("No object with hash " + prefix + ".");
+            }
+            return wanted;
+        }
+        List<String> matches = pack == null ? new ArrayList<>() : pack.matching(wanted);
+        for (Path directory : List.of(objects, manifests)) {
+            Path shard = directory.resolve(wanted.substring(0, 2));
+            if (Files.isDirectory(shard)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(shard, wanted.substring(2) + "*")) {
+                    for (Path object : stream) {
+                        matches.add(wanted.substring(0, 2) + object.getFileName());
+                    }
+                }
+            }
+        }
+        if (matches.isEmpty()) {
+            throw new IOException("No object with hash " + prefix + ".");
+        } else if (matches.size() > 1) {
+            throw new IOException("Hash " + prefix + " is ambiguous.");
+        }
+        return matches.get(0);
+    }
+
+    /**
+     * Copies a file into a staged file, hashing the bytes as they are copied,
+     * and renames the staged file into place unless the object already exists
+     * @param file File to be stored
+     * @param path Absolute path the file is indexed under
+     * @return Hash of the content copied
+     */
+    private String putWhole(Path file, String path) throws IOException {
+        Path staged = Files.createTempFile(temp, "put", ".tmp");
+        try {
+            ContentHasher.Incremental hasher = new ContentHasher.Incremental();
+            byte[] buffer = new byte[1 << 16];
+            long size = 0;
+            try (InputStream in = Files.newInputStream(file); OutputStream out = Files.newOutputStream(staged)) {
+                for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                    hasher.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                    size += read;
+                }
+            }
+            copied(size);
+            String hash = hasher.finish();
+            String previous;
+            synchronized (lock(hash)) {
+                if (!contains(hash)) {
+                    commit(staged, objectPath(hash));
+                }
+                previous = relink(hash, path);
+            }
+            releasePrevious(previous);
+            return hash;
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    /**
+     * Reads a small file once, hashing and packing the same bytes
+     * @param file File to be stored
+     * @param path Absolute path the file is indexed under
+     * @return Hash of the content read
+     */
+    private String putPacked(Path file, String path) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        Metrics.add(Metrics.Counter.BYTES_READ, content.length);
+        ContentHasher.Incremental hasher = new ContentHasher.Incremental();
+        hasher.update(content, 0, content.length);
+        String hash = hasher.finish();
+        String previous;
+        synchronized (lock(hash)) {
+            if (!contains(hash)) {
+                pack.put(hash, content);
+            }
+            previous = relink(hash, path);
+        }
+        releasePrevious(previous);
+        return hash;
+    }
+
+    /**
+     * Splits a file into chunks, referencing each one in the chunk store and
+     * hashing the file from the same bytes, and writes the manifest of the
+     * file last. If the object already existed the references are dropped.
+     * @param file File to be stored
+     * @param path Absolute path the file is indexed under
+     * @return Hash of the content split
+     */
+    private String putChunked(Path file, String path) throws IOException {
+        ContentHasher.Incremental hasher = new ContentHasher.Incremental();
+        List<String> chunks = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        Chunker.split(file, (data, offset, length) -> {
+            hasher.update(data, offset, length);
+            chunks.add(chunkStore.addReference(data, offset, length));
+            lengths.add(length);
+            Metrics.add(Metrics.Counter.BYTES_READ, length);
+        });
+        String hash = hasher.finish();
+        String previous;
+        synchronized (lock(hash)) {
+            if (contains(hash)) {
+                for (String chunk : chunks) {
+                    chunkStore.release(chunk);
+                }
+            } else {
+                writeManifest(hash, chunks, lengths);
+            }
+            previous = relink(hash, path);
+        }
+        releasePrevious(previous);
+        return hash;
+    }
+
+    /**
+     * Writes the manifest of a chunked object
+     * @param hash Hash of the object
+     * @param chunks Hashes of its chunks, in order
+     * @param lengths Length of every chunk
+     */
+    private void writeManifest(String hash, List<String> chunks, List<Integer> lengths) throws IOException {
+        Path staged = Files.createTempFile(temp, "manifest", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(staged)))) {
+                out.writeInt(MANIFEST_MAGIC);
+                out.writeInt(chunks.size());
+                for (int i = 0; i < chunks.size(); i++) {
+                    out.writeUTF(chunks.get(i));
+                    out.writeInt(lengths.get(i));
+                }
+            }
+            commit(staged, manifestPath(hash));
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    /**
+     * Flushes a staged file to the disk and renames it into place
+     * @param staged Temporary file
+     * @param target Final path in the store
+     */
+    private void commit(Path staged, Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(staged, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // Stored by someone else in the meantime, same content
+        }
+    }
+
+    /**
+     * Reads the chunks listed by a manifest
+     * @param manifest Path of the manifest
+     * @return Hashes of the chunks, in order
+     */
+    private List<String> readManifest(Path manifest) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest)))) {
+            if (in.readInt() != MANIFEST_MAGIC) {
+                throw new IOException("Not a manifest: " + manifest);
+            }
+            int count = in.readInt();
+            List<String> chunks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                chunks.add(in.readUTF());
+                in.readInt();
+            }
+            return chunks;
+        }
+    }
+
+    /**
+     * Counts the bytes of a file copied whole
+     */
+    private static void copied(long size) {
+        Metrics.add(Metrics.Counter.BYTES_READ, size);
+        Metrics.add(Metrics.Counter.BYTES_WRITTEN, size);
+    }
+
+    /**
+     * Lock shared by everything that stores or deletes the object with the
+     * given hash, so an object is never deleted between a put finding it
+     * and indexing a path to it
+     */
+    private Object lock(String hash) {
+        return locks[Integer.parseInt(hash.substring(0, 2), 16) % locks.length];
+    }
+
+    private Path objectPath(String hash) {
+        return objects.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+    }
+
+    private Path manifestPath(String hash) {
+        return manifests.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+    }
+
+}
@@ -0,0 +1,600 @@
+/**
+ * Log structured storage of small objects
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Storage;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Objects of this class keep many small objects inside a few large segment
+ * files instead of one file each. Objects are appended to the newest
+ * segment through a {@link GroupCommitLog}, so concurrent writers share
+ * their flushes, and a new segment is started once it passes
+ * {@link #SEGMENT_SIZE}. An index in memory maps every hash to the segment,
+ * offset and length of its content, which is read with a single positional
+ * read.
+ * Deleting an object appends a tombstone and leaves its content in place as
+ * dead space. Once dead space passes {@link #COMPACTION_THRESHOLD} of a
+ * full segment, a background thread copies its live objects to the newest
+ * segment and deletes it.
+ * A full segment gets an index file next to it, so opening the store only
+ * reads the newest segment. A segment without one is read whole, and a
+ * record that was only partly written, e.g. by a crash, ends the newest
+ * segment and is cut off.
+ */
+public class PackStore implements Closeable {
+    public static final long SEGMENT_SIZE = 64L << 20;
+    public static final double COMPACTION_THRESHOLD = 0.5;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int HASH_LENGTH = 32;
+    private static final int HEADER_SIZE = Integer.BYTES + 1 + HASH_LENGTH + Integer.BYTES;
+    private static final int INDEX_MAGIC = 0x50445049;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final ReadWriteLock segmentLock = new ReentrantReadWriteLock();
+    private final Set<Integer> compacting = ConcurrentHashMap.newKeySet();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "personalDB-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Segment active;
+
+    /**
+     * Where the content of an object is
+     * @param segment Number of the segment
+     * @param offset Position of the record in the segment
+     * @param length Length of the content
+     */
+    private record Location(int segment, long offset, int length) {
+
+        long recordSize() {
+            return HEADER_SIZE + length;
+        }
+    }
+
+    /**
+     * A record found in a segment
+     */
+    private record Entry(byte type, String hash, long offset, int length) {}
+
+    /**
+     * A segment file and how much of it is still referenced
+     */
+    private static final class Segment {
+        final int number;
+        final GroupCommitLog log;
+        long liveBytes;
+
+        Segment(int number, GroupCommitLog log) {
+            this.number = number;
+            this.log = log;
+        }
+
+        double deadRatio() {
+            long size = log.size();
+            return size == 0 ? 0 : 1 - (double) liveBytes / size;
+        }
+    }
+
+    /**
+     * Space used by the store
+     * @param objects Number of live objects
+     * @param segments Number of segment files
+     * @param totalBytes Bytes in the segment files
+     * @param liveBytes Bytes of the live objects, with their headers
+     * @param appends Records appended since the store was opened
+     * @param syncs Flushes since the store was opened
+     */
+    public record Stats(long objects, int segments, long totalBytes, long liveBytes, long appends, long syncs) {}
+
+    /**
+     * Opens the store in a directory, creating it if it does not exist
+     * @param directory Directory of the segment files
+     * @throws IOException If a segment cannot be read
+     */
+    public PackStore(Path directory) throws IOException {
+        this(directory, SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the store with another segment size, so tests fill segments quickly
+     * @param directory Directory of the segment files
+     * @param segmentSize Size after which a new segment is started
+     * @throws IOException If a segment cannot be read
+     */
+    PackStore(Path directory, long segmentSize) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        List<Integer> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.pack")) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                numbers.add(Integer.parseInt(name.substring(0, name.length() - ".pack".length())));
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected file in " + directory, e);
+        }
+        numbers.sort(null);
+        for (int i = 0; i < numbers.size(); i++) {
+            load(numbers.get(i), i == numbers.size() - 1);
+        }
+        if (segments.isEmpty()) {
+            active = newSegment(1);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+    }
+
+    /**
+     * Stores an object, returning once it is durable
+     * @param hash Hash of the content in hexadecimal
+     * @param data Content
+     * @throws IOException If the object cannot be written
+     */
+    public void put(String hash, byte[] data) throws IOException {
+        GroupCommitLog log;
+        long end;
+        synchronized (this) {
+            if (index.containsKey(hash)) {
+                return;
+            }
+            Segment segment = writableSegment();
+            log = segment.log;
+            end = log.append(encode(PUT, hash, data));
+            index.put(hash, new Location(segment.number, end - HEADER_SIZE - data.length, data.length));
+            segment.liveBytes += HEADER_SIZE + data.length;
+        }
+        log.sync(end);
+    }
+
+    /**
+     * Stores many objects with a single flush, returning once all of them are durable
+     * @param objects Content of every object by its hash in hexadecimal
+     * @throws IOException If an object cannot be written
+     */
+    public void putAll(Map<String, byte[]> objects) throws IOException {
+        GroupCommitLog log = null;
+        long end = 0;
+        synchronized (this) {
+            for (Map.Entry<String, byte[]> object : objects.entrySet()) {
+                if (index.containsKey(object.getKey())) {
+                    continue;
+                }
+                // A full segment is flushed when it is sealed, only the last one written needs a sync
+                Segment segment = writableSegment();
+                byte[] data = object.getValue();
+                log = segment.log;
+                end = log.append(encode(PUT, object.getKey(), data));
+                index.put(object.getKey(), new Location(segment.number, end - HEADER_SIZE - data.length, data.length));
+                segment.liveBytes += HEADER_SIZE + data.length;
+            }
+        }
+        if (log != null) {
+            log.sync(end);
+        }
+    }
+
+    /**
+     * Reads an object
+     * @param hash Hash of the content in hexadecimal
+     * @return Content, or null if the object is not stored
+     * @throws IOException If the segment cannot be read
+     */
+    public byte[] read(String hash) throws IOException {
+        segmentLock.readLock().lock();
+        try {
+            Location location = index.get(hash);
+            if (location == null) {
+                return null;
+            }
+            Segment segment;
+            synchronized (this) {
+                segment = segments.get(location.segment());
+            }
+            ByteBuffer content = ByteBuffer.allocate(location.length());
+            segment.log.read(content, location.offset() + HEADER_SIZE);
+            return content.array();
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param hash Hash of the content in hexadecimal
+     * @return True if the object is stored
+     */
+    public boolean contains(String hash) {
+        return index.containsKey(hash);
+    }
+
+    /**
+     * Returns the hashes that start with a prefix
+     * @param prefix Start of the hash in lowercase hexadecimal
+     * @return Matching hashes
+     */
+    public List<String> matching(String prefix) {
+        List<String> matches = new ArrayList<>();
+        for (String hash : index.keySet()) {
+            if (hash.startsWith(prefix)) {
+                matches.add(hash);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Deletes an object, its segment is compacted in the background once
+     * enough of it is dead
+     * @param hash Hash of the content in hexadecimal
+     * @return True if the object was stored
+     * @throws IOException If the tombstone cannot be written
+     */
+    public boolean delete(String hash) throws IOException {
+        GroupCommitLog log;
+        long end;
+        Segment owner;
+        synchronized (this) {
+            Location location = index.remove(hash);
+            if (location == null) {
+                return false;
+            }
+            owner = segments.get(location.segment());
+            owner.liveBytes -= location.recordSize();
+            log = writableSegment().log;
+            end = log.append(encode(DELETE, hash, new byte[0]));
+        }
+        log.sync(end);
+        if (owner != active && owner.deadRatio() > COMPACTION_THRESHOLD) {
+            scheduleCompaction(owner.number);
+        }
+        return true;
+    }
+
+    /**
+     * Compacts every full segment with more dead space than a threshold,
+     * waiting for it to finish
+     * @param threshold Share of dead space above which a segment is compacted, 0 for any
+     * @return Number of segments compacted
+     * @throws IOException If a segment cannot be compacted
+     */
+    public int compact(double threshold) throws IOException {
+        List<Integer> candidates = new ArrayList<>();
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                if (segment != active && segment.deadRatio() > threshold) {
+                    candidates.add(segment.number);
+                }
+            }
+        }
+        int compacted = 0;
+        for (int number : candidates) {
+            if (compacting.add(number)) {
+                try {
+                    compactSegment(number);
+                    compacted++;
+                } finally {
+                    compacting.remove(number);
+                }
+            }
+        }
+        return compacted;
+    }
+
+    /**
+     * @return Space used by the store
+     */
+    public synchronized Stats stats() {
+        long total = 0;
+        long live = 0;
+        long appends = 0;
+        long syncs = 0;
+        for (Segment segment : segments.values()) {
+            total += segment.log.size();
+            live += segment.liveBytes;
+            appends += segment.log.appendCount();
+            syncs += segment.log.syncCount();
+        }
+        return new Stats(index.size(), segments.size(), total, live, appends, syncs);
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactor.shutdownNow();
+        segmentLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                for (Segment segment : segments.values()) {
+                    segment.log.close();
+                }
+            }
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+
+    private void scheduleCompaction(int number) {
+        if (compacting.add(number)) {
+            compactor.execute(() -> {
+                try {
+                    compactSegment(number);
+                } catch (IOException e) {
+                    // The segment stays as it is and is tried again after the next delete
+                } finally {
+                    compacting.remove(number);
+                }
+            });
+        }
+    }
+
+    /**
+     * Copies the live objects of a segment to the newest one and deletes it.
+     * Tombstones are copied too unless no older segment is left for them to
+     * hide objects in.
+     */
+    private void compactSegment(int number) throws IOException {
+        Segment segment;
+        boolean oldest;
+        synchronized (this) {
+            segment = segments.get(number);
+            if (segment == null || segment == active) {
+                return;
+            }
+            oldest = segments.firstKey() == number;
+        }
+        long end = 0;
+        GroupCommitLog log = null;
+        for (Entry entry : entries(segment)) {
+            synchronized (this) {
+                Location location = index.get(entry.hash());
+                boolean live = entry.type() == PUT && location != null && location.segment() == number
+                        && location.offset() == entry.offset();
+                if (live) {
+                    ByteBuffer content = ByteBuffer.allocate(entry.length());
+                    segment.log.read(content, entry.offset() + HEADER_SIZE);
+                    Segment target = writableSegment();
+                    log = target.log;
+                    end = log.append(encode(PUT, entry.hash(), content.array()));
+                    index.put(entry.hash(), new Location(target.number, end - HEADER_SIZE - entry.length(), entry.length()));
+                    target.liveBytes += HEADER_SIZE + entry.length();
+                } else if (entry.type() == DELETE && !oldest && location == null) {
+                    log = writableSegment().log;
+                    end = log.append(encode(DELETE, entry.hash(), new byte[0]));
+                }
+            }
+        }
+        if (log != null) {
+            log.sync(end);
+        }
+
+        segmentLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                segments.remove(number);
+            }
+            segment.log.close();
+            Files.deleteIfExists(indexPath(number));
+            Files.deleteIfExists(segmentPath(number));
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the segment new records go to, sealing it and starting a new
+     * one once it is full. Called while holding the lock of the store.
+     */
+    private Segment writableSegment() throws IOException {
+        if (active.log.size() >= segmentSize) {
+            active.log.sync(active.log.size());
+            writeIndex(active);
+            active = newSegment(active.number + 1);
+        }
+        return active;
+    }
+
+    private Segment newSegment(int number) throws IOException {
+        Segment segment = new Segment(number, new GroupCommitLog(segmentPath(number), Long.MAX_VALUE));
+        segments.put(number, segment);
+        return segment;
+    }
+
+    /**
+     * Loads a segment from its index file, or by reading it whole
+     */
+    private void load(int number, boolean newest) throws IOException {
+        if (!newest && loadIndex(number)) {
+            return;
+        }
+        Path file = segmentPath(number);
+        long size = Files.size(file);
+        long valid = 0;
+        List<Entry> entries = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            CRC32 crc = new CRC32();
+            while (valid + HEADER_SIZE <= size) {
+                int checksum = in.readInt();
+                byte type = in.readByte();
+                byte[] rawHash = new byte[HASH_LENGTH];
+                in.readFully(rawHash);
+                int length = in.readInt();
+                if ((type != PUT && type != DELETE) || length < 0 || valid + HEADER_SIZE + length > size) {
+                    break;
+                }
+                byte[] content = new byte[length];
+                in.readFully(content);
+                crc.reset();
+                crc.update(type);
+                crc.update(rawHash);
+                crc.update(content);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                entries.add(new Entry(type, HexFormat.of().formatHex(rawHash), valid, length));
+                valid += HEADER_SIZE + length;
+            }
+        }
+        if (valid < size && !newest) {
+            throw new IOException("Segment " + file + " is damaged at offset " + valid);
+        }
+        Segment segment = new Segment(number, new GroupCommitLog(file, valid));
+        segments.put(number, segment);
+        for (Entry entry : entries) {
+            apply(segment, entry);
+        }
+    }
+
+    /**
+     * Applies a record found while loading, later records win over earlier ones
+     */
+    private void apply(Segment segment, Entry entry) {
+        Location previous = index.remove(entry.hash());
+        if (previous != null) {
+            segments.get(previous.segment()).liveBytes -= previous.recordSize();
+        }
+        if (entry.type() == PUT) {
+            Location location = new Location(segment.number, entry.offset(), entry.length());
+            index.put(entry.hash(), location);
+            segment.liveBytes += location.recordSize();
+        }
+    }
+
+    /**
+     * Writes the index file of a full segment, listing its records in order
+     */
+    private void writeIndex(Segment segment) throws IOException {
+        List<Entry> entries = entries(segment);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeLong(segment.log.size());
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeByte(entry.type());
+                out.write(HexFormat.of().parseHex(entry.hash()));
+                out.writeLong(entry.offset());
+                out.writeInt(entry.length());
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        bytes.write(ByteBuffer.allocate(Long.BYTES).putLong(crc.getValue()).array());
+        Path staged = indexPath(segment.number).resolveSibling(segment.number + ".idx.tmp");
+        Files.write(staged, bytes.toByteArray());
+        Files.move(staged, indexPath(segment.number), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a full segment from its index file
+     * @return False if there is no usable index file and the segment has to be read whole
+     */
+    private boolean loadIndex(int number) throws IOException {
+        Path file = indexPath(number);
+        if (!Files.exists(file)) {
+            return false;
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length < Long.BYTES) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - Long.BYTES);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getLong(bytes.length - Long.BYTES) != crc.getValue() || buffer.getInt() != INDEX_MAGIC) {
+            return false;
+        }
+        long size = buffer.getLong();
+        if (size != Files.size(segmentPath(number))) {
+            return false;
+        }
+        Segment segment = new Segment(number, new GroupCommitLog(segmentPath(number), size));
+        segments.put(number, segment);
+        int count = buffer.getInt();
+        byte[] rawHash = new byte[HASH_LENGTH];
+        for (int i = 0; i < count; i++) {
+            byte type = buffer.get();
+            buffer.get(rawHash);
+            apply(segment, new Entry(type, HexFormat.of().formatHex(rawHash), buffer.getLong(), buffer.getInt()));
+        }
+        return true;
+    }
+
+    /**
+     * Reads the headers of every record of a segment, in order
+     */
+    private static List<Entry> entries(Segment segment) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long position = 0;
+        long size = segment.log.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        byte[] rawHash = new byte[HASH_LENGTH];
+        while (position < size) {
+            header.clear();
+            segment.log.read(header, position);
+            header.flip();
+            header.getInt();
+            byte type = header.get();
+            header.get(rawHash);
+            int length = header.getInt();
+            entries.add(new Entry(type, HexFormat.of().formatHex(rawHash), position, length));
+            position += HEADER_SIZE + length;
+        }
+        return entries;
+    }
+
+    /**
+     * Encodes a record: checksum, type, hash, length and content
+     */
+    private static ByteBuffer encode(byte type, String hash, byte[] data) {
+        byte[] rawHash = HexFormat.of().parseHex(hash);
+        if (rawHash.length != HASH_LENGTH) {
+            throw new IllegalArgumentException("Not a SHA-256 hash: " + hash);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(rawHash);
+        crc.update(data);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + data.length);
+        record.putInt((int) crc.getValue()).put(type).put(rawHash).putInt(data.length).put(data);
+        return record.flip();
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("%06d.pack", number));
+    }
+
+    private Path indexPath(int number) {
+        return directory.resolve(String.format("%06d.idx", number));
+    }
+
+}
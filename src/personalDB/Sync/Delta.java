@@ -0,0 +1,286 @@
+/**
+ * Block signatures and deltas between two versions of a file
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Sync;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The receiver describes the file it already has as a list of block
+ * signatures (weak rolling checksum plus a strong hash). The sender slides a
+ * window over its version of the file and, wherever the window matches one of
+ * those blocks, sends a reference to the block instead of its bytes.
+ */
+public class Delta {
+    private static final byte COPY = 1;
+    private static final byte LITERAL = 2;
+    private static final byte END = 3;
+    private static final int STRONG_LENGTH = 16;
+    private static final int MAX_LITERAL = 1 << 20;
+
+    private Delta() {}
+
+    /**
+     * Signatures of every block of a file
+     * @param blockSize Size of every block but the last
+     * @param weak Weak checksum of every block
+     * @param strong Strong hash of every block
+     */
+    public record Signature(int blockSize, int[] weak, byte[][] strong) {
+
+        /**
+         * @return Signature of a file that does not exist
+         */
+        public static Signature empty() {
+            return new Signature(Delta.blockSize(0), new int[0], new byte[0][]);
+        }
+
+        /**
+         * Writes the signature
+         * @param out Output
+         * @throws IOException If the output fails
+         */
+        public void write(DataOutput out) throws IOException {
+            out.writeInt(blockSize);
+            out.writeInt(weak.length);
+            for (int i = 0; i < weak.length; i++) {
+                out.writeInt(weak[i]);
+                out.write(strong[i]);
+            }
+        }
+
+        /**
+         * Reads a signature written by {@link #write(DataOutput)}
+         * @param in Input
+         * @return Signature read
+         * @throws IOException If the input fails
+         */
+        public static Signature read(DataInput in) throws IOException {
+            int blockSize = in.readInt();
+            int count = in.readInt();
+            int[] weak = new int[count];
+            byte[][] strong = new byte[count][STRONG_LENGTH];
+            for (int i = 0; i < count; i++) {
+                weak[i] = in.readInt();
+                in.readFully(strong[i]);
+            }
+            return new Signature(blockSize, weak, strong);
+        }
+    }
+
+    /**
+     * Chooses the block size for a file, around the square root of its size
+     * @param size Size of the file
+     * @return Block size in bytes
+     */
+    public static int blockSize(long size) {
+        long root = (long) Math.sqrt(size) & ~1023L;
+        return (int) Math.max(1024, Math.min(64 << 10, root));
+    }
+
+    /**
+     * Computes the signature of a file
+     * @param basis File the receiver already has
+     * @return Signature of every block of the file
+     * @throws IOException If the file cannot be read
+     */
+    public static Signature signature(Path basis) throws IOException {
+        long size = Files.size(basis);
+        int blockSize = blockSize(size);
+        List<Integer> weak = new ArrayList<>();
+        List<byte[]> strong = new ArrayList<>();
+        MessageDigest digest = newDigest();
+        byte[] block = new byte[blockSize];
+        try (InputStream in = Files.newInputStream(basis)) {
+            int read;
+            while ((read = in.readNBytes(block, 0, blockSize)) > 0) {
+                weak.add(RollingChecksum.of(block, 0, read));
+                strong.add(strongHash(digest, block, 0, read));
+            }
+        }
+        return new Signature(blockSize, weak.stream().mapToInt(Integer::intValue).toArray(),
+                strong.toArray(new byte[0][]));
+    }
+
+    /**
+     * Encodes a file as references to the blocks of the signature and literal bytes
+     * @param source File being sent
+     * @param signature Signature of the file the receiver has
+     * @param out Output for the delta
+     * @param whole Digest updated with the whole content of the file as it is read
+     * @return Number of literal bytes sent
+     * @throws IOException If the file cannot be read or the output fails
+     */
+    public static long encode(Path source, Signature signature, DataOutput out, MessageDigest whole) throws IOException {
+        int blockSize = signature.blockSize();
+        Map<Integer, List<Integer>> blocks = new HashMap<>();
+        for (int i = 0; i < signature.weak().length; i++) {
+            blocks.computeIfAbsent(signature.weak()[i], k -> new ArrayList<>()).add(i);
+        }
+        MessageDigest digest = newDigest();
+        RollingChecksum checksum = new RollingChecksum();
+        byte[] buffer = new byte[MAX_LITERAL + 2 * blockSize];
+        long literalBytes = 0;
+        int literalStart = 0;
+        int start = 0;
+        int end = 0;
+        boolean eof = false;
+        boolean rolling = false;
+
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            while (true) {
+                if (!eof && end - start < blockSize + 1) {
+                    System.arraycopy(buffer, literalStart, buffer, 0, end - literalStart);
+                    start -= literalStart;
+                    end -= literalStart;
+                    literalStart = 0;
+                    ByteBuffer wrapped = ByteBuffer.wrap(buffer, end, buffer.length - end);
+                    while (wrapped.hasRemaining() && !eof) {
+                        eof = channel.read(wrapped) == -1;
+                    }
+                    whole.update(buffer, end, wrapped.position() - end);
+                    end = wrapped.position();
+                }
+                if (end - start < blockSize || blocks.isEmpty()) {
+                    if (eof) {
+                        break;
+                    }
+                    if (blocks.isEmpty()) {
+                        start = end;
+                        literalBytes += writeLiteral(out, buffer, literalStart, start);
+                        literalStart = start;
+                        continue;
+                    }
+                }
+                if (!rolling) {
+                    checksum.reset(buffer, start, blockSize);
+                    rolling = true;
+                }
+                int match = findBlock(blocks, checksum.value(), signature, digest, buffer, start, blockSize);
+                if (match >= 0) {
+                    literalBytes += writeLiteral(out, buffer, literalStart, start);
+                    out.writeByte(COPY);
+                    out.writeInt(match);
+                    start += blockSize;
+                    literalStart = start;
+                    rolling = false;
+                } else if (start + blockSize < end) {
+                    checksum.roll(buffer[start], buffer[start + blockSize]);
+                    start++;
+                    if (start - literalStart >= MAX_LITERAL) {
+                        literalBytes += writeLiteral(out, buffer, literalStart, start);
+                        literalStart = start;
+                    }
+                } else if (eof) {
+                    break;
+                }
+            }
+            literalBytes += writeLiteral(out, buffer, literalStart, end);
+        }
+        out.writeByte(END);
+        return literalBytes;
+    }
+
+    /**
+     * Rebuilds the sender's file from the basis file and a delta
+     * @param basis File the receiver has, or null if there is none
+     * @param blockSize Block size of the signature the delta was made against
+     * @param in Input with the delta
+     * @param target File to be written
+     * @return SHA-256 of the rebuilt file
+     * @throws IOException If the delta is invalid or a file cannot be accessed
+     */
+    public static byte[] apply(Path basis, int blockSize, DataInput in, Path target) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] block = new byte[blockSize];
+        try (FileChannel basisChannel = basis == null ? null : FileChannel.open(basis, StandardOpenOption.READ);
+             OutputStream out = Files.newOutputStream(target)) {
+            while (true) {
+                byte op = in.readByte();
+                if (op == END) {
+                    break;
+                } else if (op == COPY) {
+                    int index = in.readInt();
+                    if (basisChannel == null) {
+                        throw new IOException("Delta refers to a block of a missing file.");
+                    }
+                    ByteBuffer buffer = ByteBuffer.wrap(block);
+                    long position = (long) index * blockSize;
+                    while (buffer.hasRemaining() && basisChannel.read(buffer, position + buffer.position()) != -1) {
+                        // Keep reading until the block is complete or the file ends
+                    }
+                    out.write(block, 0, buffer.position());
+                    digest.update(block, 0, buffer.position());
+                } else if (op == LITERAL) {
+                    byte[] literal = new byte[in.readInt()];
+                    in.readFully(literal);
+                    out.write(literal);
+                    digest.update(literal);
+                } else {
+                    throw new IOException("Invalid delta operation " + op);
+                }
+            }
+        }
+        return digest.digest();
+    }
+
+    private static int findBlock(Map<Integer, List<Integer>> blocks, int weak, Signature signature,
+                                 MessageDigest digest, byte[] data, int offset, int length) {
+        List<Integer> candidates = blocks.get(weak);
+        if (candidates == null) {
+            return -1;
+        }
+        byte[] strong = strongHash(digest, data, offset, length);
+        for (int candidate : candidates) {
+            if (Arrays.equals(signature.strong()[candidate], strong)) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    private static long writeLiteral(DataOutput out, byte[] data, int from, int to) throws IOException {
+        if (to <= from) {
+            return 0;
+        }
+        out.writeByte(LITERAL);
+        out.writeInt(to - from);
+        out.write(data, from, to - from);
+        return to - from;
+    }
+
+    private static byte[] strongHash(MessageDigest digest, byte[] data, int offset, int length) {
+        digest.reset();
+        digest.update(data, offset, length);
+        return Arrays.copyOf(digest.digest(), STRONG_LENGTH);
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
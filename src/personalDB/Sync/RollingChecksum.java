@@ -0,0 +1,68 @@
+/**
+ * Weak rolling checksum used to find matching blocks
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Sync;
+
+/**
+ * The rsync weak checksum: two 16 bit sums over a window of bytes that can
+ * be moved forward one byte at a time in constant time
+ */
+public class RollingChecksum {
+    private int a;
+    private int b;
+    private int length;
+
+    /**
+     * Computes the checksum of a window from scratch
+     * @param data Buffer
+     * @param offset Start of the window
+     * @param length Length of the window
+     */
+    public void reset(byte[] data, int offset, int length) {
+        a = 0;
+        b = 0;
+        this.length = length;
+        for (int i = 0; i < length; i++) {
+            int value = data[offset + i] & 0xFF;
+            a += value;
+            b += (length - i) * value;
+        }
+        a &= 0xFFFF;
+        b &= 0xFFFF;
+    }
+
+    /**
+     * Moves the window one byte forward
+     * @param out Byte leaving the window
+     * @param in Byte entering the window
+     */
+    public void roll(byte out, byte in) {
+        a = (a - (out & 0xFF) + (in & 0xFF)) & 0xFFFF;
+        b = (b - length * (out & 0xFF) + a) & 0xFFFF;
+    }
+
+    /**
+     * @return Checksum of the current window
+     */
+    public int value() {
+        return a | (b << 16);
+    }
+
+    /**
+     * Computes the checksum of a block
+     * @param data Buffer
+     * @param offset Start of the block
+     * @param length Length of the block
+     * @return Checksum of the block
+     */
+    public static int of(byte[] data, int offset, int length) {
+        RollingChecksum checksum = new RollingChecksum();
+        checksum.reset(data, offset, length);
+        return checksum.value();
+    }
+
+}
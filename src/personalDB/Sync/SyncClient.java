@@ -0,0 +1,202 @@
+/**
+ * Sending end of a sync between two personalDB instances
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Sync;
+
+import personalDB.Engine.TreeWalker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Objects of this class push a file or a directory tree to a
+ * {@link SyncServer}. Files are taken from a shared queue by several
+ * connections at once, so small files do not wait behind a large one and the
+ * round trip of one file overlaps with the transfer of another.
+ * Every connection first answers the challenge of the server with the
+ * secret both sides share. A file whose connection fails counts as failed.
+ */
+public class SyncClient {
+    public static final int DEFAULT_CONNECTIONS = 4;
+
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final byte[] secret;
+    private final AtomicInteger sent = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong literalBytes = new AtomicLong();
+
+    /**
+     * Totals of a sync
+     * @param files Number of files synced
+     * @param failed Number of files that could not be synced
+     * @param totalBytes Size of the files synced, what a full copy would send
+     * @param literalBytes File content actually sent
+     */
+    public record Result(int files, int failed, long totalBytes, long literalBytes) {
+
+        /**
+         * @return Bytes that did not have to be sent
+         */
+        public long savedBytes() {
+            return totalBytes - literalBytes;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param host Host of the server
+     * @param port Port of the server
+     * @param connections Number of files sent at the same time
+     * @throws IOException If the shared secret cannot be read
+     */
+    public SyncClient(String host, int port, int connections) throws IOException {
+        this.host = host;
+        this.port = port;
+        this.connections = Math.max(1, connections);
+        this.secret = SyncServer.secret();
+    }
+
+    /**
+     * Sends a file, or every file under a directory, to the server
+     * @param source File or directory to be sent
+     * @return Totals of the sync
+     * @throws IOException If the source cannot be read or no connection can be made
+     */
+    public Result push(Path source) throws IOException {
+        Path base = Files.isDirectory(source) ? source : source.toAbsolutePath().getParent();
+        Queue<Path> files = new ConcurrentLinkedQueue<>();
+        if (Files.isDirectory(source)) {
+            new TreeWalker(source, false).walk((path, attributes) -> {
+                if (attributes.isRegularFile()) {
+                    files.add(path);
+                }
+                return true;
+            });
+        } else if (Files.isRegularFile(source)) {
+            files.add(source.toAbsolutePath());
+        } else {
+            throw new IOException("No such file or directory: " + source);
+        }
+
+        List<Thread> workers = new ArrayList<>();
+        List<IOException> errors = new ArrayList<>();
+        for (int i = 0; i < Math.min(connections, files.size()); i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    send(base, files);
+                } catch (IOException e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            }, "personalDB-sync-client-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (!errors.isEmpty() && sent.get() == 0) {
+            throw errors.get(0);
+        }
+        failed.addAndGet(files.size());
+        return new Result(sent.get(), failed.get(), totalBytes.get(), literalBytes.get());
+    }
+
+    /**
+     * Sends files from the queue over a single connection until the queue is empty
+     */
+    private void send(Path base, Queue<Path> files) throws IOException {
+        try (Socket socket = new Socket(host, port);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16))) {
+            socket.setTcpNoDelay(true);
+            byte[] nonce = new byte[SyncServer.NONCE_LENGTH];
+            in.readFully(nonce);
+            out.write(SyncServer.answer(secret, nonce));
+            out.flush();
+            if (in.readByte() != SyncServer.OK) {
+                throw new IOException(in.readUTF());
+            }
+            Path file;
+            while ((file = files.poll()) != null) {
+                try {
+                    sendOne(base, file, in, out);
+                } catch (IOException e) {
+                    failed.incrementAndGet();
+                    throw e;
+                }
+            }
+            out.writeByte(SyncServer.DONE);
+            out.flush();
+        }
+    }
+
+    /**
+     * Sends a single file over an open connection
+     */
+    private void sendOne(Path base, Path file, DataInputStream in, DataOutputStream out) throws IOException {
+        String relative = relativeName(base, file);
+        out.writeByte(SyncServer.FILE);
+        out.writeUTF(relative);
+        out.flush();
+        if (in.readByte() != SyncServer.OK) {
+            System.out.println("Could not sync " + relative + ": " + in.readUTF());
+            failed.incrementAndGet();
+            return;
+        }
+        Delta.Signature signature = Delta.Signature.read(in);
+        MessageDigest whole = Delta.newDigest();
+        long literal = Delta.encode(file, signature, out, whole);
+        out.write(whole.digest());
+        out.flush();
+        if (in.readByte() != SyncServer.OK) {
+            System.out.println("Could not sync " + relative + ": " + in.readUTF());
+            failed.incrementAndGet();
+            return;
+        }
+        sent.incrementAndGet();
+        totalBytes.addAndGet(Files.size(file));
+        literalBytes.addAndGet(literal);
+    }
+
+    /**
+     * @return Path of the file relative to the base, separated by /
+     */
+    private static String relativeName(Path base, Path file) {
+        StringBuilder name = new StringBuilder();
+        for (Path part : base.relativize(file)) {
+            if (name.length() > 0) {
+                name.append('/');
+            }
+            name.append(part);
+        }
+        return name.toString();
+    }
+
+}
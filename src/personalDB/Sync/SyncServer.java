@@ -0,0 +1,297 @@
+/**
+ * Receiving end of a sync between two personalDB instances
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Sync;
+
+import personalDB.Engine.Workspace;
+import personalDB.Storage.Journal;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Objects of this class accept connections from {@link SyncClient}s and write
+ * the files they send under a root directory. Every connection is handled by
+ * its own thread and carries one file at a time: the server answers with the
+ * signature of its current copy, reads the delta, rebuilds the file next to
+ * the old one and renames it into place once its hash checks out.
+ * The server listens on the loopback interface unless it is given another
+ * address. Every connection starts with a challenge: the server sends a
+ * random nonce and the client must answer with its HMAC-SHA256 under the
+ * secret both sides share, see {@link #secret()}. Files are only written
+ * under the real path of the root, so a symbolic link in the tree cannot
+ * lead a write out of it.
+ * The files a connection overwrites are recorded in a batch of the journal
+ * that is committed when the connection ends, so they can be put back with
+ * UNDO.
+ */
+public class SyncServer implements Closeable {
+    static final byte FILE = 1;
+    static final byte DONE = 2;
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+    static final int NONCE_LENGTH = 32;
+    private static final int SECRET_LENGTH = 32;
+
+    private final Path root;
+    private final Path realRoot;
+    private final byte[] secret;
+    private final ServerSocket socket;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Starts listening
+     * @param root Directory where received files are written
+     * @param address Address to listen on, port 0 for any free port
+     * @throws IOException If the secret cannot be read or the address cannot be bound
+     */
+    public SyncServer(Path root, InetSocketAddress address) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.realRoot = this.root.toRealPath();
+        this.secret = secret();
+        this.socket = new ServerSocket();
+        try {
+            socket.bind(address);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        Thread acceptor = new Thread(this::acceptLoop, "personalDB-sync-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return Port the server is listening on
+     */
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * @return Directory where received files are written
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Reads the secret shared by both ends of a sync: the system property
+     * personaldb.sync.secret, or the file sync/secret of the workspace,
+     * which is created with a random secret readable only by its owner the
+     * first time it is needed
+     * @return The secret
+     * @throws IOException If the secret file cannot be read or created
+     */
+    public static byte[] secret() throws IOException {
+        String property = System.getProperty("personaldb.sync.secret");
+        if (property != null) {
+            return property.getBytes(StandardCharsets.UTF_8);
+        }
+        Path file = Workspace.directory("sync").resolve("secret");
+        if (!Files.exists(file)) {
+            byte[] generated = new byte[SECRET_LENGTH];
+            new SecureRandom().nextBytes(generated);
+            Path staged = Files.createTempFile(file.getParent(), "secret", ".tmp");
+            try {
+                try {
+                    Files.setPosixFilePermissions(staged, PosixFilePermissions.fromString("rw-------"));
+                } catch (UnsupportedOperationException e) {
+                    // No POSIX permissions on this file system
+                }
+                Files.writeString(staged, HexFormat.of().formatHex(generated));
+                Files.move(staged, file);
+            } catch (FileAlreadyExistsException e) {
+                // Created by another instance meanwhile
+            } finally {
+                Files.deleteIfExists(staged);
+            }
+        }
+        return Files.readString(file, StandardCharsets.UTF_8).strip().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param secret Shared secret
+     * @param nonce Challenge sent by the server
+     * @return Answer to the challenge
+     */
+    static byte[] answer(byte[] secret, byte[] nonce) throws IOException {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            return mac.doFinal(nonce);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Stops accepting connections, transfers in progress are dropped
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private void acceptLoop() {
+        while (!socket.isClosed()) {
+            try {
+                Socket client = socket.accept();
+                Thread handler = new Thread(() -> handle(client), "personalDB-sync " + client.getRemoteSocketAddress());
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+    }
+
+    /**
+     * Receives files from a single connection until the client is done
+     * @param client Connected socket
+     */
+    private void handle(Socket client) {
+        Journal.Batch batch = null;
+        try (client;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream(), 1 << 16));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream(), 1 << 16))) {
+            if (!authenticate(in, out)) {
+                return;
+            }
+            batch = Journal.open().begin("SYNC receive from " + client.getRemoteSocketAddress());
+            while (in.readByte() == FILE) {
+                receive(in.readUTF(), in, out, batch);
+                out.flush();
+            }
+        } catch (EOFException e) {
+            // Client went away
+        } catch (IOException e) {
+            System.out.println("Sync connection failed.\n" + e);
+        } finally {
+            if (batch != null) {
+                try {
+                    batch.commit();
+                } catch (IOException e) {
+                    System.out.println("Could not write the journal.\n" + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Challenges the client to prove it knows the secret
+     * @return True if it does, otherwise the client is told and the connection is to be closed
+     */
+    private boolean authenticate(DataInputStream in, DataOutputStream out) throws IOException {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        random.nextBytes(nonce);
+        out.write(nonce);
+        out.flush();
+        byte[] expected = answer(secret, nonce);
+        byte[] received = new byte[expected.length];
+        in.readFully(received);
+        if (!MessageDigest.isEqual(expected, received)) {
+            out.writeByte(ERROR);
+            out.writeUTF("Wrong sync secret");
+            out.flush();
+            return false;
+        }
+        out.writeByte(OK);
+        out.flush();
+        return true;
+    }
+
+    private void receive(String relative, DataInputStream in, DataOutputStream out, Journal.Batch batch)
+            throws IOException {
+        Path target = resolve(relative);
+        if (target == null || Files.isDirectory(target) || Files.isSymbolicLink(target) || !isInsideRoot(target)) {
+            out.writeByte(ERROR);
+            out.writeUTF("Invalid path " + relative);
+            return;
+        }
+        batch.makeDirectories(target.getParent());
+        if (!isInsideRoot(target)) {
+            // A link was put in place while the directories were created
+            out.writeByte(ERROR);
+            out.writeUTF("Invalid path " + relative);
+            return;
+        }
+        boolean exists = Files.isRegularFile(target);
+        Delta.Signature signature = exists ? Delta.signature(target) : Delta.Signature.empty();
+        out.writeByte(OK);
+        signature.write(out);
+        out.flush();
+
+        Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".part");
+        try {
+            byte[] hash = Delta.apply(exists ? target : null, signature.blockSize(), in, temp);
+            byte[] expected = new byte[hash.length];
+            in.readFully(expected);
+            if (Arrays.equals(hash, expected)) {
+                batch.replaceFile(target, temp);
+                out.writeByte(OK);
+            } else {
+                out.writeByte(ERROR);
+                out.writeUTF("Hash mismatch for " + relative);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Checks that the deepest existing directory above a path really is
+     * under the root, following symbolic links
+     * @param target Path under the root, lexically
+     * @return True if writing the path cannot leave the root
+     */
+    private boolean isInsideRoot(Path target) throws IOException {
+        Path parent = target.getParent();
+        while (!Files.exists(parent)) {
+            parent = parent.getParent();
+        }
+        return parent.toRealPath().startsWith(realRoot);
+    }
+
+    /**
+     * Turns a path sent by a client into a path under the root, refusing
+     * anything that would escape it
+     * @param relative Path with / separators
+     * @return Path under the root or null if the path is not acceptable
+     */
+    private Path resolve(String relative) {
+        Path target = root;
+        for (String part : relative.split("/")) {
+            if (part.isEmpty() || part.equals(".") || part.equals("..") || part.contains("\\") || part.contains(":")) {
+                return null;
+            }
+            target = target.resolve(part);
+        }
+        return target.normalize().startsWith(root) && !target.equals(root) ? target : null;
+    }
+
+}
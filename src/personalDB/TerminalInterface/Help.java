@@ -10,10 +10,14 @@ package personalDB.TerminalInterface;
 
 import personalDB.Parser.Operation;
 import personalDB.Parser.Parser;
+import personalDB.Storage.Journal;
 
 import java.util.List;
 
 public class Help {
+    private static final String TRANSFER_FLAGS = "-f: replaces files that already exist\n" +
+            "-j: number of files copied at the same time\n" +
+            "-budget: most bytes in the files being copied at the same time, e.g. 512M\n";
 
     /**
      * Displays a help screen based on the arguments give
@@ -43,6 +47,22 @@ public class Help {
         System.out.println("CD: Goes to the specified directory");
         System.out.println("OPEN: Opens specified file");
         System.out.println("BACK: Goes to previous directory");
+        System.out.println("INDEX: Indexes the file names in the current directory");
+        System.out.println("PUT: Stores files by their hash");
+        System.out.println("GET: Retrieves a stored file by its hash");
+        System.out.println("WHERE: Shows the paths stored with a hash");
+        System.out.println("HASH: Shows the hash of a file");
+        System.out.println("GC: Deletes stored data no file refers to");
+        System.out.println("SYNC: Sends files to another personalDB");
+        System.out.println("CATALOG: Records the metadata of every file in the current directory");
+        System.out.println("DUPES: Finds files with the same content");
+        System.out.println("COPY: Copies a file or directory");
+        System.out.println("MOVE: Moves a file or directory");
+        System.out.println("STATS: Shows where the time of every command went");
+        System.out.println("SNAPSHOT: Records the current directory tree");
+        System.out.println("DIFF: Shows what changed since a snapshot");
+        System.out.println("SEARCH: Finds files by their content");
+        System.out.println("UNDO: Reverts the last commands that created, deleted or overwrote files");
         System.out.println("Type \"HELP COMMAND\" for usage information.");
     }
 
@@ -54,12 +74,116 @@ public class Help {
         switch (command) {
             case HELP -> System.out.println("Displays all usable commands.\nUsage: HELP");
             case EXIT -> System.out.println("Exits the program.\nUsage: EXIT");
-            case FIND -> System.out.println("Finds a file.\nUsage: FIND FILENAME\nE.g: FIND JpersonalDB.java");
-            case DELETE -> System.out.println("Deletes a file in the current directory.\nUsage: DELETE FILENAME");
-            case CREATE -> System.out.println("Creates a file in the current directory.\nUsage: CREATE FILENAME");
+            case FIND -> System.out.println("Finds a file in the current directory tree, by name or by a query.\n" +
+                    "Usage: FIND [-all] [-follow] [-prefix | -ext] FILENAME | FIND [-all] [-follow] TERM... | " +
+                    "FIND -fuzzy [-n COUNT] TEXT\n" +
+                    "-all: prints every file found instead of only the first one\n-follow: also searches symbolic links\n" +
+                    "-prefix: matches the start of the name\n-ext: matches the extension\n" +
+                    "-fuzzy: shows the COUNT files and directories, 20 by default, whose names are closest to TEXT, " +
+                    "ignoring case. Names containing TEXT come first, then names a typo or two away. Needs INDEX.\n" +
+                    "A query matches the files that satisfy every term, terms are FIELD OPERATOR VALUE:\n" +
+                    "name=, name!=, name~GLOB: the name, a glob uses * and ?\next=, ext!=, ext~GLOB: the extension\n" +
+                    "size=, <, <=, >, >=: the size, e.g. size>10M\n" +
+                    "mtime<, <=, >, >=: the age, e.g. mtime<7d for the last 7 days, or a date, e.g. mtime>=2024-01-31\n" +
+                    "type=f|d|l: files, directories or links, directories are only found when asked for\n" +
+                    "Indexes made by INDEX and CATALOG are used when they can answer part of the query.\n" +
+                    "Searches for an exact name or extension skip the directories whose summary shows it is not " +
+                    "under them. Summaries are only trusted while INDEX watches the tree, or for " +
+                    "-Dpersonaldb.filter.maxage=SECONDS if set, which may miss files created meanwhile.\n" +
+                    "E.g: FIND -all JpersonalDB.java\nE.g: FIND -all ext=pdf size>10M mtime<7d name~report*");
+            case DELETE -> System.out.println("Deletes files in the current directory, their stored copies are released. " +
+                    "Files are moved to the trash of the journal, so UNDO can bring them back.\n" +
+                    "Patterns such as glob:*.tmp, glob:**/*.log or regex:.*\\.bak select every matching file, " +
+                    "names without glob: or regex: are always taken literally.\n" +
+                    "-j: number of files deleted at the same time\nUsage: DELETE [-j COUNT] FILENAME|PATTERN...");
+            case CREATE -> System.out.println("Creates files in the current directory.\nUsage: CREATE [-j COUNT] FILENAME...");
+            case MKDIR -> System.out.println("Creates directories in the current directory.\nUsage: MKDIR [-j COUNT] DIRECTORY...");
+            case RMDIR -> System.out.println("Removes empty directories, patterns starting with glob: or regex: " +
+                    "select every matching directory.\n" +
+                    "Usage: RMDIR [-j COUNT] DIRECTORY|PATTERN...");
             case CD -> System.out.println("Go to the specified directory.\nUsage: CD DIRECTORY\nE.g: CD /home/documents/personalDB");
             case OPEN -> System.out.println("Opens the specified file in the current directory with the default program.\nUsage: OPEN FILENAME");
             case BACK -> System.out.println("Goes to the previous directory.\nUsage: BACK");
+            case LS -> System.out.println("Lists the content of the current directory.\nUsage: LS [-l] [-n COUNT]\n" +
+                    "-l: also shows the type, size and modification time of every entry\n-n: shows at most COUNT entries");
+            case INDEX -> System.out.println("Indexes the file names in the current directory so FIND answers without " +
+                    "reading the disk.\nThe index is kept up to date while the program runs, afterwards it is used while no " +
+                    "indexed directory changes.\n-rebuild: rebuilds the index even if it is up to date\n" +
+                    "-drop: removes the index\nUsage: INDEX [-rebuild | -drop]");
+            case PUT -> System.out.println("Stores copies of files in the current directory, a single file also prints its hash.\n" +
+                    "Files with the same content are only stored once, large files are split into chunks so similar " +
+                    "files share the parts they have in common. With -Dpersonaldb.pack=true small files are appended " +
+                    "to a few pack files instead of taking a file each.\n" +
+                    "Patterns such as glob:*.txt or glob:**/*.json select every matching file, " +
+                    "names without glob: or regex: are always taken literally.\n" +
+                    "-j: number of files stored at the same time\nUsage: PUT [-j COUNT] FILENAME|PATTERN...");
+            case GET -> System.out.println("Copies a stored file into a new file in the current directory.\n" +
+                    "The hash can be shortened to its first 8 characters.\nUsage: GET HASH FILENAME");
+            case WHERE -> System.out.println("Shows the paths of the files stored with the given hash.\nUsage: WHERE HASH");
+            case HASH -> System.out.println("Shows the hash of a file in the current directory, the same one PUT " +
+                    "stores it under.\nUsage: HASH FILENAME");
+            case GC -> System.out.println("Deletes every stored chunk that no stored file refers to anymore and " +
+                    "rewrites the pack files that hold deleted files.\n" +
+                    "Deleting files already does part of this work.\nUsage: GC");
+            case SYNC -> System.out.println("Sends files to another personalDB, only the parts the other side does not have are transferred.\n" +
+                    "SYNC LISTEN PORT receives files into the current directory, only from this machine unless " +
+                    "HOST:PORT names another interface to listen on, SYNC STOP stops receiving.\n" +
+                    "Both sides must share the secret in sync/secret of the workspace, created by the first SYNC, " +
+                    "or given with -Dpersonaldb.sync.secret.\n" +
+                    "Usage: SYNC LISTEN [HOST:]PORT | SYNC STOP | SYNC HOST PORT [FILENAME]");
+            case CATALOG -> System.out.println("Records the path, size, modification time and type of every entry in the " +
+                    "current directory tree, so they can be queried without reading the disk.\n" +
+                    "-hash: also records the hash of every file, hashes of unchanged files are kept between builds\n" +
+                    "GET shows one entry, SCAN shows the entries under the current directory that match every filter:\n" +
+                    "-prefix: path relative to the current directory starts with PREFIX\n" +
+                    "-size: size between MIN and MAX, e.g. 10K:2M, either side can be left out\n" +
+                    "-mtime: modified between two dates, e.g. 2024-01-01:2024-06-30\n-n: shows at most COUNT entries\n" +
+                    "Usage: CATALOG [-hash] | CATALOG GET NAME | CATALOG SCAN [-prefix PREFIX] [-size MIN:MAX] " +
+                    "[-mtime FROM:TO] [-n COUNT] | CATALOG DROP");
+            case DUPES -> System.out.println("Finds files with the same content in the current directory tree and " +
+                    "shows how many bytes removing the copies would free.\nFiles are compared by size first, then by " +
+                    "their first and last 4 KiB, and only then read whole.\n" +
+                    "-link: replaces every copy with a hard link to the first file of its group\n" +
+                    "-j: number of files read at the same time\n-min: ignores files smaller than SIZE, e.g. 1M\n" +
+                    "-n: shows at most COUNT groups\nUsage: DUPES [-link] [-j COUNT] [-min SIZE] [-n COUNT]");
+            case COPY -> System.out.println("Copies a file or a directory tree, into TARGET if it is a directory.\n" +
+                    "Files are copied into FILE.part and renamed when complete. Running an interrupted copy again " +
+                    "continues it, files already copied are skipped.\n" + TRANSFER_FLAGS +
+                    "Usage: COPY [-f] [-j COUNT] [-budget SIZE] SOURCE TARGET");
+            case MOVE -> System.out.println("Moves a file or a directory tree, into TARGET if it is a directory.\n" +
+                    "Within a file system this is a single rename, otherwise the source is copied and then removed.\n" +
+                    TRANSFER_FLAGS + "Usage: MOVE [-f] [-j COUNT] [-budget SIZE] SOURCE TARGET");
+            case STATS -> System.out.println("Shows the latency percentiles of every command that ran, the bytes " +
+                    "read and written, the directory entries scanned and the hit rate of every cache.\n" +
+                    "Commands are also recorded as personalDB.Operation events by Java Flight Recorder.\n" +
+                    "-json: prints the statistics as JSON, or writes them to FILE, latencies in nanoseconds\n" +
+                    "-reset: starts counting again afterwards\nUsage: STATS [-json [FILE]] [-reset]");
+            case SNAPSHOT -> System.out.println("Records the current directory tree under NAME, by default the " +
+                    "current date and time. Only files whose size or modification time changed since the last " +
+                    "snapshot of the same directory are hashed again, and directories that did not change are " +
+                    "shared with earlier snapshots.\n-list: shows every snapshot\n" +
+                    "-drop: deletes a snapshot\nUsage: SNAPSHOT [NAME] | SNAPSHOT -list | SNAPSHOT -drop NAME");
+            case DIFF -> System.out.println("Shows what changed between the snapshots OLD and NEW, or between OLD " +
+                    "and its directory as it is now. Lines start with + for added, - for removed, M for modified " +
+                    "and T for entries whose modification time alone changed. Directories that did not change are " +
+                    "skipped without being read.\n-n: shows at most COUNT changes\nUsage: DIFF [-n COUNT] OLD [NEW]");
+            case SEARCH -> System.out.println("Finds the files under the current directory whose content matches " +
+                    "a query, from an index of the words of every text file, so no file is read.\n" +
+                    "-index: indexes the current directory, or brings the index covering it up to date, only new " +
+                    "and changed files are read. Changes are not seen until it runs again.\n" +
+                    "-drop: removes the index of the current directory\n-n: shows at most COUNT files\n" +
+                    "A query is made of words, which ignore case and punctuation: report matches Report and report. " +
+                    "word* matches the words starting with word, \"two words\" or two-words the words in order. " +
+                    "Terms next to each other must all match, OR matches either side, NOT or - excludes a term and " +
+                    "parentheses group terms.\n" +
+                    "Usage: SEARCH -index | SEARCH -drop | SEARCH [-n COUNT] QUERY\n" +
+                    "E.g: SEARCH \"quarterly report\" (invoice OR receipt*) -draft");
+            case UNDO -> System.out.println("Reverts every change of the last COUNT commands that created or deleted " +
+                    "files and directories, newest first, by default the last one. Deleted files and files overwritten " +
+                    "by COPY, MOVE, DUPES -link or a sync are moved back from the trash, and moved files are moved " +
+                    "back. A deleted file is not put back if another one took its place, and a created file is kept if " +
+                    "it was written to since. Only the last " + Journal.KEPT_BATCHES + " commands can be undone.\n" +
+                    "-l: shows the commands that can be undone, newest first\nUsage: UNDO [COUNT] | UNDO -l");
             default -> System.out.println("Invalid command specified.");
         }
     }
@@ -8,6 +8,13 @@
 package personalDB.TerminalInterface;
 
 import personalDB.Engine.DirectoryHandler;
+import personalDB.Engine.DirectoryListing;
+import personalDB.Engine.Status;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 
 public class Interface {
     private final DirectoryHandler fileEngine;
@@ -25,19 +32,45 @@ public class Interface {
         inputSection();
     }
 
-    public void displayDirectoryContent() {
+    /**
+     * Prints the content of the current directory as it is listed, through a
+     * single buffered writer
+     * @param details True to also print the type, size and modification time of every entry
+     * @param limit Maximum number of entries printed
+     */
+    public void displayDirectoryContent(boolean details, int limit) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        int[] printed = {0};
         try {
-            String[] content = this.fileEngine.listAll();
-            if (content.length == 0) {
-                System.out.println("This directory is empty.");
-            } else {
-                System.out.println("Contents of " + this.fileEngine.getCurrentDir() + ":");
-                for (String s : content) {
-                    System.out.println(s);
+            int total = DirectoryListing.list(this.fileEngine.getDirectory().toPath(), details, entry -> {
+                if (printed[0] >= limit) {
+                    return false;
+                }
+                if (printed[0] == 0) {
+                    out.println("Contents of " + this.fileEngine.getCurrentDir() + ":");
+                }
+                if (details) {
+                    out.printf("%s %12d %tF %<tR %s%n", entry.directory() ? "d" : "-", entry.size(),
+                            entry.modified(), entry.name());
+                } else {
+                    out.println(entry.name());
                 }
+                printed[0]++;
+                return true;
+            });
+            if (total == 0) {
+                out.println("This directory is empty.");
+            } else if (total < 0) {
+                out.println("Showing the first " + printed[0] + " entries.");
+            } else if (total > printed[0]) {
+                out.println("Showing " + printed[0] + " of " + total + " entries.");
             }
-        } catch (NullPointerException e) {
-            System.out.println("Cannot display directory content\n" + e);
+        } catch (IOException e) {
+            out.flush();
+            Status.fail("Cannot display directory content\n" + e);
+        } finally {
+            // Flushed but not closed, closing would close System.out
+            out.flush();
         }
     }
 
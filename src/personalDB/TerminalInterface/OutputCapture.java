@@ -0,0 +1,110 @@
+/**
+ * Per thread capture of the program output
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.TerminalInterface;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Commands print straight to System.out. To run several of them at once
+ * without mixing their output, {@link #install()} replaces System.out with a
+ * stream that writes to a buffer of the current thread while that thread is
+ * capturing, and to the original output otherwise. Work handed to other
+ * threads must print to {@link #current()} instead of System.out.
+ */
+public class OutputCapture {
+    private static final ThreadLocal<ByteArrayOutputStream> buffers = new ThreadLocal<>();
+    private static PrintStream original;
+
+    private OutputCapture() {}
+
+    /**
+     * Replaces System.out, calling it more than once has no effect
+     */
+    public static synchronized void install() {
+        if (original != null) {
+            return;
+        }
+        original = System.out;
+        PrintStream target = original;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                ByteArrayOutputStream buffer = buffers.get();
+                if (buffer != null) {
+                    buffer.write(b);
+                } else {
+                    target.write(b);
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                ByteArrayOutputStream buffer = buffers.get();
+                if (buffer != null) {
+                    buffer.write(b, off, len);
+                } else {
+                    target.write(b, off, len);
+                }
+            }
+
+            @Override
+            public void flush() {
+                if (buffers.get() == null) {
+                    target.flush();
+                }
+            }
+        }, false));
+    }
+
+    /**
+     * Starts capturing everything the current thread prints
+     */
+    public static void start() {
+        buffers.set(new ByteArrayOutputStream());
+    }
+
+    /**
+     * Stops capturing on the current thread
+     * @return Everything printed since {@link #start()}
+     */
+    public static byte[] stop() {
+        ByteArrayOutputStream buffer = buffers.get();
+        buffers.remove();
+        return buffer == null ? new byte[0] : buffer.toByteArray();
+    }
+
+    /**
+     * Returns where the current thread prints, for threads that print on its
+     * behalf: a pool thread printing through System.out would bypass the
+     * capture of the thread that handed it the work
+     * @return The capture buffer of the current thread, or System.out if it is not capturing
+     */
+    public static PrintStream current() {
+        ByteArrayOutputStream buffer = buffers.get();
+        return buffer == null ? System.out : new PrintStream(buffer, false);
+    }
+
+    /**
+     * Output is only captured when commands run in batch or server mode, so
+     * this tells them apart from the interactive terminal
+     * @return True if {@link #install()} was called
+     */
+    public static synchronized boolean isInstalled() {
+        return original != null;
+    }
+
+    /**
+     * @return Output that System.out pointed to before the capture was installed
+     */
+    public static PrintStream original() {
+        return original == null ? System.out : original;
+    }
+
+}
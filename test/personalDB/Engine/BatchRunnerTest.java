@@ -0,0 +1,78 @@
+/**
+ * Tests of scripts run with --batch
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the program in batch mode in another process, since the output
+ * capture replaces System.out for the whole JVM.
+ */
+class BatchRunnerTest {
+    private static final int FILES = 300;
+
+    @TempDir
+    Path root;
+
+    @TempDir
+    Path home;
+
+    @Test
+    void findAllOutputKeepsScriptOrder() throws Exception {
+        for (int i = 0; i < FILES; i++) {
+            Path directory = Files.createDirectories(root.resolve("d" + i % 10).resolve("s" + i % 7));
+            Files.createFile(directory.resolve("f" + i + ".txt"));
+            Files.createFile(directory.resolve("f" + i + ".md"));
+        }
+        Path script = Files.writeString(root.resolve("script"), "FIND -all -ext txt\nFIND -all -ext md\n");
+
+        List<String> lines = runBatch(script);
+
+        assertEquals(2 * FILES + 2, lines.size(), String.join("\n", lines));
+        for (int i = 0; i < FILES; i++) {
+            assertTrue(lines.get(i).endsWith(".txt"), "Line " + i + ": " + lines.get(i));
+            assertTrue(lines.get(FILES + 1 + i).endsWith(".md"), "Line " + (FILES + 1 + i) + ": " + lines.get(FILES + 1 + i));
+        }
+        assertEquals(FILES + " file(s) found.", lines.get(FILES));
+        assertEquals(FILES + " file(s) found.", lines.get(2 * FILES + 1));
+    }
+
+    /**
+     * Runs a script from the root directory
+     * @return Lines printed to standard output
+     */
+    private List<String> runBatch(Path script) throws IOException, InterruptedException {
+        Path output = home.resolve("stdout");
+        Process process = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                // Several batch threads and walker threads even on a single core
+                "-XX:ActiveProcessorCount=4",
+                "-Dpersonaldb.home=" + home,
+                "personalDB.JpersonalDB", "--batch", script.toString())
+                .directory(root.toFile())
+                .redirectOutput(output.toFile())
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS), "The batch did not finish");
+        assertEquals(0, process.exitValue());
+        return Files.readAllLines(output, StandardCharsets.UTF_8);
+    }
+
+}
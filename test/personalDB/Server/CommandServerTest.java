@@ -0,0 +1,107 @@
+/**
+ * Tests of the command server
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandServerTest {
+    private static final int FILES = 200;
+
+    @TempDir
+    Path root;
+
+    @TempDir
+    Path home;
+
+    private CommandServer server;
+
+    @BeforeEach
+    void start() throws IOException {
+        System.setProperty("personaldb.home", home.toString());
+        server = new CommandServer(root, "127.0.0.1:0");
+        Thread serving = new Thread(server::serve, "personalDB-test-server");
+        serving.setDaemon(true);
+        serving.start();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        server.close();
+        System.clearProperty("personaldb.home");
+    }
+
+    @Test
+    void findAllSendsEveryMatchToTheClient() throws IOException {
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < FILES; i++) {
+            Path directory = Files.createDirectories(root.resolve("d" + i % 10).resolve("s" + i % 7));
+            expected.add(Files.createFile(directory.resolve("f" + i + ".txt")).toString());
+            Files.createFile(directory.resolve("f" + i + ".md"));
+        }
+        InetSocketAddress address = (InetSocketAddress) server.getAddress();
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out.write("FIND -all -ext txt\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            assertEquals("0", in.readLine());
+            List<String> output = new ArrayList<>();
+            for (String line = in.readLine(); line != null && !line.equals("."); line = in.readLine()) {
+                output.add(line);
+            }
+            assertEquals(FILES + " file(s) found.", output.get(output.size() - 1));
+            assertEquals(expected, new HashSet<>(output.subList(0, output.size() - 1)));
+        }
+    }
+
+    @Test
+    void socketPathHoldingAFileIsNotDeleted() throws IOException {
+        Path file = Files.writeString(home.resolve("notes.txt"), "keep me");
+        assertThrows(BindException.class, () -> new CommandServer(root, file.toString()));
+        assertEquals("keep me", Files.readString(file));
+    }
+
+    @Test
+    void staleSocketIsReplacedAndALiveOneIsNot() throws IOException {
+        Path socket = home.resolve("server.sock");
+        try (ServerSocketChannel stale = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            stale.bind(UnixDomainSocketAddress.of(socket));
+            assertThrows(BindException.class, () -> new CommandServer(root, socket.toString()));
+        }
+        // The socket file outlives the server that was listening on it
+        assertTrue(Files.exists(socket));
+        new CommandServer(root, socket.toString()).close();
+    }
+
+}
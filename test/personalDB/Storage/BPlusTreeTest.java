@@ -0,0 +1,156 @@
+/**
+ * Tests of the B+ tree
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BPlusTreeTest {
+    // Enough entries of this size to split leaves and the root several times
+    private static final int ENTRIES = 5000;
+    private static final int VALUE_SIZE = 100;
+
+    @TempDir
+    Path directory;
+
+    private static byte[] key(int i) {
+        return String.format("key-%08d", i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] value(int i) {
+        byte[] value = new byte[VALUE_SIZE];
+        new Random(i).nextBytes(value);
+        return value;
+    }
+
+    private static void assertContent(BPlusTree tree, int entries) throws IOException {
+        assertEquals(entries, tree.size());
+        for (int i = 0; i < entries; i++) {
+            assertArrayEquals(value(i), tree.get(key(i)));
+        }
+        assertNull(tree.get(key(entries)));
+        List<byte[]> scanned = new ArrayList<>();
+        tree.scan(null, null, (key, value) -> scanned.add(key));
+        assertEquals(entries, scanned.size());
+        for (int i = 0; i < entries; i++) {
+            assertArrayEquals(key(i), scanned.get(i));
+        }
+    }
+
+    @Test
+    void insertsInRandomOrderSplitAndSurviveReopening() throws IOException {
+        Path file = directory.resolve("tree");
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(42));
+        try (BPlusTree tree = new BPlusTree(file, 8)) {
+            for (int i : order) {
+                tree.put(key(i), value(i));
+            }
+            assertContent(tree, ENTRIES);
+        }
+        try (BPlusTree tree = new BPlusTree(file, 8)) {
+            assertContent(tree, ENTRIES);
+        }
+    }
+
+    @Test
+    void putReplacesAndDeleteRemoves() throws IOException {
+        try (BPlusTree tree = new BPlusTree(directory.resolve("tree"), 8)) {
+            for (int i = 0; i < ENTRIES; i++) {
+                tree.put(key(i), new byte[] {1});
+            }
+            for (int i = 0; i < ENTRIES; i++) {
+                tree.put(key(i), value(i));
+            }
+            assertContent(tree, ENTRIES);
+            assertTrue(tree.delete(key(ENTRIES - 1)));
+            assertFalse(tree.delete(key(ENTRIES - 1)));
+            assertContent(tree, ENTRIES - 1);
+        }
+    }
+
+    @Test
+    void scanStopsAtTheEndOfTheRange() throws IOException {
+        try (BPlusTree tree = new BPlusTree(directory.resolve("tree"), 8)) {
+            for (int i = 0; i < ENTRIES; i++) {
+                tree.put(key(i), value(i));
+            }
+            List<byte[]> scanned = new ArrayList<>();
+            tree.scan(key(1000), key(3000), (key, value) -> scanned.add(key));
+            assertEquals(2000, scanned.size());
+            assertArrayEquals(key(1000), scanned.get(0));
+            assertArrayEquals(key(2999), scanned.get(scanned.size() - 1));
+        }
+    }
+
+    @Test
+    void bulkLoadReplacesTheContent() throws IOException {
+        Path file = directory.resolve("tree");
+        try (BPlusTree tree = new BPlusTree(file, 8)) {
+            tree.put("stale".getBytes(StandardCharsets.UTF_8), new byte[] {1});
+            tree.bulkLoad(entries(ENTRIES));
+            assertNull(tree.get("stale".getBytes(StandardCharsets.UTF_8)));
+            assertContent(tree, ENTRIES);
+            tree.put(key(ENTRIES), value(ENTRIES));
+            assertContent(tree, ENTRIES + 1);
+        }
+        try (BPlusTree tree = new BPlusTree(file, 8)) {
+            assertContent(tree, ENTRIES + 1);
+        }
+    }
+
+    @Test
+    void bulkLoadRejectsUnsortedKeys() throws IOException {
+        try (BPlusTree tree = new BPlusTree(directory.resolve("tree"), 8)) {
+            Iterator<Map.Entry<byte[], byte[]>> unsorted = List.of(
+                    Map.entry(key(2), value(2)), Map.entry(key(1), value(1))).iterator();
+            assertThrows(IllegalArgumentException.class, () -> tree.bulkLoad(unsorted));
+        }
+    }
+
+    @Test
+    void treeLeftOpenAfterAWriteIsRefusedUntilClosed() throws IOException {
+        Path file = directory.resolve("tree");
+        BPlusTree crashed = new BPlusTree(file, 8);
+        crashed.put(key(0), value(0));
+        // The process stops here without closing: the header still says the tree is being changed
+        assertThrows(IOException.class, () -> new BPlusTree(file, 8).close());
+        crashed.close();
+        try (BPlusTree tree = new BPlusTree(file, 8)) {
+            assertContent(tree, 1);
+        }
+    }
+
+    private static Iterator<Map.Entry<byte[], byte[]>> entries(int count) {
+        List<Map.Entry<byte[], byte[]>> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(Map.entry(key(i), value(i)));
+        }
+        return entries.iterator();
+    }
+}
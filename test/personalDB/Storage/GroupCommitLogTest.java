@@ -0,0 +1,113 @@
+/**
+ * Tests of the group commit log
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GroupCommitLogTest {
+    private static final int WRITERS = 8;
+    private static final int RECORDS = 200;
+    private static final int RECORD_SIZE = 2 * Integer.BYTES;
+
+    @TempDir
+    Path directory;
+
+    private static ByteBuffer record(int writer, int sequence) {
+        return ByteBuffer.allocate(RECORD_SIZE).putInt(writer).putInt(sequence).flip();
+    }
+
+    /**
+     * Reads every record of the log back, as a store does when it is opened
+     */
+    private static List<int[]> replay(GroupCommitLog log) throws IOException {
+        List<int[]> records = new ArrayList<>();
+        for (long position = 0; position + RECORD_SIZE <= log.size(); position += RECORD_SIZE) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+            log.read(buffer, position);
+            buffer.flip();
+            records.add(new int[] {buffer.getInt(), buffer.getInt()});
+        }
+        return records;
+    }
+
+    @Test
+    void concurrentWritersShareFlushesAndKeepEveryRecord() throws Exception {
+        Path file = directory.resolve("log");
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS);
+        try (GroupCommitLog log = new GroupCommitLog(file, Long.MAX_VALUE)) {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int writer = 0; writer < WRITERS; writer++) {
+                int id = writer;
+                writers.add(pool.submit(() -> {
+                    for (int sequence = 0; sequence < RECORDS; sequence++) {
+                        log.sync(log.append(record(id, sequence)));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            assertEquals(WRITERS * RECORDS, log.appendCount());
+            assertTrue(log.syncCount() > 0 && log.syncCount() <= log.appendCount());
+        } finally {
+            pool.shutdown();
+        }
+
+        try (GroupCommitLog log = new GroupCommitLog(file, Long.MAX_VALUE)) {
+            int[] next = new int[WRITERS];
+            for (int[] record : replay(log)) {
+                // Records of one writer are in the order it appended them
+                assertEquals(next[record[0]]++, record[1]);
+            }
+            for (int count : next) {
+                assertEquals(RECORDS, count);
+            }
+        }
+    }
+
+    @Test
+    void reopeningCutsOffARecordTornByACrash() throws IOException {
+        Path file = directory.resolve("log");
+        try (GroupCommitLog log = new GroupCommitLog(file, Long.MAX_VALUE)) {
+            for (int sequence = 0; sequence < RECORDS; sequence++) {
+                log.append(record(0, sequence));
+            }
+            log.sync(log.size());
+        }
+        long complete = (long) RECORDS * RECORD_SIZE;
+        Files.write(file, new byte[RECORD_SIZE / 2], StandardOpenOption.APPEND);
+
+        try (GroupCommitLog log = new GroupCommitLog(file, complete)) {
+            assertEquals(complete, log.size());
+            log.sync(log.append(record(0, RECORDS)));
+        }
+        try (GroupCommitLog log = new GroupCommitLog(file, Long.MAX_VALUE)) {
+            List<int[]> records = replay(log);
+            assertEquals(RECORDS + 1, records.size());
+            for (int sequence = 0; sequence <= RECORDS; sequence++) {
+                assertEquals(sequence, records.get(sequence)[1]);
+            }
+        }
+    }
+}
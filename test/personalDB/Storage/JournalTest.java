@@ -0,0 +1,142 @@
+/**
+ * Tests of the journal
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalTest {
+    // Size past which the log is rewritten, if it is mostly made of forgotten batches
+    private static final long CHECKPOINT_SIZE = 1 << 20;
+
+    @TempDir
+    Path home;
+
+    @TempDir
+    Path files;
+
+    private Path journalDirectory() {
+        return home.resolve("journal");
+    }
+
+    @Test
+    void undoDeletesFilesAndDirectoriesACopyCreated() throws IOException {
+        Journal journal = new Journal(journalDirectory());
+        Path directory = files.resolve("copy");
+        Path file = directory.resolve("file.txt");
+        Path part = Files.writeString(files.resolve("file.txt.part"), "content");
+
+        Journal.Batch batch = journal.begin("COPY file.txt copy");
+        batch.makeDirectory(directory);
+        batch.replaceFile(file, part);
+        batch.commit();
+        assertEquals("content", Files.readString(file));
+
+        List<Journal.Undone> undone = journal.undo(1);
+        assertEquals(1, undone.size());
+        assertEquals(2, undone.get(0).reverted());
+        assertTrue(undone.get(0).errors().isEmpty());
+        assertFalse(Files.exists(directory));
+        assertTrue(journal.history().isEmpty());
+    }
+
+    @Test
+    void undoRestoresDeletedAndReplacedFiles() throws IOException {
+        Journal journal = new Journal(journalDirectory());
+        Path deleted = Files.writeString(files.resolve("deleted.txt"), "deleted");
+        Path replaced = Files.writeString(files.resolve("replaced.txt"), "old");
+        Path part = Files.writeString(files.resolve("replaced.txt.part"), "new");
+
+        Journal.Batch batch = journal.begin("SYNC");
+        batch.deleteFile(deleted);
+        batch.replaceFile(replaced, part);
+        batch.makeDirectories(files.resolve("a").resolve("b"));
+        batch.commit();
+        assertFalse(Files.exists(deleted));
+        assertEquals("new", Files.readString(replaced));
+
+        assertEquals(4, journal.undo(1).get(0).reverted());
+        assertEquals("deleted", Files.readString(deleted));
+        assertEquals("old", Files.readString(replaced));
+        assertFalse(Files.exists(files.resolve("a")));
+    }
+
+    @Test
+    void batchCutShortByACrashIsRolledBackOnReopening() throws IOException {
+        Journal crashed = new Journal(journalDirectory());
+        Path created = files.resolve("created.txt");
+        Path added = files.resolve("added.txt");
+        Path deleted = Files.writeString(files.resolve("deleted.txt"), "deleted");
+        Path part = Files.writeString(files.resolve("added.txt.part"), "added");
+
+        Journal.Batch batch = crashed.begin("interrupted");
+        batch.createFile(created);
+        batch.replaceFile(added, part);
+        batch.deleteFile(deleted);
+        // The process stops here: the batch is never committed and its done records never flushed
+
+        Journal recovered = new Journal(journalDirectory());
+        assertFalse(Files.exists(created));
+        assertFalse(Files.exists(added));
+        assertEquals("deleted", Files.readString(deleted));
+        assertTrue(recovered.history().isEmpty());
+    }
+
+    @Test
+    void committedBatchesSurviveReopeningAfterATornRecord() throws IOException {
+        Journal journal = new Journal(journalDirectory());
+        Path created = files.resolve("created.txt");
+        Journal.Batch batch = journal.begin("CREATE created.txt");
+        batch.createFile(created);
+        batch.commit();
+        // A crash while the next record was being written
+        Files.write(journalDirectory().resolve("journal.log"), new byte[] {1, 2, 3}, StandardOpenOption.APPEND);
+
+        Journal reopened = new Journal(journalDirectory());
+        assertEquals(List.of(new Journal.Summary("CREATE created.txt", 1)), reopened.history());
+        assertEquals(1, reopened.undo(1).get(0).reverted());
+        assertFalse(Files.exists(created));
+
+        assertTrue(new Journal(journalDirectory()).history().isEmpty());
+    }
+
+    @Test
+    void checkpointDropsForgottenBatchesAndKeepsTheOthers() throws IOException {
+        Journal journal = new Journal(journalDirectory());
+        Path log = journalDirectory().resolve("journal.log");
+        String padding = "x".repeat(16 << 10);
+        Path file = files.resolve("file.txt");
+        long written = 0;
+        for (int i = 0; written < 2 * CHECKPOINT_SIZE; i++) {
+            Journal.Batch batch = journal.begin("CREATE " + i + " " + padding);
+            batch.createFile(file);
+            batch.commit();
+            assertEquals(1, journal.undo(1).get(0).reverted());
+            written += padding.length();
+        }
+        Journal.Batch kept = journal.begin("CREATE file.txt");
+        kept.createFile(file);
+        kept.commit();
+        assertTrue(Files.size(log) < CHECKPOINT_SIZE);
+
+        Journal reopened = new Journal(journalDirectory());
+        assertEquals(List.of(new Journal.Summary("CREATE file.txt", 1)), reopened.history());
+        assertEquals(1, reopened.undo(1).get(0).reverted());
+        assertFalse(Files.exists(file));
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Tests of the pack store
+ * @author Luís Ferreirinha
+ * @email luispedroferreirinha@gmail.com
+ * @date 18/10/2026
+ */
+
+package personalDB.Storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackStoreTest {
+    private static final int OBJECTS = 20;
+    private static final int OBJECT_SIZE = 1000;
+    // Four records fill a segment, so deleting two of them leaves it exactly at the compaction threshold
+    private static final long SEGMENT_SIZE = 4000;
+
+    @TempDir
+    Path directory;
+
+    private static String hash(int i) {
+        return String.format("%064x", i);
+    }
+
+    private static byte[] content(int i) {
+        byte[] content = new byte[OBJECT_SIZE];
+        Arrays.fill(content, (byte) i);
+        return content;
+    }
+
+    private static boolean deleted(int i) {
+        return i % 4 < 2;
+    }
+
+    @Test
+    void objectsAndDeletionsSurviveReopening() throws IOException {
+        try (PackStore store = new PackStore(directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < OBJECTS; i++) {
+                store.put(hash(i), content(i));
+            }
+            assertTrue(store.delete(hash(0)));
+            assertFalse(store.delete(hash(0)));
+        }
+        try (PackStore store = new PackStore(directory, SEGMENT_SIZE)) {
+            assertNull(store.read(hash(0)));
+            for (int i = 1; i < OBJECTS; i++) {
+                assertArrayEquals(content(i), store.read(hash(i)));
+            }
+            assertEquals(OBJECTS - 1, store.stats().objects());
+        }
+    }
+
+    @Test
+    void compactionKeepsLiveObjectsAndDropsDeadOnes() throws IOException {
+        try (PackStore store = new PackStore(directory, SEGMENT_SIZE)) {
+            Map<String, byte[]> objects = new LinkedHashMap<>();
+            for (int i = 0; i < OBJECTS; i++) {
+                objects.put(hash(i), content(i));
+            }
+            store.putAll(objects);
+            for (int i = 0; i < OBJECTS; i++) {
+                if (deleted(i)) {
+                    assertTrue(store.delete(hash(i)));
+                }
+            }
+            PackStore.Stats before = store.stats();
+            assertTrue(store.compact(0) > 0);
+            PackStore.Stats after = store.stats();
+            assertTrue(after.totalBytes() < before.totalBytes());
+            assertEquals(before.liveBytes(), after.liveBytes());
+            assertContent(store);
+        }
+        try (PackStore store = new PackStore(directory, SEGMENT_SIZE)) {
+            assertContent(store);
+        }
+    }
+
+    @Test
+    void recordTornByACrashIsCutOffOnReopening() throws IOException {
+        try (PackStore store = new PackStore(directory)) {
+            for (int i = 0; i < OBJECTS; i++) {
+                store.put(hash(i), content(i));
+            }
+        }
+        Path segment = directory.resolve("000001.pack");
+        long complete = Files.size(segment);
+        // The crash happened in the middle of the content of the next record
+        byte[] torn = Arrays.copyOf(Files.readAllBytes(segment), 100);
+        Files.write(segment, torn, StandardOpenOption.APPEND);
+
+        try (PackStore store = new PackStore(directory)) {
+            assertEquals(complete, Files.size(segment));
+            for (int i = 0; i < OBJECTS; i++) {
+                assertArrayEquals(content(i), store.read(hash(i)));
+            }
+            store.put(hash(OBJECTS), content(OBJECTS));
+        }
+        try (PackStore store = new PackStore(directory)) {
+            for (int i = 0; i <= OBJECTS; i++) {
+                assertArrayEquals(content(i), store.read(hash(i)));
+            }
+        }
+    }
+
+    private static void assertContent(PackStore store) throws IOException {
+        long live = 0;
+        for (int i = 0; i < OBJECTS; i++) {
+            if (deleted(i)) {
+                assertNull(store.read(hash(i)));
+            } else {
+                assertArrayEquals(content(i), store.read(hash(i)));
+                live++;
+            }
+        }
+        assertEquals(live, store.stats().objects());
+    }
+}